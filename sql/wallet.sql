@@ -27,18 +27,21 @@ CREATE TABLE `pay_recharge` (
   `order_id` varchar(255) NOT NULL COMMENT '订单ID，与对接业务的主键ID进行关联',
   `currency_id` int(10) NOT NULL COMMENT '币种ID',
   `currency_name` varchar(32) NOT NULL COMMENT '货币名称',
-  `tx_hash` varchar(255) NOT NULL COMMENT '交易hash',
+  `tx_hash` varchar(255) DEFAULT NULL COMMENT '交易hash',
   `amount` decimal(40,18) NOT NULL COMMENT '充值的金额',
   `from_address` varchar(255) DEFAULT NULL COMMENT '用户的出币地址',
   `to_address` varchar(255) DEFAULT NULL COMMENT '关联的充值地址',
   `upchain_at` datetime COMMENT '上链时间',
   `upchain_success_at` datetime COMMENT '上链成功时间',
-  `upchain_status` tinyint(1) NOT NULL DEFAULT '2' COMMENT '上链状态，1：上链并确认成功 2：等待确认中 3：未上链',
+  `upchain_status` tinyint(1) NOT NULL DEFAULT '2' COMMENT '上链状态，1：上链并确认成功 2：等待确认中 3：未上链 4：交易池中已发现',
   `current_confirm` int(20) DEFAULT NULL COMMENT '当前交易确认数',
   `height` int(20) DEFAULT NULL COMMENT '当前交易所处区块的高度',
+  `block_hash` varchar(66) DEFAULT NULL COMMENT '当前交易所处区块的Hash',
   `created_at` datetime DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `updated_at` datetime DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
-  PRIMARY KEY (`id`)
+  PRIMARY KEY (`id`),
+  KEY `idx_currency_id` (`currency_name`, `id`),
+  KEY `idx_currency_status_height` (`currency_name`, `upchain_status`, `height`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='充值关联表';
 
 
@@ -82,4 +85,37 @@ CREATE TABLE `pay_currency_account` (
   `created_at` datetime DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `updated_at` datetime DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   PRIMARY KEY (`currency_id`)
-) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='账号管理表';
\ No newline at end of file
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='账号管理表';
+
+DROP TABLE IF EXISTS `pay_account_nonce`;
+CREATE TABLE `pay_account_nonce` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+  `address` varchar(64) NOT NULL COMMENT '转出地址（小写）',
+  `next_nonce` bigint(20) NOT NULL COMMENT '下一笔交易应使用的nonce',
+  `created_at` datetime DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `updated_at` datetime DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_address` (`address`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='转出地址nonce计数器';
+
+
+DROP TABLE IF EXISTS `pay_withdraw`;
+CREATE TABLE `pay_withdraw` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT '主键ID',
+  `order_id` varchar(255) NOT NULL COMMENT '订单ID，与对接业务的主键ID进行关联',
+  `currency_id` int(10) NOT NULL COMMENT '币种ID',
+  `currency_name` varchar(32) NOT NULL COMMENT '货币名称',
+  `tx_hash` varchar(255) DEFAULT NULL COMMENT '提币交易hash，同一批次的提币共用一笔交易',
+  `amount` decimal(40,18) NOT NULL COMMENT '提币金额，包含手续费',
+  `fee` decimal(40,18) NOT NULL DEFAULT '0' COMMENT '提币手续费，取自pay_currency.fee_withdraw',
+  `to_address` varchar(255) NOT NULL COMMENT '提币地址',
+  `upchain_at` datetime COMMENT '上链时间',
+  `upchain_success_at` datetime COMMENT '上链成功时间',
+  `upchain_status` tinyint(1) NOT NULL DEFAULT '3' COMMENT '上链状态，1：上链并确认成功 2：已发出等待确认中 3：排队中未上链 5：节点拒绝发送，需人工处理',
+  `current_confirm` int(20) DEFAULT NULL COMMENT '当前交易确认数',
+  `created_at` datetime DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  `updated_at` datetime DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_currency_order` (`currency_name`, `order_id`),
+  KEY `idx_currency_status` (`currency_name`, `upchain_status`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='提币记录表';
@@ -0,0 +1,140 @@
+package com.payment.benchmark;
+
+import com.payment.benchmark.config.BitcoinBenchmarkConfiguration;
+import com.payment.benchmark.config.Erc20BenchmarkConfiguration;
+import com.payment.benchmark.config.EthBenchmarkConfiguration;
+import com.payment.bitcoin.task.ScanTask;
+import com.payment.erc20.task.Erc20ScanTask;
+import com.payment.eth.task.EthScanTask;
+import com.payment.mocknode.chain.ChainFlavor;
+import com.payment.mocknode.chain.SyntheticChain;
+import com.payment.mocknode.node.FakeBitcoinNode;
+import com.payment.mocknode.node.FakeEthNode;
+import com.payment.mocknode.server.FakeJsonRpcServer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.context.ApplicationContext;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 可压测的链，描述模拟节点、Spring配置与扫块任务的对应关系
+ * <p>
+ * token-sol依赖的solanaj无法从中央仓库获取，暂不纳入压测。
+ */
+@Getter
+@AllArgsConstructor
+public enum BenchmarkChain {
+
+    ETH("ETH", ChainFlavor.ETHEREUM, EthBenchmarkConfiguration.class, 18, 12) {
+        @Override
+        public FakeJsonRpcServer createNode(SyntheticChain chain) {
+            return new FakeEthNode(chain);
+        }
+
+        @Override
+        public List<String> nodeProperties(String nodeUrl) {
+            return Arrays.asList("--ethereum.currencyName=" + getCurrencyName(), "--ethereum.nodeurl=" + nodeUrl);
+        }
+
+        @Override
+        public void scan(ApplicationContext context) {
+            context.getBean(EthScanTask.class).scanOrder();
+        }
+
+        @Override
+        public void confirm(ApplicationContext context) {
+            context.getBean(EthScanTask.class).confirmTx();
+        }
+    },
+
+    ERC20("NICE", ChainFlavor.ETHEREUM, Erc20BenchmarkConfiguration.class, 18, 12) {
+        @Override
+        public FakeJsonRpcServer createNode(SyntheticChain chain) {
+            return new FakeEthNode(chain);
+        }
+
+        @Override
+        public List<String> nodeProperties(String nodeUrl) {
+            return Arrays.asList("--ethereum.currencyName=" + getCurrencyName(), "--ethereum.nodeurl=" + nodeUrl);
+        }
+
+        @Override
+        public void scan(ApplicationContext context) {
+            context.getBean(Erc20ScanTask.class).scanOrder();
+        }
+
+        @Override
+        public void confirm(ApplicationContext context) {
+            context.getBean(Erc20ScanTask.class).confirmTx();
+        }
+    },
+
+    BTC("BTC", ChainFlavor.BITCOIN, BitcoinBenchmarkConfiguration.class, 8, 6) {
+        @Override
+        public FakeJsonRpcServer createNode(SyntheticChain chain) {
+            return new FakeBitcoinNode(chain);
+        }
+
+        @Override
+        public List<String> nodeProperties(String nodeUrl) {
+            //bitcoind地址需包含RPC账号密码，模拟节点不校验
+            return Arrays.asList("--bitcoin.currencyName=" + getCurrencyName(), "--bitcoin.nodeurl=" + nodeUrl.replace("http://", "http://bench:bench@"));
+        }
+
+        @Override
+        public void scan(ApplicationContext context) {
+            context.getBean(ScanTask.class).scanOrder();
+        }
+
+        @Override
+        public void confirm(ApplicationContext context) {
+            context.getBean(ScanTask.class).confirmTx();
+        }
+    };
+
+    private final String currencyName;
+
+    private final ChainFlavor flavor;
+
+    private final Class<?> configuration;
+
+    /**
+     * 币种精度
+     */
+    private final int decimals;
+
+    /**
+     * 默认确认数
+     */
+    private final int confirms;
+
+    /**
+     * 创建模拟节点
+     */
+    public abstract FakeJsonRpcServer createNode(SyntheticChain chain);
+
+    /**
+     * 指向模拟节点的配置项（命令行参数格式）
+     */
+    public abstract List<String> nodeProperties(String nodeUrl);
+
+    /**
+     * 执行一次扫块任务
+     */
+    public abstract void scan(ApplicationContext context);
+
+    /**
+     * 执行一次确认任务
+     */
+    public abstract void confirm(ApplicationContext context);
+
+    /**
+     * 金额（以0.01为单位）转换为链上最小单位
+     */
+    public BigInteger toBaseUnit(long cents) {
+        return BigInteger.TEN.pow(decimals - 2).multiply(BigInteger.valueOf(cents));
+    }
+}
@@ -0,0 +1,132 @@
+package com.payment.benchmark;
+
+import com.sun.management.ThreadMXBean;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * 压测采样线程
+ * <p>
+ * 周期性采集两项指标：
+ * 1. 堆分配字节数：汇总被测线程的ThreadMXBean分配计数，排除模拟节点与采样线程自身；
+ * 线程在两次采样之间结束时最后一段分配会丢失，因此采样间隔较短。
+ * 2. 区块高度落后数：链上最新高度与数据库中已扫描高度之差。
+ */
+@Slf4j
+public class BenchmarkSampler implements Runnable {
+
+    private static final String SAMPLER_THREAD = "benchmark-sampler";
+
+    private static final long INTERVAL_MILLIS = 100;
+
+    private final ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final LongSupplier lagSupplier;
+
+    private final Map<Long, Long> lastAllocated = new HashMap<>();
+
+    private long allocatedBytes;
+
+    private long lagSum;
+
+    private long lagSamples;
+
+    private long maxLag;
+
+    private volatile boolean running;
+
+    private Thread thread;
+
+    /**
+     * @param lagSupplier 当前落后的区块数
+     */
+    public BenchmarkSampler(LongSupplier lagSupplier) {
+        this.lagSupplier = lagSupplier;
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * 开始一个压测阶段，清空之前的统计
+     */
+    public synchronized void start() {
+        lastAllocated.clear();
+        allocatedBytes = 0;
+        lagSum = 0;
+        lagSamples = 0;
+        maxLag = 0;
+        sample();
+        allocatedBytes = 0;
+        running = true;
+        thread = new Thread(this, SAMPLER_THREAD);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 结束当前压测阶段并做最后一次采样
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        thread.join();
+        sample();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            sample();
+            try {
+                TimeUnit.MILLISECONDS.sleep(INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public synchronized long getMaxLag() {
+        return maxLag;
+    }
+
+    public synchronized double getAvgLag() {
+        return lagSamples == 0 ? 0 : (double) lagSum / lagSamples;
+    }
+
+    private synchronized void sample() {
+        //1. 统计被测线程的分配字节数
+        long[] ids = threadMXBean.getAllThreadIds();
+        ThreadInfo[] infos = threadMXBean.getThreadInfo(ids);
+        long[] allocated = threadMXBean.getThreadAllocatedBytes(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (infos[i] == null || allocated[i] < 0 || isExcluded(infos[i].getThreadName())) {
+                continue;
+            }
+            Long last = lastAllocated.put(ids[i], allocated[i]);
+            allocatedBytes += allocated[i] - (last == null ? 0 : last);
+        }
+
+        //2. 统计区块高度落后数
+        try {
+            long lag = lagSupplier.getAsLong();
+            lagSum += lag;
+            lagSamples++;
+            maxLag = Math.max(maxLag, lag);
+        } catch (RuntimeException e) {
+            log.warn("采集区块高度落后数失败：{}", e.getMessage());
+        }
+    }
+
+    private static boolean isExcluded(String threadName) {
+        return threadName.startsWith("mock-node") || threadName.startsWith("HTTP-Dispatcher") || threadName.startsWith(SAMPLER_THREAD);
+    }
+}
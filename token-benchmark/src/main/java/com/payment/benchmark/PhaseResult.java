@@ -0,0 +1,81 @@
+package com.payment.benchmark;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * 一个压测阶段（追块、实时扫块、确认）的结果
+ */
+@Data
+public class PhaseResult {
+
+    private String phase;
+
+    private long elapsedMillis;
+
+    /**
+     * 扫描的区块数
+     */
+    private long blocks;
+
+    /**
+     * 扫描的交易数
+     */
+    private long transactions;
+
+    /**
+     * 匹配或确认的充值单数
+     */
+    private long recharges;
+
+    /**
+     * 执行的SQL语句数
+     */
+    private long statements;
+
+    /**
+     * RPC调用次数，按方法统计
+     */
+    private Map<String, Long> rpcCalls;
+
+    /**
+     * 被测线程的堆分配字节数
+     */
+    private long allocatedBytes;
+
+    private double avgLag;
+
+    private long maxLag;
+
+    public double getBlocksPerSecond() {
+        return perSecond(blocks);
+    }
+
+    public double getTransactionsPerSecond() {
+        return perSecond(transactions);
+    }
+
+    public double getStatementsPerBlock() {
+        return blocks == 0 ? 0 : (double) statements / blocks;
+    }
+
+    public double getRpcCallsPerBlock() {
+        return blocks == 0 ? 0 : (double) rpcCalls.values().stream().mapToLong(Long::longValue).sum() / blocks;
+    }
+
+    public double getAllocationMbPerSecond() {
+        return perSecond(allocatedBytes) / (1024 * 1024);
+    }
+
+    private double perSecond(long count) {
+        return elapsedMillis == 0 ? 0 : count * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-8s 耗时=%dms 区块=%d(%.1f/s) 交易=%d(%.1f/s) 充值单=%d SQL=%d SQL/块=%.2f RPC/块=%.2f 分配=%.1fMB/s 高度落后(平均/最大)=%.1f/%d RPC=%s",
+                phase, elapsedMillis, blocks, getBlocksPerSecond(), transactions, getTransactionsPerSecond(), recharges, statements,
+                getStatementsPerBlock(), getRpcCallsPerBlock(), getAllocationMbPerSecond(), avgLag, maxLag, rpcCalls);
+    }
+}
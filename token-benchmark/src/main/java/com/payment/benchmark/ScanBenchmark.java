@@ -0,0 +1,368 @@
+package com.payment.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.payment.core.entity.Currency;
+import com.payment.core.entity.Height;
+import com.payment.core.entity.Recharge;
+import com.payment.core.enums.UpchainStatusEnum;
+import com.payment.core.exception.AssertException;
+import com.payment.core.repository.CurrencyRepository;
+import com.payment.core.repository.HeightRepository;
+import com.payment.core.repository.RechargeRepository;
+import com.payment.mocknode.chain.SyntheticChain;
+import com.payment.mocknode.server.FakeJsonRpcServer;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 扫块任务端到端压测
+ * <p>
+ * 用合成链启动模拟节点，以H2内存数据库启动真实的扫块服务，直接调用扫块与确认任务并统计：
+ * 区块/秒、交易/秒、每个区块的SQL语句数与RPC调用数、堆分配速率以及已扫描高度落后链上高度的区块数。
+ * 压测分为三个阶段：
+ * 1. 追块：从0高度一次扫描到链上最新高度；
+ * 2. 实时扫块（可选）：按出块间隔持续出块，扫块任务按固定间隔运行，观察高度落后情况；
+ * 3. 确认：再出确认数个区块后执行一次确认任务。
+ * <p>
+ * 参数格式为--key=value：
+ * <pre>
+ * --chain=eth|erc20|btc    被压测的链，默认eth
+ * --blocks=2000            追块阶段的区块数
+ * --tx-per-block=150       每个区块的交易数
+ * --hit-rate=0.001         充值交易占全部交易的比例
+ * --tokens=3               链上ERC20合约数量（erc20压测第一个合约）
+ * --token-share=0.3        代币转账占比
+ * --confirms=12            确认数，默认使用链的默认值
+ * --seed=20190401          随机种子，相同参数与种子的压测可重复
+ * --latency=0-0            模拟节点延迟范围（毫秒）
+ * --error-rate=0           模拟节点HTTP 500比例
+ * --live-seconds=0         实时扫块阶段时长，0表示跳过
+ * --block-interval-ms=1000 实时扫块阶段的出块间隔
+ * --scan-delay-ms=1000     实时扫块阶段扫块任务的运行间隔
+ * --rpc-max-rate=100000    节点限流器每秒最大请求数
+ * --report=/path/x.json    结果输出文件
+ * </pre>
+ */
+@Slf4j
+public class ScanBenchmark {
+
+    private final Map<String, String> options;
+
+    private final BenchmarkChain benchmarkChain;
+
+    private SyntheticChain chain;
+
+    private FakeJsonRpcServer node;
+
+    private ConfigurableApplicationContext context;
+
+    private Statistics statistics;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private BenchmarkSampler sampler;
+
+    public ScanBenchmark(Map<String, String> options) {
+        this.options = options;
+        this.benchmarkChain = BenchmarkChain.valueOf(option("chain", "eth").toUpperCase());
+    }
+
+    public static void main(String[] args) throws Exception {
+        ScanBenchmark benchmark = new ScanBenchmark(parse(args));
+        List<PhaseResult> results = benchmark.run();
+        results.forEach(result -> log.info("{}", result));
+        String report = benchmark.option("report", null);
+        if (report != null) {
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(new File(report), results);
+        }
+        System.exit(0);
+    }
+
+    public List<PhaseResult> run() throws Exception {
+        List<Recharge> recharges = prepareChain();
+        try {
+            startNode();
+            startContext();
+            seed(recharges);
+
+            List<PhaseResult> results = new ArrayList<>();
+            results.add(catchUp());
+            if (Long.parseLong(option("live-seconds", "0")) > 0) {
+                results.add(live());
+            }
+            results.add(confirm());
+            return results;
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+            if (node != null) {
+                node.close();
+            }
+        }
+    }
+
+    /**
+     * 生成合成链并安排充值，返回对应的充值单
+     */
+    private List<Recharge> prepareChain() {
+        long seed = Long.parseLong(option("seed", "20190401"));
+        long blocks = Long.parseLong(option("blocks", "2000"));
+        int txPerBlock = Integer.parseInt(option("tx-per-block", "150"));
+        double hitRate = Double.parseDouble(option("hit-rate", "0.001"));
+        int tokenCount = benchmarkChain == BenchmarkChain.BTC ? 0 : Integer.parseInt(option("tokens", "3"));
+
+        //1. 生成代币合约地址与合成链
+        Random random = new Random(seed);
+        SyntheticChain.Builder builder = SyntheticChain.builder(benchmarkChain.getFlavor())
+                .seed(seed)
+                .blockCount(blocks)
+                .txPerBlock(txPerBlock)
+                .tokenShare(Double.parseDouble(option("token-share", "0.3")));
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < tokenCount; i++) {
+            String token = benchmarkChain.getFlavor().address(random);
+            tokens.add(token);
+            builder.token(token);
+        }
+        chain = builder.build();
+
+        //2. 按命中率安排充值，每笔充值使用独立的收款地址
+        String depositToken = benchmarkChain == BenchmarkChain.ERC20 ? tokens.get(0) : null;
+        long depositCount = Math.max(1, Math.round(blocks * txPerBlock * hitRate));
+        List<Recharge> recharges = new ArrayList<>();
+        for (long i = 0; i < depositCount; i++) {
+            long blockNumber = 1 + (long) (random.nextDouble() * blocks);
+            String address = chain.newAddress(random);
+            long cents = 1 + random.nextInt(10000);
+            chain.scheduleDeposit(blockNumber, address, benchmarkChain.toBaseUnit(cents), depositToken);
+
+            Recharge recharge = new Recharge();
+            recharge.setOrderId("BENCH" + i);
+            recharge.setCurrencyName(benchmarkChain.getCurrencyName());
+            recharge.setToAddress(address);
+            recharge.setAmount(BigDecimal.valueOf(cents, 2));
+            recharge.setUpchainStatus(UpchainStatusEnum.NOT_UPCHAIN.getCode());
+            recharge.setCreatedAt(new Date());
+            recharges.add(recharge);
+        }
+        options.put("contract", depositToken == null ? "" : depositToken);
+        log.info("合成链：{}个区块，每块{}笔交易，{}笔充值", blocks, txPerBlock, depositCount);
+        return recharges;
+    }
+
+    private void startNode() throws Exception {
+        node = benchmarkChain.createNode(chain);
+        String[] latency = option("latency", "0-0").split("-");
+        node.getFaultInjector()
+                .latency(Long.parseLong(latency[0]), Long.parseLong(latency.length > 1 ? latency[1] : latency[0]))
+                .httpErrorRate(Double.parseDouble(option("error-rate", "0")));
+        node.start(0);
+    }
+
+    private void startContext() {
+        List<String> args = new ArrayList<>();
+        args.add("--spring.datasource.url=jdbc:h2:mem:benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        args.add("--spring.datasource.driver-class-name=org.h2.Driver");
+        args.add("--spring.datasource.username=sa");
+        args.add("--spring.datasource.password=benchmark");
+        args.add("--spring.jpa.hibernate.ddl-auto=create-drop");
+        args.add("--spring.jpa.show-sql=false");
+        args.add("--spring.jpa.open-in-view=false");
+        args.add("--spring.jpa.properties.hibernate.generate_statistics=true");
+        args.add("--logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN");
+        args.add("--logging.level.com.payment=" + option("log-level", "WARN"));
+        args.add("--logging.level.com.payment.benchmark=INFO");
+        args.add("--ethereum.keystorepath=" + System.getProperty("java.io.tmpdir"));
+        args.add("--ethereum.keystorepassword=benchmark");
+        args.add("--rpc.limiter.max-rate=" + option("rpc-max-rate", "100000"));
+        args.add("--rpc.limiter.burst=" + option("rpc-max-rate", "100000"));
+        args.addAll(benchmarkChain.nodeProperties(node.getUrl()));
+
+        context = new SpringApplicationBuilder(benchmarkChain.getConfiguration())
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .run(args.toArray(new String[0]));
+        statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        sampler = new BenchmarkSampler(() -> chain.getHeight() - scannedHeight());
+    }
+
+    /**
+     * 写入币种配置、从0开始的扫描高度与待匹配的充值单
+     */
+    private void seed(List<Recharge> recharges) {
+        Currency currency = new Currency();
+        currency.setCurrencyName(benchmarkChain.getCurrencyName());
+        currency.setCurrencyDecimalsNum(benchmarkChain.getDecimals());
+        currency.setContractAddress(options.get("contract"));
+        currency.setConfirms(Integer.parseInt(option("confirms", String.valueOf(benchmarkChain.getConfirms()))));
+        currency.setStatus(1);
+        currency.setCreatedAt(new Date());
+        currency = context.getBean(CurrencyRepository.class).save(currency);
+
+        Height height = new Height();
+        height.setCurrencyId(currency.getId());
+        height.setCurrencyName(currency.getCurrencyName());
+        height.setCurrentHeight(0);
+        height.setUpdatedAt(new Date());
+        context.getBean(HeightRepository.class).save(height);
+
+        for (Recharge recharge : recharges) {
+            recharge.setCurrencyId(currency.getId());
+        }
+        context.getBean(RechargeRepository.class).saveAll(recharges);
+    }
+
+    /**
+     * 追块阶段：从0高度一次扫描到链上最新高度
+     */
+    private PhaseResult catchUp() throws InterruptedException {
+        long fromHeight = scannedHeight();
+        long matchedBefore = countRecharges(UpchainStatusEnum.NOT_UPCHAIN, false);
+        beginPhase();
+        long start = System.nanoTime();
+        runQuietly(() -> benchmarkChain.scan(context));
+        return endPhase("catch-up", start, fromHeight, countRecharges(UpchainStatusEnum.NOT_UPCHAIN, false) - matchedBefore);
+    }
+
+    /**
+     * 实时扫块阶段：按出块间隔持续出块，扫块任务按固定间隔运行
+     */
+    private PhaseResult live() throws InterruptedException {
+        long blockInterval = Long.parseLong(option("block-interval-ms", "1000"));
+        long scanDelay = Long.parseLong(option("scan-delay-ms", "1000"));
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(Long.parseLong(option("live-seconds", "0")));
+
+        long fromHeight = scannedHeight();
+        long matchedBefore = countRecharges(UpchainStatusEnum.NOT_UPCHAIN, false);
+        ScheduledExecutorService miner = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "mock-node-miner"));
+        miner.scheduleAtFixedRate(chain::mineBlock, blockInterval, blockInterval, TimeUnit.MILLISECONDS);
+        beginPhase();
+        long start = System.nanoTime();
+        try {
+            while (System.currentTimeMillis() < deadline) {
+                runQuietly(() -> benchmarkChain.scan(context));
+                TimeUnit.MILLISECONDS.sleep(scanDelay);
+            }
+        } finally {
+            miner.shutdownNow();
+        }
+        return endPhase("live", start, fromHeight, countRecharges(UpchainStatusEnum.NOT_UPCHAIN, false) - matchedBefore);
+    }
+
+    /**
+     * 确认阶段：先出确认数个区块使所有充值都满足确认数，再执行一次确认任务
+     */
+    private PhaseResult confirm() throws InterruptedException {
+        int confirms = Integer.parseInt(option("confirms", String.valueOf(benchmarkChain.getConfirms())));
+        for (int i = 0; i <= confirms; i++) {
+            chain.mineBlock();
+        }
+        long fromHeight = scannedHeight();
+        long successBefore = countRecharges(UpchainStatusEnum.SUCCESS, true);
+        beginPhase();
+        long start = System.nanoTime();
+        runQuietly(() -> benchmarkChain.confirm(context));
+        PhaseResult result = endPhase("confirm", start, fromHeight, countRecharges(UpchainStatusEnum.SUCCESS, true) - successBefore);
+        result.setBlocks(0);
+        result.setTransactions(0);
+        return result;
+    }
+
+    private void beginPhase() {
+        statistics.clear();
+        node.resetCounts();
+        sampler.start();
+    }
+
+    private PhaseResult endPhase(String phase, long startNanos, long fromHeight, long recharges) throws InterruptedException {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        sampler.stop();
+        long toHeight = scannedHeight();
+
+        PhaseResult result = new PhaseResult();
+        result.setPhase(phase);
+        result.setElapsedMillis(elapsed);
+        result.setBlocks(toHeight - fromHeight);
+        result.setTransactions(countTransactions(fromHeight + 1, toHeight));
+        result.setRecharges(recharges);
+        result.setStatements(statistics.getPrepareStatementCount());
+        result.setRpcCalls(new LinkedHashMap<>(node.getMethodCounts()));
+        result.setAllocatedBytes(sampler.getAllocatedBytes());
+        result.setAvgLag(sampler.getAvgLag());
+        result.setMaxLag(sampler.getMaxLag());
+        return result;
+    }
+
+    /**
+     * 执行扫块或确认任务，任务通过AssertException表示无需处理，不影响压测
+     */
+    private static void runQuietly(Runnable task) {
+        try {
+            task.run();
+        } catch (AssertException e) {
+            log.info("任务提前结束：{}", e.getMessage());
+        }
+    }
+
+    private long scannedHeight() {
+        Integer height = jdbcTemplate.queryForObject("select current_height from pay_height where currency_name = ?",
+                Integer.class, benchmarkChain.getCurrencyName());
+        return height == null ? 0 : height;
+    }
+
+    /**
+     * 统计充值单数量
+     * @param status 上链状态
+     * @param equal true统计等于该状态的数量，false统计不等于该状态的数量
+     */
+    private long countRecharges(UpchainStatusEnum status, boolean equal) {
+        Long count = jdbcTemplate.queryForObject("select count(*) from pay_recharge where currency_name = ? and upchain_status " + (equal ? "=" : "<>") + " ?",
+                Long.class, benchmarkChain.getCurrencyName(), status.getCode());
+        return count == null ? 0 : count;
+    }
+
+    private long countTransactions(long fromBlock, long toBlock) {
+        long count = 0;
+        for (long number = fromBlock; number <= toBlock; number++) {
+            count += chain.getBlock(number).getTransfers().size();
+        }
+        return count;
+    }
+
+    private String option(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        return options;
+    }
+}
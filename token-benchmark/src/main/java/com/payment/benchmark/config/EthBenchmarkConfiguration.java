@@ -0,0 +1,23 @@
+package com.payment.benchmark.config;
+
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * 以太币扫块压测使用的Spring配置
+ * <p>
+ * 与应用启动类扫描相同的包，但不开启定时任务，扫块与确认任务由压测程序直接调用，以便精确计时。
+ */
+@SpringBootConfiguration
+@EnableAutoConfiguration
+@ComponentScan(value = {"com.payment.core", "com.payment.eth", "com.payment.ethereum"},
+        excludeFilters = @ComponentScan.Filter(type = FilterType.ANNOTATION, classes = SpringBootApplication.class))
+@EntityScan(basePackages = {"com.payment.core.entity"})
+@EnableJpaRepositories(basePackages = {"com.payment.core.repository"})
+public class EthBenchmarkConfiguration {
+}
@@ -1,10 +1,11 @@
 package com.payment.bitcoin.config;
 
+import com.payment.bitcoin.rpc.LimitedBitcoinJSONRPCClient;
+import com.payment.core.limiter.RpcLimiterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import wf.bitcoin.javabitcoindrpcclient.BitcoinJSONRPCClient;
 import wf.bitcoin.javabitcoindrpcclient.BitcoindRpcClient;
 
 import java.net.MalformedURLException;
@@ -17,9 +18,9 @@ public class BitcoinClientConfig {
     private String bitcoinNodeUrl;
 
     @Bean
-    public BitcoindRpcClient bitcoindRpcClient() {
+    public BitcoindRpcClient bitcoindRpcClient(RpcLimiterRegistry rpcLimiterRegistry) {
         try {
-            return new BitcoinJSONRPCClient(bitcoinNodeUrl);
+            return new LimitedBitcoinJSONRPCClient(bitcoinNodeUrl, rpcLimiterRegistry.get(bitcoinNodeUrl));
         } catch (MalformedURLException e) {
             log.error("bitcoin client 初始化失败", e);
             return null;
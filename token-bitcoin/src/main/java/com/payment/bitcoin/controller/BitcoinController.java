@@ -1,17 +1,26 @@
 package com.payment.bitcoin.controller;
 
+import com.payment.bitcoin.service.BitcoinWalletService;
+import com.payment.bitcoin.utxo.Utxo;
+import com.payment.core.auth.FundOperation;
 import com.payment.core.common.Result;
+import com.payment.core.common.request.WithdrawRequest;
 import com.payment.core.common.response.RechargeResponse;
 import com.payment.core.entity.Currency;
 import com.payment.core.entity.Recharge;
+import com.payment.core.entity.Withdraw;
 import com.payment.core.enums.UpchainStatusEnum;
 import com.payment.core.service.CurrencyService;
 import com.payment.core.service.RechargeService;
+import com.payment.core.service.WithdrawService;
 import com.payment.core.utils.AssertUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import wf.bitcoin.javabitcoindrpcclient.BitcoindRpcClient;
@@ -23,6 +32,11 @@ import java.util.Date;
 @RequestMapping("/bitcoin")
 public class BitcoinController {
 
+    /**
+     * 比特币金额精度
+     */
+    private static final int BTC_SCALE = 8;
+
     @Autowired
     private BitcoindRpcClient bitcoinClient;
 
@@ -32,6 +46,9 @@ public class BitcoinController {
     @Autowired
     private CurrencyService currencyService;
 
+    @Autowired
+    private WithdrawService withdrawService;
+
     @Value("${bitcoin.currencyName}")
     private String currencyName;
 
@@ -83,6 +100,77 @@ public class BitcoinController {
     }
 
 
+    /**
+     * 创建一个提币单，提币单进入队列排队，由提币任务在每个批次窗口内合并为一笔sendmany交易发出
+     * 提币手续费取自币种配置的fee_withdraw，实际到账金额为提币金额减去手续费
+     * 会转出资金，只接受携带接口密钥的POST请求，参数放在请求体中不进入访问日志
+     * @param request 业务系统订单ID、提币地址与提币金额
+     * @return 提币单ID
+     */
+    @FundOperation
+    @PostMapping("/createWithdraw")
+    public Result<Long> createWithdraw(@RequestBody WithdrawRequest request) {
+        String orderId = request.getOrderId();
+        String address = request.getAddress();
+        String amount = request.getAmount();
+
+        //数据有效性校验
+        AssertUtils.hasText(orderId, "订单号不能为空");
+        AssertUtils.hasText(address, "提币地址不能为空");
+        AssertUtils.hasText(amount, "金额不能为空");
+        AssertUtils.isDouble(amount, "金额格式错误");
+        AssertUtils.isTrue(new BigDecimal(amount).stripTrailingZeros().scale() <= BTC_SCALE, "金额最多" + BTC_SCALE + "位小数");
+        AssertUtils.isTrue(bitcoinClient.validateAddress(address).isValid(), "提币地址格式错误");
+
+        //同一订单重复提交时返回已有的提币单
+        Withdraw existing = withdrawService.getWithdrawByOrderId(currencyName, orderId);
+        if (existing != null) {
+            return existingWithdraw(existing, address, amount);
+        }
+
+        //获取货币信息，扣除手续费后的到账金额不能是粉尘，否则整笔提币交易会被节点拒绝
+        Currency bitcoinInfo = currencyService.findCurrency(currencyName);
+        AssertUtils.isNotNull(bitcoinInfo, "数据库未配置货币信息：" + currencyName);
+        BigDecimal fee = bitcoinInfo.getFeeWithdraw() == null ? BigDecimal.ZERO : bitcoinInfo.getFeeWithdraw();
+        AssertUtils.isTrue(Utxo.toSatoshi(new BigDecimal(amount).subtract(fee)) > BitcoinWalletService.DUST_SATOSHI,
+                "提币金额扣除手续费" + fee.toPlainString() + "后必须大于" + Utxo.toBtc(BitcoinWalletService.DUST_SATOSHI).toPlainString());
+
+        //构建提币单信息，排队等待提币任务发出
+        Withdraw withdraw = new Withdraw();
+        withdraw.setOrderId(orderId);
+        withdraw.setCurrencyId(bitcoinInfo.getId());
+        withdraw.setCurrencyName(bitcoinInfo.getCurrencyName());
+        withdraw.setAmount(new BigDecimal(amount));
+        withdraw.setFee(fee);
+        withdraw.setToAddress(address);
+        withdraw.setUpchainStatus(UpchainStatusEnum.NOT_UPCHAIN.getCode());
+        Date currentDate = new Date();
+        withdraw.setUpdatedAt(currentDate);
+        withdraw.setCreatedAt(currentDate);
+        try {
+            withdrawService.saveWithdraw(withdraw);
+        } catch (DataIntegrityViolationException e) {
+            //并发提交的同一订单已经创建了提币单
+            existing = withdrawService.getWithdrawByOrderId(currencyName, orderId);
+            if (existing == null) {
+                throw e;
+            }
+            return existingWithdraw(existing, address, amount);
+        }
+
+        return Result.buildSuccess(withdraw.getId());
+    }
+
+    /**
+     * 订单已有提币单时，地址与金额一致视为重复提交，返回已有的提币单ID
+     */
+    private Result<Long> existingWithdraw(Withdraw existing, String address, String amount) {
+        if (existing.getToAddress().equals(address) && existing.getAmount().compareTo(new BigDecimal(amount)) == 0) {
+            return Result.buildSuccess(existing.getId());
+        }
+        return Result.buildError("提币单记录已存在");
+    }
+
     @GetMapping("/getNewAddress/{account}")
     public Result<String> getNewAddress(@PathVariable String account) {
         String newAddress = bitcoinClient.getNewAddress(account);
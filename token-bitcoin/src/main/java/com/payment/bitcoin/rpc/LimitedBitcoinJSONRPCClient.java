@@ -0,0 +1,49 @@
+package com.payment.bitcoin.rpc;
+
+import com.payment.core.limiter.RpcLimiter;
+import wf.bitcoin.javabitcoindrpcclient.BitcoinJSONRPCClient;
+import wf.bitcoin.javabitcoindrpcclient.BitcoinRPCException;
+import wf.bitcoin.javabitcoindrpcclient.GenericRpcException;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带限流的bitcoin rpc客户端
+ * <p>
+ * BitcoinJSONRPCClient的所有接口最终都通过{@link #query(String, Object...)}发出请求，
+ * 在这里统一获取节点限流许可并反馈延迟、错误与限流信号。
+ */
+public class LimitedBitcoinJSONRPCClient extends BitcoinJSONRPCClient {
+
+    private final RpcLimiter limiter;
+
+    public LimitedBitcoinJSONRPCClient(String rpcUrl, RpcLimiter limiter) throws MalformedURLException {
+        super(rpcUrl);
+        this.limiter = limiter;
+    }
+
+    @Override
+    public Object query(String method, Object... o) throws GenericRpcException {
+        limiter.acquire();
+        long start = System.nanoTime();
+        try {
+            Object result = super.query(method, o);
+            limiter.onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return result;
+        } catch (BitcoinRPCException e) {
+            if (e.getResponseCode() == 429) {
+                limiter.onThrottled();
+            } else if (e.getRPCError() != null) {
+                //节点正常返回了业务错误（例如交易不存在），不代表节点过载
+                limiter.onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } else {
+                limiter.onError();
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            limiter.onError();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.payment.bitcoin.scanner;
+
+import com.payment.bitcoin.task.ScanTask;
+import com.payment.bitcoin.utxo.UtxoInventory;
+import com.payment.core.config.ScannerConfiguration;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * 只运行比特币扫块任务的启动类
+ * <p>
+ * 不启动Web容器与JPA，充值记录通过JdbcTemplate读写，适合与对外接口服务分开部署，
+ * 只注册扫块与确认任务，归集、提币与合并任务只在对外接口服务中运行，避免重复归集与重复支付。
+ * 推荐使用较小的堆启动，例如 java -Xmx96m -cp ... com.payment.bitcoin.scanner.BitcoinScannerApplication
+ */
+@Configuration
+@Profile(ScannerConfiguration.PROFILE)
+@Import({ScannerConfiguration.class, ScanTask.class, UtxoInventory.class})
+@ComponentScan("com.payment.bitcoin.config")
+public class BitcoinScannerApplication {
+
+    public static void main(String[] args) {
+        ScannerConfiguration.run(BitcoinScannerApplication.class, args);
+    }
+}
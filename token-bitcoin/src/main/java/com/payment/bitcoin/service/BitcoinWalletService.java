@@ -0,0 +1,129 @@
+package com.payment.bitcoin.service;
+
+import com.payment.bitcoin.utxo.Utxo;
+import com.payment.core.utils.AssertUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import wf.bitcoin.javabitcoindrpcclient.BitcoinJSONRPCClient;
+import wf.bitcoin.javabitcoindrpcclient.BitcoindRpcClient;
+import wf.bitcoin.javabitcoindrpcclient.GenericRpcException;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 比特币钱包交易服务
+ * <p>
+ * 由调用方选定输入与输出，通过节点钱包签名后广播，手续费按交易的虚拟字节数估算。
+ */
+@Slf4j
+@Service
+public class BitcoinWalletService {
+
+    /**
+     * 交易头的虚拟字节数
+     */
+    public static final int TX_OVERHEAD_VSIZE = 11;
+
+    /**
+     * 一个输出的虚拟字节数
+     */
+    public static final int OUTPUT_VSIZE = 34;
+
+    /**
+     * 输出金额低于该值视为粉尘，节点拒绝广播
+     */
+    public static final long DUST_SATOSHI = 546;
+
+    @Autowired
+    private BitcoindRpcClient bitcoinClient;
+
+    /**
+     * 估算手续费率，节点无法估算时使用传入的费率
+     * @param blocks 目标确认区块数
+     * @param fallbackFeeRate 节点无法估算时使用的费率（BTC/kvB）
+     * @return 手续费率（BTC/kvB）
+     */
+    public BigDecimal estimateFeeRate(int blocks, BigDecimal fallbackFeeRate) {
+        try {
+            BitcoindRpcClient.SmartFeeResult result = bitcoinClient.estimateSmartFee(blocks);
+            if (result != null && result.feeRate() != null && result.feeRate().signum() > 0) {
+                return result.feeRate();
+            }
+        } catch (GenericRpcException e) {
+            log.warn("估算手续费率失败：{}", e.getMessage());
+        }
+        return fallbackFeeRate;
+    }
+
+    /**
+     * 计算指定虚拟字节数的手续费
+     * @param feeRate 手续费率（BTC/kvB）
+     * @param vsize 虚拟字节数
+     * @return 手续费（聪）
+     */
+    public static long fee(BigDecimal feeRate, int vsize) {
+        return feeRate.multiply(Utxo.SATOSHI_PER_BTC).multiply(BigDecimal.valueOf(vsize))
+                .divide(BigDecimal.valueOf(1000), 0, RoundingMode.UP).longValue();
+    }
+
+    /**
+     * 获取一个钱包的找零地址
+     */
+    public String getRawChangeAddress() {
+        return (String) ((BitcoinJSONRPCClient) bitcoinClient).query("getrawchangeaddress");
+    }
+
+    /**
+     * 使用指定的输入与输出创建交易，通过节点钱包签名后广播
+     * @param inputs 交易输入
+     * @param outputs 收款地址与金额（BTC）
+     * @return 交易Hash
+     */
+    public String send(List<Utxo> inputs, Map<String, BigDecimal> outputs) {
+        List<BitcoindRpcClient.TxInput> txInputs = new ArrayList<>(inputs.size());
+        for (Utxo utxo : inputs) {
+            txInputs.add(new BitcoindRpcClient.BasicTxInput(utxo.getTxid(), utxo.getVout()));
+        }
+        List<BitcoindRpcClient.TxOutput> txOutputs = new ArrayList<>(outputs.size());
+        for (Map.Entry<String, BigDecimal> entry : outputs.entrySet()) {
+            txOutputs.add(new BitcoindRpcClient.BasicTxOutput(entry.getKey(), entry.getValue()));
+        }
+        String rawTransaction = bitcoinClient.createRawTransaction(txInputs, txOutputs);
+        return bitcoinClient.sendRawTransaction(signRawTransactionWithWallet(rawTransaction));
+    }
+
+    /**
+     * 查询钱包交易花费的输出，用于节点钱包选币的交易广播后从UTXO库存中移除这些输出
+     * @param txHash 钱包交易Hash
+     * @return 输出的唯一标识txid:vout
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getSpentOutputs(String txHash) {
+        BitcoinJSONRPCClient client = (BitcoinJSONRPCClient) bitcoinClient;
+        Map<String, Object> transaction = (Map<String, Object>) client.query("gettransaction", txHash);
+        Map<String, Object> decoded = (Map<String, Object>) client.query("decoderawtransaction", transaction.get("hex"));
+        List<Map<String, Object>> vin = (List<Map<String, Object>>) decoded.get("vin");
+        List<String> keys = new ArrayList<>(vin.size());
+        for (Map<String, Object> input : vin) {
+            keys.add(input.get("txid") + ":" + ((Number) input.get("vout")).intValue());
+        }
+        return keys;
+    }
+
+    /**
+     * 使用节点钱包中的私钥签名交易，bitcoin-rpc-client的signRawTransaction调用的接口在新版本节点中已经移除
+     * @param rawTransaction 未签名交易
+     * @return 已签名交易
+     */
+    @SuppressWarnings("unchecked")
+    public String signRawTransactionWithWallet(String rawTransaction) {
+        Map<String, Object> result = (Map<String, Object>) ((BitcoinJSONRPCClient) bitcoinClient).query("signrawtransactionwithwallet", rawTransaction);
+        AssertUtils.isTrue(Boolean.TRUE.equals(result.get("complete")), "交易签名不完整：" + result.get("errors"));
+        return (String) result.get("hex");
+    }
+}
@@ -0,0 +1,123 @@
+package com.payment.bitcoin.task;
+
+import com.payment.bitcoin.service.BitcoinWalletService;
+import com.payment.bitcoin.utxo.Utxo;
+import com.payment.bitcoin.utxo.UtxoInventory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 比特币粉尘合并任务
+ * <p>
+ * 大量小额充值输出会让以后的提币交易变大，手续费率低时把这些输出合并为钱包中的一个输出，
+ * 以较低的费率提前支付花费它们的手续费。
+ */
+@Slf4j
+@Component
+public class ConsolidateTask {
+
+    @Value("${bitcoin.currencyName}")
+    private String currencyName;
+
+    /**
+     * 低于该金额（BTC）的输出视为需要合并的粉尘
+     */
+    @Value("${bitcoin.utxo.consolidate.dust-threshold:0.001}")
+    private BigDecimal dustThreshold;
+
+    /**
+     * 手续费率（BTC/kvB）不高于该值时才合并
+     */
+    @Value("${bitcoin.utxo.consolidate.max-fee-rate:0.00002}")
+    private BigDecimal maxFeeRate;
+
+    /**
+     * 粉尘输出数达到该值才合并
+     */
+    @Value("${bitcoin.utxo.consolidate.min-inputs:50}")
+    private int minInputs;
+
+    /**
+     * 单笔合并交易的最大输入数
+     */
+    @Value("${bitcoin.utxo.consolidate.max-inputs:500}")
+    private int maxInputs;
+
+    /**
+     * 估算手续费的目标确认区块数，合并不着急确认，使用较长的目标以获得较低的费率
+     */
+    @Value("${bitcoin.utxo.consolidate.fee-blocks:144}")
+    private int feeBlocks;
+
+    /**
+     * 每个输入的虚拟字节数，默认按P2SH-P2WPKH地址估算，bech32地址为68
+     */
+    @Value("${bitcoin.utxo.input-vsize:91}")
+    private int inputVsize;
+
+    @Autowired
+    private BitcoinWalletService bitcoinWalletService;
+
+    @Autowired
+    private UtxoInventory utxoInventory;
+
+    /**
+     * 手续费率低于阈值且粉尘输出足够多时，将最小的粉尘输出合并转入钱包的找零地址
+     */
+    @Scheduled(fixedDelayString = "${bitcoin.utxo.consolidate.interval:3600000}")
+    public void consolidate() {
+        if (!utxoInventory.isLoaded()) {
+            return;
+        }
+
+        //1. 节点无法估算或费率高于阈值时不合并
+        BigDecimal feeRate = bitcoinWalletService.estimateFeeRate(feeBlocks, null);
+        if (feeRate == null || feeRate.compareTo(maxFeeRate) > 0) {
+            log.debug("{}当前手续费率{}高于合并阈值{}", currencyName, feeRate, maxFeeRate);
+            return;
+        }
+
+        //2. 选出有效金额为正的粉尘输出，从小到大合并
+        long inputFee = BitcoinWalletService.fee(feeRate, inputVsize);
+        long threshold = Utxo.toSatoshi(dustThreshold);
+        List<Utxo> dust = new ArrayList<>();
+        for (Utxo utxo : utxoInventory.getAvailable()) {
+            if (utxo.getSatoshi() < threshold && utxo.getSatoshi() > inputFee) {
+                dust.add(utxo);
+            }
+        }
+        if (dust.size() < minInputs) {
+            return;
+        }
+        dust.sort(Comparator.comparingLong(Utxo::getSatoshi));
+        List<Utxo> inputs = new ArrayList<>(dust.subList(0, Math.min(maxInputs, dust.size())));
+
+        //3. 计算手续费，锁定输入后广播合并交易
+        long total = 0;
+        for (Utxo input : inputs) {
+            total += input.getSatoshi();
+        }
+        long output = total - BitcoinWalletService.fee(feeRate,
+                BitcoinWalletService.TX_OVERHEAD_VSIZE + BitcoinWalletService.OUTPUT_VSIZE + inputs.size() * inputVsize);
+        if (output <= BitcoinWalletService.DUST_SATOSHI || !utxoInventory.reserve(inputs)) {
+            return;
+        }
+        try {
+            String txHash = bitcoinWalletService.send(inputs, Collections.singletonMap(bitcoinWalletService.getRawChangeAddress(), Utxo.toBtc(output)));
+            utxoInventory.spend(inputs);
+            log.info("{}已合并{}个粉尘输出，合计{}，交易Hash：{}", currencyName, inputs.size(), Utxo.toBtc(total), txHash);
+        } catch (RuntimeException e) {
+            utxoInventory.release(inputs);
+            log.error(currencyName + "粉尘合并交易广播失败", e);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.payment.bitcoin.task;
 
+import com.payment.bitcoin.utxo.Utxo;
+import com.payment.bitcoin.utxo.UtxoInventory;
+import com.payment.core.config.ScannerConfiguration;
 import com.payment.core.entity.Currency;
 import com.payment.core.entity.Height;
 import com.payment.core.entity.Recharge;
@@ -10,6 +13,7 @@ import com.payment.core.utils.AssertUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
@@ -20,6 +24,7 @@ import java.util.List;
 
 @Slf4j
 @Component
+@ConditionalOnProperty(name = ScannerConfiguration.SCAN_ENABLED, havingValue = "true", matchIfMissing = true)
 public class ScanTask {
 
     @Value("${bitcoin.currencyName}")
@@ -34,6 +39,9 @@ public class ScanTask {
     @Autowired
     private CurrencyService currencyService;
 
+    @Autowired
+    private UtxoInventory utxoInventory;
+
     /**
      * 扫描链上的交易是否和数据库中的充值单是否匹配，如果匹配则修改对应状态。
      * 在最近的250个区块的出块时间一般平均为10分钟，所以定时任务运行的时间可以稍微拉长一些，降低服务器与节点的压力。
@@ -108,6 +116,7 @@ public class ScanTask {
                     if(block.confirmations() >= bitcoinInfo.getConfirms()) {
                         recharge.setUpchainStatus(UpchainStatusEnum.SUCCESS.getCode());
                         recharge.setUpchainSuccessAt(transaction.time());
+                        utxoInventory.add(new Utxo(txId, out.n(), address, out.value()));
                     }else {
                         recharge.setUpchainStatus(UpchainStatusEnum.WAITING_CONFIRM.getCode());
                     }
@@ -125,6 +134,21 @@ public class ScanTask {
 
     }
 
+    /**
+     * 充值确认后将充值输出加入UTXO库存
+     * @param transaction 充值交易
+     * @param recharge 充值单
+     */
+    private void addToInventory(BitcoindRpcClient.RawTransaction transaction, Recharge recharge) {
+        for (BitcoindRpcClient.RawTransaction.Out out : transaction.vOut()) {
+            if (out.scriptPubKey() != null && !CollectionUtils.isEmpty(out.scriptPubKey().addresses())
+                    && recharge.getToAddress().equals(out.scriptPubKey().addresses().get(0)) && recharge.getAmount().compareTo(out.value()) == 0) {
+                utxoInventory.add(new Utxo(transaction.txId(), out.n(), recharge.getToAddress(), out.value()));
+                return;
+            }
+        }
+    }
+
     /**
      * 确认交易，将数据库中状态为待确认的充值单再次去链上查询是否确认数超过了配置确认数。
      * 在最近的250个区块的出块时间一般平均为10分钟，所以定时任务运行的时间可以稍微拉长一些，降低服务器与节点的压力。
@@ -149,6 +173,7 @@ public class ScanTask {
             if(transaction.confirmations() >= bitcoinInfo.getConfirms()) {
                 recharge.setUpchainStatus(UpchainStatusEnum.SUCCESS.getCode());
                 recharge.setUpchainSuccessAt(new Date());
+                addToInventory(transaction, recharge);
             }
             recharge.setCurrentConfirm(transaction.confirmations());
             recharge.setUpdatedAt(new Date());
@@ -0,0 +1,273 @@
+package com.payment.bitcoin.task;
+
+import com.payment.bitcoin.service.BitcoinWalletService;
+import com.payment.bitcoin.utxo.Utxo;
+import com.payment.bitcoin.utxo.UtxoInventory;
+import com.payment.core.entity.ColdRecord;
+import com.payment.core.entity.Currency;
+import com.payment.core.enums.UpchainStatusEnum;
+import com.payment.core.service.ColdRecordService;
+import com.payment.core.service.CurrencyService;
+import com.payment.core.service.RechargeService;
+import com.payment.core.utils.AssertUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import wf.bitcoin.javabitcoindrpcclient.BitcoindRpcClient;
+import wf.bitcoin.javabitcoindrpcclient.GenericRpcException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 比特币归集任务，将充值地址中超过阈值的UTXO合并为多输入交易转入冷钱包
+ * <p>
+ * 一笔交易可以花费多个地址的UTXO，只支付一次交易头与输出的手续费，归集成本远低于逐个地址转账。
+ * 每笔交易中的每个地址记录一条转冷钱包记录，共用同一个交易Hash。
+ */
+@Slf4j
+@Component
+public class SweepTask {
+
+    /**
+     * 单次listunspent查询的地址数
+     */
+    private static final int LIST_UNSPENT_BATCH = 500;
+
+    @Value("${bitcoin.currencyName}")
+    private String currencyName;
+
+    /**
+     * 单笔归集交易的最大输入数，避免交易超过节点的标准交易大小限制
+     */
+    @Value("${bitcoin.sweep.max-inputs:200}")
+    private int maxInputs;
+
+    /**
+     * 每个输入的虚拟字节数，默认按P2SH-P2WPKH地址估算，bech32地址为68
+     */
+    @Value("${bitcoin.sweep.input-vsize:91}")
+    private int inputVsize;
+
+    /**
+     * 估算手续费的目标确认区块数
+     */
+    @Value("${bitcoin.sweep.fee-blocks:6}")
+    private int feeBlocks;
+
+    /**
+     * 节点无法估算手续费时使用的费率（BTC/kvB）
+     */
+    @Value("${bitcoin.sweep.fallback-fee-rate:0.0001}")
+    private BigDecimal fallbackFeeRate;
+
+    @Autowired
+    private BitcoindRpcClient bitcoinClient;
+
+    @Autowired
+    private CurrencyService currencyService;
+
+    @Autowired
+    private RechargeService rechargeService;
+
+    @Autowired
+    private ColdRecordService coldRecordService;
+
+    @Autowired
+    private BitcoinWalletService bitcoinWalletService;
+
+    @Autowired
+    private UtxoInventory utxoInventory;
+
+    /**
+     * 查询所有充值地址已确认的UTXO，地址余额超过币种配置的转冷阈值时合并到多输入交易中转入冷钱包。
+     */
+    @Scheduled(fixedDelayString = "${bitcoin.sweep.interval:3600000}")
+    public void sweep() {
+        //1. 获取当前货币的冷钱包配置，未配置则不归集
+        Currency bitcoinInfo = currencyService.findCurrency(currencyName);
+        AssertUtils.isNotNull(bitcoinInfo, "数据库未配置货币信息：" + currencyName);
+        if (!StringUtils.hasText(bitcoinInfo.getColdAddress()) || bitcoinInfo.getColdThreshold() == null || bitcoinInfo.getColdThreshold().signum() <= 0) {
+            return;
+        }
+
+        //2. 从UTXO库存中获取充值地址达到确认数的UTXO，库存尚未同步时分批通过listunspent查询
+        List<String> addresses = rechargeService.getRechargedAddresses(currencyName);
+        boolean fromInventory = utxoInventory.isLoaded();
+        Map<String, List<Utxo>> unspentByAddress = fromInventory
+                ? utxoInventory.getAvailableByAddress(addresses) : listUnspent(addresses, bitcoinInfo.getConfirms());
+
+        //3. 筛选余额超过阈值的地址，按最大输入数拆分为多笔交易
+        List<List<Utxo>> batches = new ArrayList<>();
+        List<Utxo> current = new ArrayList<>();
+        for (Map.Entry<String, List<Utxo>> entry : unspentByAddress.entrySet()) {
+            if (entry.getKey().equals(bitcoinInfo.getColdAddress()) || sum(entry.getValue()).compareTo(bitcoinInfo.getColdThreshold()) <= 0) {
+                continue;
+            }
+            for (Utxo unspent : entry.getValue()) {
+                if (current.size() >= maxInputs) {
+                    batches.add(current);
+                    current = new ArrayList<>();
+                }
+                current.add(unspent);
+            }
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        if (batches.isEmpty()) {
+            return;
+        }
+
+        //4. 逐笔构建、签名并广播归集交易，记录每个地址的转冷钱包记录
+        BigDecimal feeRate = bitcoinWalletService.estimateFeeRate(feeBlocks, fallbackFeeRate);
+        List<ColdRecord> records = new ArrayList<>();
+        for (List<Utxo> inputs : batches) {
+            try {
+                records.addAll(sendSweepTransaction(bitcoinInfo, inputs, feeRate, fromInventory));
+            } catch (GenericRpcException e) {
+                log.error(currencyName + "归集交易广播失败", e);
+            }
+        }
+        coldRecordService.saveColdRecords(records);
+        log.info("{}归集交易已广播{}笔，涉及{}个地址", currencyName, batches.size(), records.size());
+    }
+
+    /**
+     * 构建一笔多输入单输出的归集交易，通过节点钱包签名后广播
+     * @param bitcoinInfo 货币信息
+     * @param inputs 交易输入
+     * @param feeRate 手续费率（BTC/kvB）
+     * @param fromInventory 输入是否取自UTXO库存，通过listunspent查询的输入不在库存中，不需要锁定
+     * @return 交易中每个地址的转冷钱包记录
+     */
+    private List<ColdRecord> sendSweepTransaction(Currency bitcoinInfo, List<Utxo> inputs, BigDecimal feeRate, boolean fromInventory) {
+        //1. 按虚拟字节数计算手续费
+        int vsize = BitcoinWalletService.TX_OVERHEAD_VSIZE + BitcoinWalletService.OUTPUT_VSIZE + inputs.size() * inputVsize;
+        long fee = BitcoinWalletService.fee(feeRate, vsize);
+        long total = 0;
+        for (Utxo unspent : inputs) {
+            total += unspent.getSatoshi();
+        }
+        long output = total - fee;
+        if (output <= BitcoinWalletService.DUST_SATOSHI) {
+            log.warn("{}归集金额{}不足以支付手续费{}", currencyName, Utxo.toBtc(total), Utxo.toBtc(fee));
+            return Collections.emptyList();
+        }
+
+        //2. 输入取自库存时先锁定，创建、签名并广播交易，广播成功后从UTXO库存中移除（库存在此期间完成同步时也不会再选中这些输入）
+        Map<String, BigDecimal> amountByAddress = new LinkedHashMap<>();
+        for (Utxo unspent : inputs) {
+            amountByAddress.merge(unspent.getAddress(), unspent.getAmount(), BigDecimal::add);
+        }
+        if (fromInventory && !utxoInventory.reserve(inputs)) {
+            log.warn("{}归集的UTXO已被其他交易锁定或花费，跳过本次归集", currencyName);
+            return Collections.emptyList();
+        }
+        String txHash;
+        try {
+            txHash = bitcoinWalletService.send(inputs, Collections.singletonMap(bitcoinInfo.getColdAddress(), Utxo.toBtc(output)));
+        } catch (RuntimeException e) {
+            if (fromInventory) {
+                utxoInventory.release(inputs);
+            }
+            throw e;
+        }
+        utxoInventory.spend(inputs);
+
+        //3. 每个输入地址一条转冷钱包记录
+        List<ColdRecord> records = new ArrayList<>(amountByAddress.size());
+        Date now = new Date();
+        for (Map.Entry<String, BigDecimal> entry : amountByAddress.entrySet()) {
+            ColdRecord record = new ColdRecord();
+            record.setCurrencyId(bitcoinInfo.getId().intValue());
+            record.setCurrencyName(currencyName);
+            record.setAmount(entry.getValue());
+            record.setTxHash(txHash);
+            record.setFromAddress(entry.getKey());
+            record.setToAddress(bitcoinInfo.getColdAddress());
+            record.setUpchainAt(now);
+            record.setUpchainStatus(UpchainStatusEnum.WAITING_CONFIRM.getCode());
+            record.setCreatedAt(now);
+            record.setUpdatedAt(now);
+            records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * 分批通过listunspent查询充值地址达到确认数的UTXO，按地址分组
+     * @param addresses 充值地址
+     * @param confirms 确认数
+     * @return 地址对应的UTXO
+     */
+    private Map<String, List<Utxo>> listUnspent(List<String> addresses, int confirms) {
+        Map<String, List<Utxo>> unspentByAddress = new LinkedHashMap<>();
+        for (int from = 0; from < addresses.size(); from += LIST_UNSPENT_BATCH) {
+            List<String> batch = addresses.subList(from, Math.min(addresses.size(), from + LIST_UNSPENT_BATCH));
+            for (BitcoindRpcClient.Unspent unspent : bitcoinClient.listUnspent(confirms, 9999999, batch.toArray(new String[0]))) {
+                unspentByAddress.computeIfAbsent(unspent.address(), key -> new ArrayList<>())
+                        .add(new Utxo(unspent.txid(), unspent.vout(), unspent.address(), unspent.amount()));
+            }
+        }
+        return unspentByAddress;
+    }
+
+    private static BigDecimal sum(List<Utxo> unspents) {
+        long sum = 0;
+        for (Utxo unspent : unspents) {
+            sum += unspent.getSatoshi();
+        }
+        return Utxo.toBtc(sum);
+    }
+
+    /**
+     * 确认归集交易，交易确认数达到币种配置的确认数时更新同一交易的所有记录为成功
+     */
+    @Scheduled(fixedDelay = 60 * 1000)
+    public void confirmSweep() {
+        //1. 查询所有待确认的转冷钱包记录，按交易Hash分组
+        List<ColdRecord> waitConfirmRecords = coldRecordService.getWaitConfirmColdRecord(currencyName);
+        if (waitConfirmRecords.isEmpty()) {
+            return;
+        }
+        Currency bitcoinInfo = currencyService.findCurrency(currencyName);
+        AssertUtils.isNotNull(bitcoinInfo, "数据库未配置货币信息：" + currencyName);
+        Map<String, List<ColdRecord>> recordsByTx = new LinkedHashMap<>();
+        for (ColdRecord record : waitConfirmRecords) {
+            recordsByTx.computeIfAbsent(record.getTxHash(), key -> new ArrayList<>()).add(record);
+        }
+
+        //2. 每笔交易只查询一次确认数
+        List<ColdRecord> updated = new ArrayList<>();
+        for (Map.Entry<String, List<ColdRecord>> entry : recordsByTx.entrySet()) {
+            Integer confirmations;
+            try {
+                confirmations = bitcoinClient.getRawTransaction(entry.getKey()).confirmations();
+            } catch (GenericRpcException e) {
+                log.warn("查询{}归集交易{}失败：{}", currencyName, entry.getKey(), e.getMessage());
+                continue;
+            }
+            if (confirmations == null || confirmations < bitcoinInfo.getConfirms()) {
+                continue;
+            }
+            for (ColdRecord record : entry.getValue()) {
+                record.setUpchainStatus(UpchainStatusEnum.SUCCESS.getCode());
+                record.setUpchainSuccessAt(new Date());
+                record.setUpdatedAt(new Date());
+                updated.add(record);
+            }
+        }
+        if (!updated.isEmpty()) {
+            coldRecordService.saveColdRecords(updated);
+        }
+    }
+}
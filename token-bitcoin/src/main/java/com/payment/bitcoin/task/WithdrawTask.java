@@ -0,0 +1,343 @@
+package com.payment.bitcoin.task;
+
+import com.payment.bitcoin.service.BitcoinWalletService;
+import com.payment.bitcoin.utxo.CoinSelector;
+import com.payment.bitcoin.utxo.Utxo;
+import com.payment.bitcoin.utxo.UtxoInventory;
+import com.payment.core.entity.Currency;
+import com.payment.core.entity.Withdraw;
+import com.payment.core.enums.UpchainStatusEnum;
+import com.payment.core.service.CurrencyService;
+import com.payment.core.service.WithdrawService;
+import com.payment.core.utils.AssertUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import wf.bitcoin.javabitcoindrpcclient.BitcoinJSONRPCClient;
+import wf.bitcoin.javabitcoindrpcclient.BitcoinRPCException;
+import wf.bitcoin.javabitcoindrpcclient.BitcoindRpcClient;
+import wf.bitcoin.javabitcoindrpcclient.GenericRpcException;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 比特币提币任务，将一个批次窗口内排队的提币单合并为一笔交易发出
+ * <p>
+ * 一笔交易只支付一次交易头与找零输出的手续费，每增加一笔提币只增加一个输出，
+ * 提币吞吐量随批次大小增长，单笔提币的手续费随之下降。同一批次的提币记录共用同一个交易Hash。
+ * <p>
+ * 输入优先从UTXO库存中选择（分支定界优先寻找不需要找零的组合），库存未同步或余额不足时由节点钱包通过sendmany选币。
+ */
+@Slf4j
+@Component
+public class WithdrawTask {
+
+    /**
+     * 比特币金额精度
+     */
+    private static final int BTC_SCALE = 8;
+
+    /**
+     * 节点因某个输出无效拒绝交易的错误码：金额无效或粉尘（-3）、地址无效（-5）、参数无效（-8），
+     * 其余错误与具体提币单无关，例如余额不足（-6）、钱包错误（-4，如手续费估算失败）、
+     * 交易池拒绝（-26，如手续费低于最低转发费率、交易池已满、未确认交易链过长、与交易池中的交易冲突），整个批次退回队列
+     */
+    private static final Set<Integer> REJECTED_OUTPUT_CODES = new HashSet<>(Arrays.asList(-3, -5, -8));
+
+    @Value("${bitcoin.currencyName}")
+    private String currencyName;
+
+    /**
+     * 单笔提币交易的最大输出数，超过时拆分为多笔交易
+     */
+    @Value("${bitcoin.withdraw.max-outputs:500}")
+    private int maxOutputs;
+
+    /**
+     * 估算手续费的目标确认区块数
+     */
+    @Value("${bitcoin.withdraw.fee-blocks:6}")
+    private int feeBlocks;
+
+    /**
+     * 节点无法估算手续费时使用的费率（BTC/kvB）
+     */
+    @Value("${bitcoin.withdraw.fallback-fee-rate:0.0001}")
+    private BigDecimal fallbackFeeRate;
+
+    /**
+     * 每个输入的虚拟字节数，默认按P2SH-P2WPKH地址估算，bech32地址为68
+     */
+    @Value("${bitcoin.utxo.input-vsize:91}")
+    private int inputVsize;
+
+    /**
+     * 需要找零时找零的最小金额（BTC），避免产生粉尘找零
+     */
+    @Value("${bitcoin.utxo.min-change:0.0001}")
+    private BigDecimal minChange;
+
+    @Autowired
+    private BitcoindRpcClient bitcoinClient;
+
+    @Autowired
+    private CurrencyService currencyService;
+
+    @Autowired
+    private WithdrawService withdrawService;
+
+    @Autowired
+    private BitcoinWalletService bitcoinWalletService;
+
+    @Autowired
+    private UtxoInventory utxoInventory;
+
+    /**
+     * 每个批次窗口执行一次，将窗口内排队的提币单按最大输出数拆分后通过sendmany发出
+     */
+    @Scheduled(fixedDelayString = "${bitcoin.withdraw.interval:300000}")
+    public void withdraw() {
+        //1. 查询排队中的提币单
+        List<Withdraw> queued = withdrawService.getQueuedWithdraws(currencyName);
+        if (queued.isEmpty()) {
+            return;
+        }
+
+        //2. 按最大输出数拆分批次，逐批发出，某一批失败时剩余的提币单留到下一个窗口
+        int sent = 0;
+        for (int from = 0; from < queued.size(); from += maxOutputs) {
+            List<Withdraw> batch = queued.subList(from, Math.min(queued.size(), from + maxOutputs));
+            if (!sendBatch(batch)) {
+                break;
+            }
+            sent += batch.size();
+        }
+        log.info("{}提币已发出{}笔，剩余{}笔排队", currencyName, sent, queued.size() - sent);
+    }
+
+    /**
+     * 发出一个批次的提币，UTXO库存选币失败时通过sendmany由节点钱包完成选币、找零与签名
+     * @param queued 排队中的提币记录
+     * @return 是否发出成功
+     */
+    private boolean sendBatch(List<Withdraw> queued) {
+        //1. 发出前先以未上链为条件领取提币单并标记为等待确认，只发出本进程领取成功的提币单；
+        //   多个进程同时执行提币任务时不会重复支付，进程在广播后、回写交易Hash前退出时，提币单也不会被再次发出
+        List<Withdraw> batch = withdrawService.claimWithdraws(queued, new Date());
+        if (batch.size() < queued.size()) {
+            log.warn("{}提币单{}笔已被其他进程领取", currencyName, queued.size() - batch.size());
+        }
+        if (batch.isEmpty()) {
+            return true;
+        }
+
+        //2. 同一地址的多笔提币合并为一个输出，sendmany的收款地址不能重复
+        Map<String, BigDecimal> amounts = new LinkedHashMap<>();
+        for (Withdraw withdraw : batch) {
+            BigDecimal value = withdraw.getAmount().subtract(withdraw.getFee()).setScale(BTC_SCALE, RoundingMode.DOWN);
+            amounts.merge(withdraw.getToAddress(), value, BigDecimal::add);
+        }
+
+        //3. 发出交易，只有节点明确返回错误时才退回队列，网络异常时交易可能已经广播，需要人工核对；
+        //   节点因某个输出拒绝交易时二分批次找出该提币单，避免一笔无效提币阻塞所有提币
+        String txHash;
+        try {
+            txHash = sendWithSelectedCoins(amounts);
+            if (txHash == null) {
+                txHash = (String) ((BitcoinJSONRPCClient) bitcoinClient).query("sendmany", "", amounts, 1, "",
+                        Collections.emptyList(), true, feeBlocks);
+                spendWalletSelectedCoins(txHash);
+            }
+        } catch (GenericRpcException e) {
+            if (!(e instanceof BitcoinRPCException) || ((BitcoinRPCException) e).getRPCError() == null) {
+                log.error(currencyName + "提币交易发送结果未知，请人工核对以下提币单：" + orderIds(batch), e);
+                return false;
+            }
+            for (Withdraw withdraw : batch) {
+                withdraw.setUpchainStatus(UpchainStatusEnum.NOT_UPCHAIN.getCode());
+                withdraw.setUpchainAt(null);
+                withdraw.setUpdatedAt(new Date());
+            }
+            withdrawService.saveWithdraws(batch);
+            int code = ((BitcoinRPCException) e).getRPCError().getCode();
+            if (!REJECTED_OUTPUT_CODES.contains(code)) {
+                log.error(currencyName + "提币交易发送失败，" + batch.size() + "笔提币退回队列", e);
+                return false;
+            }
+            return isolate(batch, (BitcoinRPCException) e);
+        }
+
+        //4. 回写交易Hash，等待确认任务更新状态
+        for (Withdraw withdraw : batch) {
+            withdraw.setTxHash(txHash);
+            withdraw.setUpdatedAt(new Date());
+        }
+        withdrawService.saveWithdraws(batch);
+        return true;
+    }
+
+    /**
+     * 节点因某个输出被拒绝时，将批次二分后分别重新发出，找出被拒绝的提币单标记为发送失败，其余提币单正常发出
+     * @param batch 被节点拒绝的提币记录，已退回队列
+     * @param e 节点返回的错误
+     * @return 是否继续发出后续批次
+     */
+    private boolean isolate(List<Withdraw> batch, BitcoinRPCException e) {
+        if (batch.size() > 1) {
+            int half = batch.size() / 2;
+            return sendBatch(batch.subList(0, half)) && sendBatch(batch.subList(half, batch.size()));
+        }
+        Withdraw withdraw = batch.get(0);
+        log.error(currencyName + "提币单" + withdraw.getOrderId() + "被节点拒绝，标记为发送失败，请人工处理", e);
+        withdraw.setUpchainStatus(UpchainStatusEnum.FAILED.getCode());
+        withdraw.setUpdatedAt(new Date());
+        withdrawService.saveWithdraws(batch);
+        return true;
+    }
+
+    /**
+     * 节点钱包选币的交易广播后，从UTXO库存中移除交易花费的输出，查询失败时全量同步库存，不影响提币记录回写交易Hash
+     * @param txHash 交易Hash
+     */
+    private void spendWalletSelectedCoins(String txHash) {
+        try {
+            utxoInventory.spendKeys(bitcoinWalletService.getSpentOutputs(txHash));
+        } catch (RuntimeException e) {
+            log.warn("查询{}提币交易{}的输入失败，重新同步UTXO库存：{}", currencyName, txHash, e.getMessage());
+            utxoInventory.resync();
+        }
+    }
+
+    /**
+     * 从UTXO库存中选择输入发出提币交易，找零转入钱包新的找零地址
+     * @param amounts 收款地址与金额
+     * @return 交易Hash，库存未同步或选币失败时为null
+     */
+    private String sendWithSelectedCoins(Map<String, BigDecimal> amounts) {
+        if (!utxoInventory.isLoaded()) {
+            return null;
+        }
+
+        //1. 目标金额包含交易头与所有收款输出的手续费，每个输入的手续费在选币时从有效金额中扣除
+        BigDecimal feeRate = bitcoinWalletService.estimateFeeRate(feeBlocks, fallbackFeeRate);
+        long payment = 0;
+        for (BigDecimal amount : amounts.values()) {
+            payment += Utxo.toSatoshi(amount);
+        }
+        long target = payment + BitcoinWalletService.fee(feeRate, BitcoinWalletService.TX_OVERHEAD_VSIZE + amounts.size() * BitcoinWalletService.OUTPUT_VSIZE);
+        long inputFee = BitcoinWalletService.fee(feeRate, inputVsize);
+        long changeOutputFee = BitcoinWalletService.fee(feeRate, BitcoinWalletService.OUTPUT_VSIZE);
+        long changeCost = changeOutputFee + inputFee;
+
+        //2. 选币并锁定输入
+        List<Utxo> inputs = CoinSelector.select(utxoInventory.getAvailable(), target, inputFee, changeCost, Utxo.toSatoshi(minChange));
+        if (inputs == null || !utxoInventory.reserve(inputs)) {
+            log.info("{}UTXO库存选币失败，改为由节点钱包选币", currencyName);
+            return null;
+        }
+
+        //3. 超出目标金额的部分扣除找零输出的手续费后找零，找零金额为粉尘时直接作为手续费
+        long effective = 0;
+        for (Utxo input : inputs) {
+            effective += input.getSatoshi() - inputFee;
+        }
+        long change = effective - target - changeOutputFee;
+        Map<String, BigDecimal> outputs = new LinkedHashMap<>(amounts);
+        try {
+            if (change > BitcoinWalletService.DUST_SATOSHI) {
+                outputs.put(bitcoinWalletService.getRawChangeAddress(), Utxo.toBtc(change));
+            }
+            String txHash = bitcoinWalletService.send(inputs, outputs);
+            utxoInventory.spend(inputs);
+            return txHash;
+        } catch (RuntimeException e) {
+            utxoInventory.release(inputs);
+            throw e;
+        }
+    }
+
+    /**
+     * 确认提币交易，交易确认数达到币种配置的确认数时更新同一交易的所有提币记录为成功
+     */
+    @Scheduled(fixedDelay = 60 * 1000)
+    public void confirmWithdraw() {
+        //1. 查询所有等待确认的提币记录，按交易Hash分组，没有交易Hash的记录等待人工核对
+        List<Withdraw> waitConfirmWithdraws = withdrawService.getWaitConfirmWithdraws(currencyName);
+        if (waitConfirmWithdraws.isEmpty()) {
+            return;
+        }
+        Currency bitcoinInfo = currencyService.findCurrency(currencyName);
+        AssertUtils.isNotNull(bitcoinInfo, "数据库未配置货币信息：" + currencyName);
+        Map<String, List<Withdraw>> withdrawsByTx = new LinkedHashMap<>();
+        for (Withdraw withdraw : waitConfirmWithdraws) {
+            if (StringUtils.hasText(withdraw.getTxHash())) {
+                withdrawsByTx.computeIfAbsent(withdraw.getTxHash(), key -> new ArrayList<>()).add(withdraw);
+            }
+        }
+
+        //2. 每笔交易只查询一次钱包交易的确认数
+        List<Withdraw> updated = new ArrayList<>();
+        for (Map.Entry<String, List<Withdraw>> entry : withdrawsByTx.entrySet()) {
+            int confirmations;
+            try {
+                confirmations = getWalletTransactionConfirmations(entry.getKey());
+            } catch (GenericRpcException e) {
+                log.warn("查询{}提币交易{}失败：{}", currencyName, entry.getKey(), e.getMessage());
+                continue;
+            }
+            if (confirmations < 0) {
+                log.error("{}提币交易{}与其他交易冲突，请人工核对以下提币单：{}", currencyName, entry.getKey(), orderIds(entry.getValue()));
+                continue;
+            }
+            boolean success = confirmations >= bitcoinInfo.getConfirms();
+            for (Withdraw withdraw : entry.getValue()) {
+                if (withdraw.getCurrentConfirm() != null && withdraw.getCurrentConfirm() == confirmations && !success) {
+                    continue;
+                }
+                withdraw.setCurrentConfirm(confirmations);
+                if (success) {
+                    withdraw.setUpchainStatus(UpchainStatusEnum.SUCCESS.getCode());
+                    withdraw.setUpchainSuccessAt(new Date());
+                }
+                withdraw.setUpdatedAt(new Date());
+                updated.add(withdraw);
+            }
+        }
+        if (!updated.isEmpty()) {
+            withdrawService.saveWithdraws(updated);
+        }
+    }
+
+    /**
+     * 查询钱包交易的确认数，bitcoin-rpc-client的getTransaction会额外调用getrawtransaction，
+     * 节点未开启txindex时已打包的钱包交易查询会失败
+     * @param txHash 交易Hash
+     * @return 确认数，交易被替换或冲突时为负数
+     */
+    @SuppressWarnings("unchecked")
+    private int getWalletTransactionConfirmations(String txHash) {
+        Map<String, Object> result = (Map<String, Object>) ((BitcoinJSONRPCClient) bitcoinClient).query("gettransaction", txHash);
+        return ((Number) result.get("confirmations")).intValue();
+    }
+
+    private static List<String> orderIds(List<Withdraw> withdraws) {
+        List<String> orderIds = new ArrayList<>(withdraws.size());
+        for (Withdraw withdraw : withdraws) {
+            orderIds.add(withdraw.getOrderId());
+        }
+        return orderIds;
+    }
+}
@@ -0,0 +1,214 @@
+package com.payment.bitcoin.utxo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 选币算法
+ * <p>
+ * 先用分支定界（Branch and Bound）寻找不需要找零的输入组合：输入的有效金额（金额减去花费该输入的手续费）之和
+ * 落在[目标金额, 目标金额 + 找零成本]之间，多出的部分直接作为手续费，比创建找零输出更省。
+ * 找不到时使用背包算法近似求解需要找零的最小输入组合，与bitcoind钱包的选币策略一致。
+ * <p>
+ * 所有金额均以聪为单位，目标金额已包含交易头与输出的手续费。
+ */
+public class CoinSelector {
+
+    /**
+     * 分支定界的最大搜索次数
+     */
+    private static final int BNB_MAX_TRIES = 100_000;
+
+    /**
+     * 背包算法的随机迭代次数
+     */
+    private static final int KNAPSACK_ITERATIONS = 1000;
+
+    private CoinSelector() {
+    }
+
+    /**
+     * 选择输入
+     * @param available 可用的输出
+     * @param target 目标金额（支付金额 + 交易头与支付输出的手续费）
+     * @param inputFee 花费一个输入的手续费
+     * @param changeCost 找零成本（找零输出的手续费 + 以后花费找零的手续费）
+     * @param minChange 需要找零时找零的最小金额，低于该金额的找零会成为粉尘
+     * @return 选中的输入，可用金额不足时为null
+     */
+    public static List<Utxo> select(List<Utxo> available, long target, long inputFee, long changeCost, long minChange) {
+        //1. 只保留有效金额为正的输出，按有效金额从大到小排序
+        List<Utxo> pool = new ArrayList<>(available.size());
+        for (Utxo utxo : available) {
+            if (utxo.getSatoshi() > inputFee) {
+                pool.add(utxo);
+            }
+        }
+        pool.sort(Comparator.comparingLong(Utxo::getSatoshi).reversed());
+        long[] values = new long[pool.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = pool.get(i).getSatoshi() - inputFee;
+        }
+
+        //2. 优先寻找不需要找零的组合
+        List<Utxo> selected = branchAndBound(pool, values, target, changeCost);
+        if (selected != null) {
+            return selected;
+        }
+
+        //3. 需要找零时找零金额至少为minChange，凑不够时退而求其次不找零
+        selected = knapsack(pool, values, target + changeCost + minChange);
+        return selected != null ? selected : knapsack(pool, values, target);
+    }
+
+    /**
+     * 深度优先搜索包含/不包含每个输出的组合，剪掉金额不足与超出上限的分支，返回浪费最少的组合
+     * @param pool 按有效金额从大到小排序的输出
+     * @param values 有效金额
+     * @param target 目标金额
+     * @param changeCost 允许超出目标金额的上限
+     * @return 选中的输入，找不到时为null
+     */
+    static List<Utxo> branchAndBound(List<Utxo> pool, long[] values, long target, long changeCost) {
+        int n = values.length;
+        long[] remaining = new long[n + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            remaining[i] = remaining[i + 1] + values[i];
+        }
+        if (remaining[0] < target) {
+            return null;
+        }
+
+        int[] stack = new int[n];
+        int depth = 0;
+        int index = 0;
+        long value = 0;
+        int[] best = null;
+        int bestDepth = 0;
+        long bestWaste = Long.MAX_VALUE;
+        for (int tries = 0; tries < BNB_MAX_TRIES; tries++) {
+            boolean backtrack;
+            if (value + remaining[index] < target || value > target + changeCost) {
+                backtrack = true;
+            } else if (value >= target) {
+                if (value - target < bestWaste) {
+                    bestWaste = value - target;
+                    best = stack.clone();
+                    bestDepth = depth;
+                    if (bestWaste == 0) {
+                        break;
+                    }
+                }
+                backtrack = true;
+            } else {
+                //包含当前输出，继续向下搜索
+                stack[depth++] = index;
+                value += values[index];
+                index++;
+                backtrack = false;
+            }
+
+            if (backtrack) {
+                if (depth == 0) {
+                    break;
+                }
+                //撤销最后一个包含的输出，转而搜索不包含它的分支，金额相同的输出不重复搜索
+                int last = stack[--depth];
+                value -= values[last];
+                index = last + 1;
+                while (index < n && values[index] == values[last]) {
+                    index++;
+                }
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        List<Utxo> selected = new ArrayList<>(bestDepth);
+        for (int i = 0; i < bestDepth; i++) {
+            selected.add(pool.get(best[i]));
+        }
+        return selected;
+    }
+
+    /**
+     * 随机近似求解金额不低于目标且尽量接近目标的输入组合，与单个比目标大的最小输出比较取较小者
+     * @param pool 按有效金额从大到小排序的输出
+     * @param values 有效金额
+     * @param target 目标金额
+     * @return 选中的输入，可用金额不足时为null
+     */
+    static List<Utxo> knapsack(List<Utxo> pool, long[] values, long target) {
+        //1. 比目标小的输出参与组合，比目标大的输出只记录最小的一个
+        int lowestLarger = -1;
+        List<Integer> lower = new ArrayList<>();
+        long lowerTotal = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == target) {
+                return Collections.singletonList(pool.get(i));
+            }
+            if (values[i] > target) {
+                lowestLarger = i;
+            } else {
+                lower.add(i);
+                lowerTotal += values[i];
+            }
+        }
+        if (lowerTotal == target) {
+            return pick(pool, lower, null);
+        }
+        if (lowerTotal < target) {
+            return lowestLarger < 0 ? null : Collections.singletonList(pool.get(lowestLarger));
+        }
+
+        //2. 多轮随机选择，第一遍随机包含，第二遍补足未包含的输出，记录最接近目标的组合
+        Random random = new Random();
+        int size = lower.size();
+        boolean[] best = new boolean[size];
+        Arrays.fill(best, true);
+        long bestValue = lowerTotal;
+        boolean[] included = new boolean[size];
+        for (int rep = 0; rep < KNAPSACK_ITERATIONS && bestValue != target; rep++) {
+            Arrays.fill(included, false);
+            long total = 0;
+            boolean reached = false;
+            for (int pass = 0; pass < 2 && !reached; pass++) {
+                for (int i = 0; i < size; i++) {
+                    if (pass == 0 ? random.nextBoolean() : !included[i]) {
+                        total += values[lower.get(i)];
+                        included[i] = true;
+                        if (total >= target) {
+                            reached = true;
+                            if (total < bestValue) {
+                                bestValue = total;
+                                System.arraycopy(included, 0, best, 0, size);
+                            }
+                            total -= values[lower.get(i)];
+                            included[i] = false;
+                        }
+                    }
+                }
+            }
+        }
+
+        //3. 单个较大的输出更接近目标时直接使用它
+        if (lowestLarger >= 0 && values[lowestLarger] <= bestValue) {
+            return Collections.singletonList(pool.get(lowestLarger));
+        }
+        return pick(pool, lower, best);
+    }
+
+    private static List<Utxo> pick(List<Utxo> pool, List<Integer> indexes, boolean[] mask) {
+        List<Utxo> selected = new ArrayList<>();
+        for (int i = 0; i < indexes.size(); i++) {
+            if (mask == null || mask[i]) {
+                selected.add(pool.get(indexes.get(i)));
+            }
+        }
+        return selected;
+    }
+}
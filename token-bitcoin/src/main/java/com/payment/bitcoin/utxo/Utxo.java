@@ -0,0 +1,53 @@
+package com.payment.bitcoin.utxo;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 钱包中一个未花费的交易输出，金额以聪为单位保存，选币时不需要BigDecimal运算
+ */
+@Getter
+@ToString
+@EqualsAndHashCode(of = {"txid", "vout"})
+public class Utxo {
+
+    public static final BigDecimal SATOSHI_PER_BTC = BigDecimal.valueOf(100_000_000L);
+
+    private final String txid;
+
+    private final int vout;
+
+    private final String address;
+
+    private final long satoshi;
+
+    public Utxo(String txid, int vout, String address, BigDecimal amount) {
+        this.txid = txid;
+        this.vout = vout;
+        this.address = address;
+        this.satoshi = toSatoshi(amount);
+    }
+
+    /**
+     * 输出的唯一标识txid:vout
+     */
+    public String getKey() {
+        return txid + ":" + vout;
+    }
+
+    public BigDecimal getAmount() {
+        return toBtc(satoshi);
+    }
+
+    public static long toSatoshi(BigDecimal btc) {
+        return btc.multiply(SATOSHI_PER_BTC).setScale(0, RoundingMode.DOWN).longValue();
+    }
+
+    public static BigDecimal toBtc(long satoshi) {
+        return BigDecimal.valueOf(satoshi, 8);
+    }
+}
@@ -0,0 +1,185 @@
+package com.payment.bitcoin.utxo;
+
+import com.payment.core.entity.Currency;
+import com.payment.core.service.CurrencyService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import wf.bitcoin.javabitcoindrpcclient.BitcoindRpcClient;
+import wf.bitcoin.javabitcoindrpcclient.GenericRpcException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 热钱包的UTXO库存
+ * <p>
+ * 在进程内维护钱包中已达到确认数的未花费输出：扫块任务在充值确认时加入充值输出，归集、提币与合并交易
+ * 广播后移除花费的输出（由节点钱包选币的sendmany交易广播后查询交易的输入移除），并定期通过一次listunspent全量校正（例如找零输出与钱包外部的花费）。
+ * 选币与归集不需要每次都对几千个小额充值输出调用listunspent。
+ * <p>
+ * 被选中但尚未广播的输出处于锁定状态，其他任务不会重复选中。
+ */
+@Slf4j
+@Component
+public class UtxoInventory {
+
+    @Value("${bitcoin.currencyName}")
+    private String currencyName;
+
+    @Autowired
+    private BitcoindRpcClient bitcoinClient;
+
+    @Autowired
+    private CurrencyService currencyService;
+
+    private final Map<String, Utxo> utxos = new LinkedHashMap<>();
+
+    private final Set<String> reserved = new HashSet<>();
+
+    /**
+     * 上次同步开始后花费的输出，同步期间listunspent返回的结果中可能还包含这些输出
+     */
+    private final Set<String> spentSinceResync = new HashSet<>();
+
+    private volatile boolean loaded;
+
+    /**
+     * 通过listunspent全量校正库存，锁定中的输出保持锁定
+     */
+    @Scheduled(fixedDelayString = "${bitcoin.utxo.resync-interval:3600000}")
+    public void resync() {
+        Currency bitcoinInfo = currencyService.findCurrency(currencyName);
+        if (bitcoinInfo == null) {
+            return;
+        }
+        synchronized (this) {
+            spentSinceResync.clear();
+        }
+        List<BitcoindRpcClient.Unspent> unspents;
+        try {
+            unspents = bitcoinClient.listUnspent(bitcoinInfo.getConfirms(), 9999999);
+        } catch (GenericRpcException e) {
+            log.warn("{}同步UTXO库存失败：{}", currencyName, e.getMessage());
+            return;
+        }
+        Map<String, Utxo> latest = new LinkedHashMap<>(unspents.size() * 2);
+        for (BitcoindRpcClient.Unspent unspent : unspents) {
+            Utxo utxo = new Utxo(unspent.txid(), unspent.vout(), unspent.address(), unspent.amount());
+            latest.put(utxo.getKey(), utxo);
+        }
+        synchronized (this) {
+            latest.keySet().removeAll(spentSinceResync);
+            utxos.clear();
+            utxos.putAll(latest);
+            reserved.retainAll(latest.keySet());
+            loaded = true;
+        }
+        log.info("{}UTXO库存已同步，共{}个输出", currencyName, latest.size());
+    }
+
+    /**
+     * 库存是否已完成第一次同步，未同步时调用方应回退到节点钱包
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * 加入一个已确认的输出，扫块任务在充值确认时调用
+     * @param utxo 输出
+     */
+    public synchronized void add(Utxo utxo) {
+        utxos.putIfAbsent(utxo.getKey(), utxo);
+    }
+
+    /**
+     * 获取所有未锁定的输出
+     */
+    public synchronized List<Utxo> getAvailable() {
+        List<Utxo> available = new ArrayList<>(utxos.size());
+        for (Utxo utxo : utxos.values()) {
+            if (!reserved.contains(utxo.getKey())) {
+                available.add(utxo);
+            }
+        }
+        return available;
+    }
+
+    /**
+     * 获取指定地址上所有未锁定的输出，按地址分组
+     * @param addresses 地址
+     * @return 地址对应的输出，没有输出的地址不包含在结果中
+     */
+    public synchronized Map<String, List<Utxo>> getAvailableByAddress(Collection<String> addresses) {
+        Set<String> addressSet = addresses instanceof Set ? (Set<String>) addresses : new HashSet<>(addresses);
+        Map<String, List<Utxo>> result = new HashMap<>();
+        for (Utxo utxo : utxos.values()) {
+            if (addressSet.contains(utxo.getAddress()) && !reserved.contains(utxo.getKey())) {
+                result.computeIfAbsent(utxo.getAddress(), key -> new ArrayList<>()).add(utxo);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 锁定选中的输出
+     * @param selected 选中的输出
+     * @return 是否锁定成功，任意一个输出已被花费或锁定时全部不锁定
+     */
+    public synchronized boolean reserve(Collection<Utxo> selected) {
+        for (Utxo utxo : selected) {
+            if (!utxos.containsKey(utxo.getKey()) || reserved.contains(utxo.getKey())) {
+                return false;
+            }
+        }
+        for (Utxo utxo : selected) {
+            reserved.add(utxo.getKey());
+        }
+        return true;
+    }
+
+    /**
+     * 交易没有广播成功，解除锁定
+     * @param selected 选中的输出
+     */
+    public synchronized void release(Collection<Utxo> selected) {
+        for (Utxo utxo : selected) {
+            reserved.remove(utxo.getKey());
+        }
+    }
+
+    /**
+     * 交易已广播，从库存中移除花费的输出
+     * @param spent 花费的输出
+     */
+    public synchronized void spend(Collection<Utxo> spent) {
+        for (Utxo utxo : spent) {
+            spendKey(utxo.getKey());
+        }
+    }
+
+    /**
+     * 节点钱包选币的交易已广播，按输出标识从库存中移除花费的输出
+     * @param keys 输出的唯一标识txid:vout
+     */
+    public synchronized void spendKeys(Collection<String> keys) {
+        for (String key : keys) {
+            spendKey(key);
+        }
+    }
+
+    private void spendKey(String key) {
+        utxos.remove(key);
+        reserved.remove(key);
+        spentSinceResync.add(key);
+    }
+}
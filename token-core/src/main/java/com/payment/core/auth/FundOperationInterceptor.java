@@ -0,0 +1,41 @@
+package com.payment.core.auth;
+
+import com.payment.core.exception.UnauthorizedException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * 校验转出资金接口的接口密钥，未配置密钥时拒绝全部转出资金的请求
+ */
+@Component
+public class FundOperationInterceptor extends HandlerInterceptorAdapter {
+
+    /**
+     * 携带接口密钥的请求头
+     */
+    public static final String API_KEY_HEADER = "X-Api-Key";
+
+    @Value("${payment.api-key:}")
+    private String apiKey;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!(handler instanceof HandlerMethod) || !((HandlerMethod) handler).hasMethodAnnotation(FundOperation.class)) {
+            return true;
+        }
+        String requestKey = request.getHeader(API_KEY_HEADER);
+        //按固定时间比较，避免通过响应时间逐位猜出密钥
+        if (apiKey.isEmpty() || requestKey == null
+                || !MessageDigest.isEqual(apiKey.getBytes(StandardCharsets.UTF_8), requestKey.getBytes(StandardCharsets.UTF_8))) {
+            throw new UnauthorizedException("接口密钥错误");
+        }
+        return true;
+    }
+}
@@ -0,0 +1,21 @@
+package com.payment.core.auth;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * 注册转出资金接口的密钥校验
+ */
+@Configuration
+public class FundOperationWebConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private FundOperationInterceptor fundOperationInterceptor;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(fundOperationInterceptor);
+    }
+}
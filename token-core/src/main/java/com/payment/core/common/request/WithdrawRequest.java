@@ -0,0 +1,24 @@
+package com.payment.core.common.request;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+@Data
+public class WithdrawRequest implements Serializable {
+
+    /**
+     * 业务系统订单ID
+     */
+    private String orderId;
+
+    /**
+     * 提币地址
+     */
+    private String address;
+
+    /**
+     * 提币金额
+     */
+    private String amount;
+}
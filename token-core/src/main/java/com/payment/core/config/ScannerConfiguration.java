@@ -0,0 +1,66 @@
+package com.payment.core.config;
+
+import com.ulisesbocchio.jasyptspringboot.annotation.EnableEncryptableProperties;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.task.TaskSchedulingAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.util.Collections;
+
+/**
+ * 扫块进程的精简配置
+ * <p>
+ * 只装配数据源、JdbcTemplate、配置解密与定时任务，不启动Web容器、Hibernate与Redis，
+ * 充值记录与币种信息由{@code @Profile("scanner")}的JdbcTemplate实现读写。
+ * 各链的扫块启动类导入该配置并只注册扫块与确认任务，归集、提币等其他定时任务只在对外接口服务中运行。
+ * 扫块进程单独部署时，对外接口服务配置{@value #SCAN_ENABLED}为false关闭自己的扫块任务，避免两个进程同时扫块。
+ */
+@Configuration
+@Profile(ScannerConfiguration.PROFILE)
+@EnableScheduling
+@EnableEncryptableProperties
+@ImportAutoConfiguration({
+        PropertyPlaceholderAutoConfiguration.class,
+        DataSourceAutoConfiguration.class,
+        DataSourceTransactionManagerAutoConfiguration.class,
+        JdbcTemplateAutoConfiguration.class,
+        TaskSchedulingAutoConfiguration.class})
+@ComponentScan({"com.payment.core.service", "com.payment.core.limiter"})
+public class ScannerConfiguration {
+
+    /**
+     * 扫块进程的Spring环境名称
+     */
+    public static final String PROFILE = "scanner";
+
+    /**
+     * 是否运行扫块与确认任务，默认开启；扫块进程中始终开启，不受配置文件影响
+     */
+    public static final String SCAN_ENABLED = "scan.enabled";
+
+    /**
+     * 以非Web应用、scanner环境启动扫块进程，扫块进程与对外接口服务共用配置文件时忽略配置文件中的{@value #SCAN_ENABLED}
+     * @param source 扫块启动类
+     * @param args 命令行参数
+     * @return spring上下文
+     */
+    public static ConfigurableApplicationContext run(Class<?> source, String... args) {
+        return new SpringApplicationBuilder(source)
+                .web(WebApplicationType.NONE)
+                .profiles(PROFILE)
+                .initializers(context -> context.getEnvironment().getPropertySources().addFirst(
+                        new MapPropertySource(PROFILE, Collections.singletonMap(SCAN_ENABLED, "true"))))
+                .run(args);
+    }
+}
@@ -0,0 +1,37 @@
+package com.payment.core.entity;
+
+import lombok.Data;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 转出地址的nonce计数器
+ */
+@Data
+@Entity
+@Table(name = "pay_account_nonce")
+public class AccountNonce implements Serializable {
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    /**
+     * 转出地址（小写）
+     */
+    private String address;
+
+    /**
+     * 下一笔交易应使用的nonce
+     */
+    private Long nextNonce;
+
+    private Date createdAt;
+
+    private Date updatedAt;
+}
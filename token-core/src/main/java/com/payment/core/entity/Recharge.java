@@ -46,6 +46,11 @@ public class Recharge implements Serializable {
 
     private Integer height;
 
+    /**
+     * 交易所在区块的Hash，确认时与链上同一高度的区块Hash比较，检查区块是否已被回滚
+     */
+    private String blockHash;
+
     private Date createdAt;
 
     private Date updatedAt;
@@ -0,0 +1,56 @@
+package com.payment.core.entity;
+
+import lombok.Data;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Withdraw提币记录表
+ */
+@Data
+@Entity
+@Table(name = "pay_withdraw")
+public class Withdraw implements Serializable {
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    private String orderId;
+
+    private Long currencyId;
+
+    private String currencyName;
+
+    private String txHash;
+
+    /**
+     * 提币金额，包含手续费
+     */
+    private BigDecimal amount;
+
+    /**
+     * 提币手续费，实际到账金额为amount - fee
+     */
+    private BigDecimal fee;
+
+    private String toAddress;
+
+    private Date upchainAt;
+
+    private Date upchainSuccessAt;
+
+    private Integer upchainStatus;
+
+    private Integer currentConfirm;
+
+    private Date createdAt;
+
+    private Date updatedAt;
+}
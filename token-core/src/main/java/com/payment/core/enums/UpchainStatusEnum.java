@@ -9,7 +9,9 @@ public enum UpchainStatusEnum {
 
     SUCCESS("上链并确认成功", 1),
     WAITING_CONFIRM("等待确认中", 2),
-    NOT_UPCHAIN("未上链", 3);
+    NOT_UPCHAIN("未上链", 3),
+    SEEN_IN_MEMPOOL("交易池中已发现", 4),
+    FAILED("发送失败", 5);
 
     private String msg;
     private Integer code;
@@ -2,9 +2,11 @@ package com.payment.core.exception;
 
 import com.payment.core.common.Result;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
 
 /**
  * 全局异常捕获
@@ -29,4 +31,13 @@ public class ExceptionCatchAdvice {
         log.info("全局system异常捕捉:{}",exception.getMessage());
         return Result.buildError(exception.getMessage());
     }
+
+    @ExceptionHandler(UnauthorizedException.class)
+    @ResponseStatus(HttpStatus.UNAUTHORIZED)
+    @ResponseBody
+    public Result<String> unauthorizedException(UnauthorizedException exception){
+        //记录日志
+        log.warn("接口鉴权失败:{}",exception.getMessage());
+        return Result.buildError(exception.getMessage());
+    }
 }
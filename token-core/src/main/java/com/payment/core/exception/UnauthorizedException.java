@@ -0,0 +1,10 @@
+package com.payment.core.exception;
+
+public class UnauthorizedException extends RuntimeException{
+
+    private static final long serialVersionUID = 1L;
+
+    public UnauthorizedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,139 @@
+package com.payment.core.limiter;
+
+/**
+ * AIMD自适应并发窗口
+ * <p>
+ * 请求成功且延迟低于目标延迟时窗口加性增长（每个窗口周期+1），
+ * 延迟超过目标、请求失败或被节点限流时窗口乘性下降。
+ * 为避免同一批请求的多个失败信号把窗口压到最低，每个目标延迟周期内最多下降一次。
+ * JSON-RPC批量请求按包含的请求数占用名额，超过窗口大小的批量请求在没有其他在途请求时发出。
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /**
+     * 延迟超标与请求失败时的下降系数
+     */
+    private static final double BACKOFF_RATIO = 0.9;
+
+    /**
+     * 被节点限流时的下降系数
+     */
+    private static final double THROTTLE_RATIO = 0.5;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long targetLatencyMillis;
+
+    private double limit;
+
+    private int inflight;
+
+    private long lastDecreaseMillis;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long targetLatencyMillis) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.targetLatencyMillis = targetLatencyMillis;
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+    }
+
+    /**
+     * 占用一个并发名额，窗口已满时阻塞等待
+     */
+    public void acquire() throws InterruptedException {
+        acquire(1);
+    }
+
+    /**
+     * 占用多个并发名额，窗口剩余名额不足时阻塞等待
+     * @param permits 名额数
+     */
+    public synchronized void acquire(int permits) throws InterruptedException {
+        while (inflight > 0 && inflight + permits > (int) limit) {
+            wait();
+        }
+        inflight += permits;
+    }
+
+    /**
+     * 请求成功，释放名额并根据延迟调整窗口
+     * @param latencyMillis 请求耗时
+     */
+    public void onSuccess(long latencyMillis) {
+        onSuccess(latencyMillis, 1);
+    }
+
+    /**
+     * 请求成功，释放名额并根据延迟调整窗口，每个请求的增长与单个请求相同
+     * @param latencyMillis 请求耗时
+     * @param permits 占用的名额数
+     */
+    public synchronized void onSuccess(long latencyMillis, int permits) {
+        if (latencyMillis > targetLatencyMillis) {
+            decrease(BACKOFF_RATIO);
+        } else if (inflight >= (int) limit - permits) {
+            //只有窗口被用满时才扩大窗口，避免空闲时窗口无限增长
+            limit = Math.min(maxLimit, limit + permits / limit);
+        }
+        release(permits);
+    }
+
+    /**
+     * 请求失败，释放名额并缩小窗口
+     */
+    public void onError() {
+        onError(1);
+    }
+
+    public synchronized void onError(int permits) {
+        decrease(BACKOFF_RATIO);
+        release(permits);
+    }
+
+    /**
+     * 请求被节点限流，释放名额并将窗口减半
+     */
+    public void onThrottled() {
+        onThrottled(1);
+    }
+
+    public synchronized void onThrottled(int permits) {
+        decrease(THROTTLE_RATIO);
+        release(permits);
+    }
+
+    /**
+     * 请求被取消，只释放名额不调整窗口
+     */
+    public void onCancel() {
+        onCancel(1);
+    }
+
+    public synchronized void onCancel(int permits) {
+        release(permits);
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInflight() {
+        return inflight;
+    }
+
+    private void decrease(double ratio) {
+        long now = System.currentTimeMillis();
+        if (now - lastDecreaseMillis < targetLatencyMillis) {
+            return;
+        }
+        lastDecreaseMillis = now;
+        limit = Math.max(minLimit, limit * ratio);
+    }
+
+    private void release(int permits) {
+        inflight -= permits;
+        notifyAll();
+    }
+}
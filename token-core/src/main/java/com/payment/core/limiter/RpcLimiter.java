@@ -0,0 +1,129 @@
+package com.payment.core.limiter;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个节点的RPC限流器
+ * <p>
+ * 组合令牌桶（控制请求速率）与AIMD并发窗口（控制在途请求数），两者都根据节点返回的
+ * 延迟、错误与限流（HTTP 429）信号自动调整，使扫描任务以节点可持续承受的最高速率运行。
+ * <p>
+ * 每次调用先{@link #acquire()}，调用结束后必须且只能调用一次
+ * {@link #onSuccess(long)}、{@link #onError()}、{@link #onThrottled()}或{@link #onCancel()}。
+ * JSON-RPC批量请求按包含的请求数获取与释放许可，结束时调用带许可数的对应方法。
+ */
+@Slf4j
+public class RpcLimiter {
+
+    @Getter
+    private final String name;
+
+    private final TokenBucket tokenBucket;
+
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    public RpcLimiter(String name, TokenBucket tokenBucket, AdaptiveConcurrencyLimiter concurrencyLimiter) {
+        this.name = name;
+        this.tokenBucket = tokenBucket;
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * 获取调用许可：先拿令牌再占并发名额
+     */
+    public void acquire() {
+        acquire(1);
+    }
+
+    /**
+     * 获取多个调用许可，用于包含多个请求的批量请求
+     * @param permits 许可数
+     */
+    public void acquire(int permits) {
+        try {
+            tokenBucket.acquire(permits);
+            concurrencyLimiter.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待节点" + name + "的限流许可被中断", e);
+        }
+    }
+
+    public void onSuccess(long latencyMillis) {
+        onSuccess(latencyMillis, 1);
+    }
+
+    public void onSuccess(long latencyMillis, int permits) {
+        concurrencyLimiter.onSuccess(latencyMillis, permits);
+        tokenBucket.increase();
+    }
+
+    public void onError() {
+        onError(1);
+    }
+
+    public void onError(int permits) {
+        concurrencyLimiter.onError(permits);
+    }
+
+    public void onThrottled() {
+        onThrottled(1);
+    }
+
+    public void onThrottled(int permits) {
+        concurrencyLimiter.onThrottled(permits);
+        tokenBucket.decrease();
+        log.warn("节点{}触发限流，并发窗口调整为{}，请求速率调整为{}/s", name, concurrencyLimiter.getLimit(), String.format("%.1f", tokenBucket.getRate()));
+    }
+
+    public void onCancel() {
+        onCancel(1);
+    }
+
+    public void onCancel(int permits) {
+        concurrencyLimiter.onCancel(permits);
+    }
+
+    /**
+     * 在限流许可下执行一次同步调用，按调用结果反馈延迟、错误与限流信号
+     * @param call 节点调用
+     * @return 调用结果
+     */
+    public <T, E extends Exception> T execute(RpcCall<T, E> call) throws E {
+        acquire();
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return result;
+        } catch (Exception e) {
+            if (isThrottled(e)) {
+                onThrottled();
+            } else {
+                onError();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 通过异常信息判断是否被节点限流
+     */
+    public static boolean isThrottled(Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            String message = t.getMessage();
+            if (message != null && (message.contains("429") || message.contains("Too Many Requests") || message.toLowerCase().contains("rate limit"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @FunctionalInterface
+    public interface RpcCall<T, E extends Exception> {
+        T call() throws E;
+    }
+}
@@ -0,0 +1,73 @@
+package com.payment.core.limiter;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 节点限流器注册表
+ * <p>
+ * 同一个节点地址只对应一个限流器，进程内所有访问该节点的调用方共享同一个令牌桶与并发窗口。
+ */
+@Component
+public class RpcLimiterRegistry {
+
+    /**
+     * 每个节点每秒最大请求数
+     */
+    @Value("${rpc.limiter.max-rate:100}")
+    private double maxRate;
+
+    /**
+     * 允许的突发请求数
+     */
+    @Value("${rpc.limiter.burst:20}")
+    private double burst;
+
+    /**
+     * 初始并发数
+     */
+    @Value("${rpc.limiter.initial-concurrency:8}")
+    private int initialConcurrency;
+
+    /**
+     * 最大并发数
+     */
+    @Value("${rpc.limiter.max-concurrency:64}")
+    private int maxConcurrency;
+
+    /**
+     * 目标延迟（毫秒），超过该延迟视为节点过载
+     */
+    @Value("${rpc.limiter.target-latency:2000}")
+    private long targetLatency;
+
+    private final Map<String, RpcLimiter> limiters = new ConcurrentHashMap<>();
+
+    /**
+     * 获取节点对应的限流器，不存在则创建
+     * @param endpoint 节点地址
+     * @return 限流器
+     */
+    public RpcLimiter get(String endpoint) {
+        return limiters.computeIfAbsent(endpoint, key -> new RpcLimiter(
+                hostOf(key),
+                new TokenBucket(maxRate, burst),
+                new AdaptiveConcurrencyLimiter(initialConcurrency, 1, maxConcurrency, targetLatency)));
+    }
+
+    /**
+     * 限流器名称只使用节点的host，避免日志中输出地址里的账号密码或PROJECT_ID
+     */
+    private static String hostOf(String endpoint) {
+        try {
+            String host = URI.create(endpoint).getHost();
+            return host == null ? endpoint : host;
+        } catch (IllegalArgumentException e) {
+            return endpoint;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.payment.core.limiter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶限流
+ * <p>
+ * 令牌按速率匀速生成，桶容量决定允许的突发请求数。速率可以在[最小速率, 最大速率]之间动态调整：
+ * 节点返回限流信号时速率减半，请求持续成功时按最大速率的1%逐步恢复。
+ */
+public class TokenBucket {
+
+    private final double maxRate;
+
+    private final double minRate;
+
+    private final double capacity;
+
+    private double rate;
+
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    /**
+     * @param maxRate 每秒最大令牌数
+     * @param capacity 桶容量（允许的突发请求数）
+     */
+    public TokenBucket(double maxRate, double capacity) {
+        this.maxRate = maxRate;
+        this.minRate = Math.min(1.0, maxRate);
+        this.capacity = Math.max(1.0, capacity);
+        this.rate = maxRate;
+        this.tokens = this.capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 获取一个令牌，令牌不足时阻塞等待
+     */
+    public void acquire() throws InterruptedException {
+        acquire(1);
+    }
+
+    /**
+     * 获取多个令牌，令牌不足时阻塞等待
+     * @param permits 令牌数，超过桶容量时等待桶满后取走，不足的部分记为欠账，之后的请求等待欠账补足
+     */
+    public void acquire(int permits) throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = reserve(permits)) > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * 尝试取走令牌
+     * @return 0表示成功取到令牌，否则返回距离令牌足够还需等待的纳秒数
+     */
+    private synchronized long reserve(int permits) {
+        refill();
+        double needed = Math.min(permits, capacity);
+        if (tokens >= needed) {
+            tokens -= permits;
+            return 0;
+        }
+        return (long) ((needed - tokens) / rate * TimeUnit.SECONDS.toNanos(1)) + 1;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * rate / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+
+    /**
+     * 收到限流信号，速率减半
+     */
+    public synchronized void decrease() {
+        refill();
+        rate = Math.max(minRate, rate / 2);
+        tokens = Math.min(tokens, 0);
+    }
+
+    /**
+     * 请求成功，速率逐步恢复
+     */
+    public synchronized void increase() {
+        if (rate < maxRate) {
+            refill();
+            rate = Math.min(maxRate, rate + maxRate * 0.01);
+        }
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+}
@@ -0,0 +1,43 @@
+package com.payment.core.repository;
+
+import com.payment.core.entity.AccountNonce;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Date;
+
+public interface AccountNonceRepository extends BaseRepository<AccountNonce> {
+
+    /**
+     * 通过地址获取nonce计数器
+     * @param address 转出地址
+     * @return nonce计数器
+     */
+    AccountNonce findAccountNonceByAddress(String address);
+
+    /**
+     * nonce计数器等于期望值时更新为新值
+     * @param address 转出地址
+     * @param expected 期望的当前值
+     * @param nextNonce 新值
+     * @param updatedAt 更新时间
+     * @return 更新的行数，0表示计数器已被其他进程修改
+     */
+    @Modifying
+    @Query("update AccountNonce set nextNonce = :nextNonce, updatedAt = :updatedAt where address = :address and nextNonce = :expected")
+    int compareAndSetNextNonce(@Param("address") String address, @Param("expected") Long expected,
+                               @Param("nextNonce") Long nextNonce, @Param("updatedAt") Date updatedAt);
+
+    /**
+     * 地址没有计数器时新增，地址上有唯一索引，已存在时忽略，不会使当前事务回滚
+     * @param address 转出地址
+     * @param nextNonce 下一个nonce
+     * @param now 创建时间
+     * @return 新增的行数，0表示计数器已被其他进程新增
+     */
+    @Modifying
+    @Query(value = "insert ignore into pay_account_nonce (address, next_nonce, created_at, updated_at) values (:address, :nextNonce, :now, :now)",
+            nativeQuery = true)
+    int insertIfAbsent(@Param("address") String address, @Param("nextNonce") Long nextNonce, @Param("now") Date now);
+}
@@ -2,7 +2,17 @@ package com.payment.core.repository;
 
 import com.payment.core.entity.ColdRecord;
 
+import java.util.List;
+
 
 public interface ColdRecordRepository extends BaseRepository<ColdRecord>{
 
+    /**
+     * 通过货币名称和上链状态获取转冷钱包记录
+     * @param currencyName 货币名称
+     * @param upchainStatus 上链状态
+     * @return 转冷钱包记录
+     */
+    List<ColdRecord> findColdRecordsByCurrencyNameAndUpchainStatus(String currencyName, Integer upchainStatus);
+
 }
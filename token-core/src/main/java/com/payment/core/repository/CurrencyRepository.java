@@ -2,6 +2,8 @@ package com.payment.core.repository;
 
 import com.payment.core.entity.Currency;
 
+import java.util.List;
+
 
 public interface CurrencyRepository extends BaseRepository<Currency>{
 
@@ -11,4 +13,12 @@ public interface CurrencyRepository extends BaseRepository<Currency>{
      * @return 货币信息
      */
     Currency findCurrencyByCurrencyName(String currencyName);
+
+    /**
+     * 通过货币类型与状态查找货币信息
+     * @param currencyType 货币类型
+     * @param status 币种状态
+     * @return 货币信息列表
+     */
+    List<Currency> findCurrenciesByCurrencyTypeAndStatus(String currencyType, Integer status);
 }
@@ -1,8 +1,14 @@
 package com.payment.core.repository;
 
 import com.payment.core.entity.Recharge;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 
@@ -34,4 +40,133 @@ public interface RechargeRepository extends BaseRepository<Recharge>{
      */
     List<Recharge> findRechargesByCurrencyNameAndUpchainStatus(String currencyName, Integer upchainStatus);
 
+    /**
+     * 通过货币名称和上链状态获取充值地址列表（去重）
+     * @param currencyName 货币名称
+     * @param upchainStatus 上链状态
+     * @return 充值地址列表
+     */
+    @Query("select distinct r.toAddress from Recharge r where r.currencyName = ?1 and r.upchainStatus = ?2")
+    List<String> findToAddressesByCurrencyNameAndUpchainStatus(String currencyName, Integer upchainStatus);
+
+    /**
+     * 通过货币名称获取id大于指定值的充值单，按id升序排列
+     * @param currencyName 货币名称
+     * @param id 充值单id
+     * @param pageable 返回的记录数
+     * @return 充值单列表
+     */
+    List<Recharge> findRechargesByCurrencyNameAndIdGreaterThanOrderById(String currencyName, Long id, Pageable pageable);
+
+    /**
+     * 获取id大于指定值的所有货币的充值单，按id升序排列
+     * @param id 充值单id
+     * @param pageable 返回的记录数
+     * @return 充值单列表
+     */
+    List<Recharge> findRechargesByIdGreaterThanOrderById(Long id, Pageable pageable);
+
+    /**
+     * 获取id小于指定值的所有货币的充值单，按id降序排列
+     * @param id 充值单id
+     * @param pageable 返回的记录数
+     * @return 充值单列表
+     */
+    List<Recharge> findRechargesByIdLessThanOrderByIdDesc(Long id, Pageable pageable);
+
+    /**
+     * 通过货币名称与上链状态分页获取充值单
+     * @param currencyName 货币名称
+     * @param upchainStatuses 上链状态
+     * @param pageable 分页
+     * @return 充值单，按id升序
+     */
+    List<Recharge> findRechargesByCurrencyNameAndUpchainStatusInOrderById(String currencyName, Collection<Integer> upchainStatuses, Pageable pageable);
+
+    /**
+     * 通过货币名称获取不超过指定高度的待确认充值单所在的区块高度（去重），只包含已记录区块Hash的充值单
+     * @param currencyName 货币名称
+     * @param upchainStatus 上链状态
+     * @param maxHeight 最大区块高度
+     * @return 区块高度列表
+     */
+    @Query("select distinct r.height from Recharge r where r.currencyName = :currencyName and r.upchainStatus = :upchainStatus "
+            + "and r.height <= :maxHeight and r.blockHash is not null")
+    List<Integer> findHeights(@Param("currencyName") String currencyName, @Param("upchainStatus") Integer upchainStatus,
+                              @Param("maxHeight") Integer maxHeight);
+
+    /**
+     * 通过货币名称和上链状态获取不超过指定高度的充值单列表
+     * @param currencyName 货币名称
+     * @param upchainStatus 上链状态
+     * @param height 最大区块高度
+     * @return 充值单列表
+     */
+    List<Recharge> findRechargesByCurrencyNameAndUpchainStatusAndHeightLessThanEqual(String currencyName, Integer upchainStatus, Integer height);
+
+    /**
+     * 把不超过检查点高度、区块Hash在指定列表中的待确认充值单更新为成功
+     * @param currencyName 货币名称
+     * @param waitingStatus 待确认状态
+     * @param successStatus 成功状态
+     * @param checkpointHeight 检查点区块高度
+     * @param blockHashes 区块Hash列表
+     * @param currentHeight 当前网络区块高度
+     * @param now 更新时间
+     * @return 更新的行数
+     */
+    @Modifying
+    @Query("update Recharge set upchainStatus = :successStatus, upchainSuccessAt = :now, currentConfirm = :currentHeight - height, updatedAt = :now "
+            + "where currencyName = :currencyName and upchainStatus = :waitingStatus and height <= :checkpointHeight and blockHash in :blockHashes")
+    int confirmRecharges(@Param("currencyName") String currencyName, @Param("waitingStatus") Integer waitingStatus,
+                         @Param("successStatus") Integer successStatus, @Param("checkpointHeight") Integer checkpointHeight,
+                         @Param("blockHashes") Collection<String> blockHashes, @Param("currentHeight") Integer currentHeight,
+                         @Param("now") Date now);
+
+    /**
+     * 按当前网络区块高度更新指定状态充值单的确认数
+     * @param currencyName 货币名称
+     * @param upchainStatus 上链状态
+     * @param currentHeight 当前网络区块高度
+     * @param now 更新时间
+     * @return 更新的行数
+     */
+    @Modifying
+    @Query("update Recharge set currentConfirm = :currentHeight - height, updatedAt = :now "
+            + "where currencyName = :currencyName and upchainStatus = :upchainStatus and height is not null")
+    int updateCurrentConfirm(@Param("currencyName") String currencyName, @Param("upchainStatus") Integer upchainStatus,
+                             @Param("currentHeight") Integer currentHeight, @Param("now") Date now);
+
+    /**
+     * 充值单为指定状态之一时更新上链状态、交易Hash与转出地址
+     * @param id 充值单id
+     * @param expectedStatuses 期望的当前状态
+     * @param upchainStatus 新状态
+     * @param txHash 交易Hash
+     * @param fromAddress 转出地址
+     * @param now 更新时间
+     * @return 更新的行数，0表示状态已被扫块任务修改
+     */
+    @Modifying
+    @Query("update Recharge set upchainStatus = :upchainStatus, txHash = :txHash, fromAddress = :fromAddress, updatedAt = :now "
+            + "where id = :id and upchainStatus in :expectedStatuses")
+    int compareAndSetUpchainStatus(@Param("id") Long id, @Param("expectedStatuses") Collection<Integer> expectedStatuses,
+                                   @Param("upchainStatus") Integer upchainStatus, @Param("txHash") String txHash,
+                                   @Param("fromAddress") String fromAddress, @Param("now") Date now);
+
+    /**
+     * 充值单为指定状态且交易Hash为指定值时更新上链状态，并清空交易Hash与出币地址
+     * @param id 充值单id
+     * @param expectedStatus 期望的当前状态
+     * @param txHash 期望的交易Hash
+     * @param upchainStatus 新状态
+     * @param now 更新时间
+     * @return 更新的行数
+     */
+    @Modifying
+    @Query("update Recharge set upchainStatus = :upchainStatus, txHash = null, fromAddress = null, updatedAt = :now "
+            + "where id = :id and upchainStatus = :expectedStatus and txHash = :txHash")
+    int compareAndClearTxHash(@Param("id") Long id, @Param("expectedStatus") Integer expectedStatus, @Param("txHash") String txHash,
+                              @Param("upchainStatus") Integer upchainStatus, @Param("now") Date now);
+
 }
@@ -0,0 +1,43 @@
+package com.payment.core.repository;
+
+import com.payment.core.entity.Withdraw;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Date;
+import java.util.List;
+
+
+public interface WithdrawRepository extends BaseRepository<Withdraw> {
+
+    /**
+     * 通过订单ID和货币名称获取提币记录
+     * @param orderId 订单ID
+     * @param currencyName 货币名称
+     * @return 提币记录
+     */
+    Withdraw getWithdrawByOrderIdAndCurrencyName(String orderId, String currencyName);
+
+    /**
+     * 通过货币名称和上链状态获取提币记录，按主键排序
+     * @param currencyName 货币名称
+     * @param upchainStatus 上链状态
+     * @return 提币记录
+     */
+    List<Withdraw> findWithdrawsByCurrencyNameAndUpchainStatusOrderById(String currencyName, Integer upchainStatus);
+
+    /**
+     * 提币单为指定状态时更新上链状态与发出时间
+     * @param id 提币单id
+     * @param expectedStatus 期望的当前状态
+     * @param upchainStatus 新状态
+     * @param now 发出时间
+     * @return 更新的行数，0表示已被其他进程领取
+     */
+    @Modifying
+    @Query("update Withdraw set upchainStatus = :upchainStatus, upchainAt = :now, updatedAt = :now where id = :id and upchainStatus = :expectedStatus")
+    int compareAndSetUpchainStatus(@Param("id") Long id, @Param("expectedStatus") Integer expectedStatus,
+                                   @Param("upchainStatus") Integer upchainStatus, @Param("now") Date now);
+
+}
@@ -0,0 +1,26 @@
+package com.payment.core.service;
+
+/**
+ * 转出地址nonce计数器服务
+ * <p>
+ * 计数器只通过比较并设置的方式更新，同一个地址被多个进程使用时不会分配出重复的nonce。
+ * 默认使用JPA实现，以scanner环境启动的扫块进程使用JdbcTemplate实现。
+ */
+public interface AccountNonceService {
+
+    /**
+     * 获取地址持久化的下一个nonce
+     * @param address 转出地址
+     * @return 下一个nonce，地址没有计数器时为null
+     */
+    Long getNextNonce(String address);
+
+    /**
+     * 计数器等于期望值时更新为新值
+     * @param address 转出地址
+     * @param expected 期望的当前值，为null表示计数器尚不存在，此时新增计数器
+     * @param nextNonce 新值
+     * @return 是否更新成功，失败表示计数器已被其他进程修改
+     */
+    boolean compareAndSetNextNonce(String address, Long expected, long nextNonce);
+}
@@ -0,0 +1,26 @@
+package com.payment.core.service;
+
+import com.payment.core.entity.ColdRecord;
+
+import java.util.List;
+
+/**
+ * 转冷钱包记录服务
+ * <p>
+ * 默认使用JPA实现，以scanner环境启动的扫块进程使用JdbcTemplate实现。
+ */
+public interface ColdRecordService {
+
+    /**
+     * 批量新增或更新转冷钱包记录
+     * @param records 转冷钱包记录
+     */
+    void saveColdRecords(List<ColdRecord> records);
+
+    /**
+     * 通过货币名称获取所有等待确认的转冷钱包记录
+     * @param currencyName 货币名称
+     * @return 转冷钱包记录
+     */
+    List<ColdRecord> getWaitConfirmColdRecord(String currencyName);
+}
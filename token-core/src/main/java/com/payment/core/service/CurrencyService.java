@@ -1,23 +1,29 @@
 package com.payment.core.service;
 
 import com.payment.core.entity.Currency;
-import com.payment.core.repository.CurrencyRepository;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Service;
 
-@Service
-public class CurrencyService {
+import java.util.List;
 
-    @Autowired
-    private CurrencyRepository currencyRepository;
+/**
+ * 加密货币信息服务
+ * <p>
+ * 默认使用JPA实现，以scanner环境启动的扫块进程使用JdbcTemplate实现。
+ */
+public interface CurrencyService {
 
     /**
      * 通过货币名称查找货币信息
      * @param currencyName 货币名称
      * @return 货币信息
      */
-    public Currency findCurrency(String currencyName) {
-        return currencyRepository.findCurrencyByCurrencyName(currencyName);
-    }
+    Currency findCurrency(String currencyName);
+
+    /**
+     * 通过货币类型与状态查找货币信息
+     * @param currencyType 货币类型（mainnet：主网币 token：代币）
+     * @param status 币种状态（0：关闭 1：开启）
+     * @return 货币信息列表
+     */
+    List<Currency> findCurrencies(String currencyType, Integer status);
 
 }
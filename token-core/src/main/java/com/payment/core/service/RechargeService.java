@@ -3,36 +3,24 @@ package com.payment.core.service;
 import com.payment.core.entity.CurrencyAccount;
 import com.payment.core.entity.Height;
 import com.payment.core.entity.Recharge;
-import com.payment.core.enums.UpchainStatusEnum;
-import com.payment.core.repository.AccountRepository;
-import com.payment.core.repository.HeightRepository;
-import com.payment.core.repository.RechargeRepository;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 
-@Service
-public class RechargeService {
-
-    @Autowired
-    private HeightRepository heightRepository;
-
-    @Autowired
-    private RechargeRepository rechargeRepository;
-
-    @Autowired
-    private AccountRepository accountRepository;
+/**
+ * 充值记录与区块高度服务
+ * <p>
+ * 默认使用JPA实现，以scanner环境启动的扫块进程使用JdbcTemplate实现。
+ */
+public interface RechargeService {
 
     /**
      * 通过货币名称获取当前同步的区块高度
      * @param currencyName 货币名称
      * @return 区块高度
      */
-    public Height getCurrentHeight(String currencyName) {
-        return heightRepository.getHeightByCurrencyName(currencyName);
-    }
+    Height getCurrentHeight(String currencyName);
 
     /**
      * 通过收款地址与货币名称与金额获取Recharge记录
@@ -41,9 +29,7 @@ public class RechargeService {
      * @param amount 金额
      * @return 充值记录
      */
-    public Recharge getRecharge(String toAddress, String currencyName, BigDecimal amount) {
-        return rechargeRepository.getRechargeByToAddressAndCurrencyNameAndAmount(toAddress, currencyName, amount);
-    }
+    Recharge getRecharge(String toAddress, String currencyName, BigDecimal amount);
 
     /**
      * 通过货币名称和订单ID获取充值单记录
@@ -51,50 +37,135 @@ public class RechargeService {
      * @param orderId 订单ID
      * @return
      */
-    public Recharge getRechargeByOrderId(String currencyName, String orderId) {
-        return rechargeRepository.getRechargeByOrderIdAndCurrencyName(orderId, currencyName);
-    }
-
+    Recharge getRechargeByOrderId(String currencyName, String orderId);
 
     /**
      * 更新recharge记录
      * @param recharge 记录
      */
-    public void updateRecharge(Recharge recharge) {
-        rechargeRepository.save(recharge);
-    }
+    void updateRecharge(Recharge recharge);
 
     /**
      * 更新当前区块高度
      * @param height 区块高度记录
      */
-    public void saveCurrentHeight(Height height) {
-        heightRepository.save(height);
-    }
-
+    void saveCurrentHeight(Height height);
 
     /**
      * 更新或者新增充值记录
      * @param recharge 充值记录
      */
-    public void saveRecharge(Recharge recharge) {
-        rechargeRepository.save(recharge);
-    }
+    void saveRecharge(Recharge recharge);
 
     /**
      * 通过货币名称获取所有待确认的充值单
      * @param currencyName 货币名称
      */
-    public List<Recharge> getWaitConfirmRecharge(String currencyName) {
-        return rechargeRepository.findRechargesByCurrencyNameAndUpchainStatus(currencyName, UpchainStatusEnum.WAITING_CONFIRM.getCode());
-    }
-
+    List<Recharge> getWaitConfirmRecharge(String currencyName);
 
     /**
      * 更新或新增账号记录
      * @param account 地址账号
      */
-    public void saveAccount(CurrencyAccount account) {
-        accountRepository.save(account);
-    }
+    void saveAccount(CurrencyAccount account);
+
+    /**
+     * 通过货币名称获取所有已充值成功的地址（去重），用于归集转冷钱包
+     * @param currencyName 货币名称
+     * @return 充值地址列表
+     */
+    List<String> getRechargedAddresses(String currencyName);
+
+    /**
+     * 通过货币名称获取id大于指定值的充值单，按id升序排列，用于增量加载充值地址
+     * @param currencyName 货币名称
+     * @param id 上次加载到的充值单id，首次加载传0
+     * @param limit 最多返回的记录数
+     * @return 充值单列表
+     */
+    List<Recharge> getRechargesAfterId(String currencyName, Long id, int limit);
+
+    /**
+     * 获取id大于指定值的所有货币的充值单，按id升序排列，用于增量加载充值地址时找出缺少的充值单id
+     * @param id 上次加载到的充值单id，首次加载传0
+     * @param limit 最多返回的记录数
+     * @return 充值单列表
+     */
+    List<Recharge> getRechargesAfterId(Long id, int limit);
+
+    /**
+     * 获取id小于指定值的所有货币的充值单，按id降序排列，用于重启后从已加载位置向前找出缺少的充值单id
+     * @param id 充值单id
+     * @param limit 最多返回的记录数
+     * @return 充值单列表
+     */
+    List<Recharge> getRechargesBeforeId(Long id, int limit);
+
+    /**
+     * 通过id获取充值单，不区分货币，用于重新检查增量加载时缺少的充值单id
+     * @param ids 充值单id
+     * @return 存在的充值单，顺序不定
+     */
+    List<Recharge> getRechargesByIds(Collection<Long> ids);
+
+    /**
+     * 通过货币名称获取还没有上链的充值单（未上链与交易池中已发现）
+     * @param currencyName 货币名称
+     * @param limit 最多返回的条数
+     * @return 充值单，按id升序
+     */
+    List<Recharge> getOpenRecharges(String currencyName, int limit);
+
+    /**
+     * 通过货币名称获取不超过指定高度的待确认充值单
+     * @param currencyName 货币名称
+     * @param maxHeight 最大区块高度
+     * @return 充值单列表
+     */
+    List<Recharge> getWaitConfirmRecharge(String currencyName, int maxHeight);
+
+    /**
+     * 通过货币名称获取不超过指定高度的待确认充值单所在的区块高度（去重），只包含已记录区块Hash的充值单
+     * @param currencyName 货币名称
+     * @param maxHeight 最大区块高度
+     * @return 区块高度列表
+     */
+    List<Integer> getWaitConfirmHeights(String currencyName, int maxHeight);
+
+    /**
+     * 一次更新把不超过检查点高度、区块Hash与链上一致的待确认充值单更新为成功，并按当前网络区块高度更新确认数
+     * @param currencyName 货币名称
+     * @param checkpointHeight 检查点区块高度
+     * @param blockHashes 待确认充值单所在高度在当前链上的区块Hash
+     * @param currentHeight 当前网络区块高度
+     * @return 更新为成功的充值单数
+     */
+    int confirmRecharges(String currencyName, int checkpointHeight, Collection<String> blockHashes, int currentHeight);
+
+    /**
+     * 按当前网络区块高度更新所有待确认充值单的确认数
+     * @param currencyName 货币名称
+     * @param currentHeight 当前网络区块高度
+     * @return 更新的充值单数
+     */
+    int updateWaitConfirmCount(String currencyName, int currentHeight);
+
+    /**
+     * 交易池中发现转入充值地址的交易：充值单未上链（或已被交易池中另一笔交易标记）时更新为交易池中已发现，
+     * 不覆盖扫块任务写入的上链状态
+     * @param id 充值单id
+     * @param txHash 交易Hash
+     * @param fromAddress 转出地址
+     * @return 是否更新成功
+     */
+    boolean markSeenInMempool(Long id, String txHash, String fromAddress);
+
+    /**
+     * 交易池中的交易被替换、丢弃或上链后执行失败：充值单仍为该交易标记的交易池中已发现时恢复为未上链，
+     * 并清空交易Hash与出币地址
+     * @param id 充值单id
+     * @param txHash 交易Hash
+     * @return 是否更新成功
+     */
+    boolean revertSeenInMempool(Long id, String txHash);
 }
@@ -0,0 +1,57 @@
+package com.payment.core.service;
+
+import com.payment.core.entity.Withdraw;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 提币记录服务
+ * <p>
+ * 提币单创建后处于未上链状态排队，由提币任务合并为批量交易发出后进入等待确认状态。
+ * 默认使用JPA实现，以scanner环境启动的扫块进程使用JdbcTemplate实现。
+ */
+public interface WithdrawService {
+
+    /**
+     * 通过货币名称和订单ID获取提币记录
+     * @param currencyName 货币名称
+     * @param orderId 订单ID
+     * @return 提币记录
+     */
+    Withdraw getWithdrawByOrderId(String currencyName, String orderId);
+
+    /**
+     * 更新或者新增提币记录
+     * @param withdraw 提币记录
+     */
+    void saveWithdraw(Withdraw withdraw);
+
+    /**
+     * 批量更新提币记录
+     * @param withdraws 提币记录
+     */
+    void saveWithdraws(List<Withdraw> withdraws);
+
+    /**
+     * 通过货币名称获取所有排队中的提币记录，按创建顺序排列
+     * @param currencyName 货币名称
+     * @return 提币记录
+     */
+    List<Withdraw> getQueuedWithdraws(String currencyName);
+
+    /**
+     * 领取排队中的提币单：逐条以未上链为条件更新为等待确认，多个进程同时发出提币时每笔提币单只会被一个进程领取
+     * @param withdraws 排队中的提币记录
+     * @param upchainAt 发出时间
+     * @return 本次领取成功的提币记录，已更新上链状态与发出时间
+     */
+    List<Withdraw> claimWithdraws(List<Withdraw> withdraws, Date upchainAt);
+
+    /**
+     * 通过货币名称获取所有已发出等待确认的提币记录
+     * @param currencyName 货币名称
+     * @return 提币记录
+     */
+    List<Withdraw> getWaitConfirmWithdraws(String currencyName);
+}
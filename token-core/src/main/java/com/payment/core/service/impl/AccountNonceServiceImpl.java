@@ -0,0 +1,39 @@
+package com.payment.core.service.impl;
+
+import com.payment.core.config.ScannerConfiguration;
+import com.payment.core.entity.AccountNonce;
+import com.payment.core.repository.AccountNonceRepository;
+import com.payment.core.service.AccountNonceService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Date;
+
+@Service
+@Profile("!" + ScannerConfiguration.PROFILE)
+public class AccountNonceServiceImpl implements AccountNonceService {
+
+    @Autowired
+    private AccountNonceRepository accountNonceRepository;
+
+    @Override
+    public Long getNextNonce(String address) {
+        AccountNonce accountNonce = accountNonceRepository.findAccountNonceByAddress(address);
+        return accountNonce == null ? null : accountNonce.getNextNonce();
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean compareAndSetNextNonce(String address, Long expected, long nextNonce) {
+        Date now = new Date();
+        if (expected != null) {
+            return accountNonceRepository.compareAndSetNextNonce(address, expected, nextNonce, now) > 0;
+        }
+
+        //计数器不存在时新增，地址上有唯一索引，并发新增时只有一个进程成功；
+        //使用insert ignore而不是捕获唯一索引冲突，冲突异常会把当前事务标记为只能回滚
+        return accountNonceRepository.insertIfAbsent(address, nextNonce, now) > 0;
+    }
+}
@@ -0,0 +1,30 @@
+package com.payment.core.service.impl;
+
+import com.payment.core.config.ScannerConfiguration;
+import com.payment.core.entity.ColdRecord;
+import com.payment.core.enums.UpchainStatusEnum;
+import com.payment.core.repository.ColdRecordRepository;
+import com.payment.core.service.ColdRecordService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+@Service
+@Profile("!" + ScannerConfiguration.PROFILE)
+public class ColdRecordServiceImpl implements ColdRecordService {
+
+    @Autowired
+    private ColdRecordRepository coldRecordRepository;
+
+    @Override
+    public void saveColdRecords(List<ColdRecord> records) {
+        coldRecordRepository.saveAll(records);
+    }
+
+    @Override
+    public List<ColdRecord> getWaitConfirmColdRecord(String currencyName) {
+        return coldRecordRepository.findColdRecordsByCurrencyNameAndUpchainStatus(currencyName, UpchainStatusEnum.WAITING_CONFIRM.getCode());
+    }
+}
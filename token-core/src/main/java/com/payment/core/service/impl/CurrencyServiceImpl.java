@@ -0,0 +1,30 @@
+package com.payment.core.service.impl;
+
+import com.payment.core.config.ScannerConfiguration;
+import com.payment.core.entity.Currency;
+import com.payment.core.repository.CurrencyRepository;
+import com.payment.core.service.CurrencyService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+@Service
+@Profile("!" + ScannerConfiguration.PROFILE)
+public class CurrencyServiceImpl implements CurrencyService {
+
+    @Autowired
+    private CurrencyRepository currencyRepository;
+
+    @Override
+    public Currency findCurrency(String currencyName) {
+        return currencyRepository.findCurrencyByCurrencyName(currencyName);
+    }
+
+    @Override
+    public List<Currency> findCurrencies(String currencyType, Integer status) {
+        return currencyRepository.findCurrenciesByCurrencyTypeAndStatus(currencyType, status);
+    }
+
+}
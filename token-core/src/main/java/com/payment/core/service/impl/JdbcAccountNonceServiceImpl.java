@@ -0,0 +1,45 @@
+package com.payment.core.service.impl;
+
+import com.payment.core.config.ScannerConfiguration;
+import com.payment.core.service.AccountNonceService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+
+import static com.payment.core.service.impl.JdbcRechargeServiceImpl.first;
+
+/**
+ * 基于JdbcTemplate的nonce计数器服务，供scanner环境的扫块进程使用
+ */
+@Service
+@Profile(ScannerConfiguration.PROFILE)
+public class JdbcAccountNonceServiceImpl implements AccountNonceService {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Long getNextNonce(String address) {
+        return first(jdbcTemplate.queryForList("select next_nonce from pay_account_nonce where address = ?", Long.class, address));
+    }
+
+    @Override
+    public boolean compareAndSetNextNonce(String address, Long expected, long nextNonce) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        if (expected != null) {
+            return jdbcTemplate.update("update pay_account_nonce set next_nonce = ?, updated_at = ? where address = ? and next_nonce = ?",
+                    nextNonce, now, address, expected) > 0;
+        }
+        try {
+            jdbcTemplate.update("insert into pay_account_nonce (address, next_nonce, created_at, updated_at) values (?, ?, ?, ?)",
+                    address, nextNonce, now, now);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.payment.core.service.impl;
+
+import com.payment.core.config.ScannerConfiguration;
+import com.payment.core.entity.ColdRecord;
+import com.payment.core.enums.UpchainStatusEnum;
+import com.payment.core.service.ColdRecordService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.payment.core.service.impl.JdbcRechargeServiceImpl.getInteger;
+import static com.payment.core.service.impl.JdbcRechargeServiceImpl.getLong;
+import static com.payment.core.service.impl.JdbcRechargeServiceImpl.timestamp;
+
+/**
+ * 基于JdbcTemplate的转冷钱包记录服务，供scanner环境的扫块进程使用
+ */
+@Service
+@Profile(ScannerConfiguration.PROFILE)
+public class JdbcColdRecordServiceImpl implements ColdRecordService {
+
+    private static final RowMapper<ColdRecord> COLD_RECORD_MAPPER = (rs, rowNum) -> {
+        ColdRecord record = new ColdRecord();
+        record.setId(getLong(rs, "id"));
+        record.setCurrencyId(getInteger(rs, "currency_id"));
+        record.setCurrencyName(rs.getString("currency_name"));
+        record.setAmount(rs.getBigDecimal("amount"));
+        record.setTxHash(rs.getString("tx_hash"));
+        record.setFromAddress(rs.getString("from_address"));
+        record.setToAddress(rs.getString("to_address"));
+        record.setUpchainAt(rs.getTimestamp("upchain_at"));
+        record.setUpchainSuccessAt(rs.getTimestamp("upchain_success_at"));
+        record.setUpchainStatus(getInteger(rs, "upchain_status"));
+        record.setCreatedAt(rs.getTimestamp("created_at"));
+        record.setUpdatedAt(rs.getTimestamp("updated_at"));
+        return record;
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void saveColdRecords(List<ColdRecord> records) {
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+        for (ColdRecord record : records) {
+            Object[] values = {record.getCurrencyId(), record.getCurrencyName(), record.getAmount(), record.getTxHash(), record.getFromAddress(),
+                    record.getToAddress(), timestamp(record.getUpchainAt()), timestamp(record.getUpchainSuccessAt()), record.getUpchainStatus(),
+                    timestamp(record.getCreatedAt()), timestamp(record.getUpdatedAt()), record.getId()};
+            if (record.getId() == null) {
+                inserts.add(values);
+            } else {
+                updates.add(values);
+            }
+        }
+
+        //新增记录不回填主键，确认任务会重新从库中读取待确认记录
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate("insert into pay_cold_record (currency_id, currency_name, amount, tx_hash, from_address, to_address, "
+                    + "upchain_at, upchain_success_at, upchain_status, created_at, updated_at, id) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", inserts);
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate("update pay_cold_record set currency_id = ?, currency_name = ?, amount = ?, tx_hash = ?, from_address = ?, "
+                    + "to_address = ?, upchain_at = ?, upchain_success_at = ?, upchain_status = ?, created_at = ?, updated_at = ? where id = ?", updates);
+        }
+    }
+
+    @Override
+    public List<ColdRecord> getWaitConfirmColdRecord(String currencyName) {
+        return jdbcTemplate.query("select * from pay_cold_record where currency_name = ? and upchain_status = ?",
+                COLD_RECORD_MAPPER, currencyName, UpchainStatusEnum.WAITING_CONFIRM.getCode());
+    }
+}
@@ -0,0 +1,60 @@
+package com.payment.core.service.impl;
+
+import com.payment.core.config.ScannerConfiguration;
+import com.payment.core.entity.Currency;
+import com.payment.core.service.CurrencyService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+import static com.payment.core.service.impl.JdbcRechargeServiceImpl.first;
+import static com.payment.core.service.impl.JdbcRechargeServiceImpl.getInteger;
+import static com.payment.core.service.impl.JdbcRechargeServiceImpl.getLong;
+
+/**
+ * 基于JdbcTemplate的加密货币信息服务，供scanner环境的扫块进程使用
+ */
+@Service
+@Profile(ScannerConfiguration.PROFILE)
+public class JdbcCurrencyServiceImpl implements CurrencyService {
+
+    private static final RowMapper<Currency> CURRENCY_MAPPER = (rs, rowNum) -> {
+        Currency currency = new Currency();
+        currency.setId(getLong(rs, "id"));
+        currency.setCurrencyName(rs.getString("currency_name"));
+        currency.setCurrencyLogo(rs.getString("currency_logo"));
+        currency.setCurrencyType(rs.getString("currency_type"));
+        currency.setCurrencyContent(rs.getString("currency_content"));
+        currency.setCurrencyDecimalsNum(getInteger(rs, "currency_decimals_num"));
+        currency.setCurrencyUrl(rs.getString("currency_url"));
+        currency.setContractAbi(rs.getString("contract_abi"));
+        currency.setContractAddress(rs.getString("contract_address"));
+        currency.setColdAddress(rs.getString("cold_address"));
+        currency.setColdThreshold(rs.getBigDecimal("cold_threshold"));
+        currency.setFeeWithdraw(rs.getBigDecimal("fee_withdraw"));
+        currency.setWalletKey(rs.getString("wallet_key"));
+        currency.setConfirms(getInteger(rs, "confirms"));
+        currency.setStatus(getInteger(rs, "status"));
+        currency.setCreatedAt(rs.getTimestamp("created_at"));
+        currency.setUpdatedAt(rs.getTimestamp("updated_at"));
+        return currency;
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Currency findCurrency(String currencyName) {
+        return first(jdbcTemplate.query("select * from pay_currency where currency_name = ?", CURRENCY_MAPPER, currencyName));
+    }
+
+    @Override
+    public List<Currency> findCurrencies(String currencyType, Integer status) {
+        return jdbcTemplate.query("select * from pay_currency where currency_type = ? and status = ?", CURRENCY_MAPPER, currencyType, status);
+    }
+
+}
@@ -0,0 +1,278 @@
+package com.payment.core.service.impl;
+
+import com.payment.core.config.ScannerConfiguration;
+import com.payment.core.entity.CurrencyAccount;
+import com.payment.core.entity.Height;
+import com.payment.core.entity.Recharge;
+import com.payment.core.enums.UpchainStatusEnum;
+import com.payment.core.service.RechargeService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 基于JdbcTemplate的充值记录服务
+ * <p>
+ * 扫块进程只需要少量固定的单表读写，直接使用SQL可以省去Hibernate的启动耗时与元模型内存。
+ * 表结构与JPA实体一致（见sql/wallet.sql），新增充值记录依赖表的自增主键。
+ */
+@Service
+@Profile(ScannerConfiguration.PROFILE)
+public class JdbcRechargeServiceImpl implements RechargeService {
+
+    private static final String RECHARGE_COLUMNS = "id, order_id, currency_id, currency_name, tx_hash, amount, from_address, to_address, "
+            + "upchain_at, upchain_success_at, upchain_status, current_confirm, height, block_hash, created_at, updated_at";
+
+    private static final RowMapper<Height> HEIGHT_MAPPER = (rs, rowNum) -> {
+        Height height = new Height();
+        height.setCurrencyId(getLong(rs, "currency_id"));
+        height.setCurrencyName(rs.getString("currency_name"));
+        height.setCurrentHeight(getInteger(rs, "current_height"));
+        height.setUpdatedAt(rs.getTimestamp("updated_at"));
+        return height;
+    };
+
+    private static final RowMapper<Recharge> RECHARGE_MAPPER = (rs, rowNum) -> {
+        Recharge recharge = new Recharge();
+        recharge.setId(getLong(rs, "id"));
+        recharge.setOrderId(rs.getString("order_id"));
+        recharge.setCurrencyId(getLong(rs, "currency_id"));
+        recharge.setCurrencyName(rs.getString("currency_name"));
+        recharge.setTxHash(rs.getString("tx_hash"));
+        recharge.setAmount(rs.getBigDecimal("amount"));
+        recharge.setFromAddress(rs.getString("from_address"));
+        recharge.setToAddress(rs.getString("to_address"));
+        recharge.setUpchainAt(rs.getTimestamp("upchain_at"));
+        recharge.setUpchainSuccessAt(rs.getTimestamp("upchain_success_at"));
+        recharge.setUpchainStatus(getInteger(rs, "upchain_status"));
+        recharge.setCurrentConfirm(getInteger(rs, "current_confirm"));
+        recharge.setHeight(getInteger(rs, "height"));
+        recharge.setBlockHash(rs.getString("block_hash"));
+        recharge.setCreatedAt(rs.getTimestamp("created_at"));
+        recharge.setUpdatedAt(rs.getTimestamp("updated_at"));
+        return recharge;
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Height getCurrentHeight(String currencyName) {
+        return first(jdbcTemplate.query("select currency_id, currency_name, current_height, updated_at from pay_height where currency_name = ?",
+                HEIGHT_MAPPER, currencyName));
+    }
+
+    @Override
+    public Recharge getRecharge(String toAddress, String currencyName, BigDecimal amount) {
+        return first(jdbcTemplate.query("select " + RECHARGE_COLUMNS + " from pay_recharge where to_address = ? and currency_name = ? and amount = ?",
+                RECHARGE_MAPPER, toAddress, currencyName, amount));
+    }
+
+    @Override
+    public Recharge getRechargeByOrderId(String currencyName, String orderId) {
+        return first(jdbcTemplate.query("select " + RECHARGE_COLUMNS + " from pay_recharge where order_id = ? and currency_name = ?",
+                RECHARGE_MAPPER, orderId, currencyName));
+    }
+
+    @Override
+    public void updateRecharge(Recharge recharge) {
+        saveRecharge(recharge);
+    }
+
+    @Override
+    public void saveCurrentHeight(Height height) {
+        int updated = jdbcTemplate.update("update pay_height set currency_name = ?, current_height = ?, updated_at = ? where currency_id = ?",
+                height.getCurrencyName(), height.getCurrentHeight(), timestamp(height.getUpdatedAt()), height.getCurrencyId());
+        if (updated == 0) {
+            jdbcTemplate.update("insert into pay_height (currency_id, currency_name, current_height, updated_at) values (?, ?, ?, ?)",
+                    height.getCurrencyId(), height.getCurrencyName(), height.getCurrentHeight(), timestamp(height.getUpdatedAt()));
+        }
+    }
+
+    @Override
+    public void saveRecharge(Recharge recharge) {
+        Object[] values = {recharge.getOrderId(), recharge.getCurrencyId(), recharge.getCurrencyName(), recharge.getTxHash(), recharge.getAmount(),
+                recharge.getFromAddress(), recharge.getToAddress(), timestamp(recharge.getUpchainAt()), timestamp(recharge.getUpchainSuccessAt()),
+                recharge.getUpchainStatus(), recharge.getCurrentConfirm(), recharge.getHeight(), recharge.getBlockHash(), timestamp(recharge.getCreatedAt()),
+                timestamp(recharge.getUpdatedAt())};
+
+        //1. 已有主键直接更新
+        if (recharge.getId() != null) {
+            Object[] args = new Object[values.length + 1];
+            System.arraycopy(values, 0, args, 0, values.length);
+            args[values.length] = recharge.getId();
+            int updated = jdbcTemplate.update("update pay_recharge set order_id = ?, currency_id = ?, currency_name = ?, tx_hash = ?, amount = ?, "
+                    + "from_address = ?, to_address = ?, upchain_at = ?, upchain_success_at = ?, upchain_status = ?, current_confirm = ?, "
+                    + "height = ?, block_hash = ?, created_at = ?, updated_at = ? where id = ?", args);
+            if (updated > 0) {
+                return;
+            }
+        }
+
+        //2. 新增记录并回填自增主键
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement("insert into pay_recharge (order_id, currency_id, currency_name, tx_hash, "
+                    + "amount, from_address, to_address, upchain_at, upchain_success_at, upchain_status, current_confirm, height, block_hash, "
+                    + "created_at, updated_at) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+            for (int i = 0; i < values.length; i++) {
+                statement.setObject(i + 1, values[i]);
+            }
+            return statement;
+        }, keyHolder);
+        Number key = keyHolder.getKey();
+        if (key != null) {
+            recharge.setId(key.longValue());
+        }
+    }
+
+    @Override
+    public List<Recharge> getWaitConfirmRecharge(String currencyName) {
+        return jdbcTemplate.query("select " + RECHARGE_COLUMNS + " from pay_recharge where currency_name = ? and upchain_status = ?",
+                RECHARGE_MAPPER, currencyName, UpchainStatusEnum.WAITING_CONFIRM.getCode());
+    }
+
+    @Override
+    public void saveAccount(CurrencyAccount account) {
+        int updated = jdbcTemplate.update("update pay_currency_account set currency_name = ?, keystore_name = ?, mnemonic = ?, address = ?, "
+                        + "created_at = ?, updated_at = ? where currency_id = ?",
+                account.getCurrencyName(), account.getKeystoreName(), account.getMnemonic(), account.getAddress(),
+                timestamp(account.getCreatedAt()), timestamp(account.getUpdatedAt()), account.getCurrencyId());
+        if (updated == 0) {
+            jdbcTemplate.update("insert into pay_currency_account (currency_id, currency_name, keystore_name, mnemonic, address, created_at, "
+                            + "updated_at) values (?, ?, ?, ?, ?, ?, ?)",
+                    account.getCurrencyId(), account.getCurrencyName(), account.getKeystoreName(), account.getMnemonic(), account.getAddress(),
+                    timestamp(account.getCreatedAt()), timestamp(account.getUpdatedAt()));
+        }
+    }
+
+    @Override
+    public List<String> getRechargedAddresses(String currencyName) {
+        return jdbcTemplate.queryForList("select distinct to_address from pay_recharge where currency_name = ? and upchain_status = ?",
+                String.class, currencyName, UpchainStatusEnum.SUCCESS.getCode());
+    }
+
+    @Override
+    public List<Recharge> getRechargesAfterId(String currencyName, Long id, int limit) {
+        return jdbcTemplate.query("select " + RECHARGE_COLUMNS + " from pay_recharge where currency_name = ? and id > ? order by id limit ?",
+                RECHARGE_MAPPER, currencyName, id, limit);
+    }
+
+    @Override
+    public List<Recharge> getRechargesAfterId(Long id, int limit) {
+        return jdbcTemplate.query("select " + RECHARGE_COLUMNS + " from pay_recharge where id > ? order by id limit ?", RECHARGE_MAPPER, id, limit);
+    }
+
+    @Override
+    public List<Recharge> getRechargesBeforeId(Long id, int limit) {
+        return jdbcTemplate.query("select " + RECHARGE_COLUMNS + " from pay_recharge where id < ? order by id desc limit ?", RECHARGE_MAPPER, id, limit);
+    }
+
+    @Override
+    public List<Recharge> getRechargesByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return jdbcTemplate.query("select " + RECHARGE_COLUMNS + " from pay_recharge where id in (" + placeholders(ids.size()) + ")",
+                RECHARGE_MAPPER, ids.toArray());
+    }
+
+    @Override
+    public List<Recharge> getOpenRecharges(String currencyName, int limit) {
+        return jdbcTemplate.query("select " + RECHARGE_COLUMNS + " from pay_recharge where currency_name = ? and upchain_status in (?, ?) order by id limit ?",
+                RECHARGE_MAPPER, currencyName, UpchainStatusEnum.NOT_UPCHAIN.getCode(), UpchainStatusEnum.SEEN_IN_MEMPOOL.getCode(), limit);
+    }
+
+    @Override
+    public List<Recharge> getWaitConfirmRecharge(String currencyName, int maxHeight) {
+        return jdbcTemplate.query("select " + RECHARGE_COLUMNS + " from pay_recharge where currency_name = ? and upchain_status = ? and height <= ?",
+                RECHARGE_MAPPER, currencyName, UpchainStatusEnum.WAITING_CONFIRM.getCode(), maxHeight);
+    }
+
+    @Override
+    public List<Integer> getWaitConfirmHeights(String currencyName, int maxHeight) {
+        return jdbcTemplate.queryForList("select distinct height from pay_recharge where currency_name = ? and upchain_status = ? and height <= ? "
+                + "and block_hash is not null", Integer.class, currencyName, UpchainStatusEnum.WAITING_CONFIRM.getCode(), maxHeight);
+    }
+
+    @Override
+    public int confirmRecharges(String currencyName, int checkpointHeight, Collection<String> blockHashes, int currentHeight) {
+        if (blockHashes.isEmpty()) {
+            return 0;
+        }
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        List<Object> args = new ArrayList<>(blockHashes.size() + 7);
+        Collections.addAll(args, UpchainStatusEnum.SUCCESS.getCode(), now, currentHeight, now, currencyName,
+                UpchainStatusEnum.WAITING_CONFIRM.getCode(), checkpointHeight);
+        args.addAll(blockHashes);
+        return jdbcTemplate.update("update pay_recharge set upchain_status = ?, upchain_success_at = ?, current_confirm = ? - height, updated_at = ? "
+                + "where currency_name = ? and upchain_status = ? and height <= ? and block_hash in (" + placeholders(blockHashes.size()) + ")",
+                args.toArray());
+    }
+
+    @Override
+    public int updateWaitConfirmCount(String currencyName, int currentHeight) {
+        return jdbcTemplate.update("update pay_recharge set current_confirm = ? - height, updated_at = ? where currency_name = ? and upchain_status = ? "
+                + "and height is not null", currentHeight, new Timestamp(System.currentTimeMillis()), currencyName, UpchainStatusEnum.WAITING_CONFIRM.getCode());
+    }
+
+    @Override
+    public boolean markSeenInMempool(Long id, String txHash, String fromAddress) {
+        return jdbcTemplate.update("update pay_recharge set upchain_status = ?, tx_hash = ?, from_address = ?, updated_at = ? "
+                        + "where id = ? and upchain_status in (?, ?)", UpchainStatusEnum.SEEN_IN_MEMPOOL.getCode(), txHash, fromAddress,
+                new Timestamp(System.currentTimeMillis()), id, UpchainStatusEnum.NOT_UPCHAIN.getCode(), UpchainStatusEnum.SEEN_IN_MEMPOOL.getCode()) > 0;
+    }
+
+    @Override
+    public boolean revertSeenInMempool(Long id, String txHash) {
+        return jdbcTemplate.update("update pay_recharge set upchain_status = ?, tx_hash = null, from_address = null, updated_at = ? "
+                        + "where id = ? and upchain_status = ? and tx_hash = ?",
+                UpchainStatusEnum.NOT_UPCHAIN.getCode(), new Timestamp(System.currentTimeMillis()), id,
+                UpchainStatusEnum.SEEN_IN_MEMPOOL.getCode(), txHash) > 0;
+    }
+
+    /**
+     * in条件的参数占位符
+     */
+    static String placeholders(int count) {
+        StringBuilder builder = new StringBuilder(count * 3);
+        for (int i = 0; i < count; i++) {
+            builder.append(i == 0 ? "?" : ", ?");
+        }
+        return builder.toString();
+    }
+
+    static <T> T first(List<T> list) {
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    static Timestamp timestamp(Date date) {
+        return date == null ? null : new Timestamp(date.getTime());
+    }
+
+    static Long getLong(ResultSet rs, String column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    static Integer getInteger(ResultSet rs, String column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+}
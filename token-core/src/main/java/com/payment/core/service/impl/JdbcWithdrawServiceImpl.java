@@ -0,0 +1,139 @@
+package com.payment.core.service.impl;
+
+import com.payment.core.config.ScannerConfiguration;
+import com.payment.core.entity.Withdraw;
+import com.payment.core.enums.UpchainStatusEnum;
+import com.payment.core.service.WithdrawService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static com.payment.core.service.impl.JdbcRechargeServiceImpl.first;
+import static com.payment.core.service.impl.JdbcRechargeServiceImpl.getInteger;
+import static com.payment.core.service.impl.JdbcRechargeServiceImpl.getLong;
+import static com.payment.core.service.impl.JdbcRechargeServiceImpl.timestamp;
+
+/**
+ * 基于JdbcTemplate的提币记录服务，供scanner环境的扫块进程使用
+ */
+@Service
+@Profile(ScannerConfiguration.PROFILE)
+public class JdbcWithdrawServiceImpl implements WithdrawService {
+
+    private static final String WITHDRAW_COLUMNS = "id, order_id, currency_id, currency_name, tx_hash, amount, fee, to_address, "
+            + "upchain_at, upchain_success_at, upchain_status, current_confirm, created_at, updated_at";
+
+    private static final RowMapper<Withdraw> WITHDRAW_MAPPER = (rs, rowNum) -> {
+        Withdraw withdraw = new Withdraw();
+        withdraw.setId(getLong(rs, "id"));
+        withdraw.setOrderId(rs.getString("order_id"));
+        withdraw.setCurrencyId(getLong(rs, "currency_id"));
+        withdraw.setCurrencyName(rs.getString("currency_name"));
+        withdraw.setTxHash(rs.getString("tx_hash"));
+        withdraw.setAmount(rs.getBigDecimal("amount"));
+        withdraw.setFee(rs.getBigDecimal("fee"));
+        withdraw.setToAddress(rs.getString("to_address"));
+        withdraw.setUpchainAt(rs.getTimestamp("upchain_at"));
+        withdraw.setUpchainSuccessAt(rs.getTimestamp("upchain_success_at"));
+        withdraw.setUpchainStatus(getInteger(rs, "upchain_status"));
+        withdraw.setCurrentConfirm(getInteger(rs, "current_confirm"));
+        withdraw.setCreatedAt(rs.getTimestamp("created_at"));
+        withdraw.setUpdatedAt(rs.getTimestamp("updated_at"));
+        return withdraw;
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Withdraw getWithdrawByOrderId(String currencyName, String orderId) {
+        return first(jdbcTemplate.query("select " + WITHDRAW_COLUMNS + " from pay_withdraw where currency_name = ? and order_id = ?",
+                WITHDRAW_MAPPER, currencyName, orderId));
+    }
+
+    @Override
+    public void saveWithdraw(Withdraw withdraw) {
+        //1. 已有主键直接更新
+        if (withdraw.getId() != null) {
+            saveWithdraws(Collections.singletonList(withdraw));
+            return;
+        }
+
+        //2. 新增记录并回填自增主键
+        Object[] values = values(withdraw);
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement("insert into pay_withdraw (order_id, currency_id, currency_name, tx_hash, "
+                    + "amount, fee, to_address, upchain_at, upchain_success_at, upchain_status, current_confirm, created_at, updated_at) "
+                    + "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+            for (int i = 0; i < values.length - 1; i++) {
+                statement.setObject(i + 1, values[i]);
+            }
+            return statement;
+        }, keyHolder);
+        Number key = keyHolder.getKey();
+        if (key != null) {
+            withdraw.setId(key.longValue());
+        }
+    }
+
+    @Override
+    public void saveWithdraws(List<Withdraw> withdraws) {
+        List<Object[]> updates = new ArrayList<>(withdraws.size());
+        for (Withdraw withdraw : withdraws) {
+            updates.add(values(withdraw));
+        }
+        jdbcTemplate.batchUpdate("update pay_withdraw set order_id = ?, currency_id = ?, currency_name = ?, tx_hash = ?, amount = ?, fee = ?, "
+                + "to_address = ?, upchain_at = ?, upchain_success_at = ?, upchain_status = ?, current_confirm = ?, created_at = ?, "
+                + "updated_at = ? where id = ?", updates);
+    }
+
+    @Override
+    public List<Withdraw> getQueuedWithdraws(String currencyName) {
+        return jdbcTemplate.query("select " + WITHDRAW_COLUMNS + " from pay_withdraw where currency_name = ? and upchain_status = ? order by id",
+                WITHDRAW_MAPPER, currencyName, UpchainStatusEnum.NOT_UPCHAIN.getCode());
+    }
+
+    @Override
+    public List<Withdraw> claimWithdraws(List<Withdraw> withdraws, Date upchainAt) {
+        List<Withdraw> claimed = new ArrayList<>(withdraws.size());
+        for (Withdraw withdraw : withdraws) {
+            if (jdbcTemplate.update("update pay_withdraw set upchain_status = ?, upchain_at = ?, updated_at = ? where id = ? and upchain_status = ?",
+                    UpchainStatusEnum.WAITING_CONFIRM.getCode(), timestamp(upchainAt), timestamp(upchainAt), withdraw.getId(),
+                    UpchainStatusEnum.NOT_UPCHAIN.getCode()) > 0) {
+                withdraw.setUpchainStatus(UpchainStatusEnum.WAITING_CONFIRM.getCode());
+                withdraw.setUpchainAt(upchainAt);
+                withdraw.setUpdatedAt(upchainAt);
+                claimed.add(withdraw);
+            }
+        }
+        return claimed;
+    }
+
+    @Override
+    public List<Withdraw> getWaitConfirmWithdraws(String currencyName) {
+        return jdbcTemplate.query("select " + WITHDRAW_COLUMNS + " from pay_withdraw where currency_name = ? and upchain_status = ? order by id",
+                WITHDRAW_MAPPER, currencyName, UpchainStatusEnum.WAITING_CONFIRM.getCode());
+    }
+
+    /**
+     * 按update语句的参数顺序排列字段，主键在最后
+     */
+    private static Object[] values(Withdraw withdraw) {
+        return new Object[]{withdraw.getOrderId(), withdraw.getCurrencyId(), withdraw.getCurrencyName(), withdraw.getTxHash(), withdraw.getAmount(),
+                withdraw.getFee(), withdraw.getToAddress(), timestamp(withdraw.getUpchainAt()), timestamp(withdraw.getUpchainSuccessAt()),
+                withdraw.getUpchainStatus(), withdraw.getCurrentConfirm(), timestamp(withdraw.getCreatedAt()), timestamp(withdraw.getUpdatedAt()),
+                withdraw.getId()};
+    }
+}
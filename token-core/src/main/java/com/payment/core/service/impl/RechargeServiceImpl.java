@@ -0,0 +1,149 @@
+package com.payment.core.service.impl;
+
+import com.payment.core.config.ScannerConfiguration;
+import com.payment.core.entity.CurrencyAccount;
+import com.payment.core.entity.Height;
+import com.payment.core.entity.Recharge;
+import com.payment.core.enums.UpchainStatusEnum;
+import com.payment.core.repository.AccountRepository;
+import com.payment.core.repository.HeightRepository;
+import com.payment.core.repository.RechargeRepository;
+import com.payment.core.service.RechargeService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+@Service
+@Profile("!" + ScannerConfiguration.PROFILE)
+public class RechargeServiceImpl implements RechargeService {
+
+    @Autowired
+    private HeightRepository heightRepository;
+
+    @Autowired
+    private RechargeRepository rechargeRepository;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Override
+    public Height getCurrentHeight(String currencyName) {
+        return heightRepository.getHeightByCurrencyName(currencyName);
+    }
+
+    @Override
+    public Recharge getRecharge(String toAddress, String currencyName, BigDecimal amount) {
+        return rechargeRepository.getRechargeByToAddressAndCurrencyNameAndAmount(toAddress, currencyName, amount);
+    }
+
+    @Override
+    public Recharge getRechargeByOrderId(String currencyName, String orderId) {
+        return rechargeRepository.getRechargeByOrderIdAndCurrencyName(orderId, currencyName);
+    }
+
+    @Override
+    public void updateRecharge(Recharge recharge) {
+        rechargeRepository.save(recharge);
+    }
+
+    @Override
+    public void saveCurrentHeight(Height height) {
+        heightRepository.save(height);
+    }
+
+    @Override
+    public void saveRecharge(Recharge recharge) {
+        rechargeRepository.save(recharge);
+    }
+
+    @Override
+    public List<Recharge> getWaitConfirmRecharge(String currencyName) {
+        return rechargeRepository.findRechargesByCurrencyNameAndUpchainStatus(currencyName, UpchainStatusEnum.WAITING_CONFIRM.getCode());
+    }
+
+    @Override
+    public void saveAccount(CurrencyAccount account) {
+        accountRepository.save(account);
+    }
+
+    @Override
+    public List<String> getRechargedAddresses(String currencyName) {
+        return rechargeRepository.findToAddressesByCurrencyNameAndUpchainStatus(currencyName, UpchainStatusEnum.SUCCESS.getCode());
+    }
+
+    @Override
+    public List<Recharge> getRechargesAfterId(String currencyName, Long id, int limit) {
+        return rechargeRepository.findRechargesByCurrencyNameAndIdGreaterThanOrderById(currencyName, id, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public List<Recharge> getRechargesAfterId(Long id, int limit) {
+        return rechargeRepository.findRechargesByIdGreaterThanOrderById(id, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public List<Recharge> getRechargesBeforeId(Long id, int limit) {
+        return rechargeRepository.findRechargesByIdLessThanOrderByIdDesc(id, PageRequest.of(0, limit));
+    }
+
+    @Override
+    public List<Recharge> getRechargesByIds(Collection<Long> ids) {
+        return ids.isEmpty() ? Collections.emptyList() : rechargeRepository.findAllById(ids);
+    }
+
+    @Override
+    public List<Recharge> getOpenRecharges(String currencyName, int limit) {
+        return rechargeRepository.findRechargesByCurrencyNameAndUpchainStatusInOrderById(currencyName, Arrays.asList(UpchainStatusEnum.NOT_UPCHAIN.getCode(),
+                UpchainStatusEnum.SEEN_IN_MEMPOOL.getCode()), PageRequest.of(0, limit));
+    }
+
+    @Override
+    public List<Recharge> getWaitConfirmRecharge(String currencyName, int maxHeight) {
+        return rechargeRepository.findRechargesByCurrencyNameAndUpchainStatusAndHeightLessThanEqual(currencyName,
+                UpchainStatusEnum.WAITING_CONFIRM.getCode(), maxHeight);
+    }
+
+    @Override
+    public List<Integer> getWaitConfirmHeights(String currencyName, int maxHeight) {
+        return rechargeRepository.findHeights(currencyName, UpchainStatusEnum.WAITING_CONFIRM.getCode(), maxHeight);
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int confirmRecharges(String currencyName, int checkpointHeight, Collection<String> blockHashes, int currentHeight) {
+        if (blockHashes.isEmpty()) {
+            return 0;
+        }
+        return rechargeRepository.confirmRecharges(currencyName, UpchainStatusEnum.WAITING_CONFIRM.getCode(), UpchainStatusEnum.SUCCESS.getCode(),
+                checkpointHeight, blockHashes, currentHeight, new Date());
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int updateWaitConfirmCount(String currencyName, int currentHeight) {
+        return rechargeRepository.updateCurrentConfirm(currencyName, UpchainStatusEnum.WAITING_CONFIRM.getCode(), currentHeight, new Date());
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean markSeenInMempool(Long id, String txHash, String fromAddress) {
+        return rechargeRepository.compareAndSetUpchainStatus(id, Arrays.asList(UpchainStatusEnum.NOT_UPCHAIN.getCode(),
+                UpchainStatusEnum.SEEN_IN_MEMPOOL.getCode()), UpchainStatusEnum.SEEN_IN_MEMPOOL.getCode(), txHash, fromAddress, new Date()) > 0;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public boolean revertSeenInMempool(Long id, String txHash) {
+        return rechargeRepository.compareAndClearTxHash(id, UpchainStatusEnum.SEEN_IN_MEMPOOL.getCode(), txHash,
+                UpchainStatusEnum.NOT_UPCHAIN.getCode(), new Date()) > 0;
+    }
+}
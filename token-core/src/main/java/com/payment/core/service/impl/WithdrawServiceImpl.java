@@ -0,0 +1,64 @@
+package com.payment.core.service.impl;
+
+import com.payment.core.config.ScannerConfiguration;
+import com.payment.core.entity.Withdraw;
+import com.payment.core.enums.UpchainStatusEnum;
+import com.payment.core.repository.WithdrawRepository;
+import com.payment.core.service.WithdrawService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+@Service
+@Profile("!" + ScannerConfiguration.PROFILE)
+public class WithdrawServiceImpl implements WithdrawService {
+
+    @Autowired
+    private WithdrawRepository withdrawRepository;
+
+    @Override
+    public Withdraw getWithdrawByOrderId(String currencyName, String orderId) {
+        return withdrawRepository.getWithdrawByOrderIdAndCurrencyName(orderId, currencyName);
+    }
+
+    @Override
+    public void saveWithdraw(Withdraw withdraw) {
+        withdrawRepository.save(withdraw);
+    }
+
+    @Override
+    public void saveWithdraws(List<Withdraw> withdraws) {
+        withdrawRepository.saveAll(withdraws);
+    }
+
+    @Override
+    public List<Withdraw> getQueuedWithdraws(String currencyName) {
+        return withdrawRepository.findWithdrawsByCurrencyNameAndUpchainStatusOrderById(currencyName, UpchainStatusEnum.NOT_UPCHAIN.getCode());
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public List<Withdraw> claimWithdraws(List<Withdraw> withdraws, Date upchainAt) {
+        List<Withdraw> claimed = new ArrayList<>(withdraws.size());
+        for (Withdraw withdraw : withdraws) {
+            if (withdrawRepository.compareAndSetUpchainStatus(withdraw.getId(), UpchainStatusEnum.NOT_UPCHAIN.getCode(),
+                    UpchainStatusEnum.WAITING_CONFIRM.getCode(), upchainAt) > 0) {
+                withdraw.setUpchainStatus(UpchainStatusEnum.WAITING_CONFIRM.getCode());
+                withdraw.setUpchainAt(upchainAt);
+                withdraw.setUpdatedAt(upchainAt);
+                claimed.add(withdraw);
+            }
+        }
+        return claimed;
+    }
+
+    @Override
+    public List<Withdraw> getWaitConfirmWithdraws(String currencyName) {
+        return withdrawRepository.findWithdrawsByCurrencyNameAndUpchainStatusOrderById(currencyName, UpchainStatusEnum.WAITING_CONFIRM.getCode());
+    }
+}
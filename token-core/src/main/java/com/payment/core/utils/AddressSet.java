@@ -0,0 +1,604 @@
+package com.payment.core.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 定长二进制地址的堆外哈希集合
+ * <p>
+ * 以String保存的地址每个在堆上占用100字节以上，几千万个充值地址会明显增加扫块进程的GC压力。
+ * 这里把地址按定长字节（以太坊20字节、Solana公钥32字节、比特币脚本哈希）保存在堆外内存或内存映射文件中，
+ * 使用开放寻址与线性探测，槽位数为2的幂，装载率超过3/4时容量翻倍；全零的槽位表示空，全零的地址单独记录在文件头中。
+ * <p>
+ * 通过{@link #open(Path, int, long)}打开的集合保存在文件中，重启后直接映射使用，不需要重新从数据库加载；
+ * 文件头记录了调用方已加载到的位置（{@link #getWatermark()}）。进程没有正常关闭时重新统计元素个数并把位置清零，由调用方全量补齐。
+ * 单个映射区域不能超过2GB，槽位按段映射。
+ * <p>
+ * 查询不创建对象，可以在多个线程中执行；写入只能在一个线程中执行。
+ */
+@Slf4j
+public class AddressSet implements Closeable {
+
+    private static final int MAGIC = 0x41445253;
+
+    private static final int VERSION = 1;
+
+    /**
+     * 文件头：magic、版本、地址字节数、是否正常关闭、槽位数、元素个数、已加载的位置、是否包含全零地址
+     */
+    private static final int HEADER_BYTES = 64;
+
+    private static final int MAGIC_OFFSET = 0;
+
+    private static final int VERSION_OFFSET = 4;
+
+    private static final int KEY_BYTES_OFFSET = 8;
+
+    private static final int CLEAN_OFFSET = 12;
+
+    private static final int CAPACITY_OFFSET = 16;
+
+    private static final int SIZE_OFFSET = 24;
+
+    private static final int WATERMARK_OFFSET = 32;
+
+    private static final int ZERO_KEY_OFFSET = 40;
+
+    private static final int MAX_SEGMENT_BYTES = 1 << 30;
+
+    private static final long MIN_CAPACITY = 1024;
+
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private final int keyBytes;
+
+    /**
+     * 地址按8字节拆分的个数，最后一个可能不足8字节
+     */
+    private final int words;
+
+    /**
+     * 持久化文件，堆外内存时为null
+     */
+    private final Path path;
+
+    /**
+     * 扩容时整体替换，查询线程使用替换前的表也能得到正确结果
+     */
+    private volatile Table table;
+
+    /**
+     * 每个线程复用的地址拆分结果
+     */
+    private final ThreadLocal<long[]> scratch;
+
+    private AddressSet(int keyBytes, Path path, Table table) {
+        this.keyBytes = keyBytes;
+        this.words = (keyBytes + 7) / 8;
+        this.path = path;
+        this.table = table;
+        this.scratch = ThreadLocal.withInitial(() -> new long[words]);
+    }
+
+    /**
+     * 在堆外内存中创建集合，进程退出后不保留
+     * @param keyBytes 地址的字节数
+     * @param expectedSize 预计的地址个数
+     */
+    public static AddressSet allocate(int keyBytes, long expectedSize) {
+        checkKeyBytes(keyBytes);
+        long capacity = capacityFor(expectedSize);
+        Table table = new Table(keyBytes, capacity, ByteBuffer.allocateDirect(HEADER_BYTES), null);
+        for (int i = 0; i < table.segments.length; i++) {
+            table.segments[i] = ByteBuffer.allocateDirect(table.segmentBytes());
+        }
+        table.initHeader();
+        return new AddressSet(keyBytes, null, table);
+    }
+
+    /**
+     * 打开文件中的集合，文件不存在时创建
+     * @param path 文件路径
+     * @param keyBytes 地址的字节数
+     * @param expectedSize 预计的地址个数，只在创建文件时使用
+     * @throws IOException 文件读写失败，或文件格式、地址字节数与参数不一致
+     */
+    public static AddressSet open(Path path, int keyBytes, long expectedSize) throws IOException {
+        checkKeyBytes(keyBytes);
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        if (!Files.exists(path) || Files.size(path) == 0) {
+            Table table = Table.map(path, keyBytes, capacityFor(expectedSize));
+            table.initHeader();
+            table.header.putInt(CLEAN_OFFSET, 0);
+            return new AddressSet(keyBytes, path, table);
+        }
+
+        //1. 校验文件头
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Table table;
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            if (header.getInt(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException("地址集合文件格式不正确：" + path);
+            }
+            if (header.getInt(KEY_BYTES_OFFSET) != keyBytes) {
+                throw new IOException("地址集合文件的地址字节数为" + header.getInt(KEY_BYTES_OFFSET) + "，需要" + keyBytes + "：" + path);
+            }
+            long capacity = header.getLong(CAPACITY_OFFSET);
+            if (Long.bitCount(capacity) != 1 || channel.size() != HEADER_BYTES + capacity * keyBytes) {
+                throw new IOException("地址集合文件长度与容量不一致：" + path);
+            }
+            table = new Table(keyBytes, capacity, header, channel);
+            table.mapSegments();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        //2. 上次没有正常关闭时，元素个数与已加载的位置可能不准确
+        if (table.header.getInt(CLEAN_OFFSET) == 0) {
+            long size = table.count();
+            log.warn("地址集合文件{}上次没有正常关闭，重新统计共{}个地址，需要重新加载", path, size);
+            table.header.putLong(SIZE_OFFSET, size);
+            table.header.putLong(WATERMARK_OFFSET, 0);
+        }
+        table.header.putInt(CLEAN_OFFSET, 0);
+        return new AddressSet(keyBytes, path, table);
+    }
+
+    public int getKeyBytes() {
+        return keyBytes;
+    }
+
+    /**
+     * 地址个数
+     */
+    public long size() {
+        Table current = table;
+        return current.header.getLong(SIZE_OFFSET) + current.header.getLong(ZERO_KEY_OFFSET);
+    }
+
+    /**
+     * 槽位数
+     */
+    public long capacity() {
+        return table.capacity;
+    }
+
+    /**
+     * 调用方已加载到的位置（例如充值单id），随集合一起持久化
+     */
+    public long getWatermark() {
+        return table.header.getLong(WATERMARK_OFFSET);
+    }
+
+    public void setWatermark(long watermark) {
+        table.header.putLong(WATERMARK_OFFSET, watermark);
+    }
+
+    /**
+     * 是否包含地址
+     * @param key 地址所在的字节数组
+     * @param offset 地址的起始位置，从该位置起读取keyBytes个字节
+     */
+    public boolean contains(byte[] key, int offset) {
+        long[] words = scratch.get();
+        toWords(key, offset, words);
+        return find(table, words) >= 0;
+    }
+
+    public boolean contains(byte[] key) {
+        return key != null && key.length == keyBytes && contains(key, 0);
+    }
+
+    /**
+     * 是否包含十六进制形式的地址，不区分大小写
+     * @param hex 地址（可以带0x前缀），长度不是keyBytes的2倍或包含非十六进制字符时返回false
+     */
+    public boolean containsHex(CharSequence hex) {
+        long[] words = scratch.get();
+        return toWords(hex, words) && find(table, words) >= 0;
+    }
+
+    /**
+     * 添加地址
+     * @return 地址原来不在集合中时为true
+     * @throws UncheckedIOException 扩容时写文件失败
+     */
+    public boolean add(byte[] key, int offset) {
+        long[] words = scratch.get();
+        toWords(key, offset, words);
+        return add(words);
+    }
+
+    public boolean add(byte[] key) {
+        if (key == null || key.length != keyBytes) {
+            throw new IllegalArgumentException("地址长度不是" + keyBytes + "字节");
+        }
+        return add(key, 0);
+    }
+
+    /**
+     * 添加十六进制形式的地址
+     * @param hex 地址（可以带0x前缀）
+     * @return 地址原来不在集合中时为true
+     * @throws IllegalArgumentException 地址长度不是keyBytes的2倍或包含非十六进制字符
+     */
+    public boolean addHex(CharSequence hex) {
+        long[] words = scratch.get();
+        if (!toWords(hex, words)) {
+            throw new IllegalArgumentException("地址格式不正确：" + hex);
+        }
+        return add(words);
+    }
+
+    /**
+     * 把映射文件中修改的内容写入磁盘
+     */
+    public void flush() {
+        table.force();
+    }
+
+    /**
+     * 写入磁盘并标记为正常关闭，之后不能再使用
+     */
+    @Override
+    public void close() throws IOException {
+        Table current = table;
+        current.header.putInt(CLEAN_OFFSET, 1);
+        current.force();
+        if (current.channel != null) {
+            current.channel.close();
+        }
+    }
+
+    private boolean add(long[] words) {
+        if (isZero(words)) {
+            boolean added = table.header.getLong(ZERO_KEY_OFFSET) == 0;
+            table.header.putLong(ZERO_KEY_OFFSET, 1);
+            return added;
+        }
+        Table current = table;
+        long slot = find(current, words);
+        if (slot >= 0) {
+            return false;
+        }
+        long size = current.header.getLong(SIZE_OFFSET);
+        if ((size + 1) * 4 > current.capacity * 3) {
+            current = grow(current);
+            slot = find(current, words);
+        }
+        current.write(-slot - 1, words);
+        current.header.putLong(SIZE_OFFSET, size + 1);
+        return true;
+    }
+
+    /**
+     * 查找地址
+     * @return 地址所在的槽位；不存在时为-(空槽位 + 1)
+     */
+    private long find(Table table, long[] words) {
+        if (isZero(words)) {
+            return table.header.getLong(ZERO_KEY_OFFSET) != 0 ? 0 : -1;
+        }
+        long mask = table.capacity - 1;
+        long slot = hash(words) & mask;
+        while (true) {
+            if (table.matches(slot, words)) {
+                return slot;
+            }
+            if (table.isEmpty(slot)) {
+                return -slot - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * 容量翻倍：持久化的集合先写入临时文件，再原子替换原文件
+     */
+    private Table grow(Table old) {
+        long capacity = old.capacity * 2;
+        try {
+            Table grown;
+            Path target = null;
+            if (path == null) {
+                grown = new Table(keyBytes, capacity, ByteBuffer.allocateDirect(HEADER_BYTES), null);
+                for (int i = 0; i < grown.segments.length; i++) {
+                    grown.segments[i] = ByteBuffer.allocateDirect(grown.segmentBytes());
+                }
+            } else {
+                target = Paths.get(path + ".tmp");
+                Files.deleteIfExists(target);
+                grown = Table.map(target, keyBytes, capacity);
+            }
+            grown.initHeader();
+            grown.header.putInt(CLEAN_OFFSET, 0);
+            grown.header.putLong(WATERMARK_OFFSET, old.header.getLong(WATERMARK_OFFSET));
+            grown.header.putLong(ZERO_KEY_OFFSET, old.header.getLong(ZERO_KEY_OFFSET));
+
+            long[] words = new long[this.words];
+            for (long slot = 0; slot < old.capacity; slot++) {
+                if (!old.isEmpty(slot)) {
+                    old.read(slot, words);
+                    grown.write(-find(grown, words) - 1, words);
+                }
+            }
+            grown.header.putLong(SIZE_OFFSET, old.header.getLong(SIZE_OFFSET));
+
+            if (target != null) {
+                grown.force();
+                Files.move(target, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                old.channel.close();
+            }
+            log.info("地址集合扩容：{}个地址，槽位数{}->{}", old.header.getLong(SIZE_OFFSET), old.capacity, capacity);
+            table = grown;
+            return grown;
+        } catch (IOException e) {
+            throw new UncheckedIOException("地址集合扩容失败", e);
+        }
+    }
+
+    private void toWords(byte[] key, int offset, long[] words) {
+        for (int word = 0; word < this.words; word++) {
+            long value = 0;
+            int end = Math.min(keyBytes, word * 8 + 8);
+            for (int i = word * 8; i < end; i++) {
+                value = value << 8 | (key[offset + i] & 0xff);
+            }
+            words[word] = value;
+        }
+    }
+
+    private boolean toWords(CharSequence hex, long[] words) {
+        if (hex == null) {
+            return false;
+        }
+        int length = hex.length();
+        int start = length >= 2 && hex.charAt(0) == '0' && (hex.charAt(1) == 'x' || hex.charAt(1) == 'X') ? 2 : 0;
+        if (length - start != keyBytes * 2) {
+            return false;
+        }
+        for (int word = 0; word < this.words; word++) {
+            long value = 0;
+            int end = start + Math.min(keyBytes, word * 8 + 8) * 2;
+            for (int i = start + word * 16; i < end; i++) {
+                char c = hex.charAt(i);
+                if (c >= 128 || HEX_VALUES[c] < 0) {
+                    return false;
+                }
+                value = value << 4 | HEX_VALUES[c];
+            }
+            words[word] = value;
+        }
+        return true;
+    }
+
+    private static boolean isZero(long[] words) {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 地址本身是哈希值或公钥，分布均匀，合并各段后做一次murmur3的fmix64打散
+     */
+    private static long hash(long[] words) {
+        long h = words[0];
+        for (int i = 1; i < words.length; i++) {
+            h = h * 0x9e3779b97f4a7c15L + words[i];
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long capacityFor(long expectedSize) {
+        long capacity = MIN_CAPACITY;
+        while (capacity * 3 < Math.max(expectedSize, 1) * 4) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static void checkKeyBytes(int keyBytes) {
+        if (keyBytes <= 0 || keyBytes > 64) {
+            throw new IllegalArgumentException("地址字节数需要在1到64之间：" + keyBytes);
+        }
+    }
+
+    /**
+     * 槽位表：文件头与按段划分的槽位
+     */
+    private static class Table {
+
+        private final int keyBytes;
+
+        private final long capacity;
+
+        private final ByteBuffer header;
+
+        private final ByteBuffer[] segments;
+
+        /**
+         * 每段槽位数的位数
+         */
+        private final int segmentShift;
+
+        private final FileChannel channel;
+
+        private Table(int keyBytes, long capacity, ByteBuffer header, FileChannel channel) {
+            this.keyBytes = keyBytes;
+            this.capacity = capacity;
+            this.header = header;
+            this.channel = channel;
+            int shift = 0;
+            while ((1L << (shift + 1)) * keyBytes <= MAX_SEGMENT_BYTES && (1L << (shift + 1)) <= capacity) {
+                shift++;
+            }
+            this.segmentShift = shift;
+            this.segments = new ByteBuffer[(int) (capacity >>> shift)];
+        }
+
+        /**
+         * 创建文件并映射，文件内容为全零
+         */
+        private static Table map(Path path, int keyBytes, long capacity) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                Table table = new Table(keyBytes, capacity, channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES), channel);
+                table.mapSegments();
+                return table;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        private void mapSegments() throws IOException {
+            long position = HEADER_BYTES;
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, segmentBytes());
+                position += segmentBytes();
+            }
+        }
+
+        private int segmentBytes() {
+            return (int) ((1L << segmentShift) * keyBytes);
+        }
+
+        private void initHeader() {
+            header.putInt(MAGIC_OFFSET, MAGIC);
+            header.putInt(VERSION_OFFSET, VERSION);
+            header.putInt(KEY_BYTES_OFFSET, keyBytes);
+            header.putLong(CAPACITY_OFFSET, capacity);
+            header.putLong(SIZE_OFFSET, 0);
+            header.putLong(WATERMARK_OFFSET, 0);
+            header.putLong(ZERO_KEY_OFFSET, 0);
+        }
+
+        private ByteBuffer segment(long slot) {
+            return segments[(int) (slot >>> segmentShift)];
+        }
+
+        private int position(long slot) {
+            return (int) ((slot & ((1L << segmentShift) - 1)) * keyBytes);
+        }
+
+        private boolean matches(long slot, long[] words) {
+            ByteBuffer segment = segment(slot);
+            int position = position(slot);
+            for (int word = 0; word < words.length; word++) {
+                if (readWord(segment, position, word) != words[word]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isEmpty(long slot) {
+            ByteBuffer segment = segment(slot);
+            int position = position(slot);
+            for (int word = 0; word * 8 < keyBytes; word++) {
+                if (readWord(segment, position, word) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void read(long slot, long[] words) {
+            ByteBuffer segment = segment(slot);
+            int position = position(slot);
+            for (int word = 0; word < words.length; word++) {
+                words[word] = readWord(segment, position, word);
+            }
+        }
+
+        private void write(long slot, long[] words) {
+            ByteBuffer segment = segment(slot);
+            int position = position(slot);
+            for (int word = 0; word < words.length; word++) {
+                int offset = position + word * 8;
+                int length = Math.min(8, keyBytes - word * 8);
+                if (length == 8) {
+                    segment.putLong(offset, words[word]);
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        segment.put(offset + i, (byte) (words[word] >>> ((length - 1 - i) * 8)));
+                    }
+                }
+            }
+        }
+
+        private long readWord(ByteBuffer segment, int position, int word) {
+            int offset = position + word * 8;
+            int length = Math.min(8, keyBytes - word * 8);
+            if (length == 8) {
+                return segment.getLong(offset);
+            }
+            if (length == 4) {
+                return segment.getInt(offset) & 0xffffffffL;
+            }
+            long value = 0;
+            for (int i = 0; i < length; i++) {
+                value = value << 8 | (segment.get(offset + i) & 0xff);
+            }
+            return value;
+        }
+
+        /**
+         * 统计非空槽位数
+         */
+        private long count() {
+            long size = 0;
+            for (long slot = 0; slot < capacity; slot++) {
+                if (!isEmpty(slot)) {
+                    size++;
+                }
+            }
+            return size;
+        }
+
+        private void force() {
+            if (channel == null) {
+                return;
+            }
+            for (ByteBuffer segment : segments) {
+                ((MappedByteBuffer) segment).force();
+            }
+            ((MappedByteBuffer) header).force();
+        }
+    }
+}
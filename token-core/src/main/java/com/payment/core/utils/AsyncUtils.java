@@ -0,0 +1,56 @@
+package com.payment.core.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * 异步调用工具
+ */
+@Slf4j
+public class AsyncUtils {
+
+    /**
+     * 以固定窗口流水线方式对每个元素发起异步调用，同时在途的调用不超过maxInflight个
+     *
+     * @param items 元素列表
+     * @param maxInflight 最大在途调用数
+     * @param call 异步调用
+     * @return 与items一一对应的结果，调用失败的位置为null
+     */
+    public static <T, R> List<R> pipeline(List<T> items, int maxInflight, Function<T, CompletableFuture<R>> call) {
+        List<R> results = new ArrayList<>(items.size());
+        Deque<CompletableFuture<R>> inflight = new ArrayDeque<>();
+        int next = 0;
+        for (int i = 0; i < items.size(); i++) {
+            while (next < items.size() && inflight.size() < Math.max(1, maxInflight)) {
+                inflight.add(start(items.get(next++), call));
+            }
+            try {
+                results.add(inflight.poll().join());
+            } catch (RuntimeException e) {
+                log.warn("异步调用失败：{}，{}", items.get(i), e.getMessage());
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 发起调用时同步抛出的异常也转为失败的future，与异步失败统一处理
+     */
+    private static <T, R> CompletableFuture<R> start(T item, Function<T, CompletableFuture<R>> call) {
+        try {
+            return call.apply(item);
+        } catch (RuntimeException e) {
+            CompletableFuture<R> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+}
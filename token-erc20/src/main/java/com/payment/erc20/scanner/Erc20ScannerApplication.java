@@ -0,0 +1,26 @@
+package com.payment.erc20.scanner;
+
+import com.payment.core.config.ScannerConfiguration;
+import com.payment.erc20.task.Erc20ScanTask;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * 只运行ERC20代币扫块任务的启动类
+ * <p>
+ * 不启动Web容器与JPA，充值记录通过JdbcTemplate读写，适合与对外接口服务分开部署，
+ * 只注册扫块与确认任务，归集任务只在对外接口服务中运行，避免重复归集。
+ * 推荐使用较小的堆启动，例如 java -Xmx96m -cp ... com.payment.erc20.scanner.Erc20ScannerApplication
+ */
+@Configuration
+@Profile(ScannerConfiguration.PROFILE)
+@Import({ScannerConfiguration.class, Erc20ScanTask.class})
+@ComponentScan("com.payment.ethereum")
+public class Erc20ScannerApplication {
+
+    public static void main(String[] args) {
+        ScannerConfiguration.run(Erc20ScannerApplication.class, args);
+    }
+}
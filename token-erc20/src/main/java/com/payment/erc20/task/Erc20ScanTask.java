@@ -1,40 +1,64 @@
 package com.payment.erc20.task;
 
+import com.payment.core.config.ScannerConfiguration;
 import com.payment.core.entity.Currency;
 import com.payment.core.entity.Height;
 import com.payment.core.entity.Recharge;
 import com.payment.core.enums.UpchainStatusEnum;
+import com.payment.core.exception.AssertException;
 import com.payment.core.service.CurrencyService;
 import com.payment.core.service.RechargeService;
 import com.payment.core.utils.AssertUtils;
+import com.payment.ethereum.confirm.RechargeConfirmer;
+import com.payment.ethereum.filter.RecipientTopicFilter;
+import com.payment.ethereum.mempool.MempoolWatcher;
+import com.payment.ethereum.rpc.EthereumSubscriber;
 import com.payment.ethereum.service.EthereumService;
+import com.payment.ethereum.utils.LogsBloom;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
-import org.web3j.abi.FunctionReturnDecoder;
-import org.web3j.abi.TypeReference;
-import org.web3j.abi.datatypes.Address;
-import org.web3j.abi.datatypes.Function;
-import org.web3j.abi.datatypes.Type;
-import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.crypto.WalletUtils;
 import org.web3j.protocol.core.methods.response.EthBlock;
-import org.web3j.protocol.core.methods.response.Transaction;
-import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.utils.Numeric;
 
+import javax.annotation.PostConstruct;
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
 
 @Slf4j
 @Component
+@ConditionalOnProperty(name = ScannerConfiguration.SCAN_ENABLED, havingValue = "true", matchIfMissing = true)
 public class Erc20ScanTask {
 
+    /**
+     * pay_currency中代币的货币类型
+     */
+    private static final String CURRENCY_TYPE_TOKEN = "token";
+
+    /**
+     * pay_currency中开启的币种状态
+     */
+    private static final int CURRENCY_STATUS_ENABLED = 1;
+
     @Value("${ethereum.currencyName}")
     private String currencyName;
 
@@ -47,142 +71,476 @@ public class Erc20ScanTask {
     @Autowired
     private RechargeService rechargeService;
 
+    @Autowired
+    private RechargeConfirmer rechargeConfirmer;
+
+    /**
+     * 每次eth_getLogs查询的最大区块数
+     */
+    @Value("${ethereum.scan.log-range:2000}")
+    private int maxLogRange;
+
+    /**
+     * 是否按充值地址过滤Transfer事件，开启后节点只返回转入充值地址的事件
+     */
+    @Value("${ethereum.scan.address-filter:true}")
+    private boolean addressFilter;
+
+    @Autowired
+    private RecipientTopicFilter recipientTopicFilter;
+
+    /**
+     * 是否先通过区块头的logsBloom筛选可能包含充值的区块，只对这些区块查询事件日志
+     */
+    @Value("${ethereum.scan.bloom-filter:false}")
+    private boolean bloomFilter;
+
+    /**
+     * 开启logsBloom筛选时每次获取的区块头数
+     */
+    @Value("${ethereum.scan.bloom-range:200}")
+    private int bloomRange;
+
+    /**
+     * 当前每次eth_getLogs查询的区块数，节点限制返回结果数量时减半，查询成功后逐步恢复到maxLogRange
+     */
+    private int logRange;
+
+    @Autowired
+    private EthereumSubscriber ethereumSubscriber;
+
+    @Autowired
+    private MempoolWatcher mempoolWatcher;
+
+    /**
+     * WebSocket推送正常时定时轮询的最长间隔（毫秒），兜底推送丢失的事件
+     */
+    @Value("${ethereum.ws.backstop-interval:60000}")
+    private long backstopInterval;
+
+    private volatile long scannedAt;
+
+    /**
+     * 所有代币已扫描到的区块高度
+     */
+    private volatile long scannedHeight = -1;
+
+    /**
+     * 推送的Transfer事件所在的最大区块高度
+     */
+    private volatile long logHeight = -1;
+
+    /**
+     * 当前订阅的代币合约地址与事件日志订阅
+     */
+    private List<String> subscribedContracts = Collections.emptyList();
+
+    private EthereumSubscriber.Subscription logSubscription;
+
     /**
-     * 扫描链上的交易是否和数据库中的充值单是否匹配，如果匹配则修改对应状态。
+     * 配置了WebSocket地址时订阅新区块，代币合约的Transfer事件订阅在扫块时按当前代币建立；开启时监听交易池
+     */
+    @PostConstruct
+    public void subscribe() {
+        if (ethereumSubscriber.isEnabled()) {
+            ethereumSubscriber.subscribeNewHeads(this::onNewHead);
+        }
+        mempoolWatcher.watch(this::getTokens);
+    }
+
+    /**
+     * 扫描链上代币合约的Transfer事件是否和数据库中的充值单是否匹配，如果匹配则修改对应状态。
+     * 按区块范围查询事件日志，不需要下载完整区块与交易回执；通过transferFrom或路由合约转入的充值同样会产生Transfer事件。
+     * 失败的交易不会产生事件日志，事件日志本身也排除了假充值。
+     * 所有开启的代币在同一次查询中扫描，事件按合约地址分发到对应的货币，使用该货币的精度与确认数。
      * 在最近的300个区块的出块时间一般平均为15秒。
      * 定时任务使用10秒间隔（10 * 1000）。
+     * WebSocket推送正常时由推送驱动扫块，定时任务只按backstopInterval兜底。
      * https://txstreet.com/
      */
     @Scheduled(fixedDelay = 10 * 1000)
     public void scanOrder() {
-        //获取当前货币的配置信息
-        Currency tokenInfo = currencyService.findCurrency(currencyName);
-        AssertUtils.isNotNull(tokenInfo, "数据库未配置货币信息：" + currencyName);
-
-        //获取到当前与网络区块高度
-        Long networkBlockHeight = ethereumService.getBlockchainHeight();
-        Height heightObj = rechargeService.getCurrentHeight(currencyName);
-        if(heightObj == null) {
-            Height height = new Height();
-            height.setCurrencyId(tokenInfo.getId());
-            height.setCurrencyName(tokenInfo.getCurrencyName());
-            height.setCurrentHeight(networkBlockHeight.intValue());
-            height.setUpdatedAt(new Date());
-            rechargeService.saveCurrentHeight(height);
+        if (ethereumSubscriber.isHealthy() && System.currentTimeMillis() - scannedAt < backstopInterval) {
             return;
         }
+        scan(ethereumService.getBlockchainHeight());
+    }
 
-        Integer currentHeight = heightObj.getCurrentHeight();
+    /**
+     * 新区块推送：只有推送过尚未扫描的Transfer事件，或超过兜底间隔时才扫块，没有代币转账的区块不查询事件日志
+     */
+    private void onNewHead(long height) {
+        if (logHeight <= scannedHeight && System.currentTimeMillis() - scannedAt < backstopInterval) {
+            return;
+        }
+        onPush(height);
+    }
+
+    /**
+     * Transfer事件推送（重连成功后以当前区块高度推送一次，补扫断线期间的区块）
+     */
+    private void onTransferLog(long height) {
+        logHeight = Math.max(logHeight, height);
+        onPush(Math.max(height, ethereumSubscriber.getLatestHead()));
+    }
+
+    private void onPush(long height) {
+        try {
+            scan(height);
+        } catch (AssertException e) {
+            log.debug("区块{}：{}", height, e.getMessage());
+        }
+    }
+
+    /**
+     * 代币合约变化时重新订阅Transfer事件，不按收款地址过滤，充值地址增加时不需要重新订阅
+     */
+    private void updateLogSubscription(List<String> contractAddresses) {
+        if (!ethereumSubscriber.isEnabled() || contractAddresses.equals(subscribedContracts)) {
+            return;
+        }
+        if (logSubscription != null) {
+            ethereumSubscriber.unsubscribe(logSubscription);
+        }
+        logSubscription = ethereumSubscriber.subscribeLogs(contractAddresses,
+                Collections.singletonList(ethereumService.getTransferEventSignature()), this::onTransferLog);
+        subscribedContracts = contractAddresses;
+    }
+
+    /**
+     * 扫描到指定的网络区块高度，定时任务与推送可能同时触发，串行执行
+     * @param networkBlockHeight 网络区块高度
+     */
+    private synchronized void scan(Long networkBlockHeight) {
+        scannedAt = System.currentTimeMillis();
+
+        //获取所有需要扫描的代币配置信息
+        List<Currency> tokens = getTokens();
+        AssertUtils.isFalse(tokens.isEmpty(), "数据库未配置货币信息：" + currencyName);
+
+        //获取每个代币已扫描的区块高度，新增的代币从当前网络高度开始扫描，从所有代币中最低的高度开始查询
+        Map<String, Currency> tokensByContract = new LinkedHashMap<>();
+        Map<String, Height> heights = new HashMap<>();
+        long currentHeight = Long.MAX_VALUE;
+        for (Currency token : tokens) {
+            Height heightObj = rechargeService.getCurrentHeight(token.getCurrencyName());
+            if(heightObj == null) {
+                heightObj = new Height();
+                heightObj.setCurrencyId(token.getId());
+                heightObj.setCurrencyName(token.getCurrencyName());
+                heightObj.setCurrentHeight(networkBlockHeight.intValue());
+                heightObj.setUpdatedAt(new Date());
+                rechargeService.saveCurrentHeight(heightObj);
+            }
+            String contractAddress = token.getContractAddress().toLowerCase();
+            tokensByContract.put(contractAddress, token);
+            heights.put(contractAddress, heightObj);
+            currentHeight = Math.min(currentHeight, heightObj.getCurrentHeight());
+        }
+        List<String> contractAddresses = new ArrayList<>(tokensByContract.keySet());
+        updateLogSubscription(contractAddresses);
 
         //相隔1个区块不进行扫描
         AssertUtils.isFalse(networkBlockHeight - currentHeight <= 1, "不存在需要扫描的区块");
 
-        //扫描区块中的交易
-        for(Integer i = currentHeight + 1; i <= networkBlockHeight; i++) {
-            log.info("开始扫描区块：{}", i);
-            //通过区块高度获取到区块中的交易信息
-            EthBlock.Block block = ethereumService.getBlockByNumber(i.longValue());
-            List<EthBlock.TransactionResult> transactionResults = block.getTransactions();
-
-            for (EthBlock.TransactionResult transactionResult : transactionResults) {
-                EthBlock.TransactionObject transactionObject = (EthBlock.TransactionObject) transactionResult;
-                Transaction transaction = transactionObject.get();
-
-                //通过交易Hash获取到交易的回执信息
-                TransactionReceipt txReceipt = ethereumService.getTransactionReceipt(transaction.getHash());
-                if(txReceipt == null) {
-                    continue;
-                }
-
-                //判断状态是否是成功(1成功 0失败)
-                if(txReceipt.getStatus().equalsIgnoreCase("0x1")) {
-                    String input = transaction.getInput();
-                    String toContractAddress = transaction.getTo();
-                    if(!StringUtils.isEmpty(input) && input.length() >= 138 && tokenInfo.getContractAddress().equalsIgnoreCase(toContractAddress)) {
-                        String data = input.substring(0, 9);
-                        data = data + input.substring(17);
-                        Function function = new Function("transfer",
-                                Collections.emptyList(),
-                                Arrays.asList(new TypeReference<Address>() {
-                                }, new TypeReference<Uint256>() {
-                                }));
-
-                        List<Type> params = FunctionReturnDecoder.decode(data, function.getOutputParameters());
-
-                        //获取充币地址和金额
-                        String toAddress = params.get(0).getValue().toString();
-                        String amount = params.get(1).getValue().toString();
-
-                        BigDecimal amountDecimal = new BigDecimal(amount).movePointLeft(tokenInfo.getCurrencyDecimalsNum());
-                        Recharge recharge = rechargeService.getRecharge(toAddress, currencyName, amountDecimal);
-                        if(recharge == null) {
-                            log.info("地址不在库中：{}", transaction.getTo());
-                            continue;
-                        }
-
-                        //判断是否是假充值
-                        boolean flag = ethereumService.checkEventLog(i, tokenInfo.getContractAddress(), transaction.getHash());
-                        if(!flag) {
-                            continue;
-                        }
-
-                        recharge.setFromAddress(transaction.getFrom());
-                        recharge.setTxHash(transaction.getHash());
-                        recharge.setCurrentConfirm(transaction.getBlockNumber().subtract(BigInteger.valueOf(i)).intValue());
-                        recharge.setHeight(transaction.getBlockNumber().intValue());
-                        recharge.setUpchainAt(new Date(block.getTimestamp().longValue()));
-                        recharge.setUpdatedAt(new Date());
-
-                        if(i - block.getNumber().intValue() >= tokenInfo.getConfirms()) {
-                            recharge.setUpchainStatus(UpchainStatusEnum.SUCCESS.getCode());
-                            recharge.setUpchainSuccessAt(new Date(block.getTimestamp().longValue()));
-                        }else {
-                            recharge.setUpchainStatus(UpchainStatusEnum.WAITING_CONFIRM.getCode());
-                        }
-                        rechargeService.updateRecharge(recharge);
-                    }
-                }
+        //按充值地址分组查询，每组地址作为topics[2]的可选列表；没有充值地址时不需要查询
+        List<String> currencyNames = new ArrayList<>(tokens.size());
+        for (Currency token : tokens) {
+            currencyNames.add(token.getCurrencyName());
+        }
+        List<List<String>> topicChunks = addressFilter ? recipientTopicFilter.refresh(currencyNames, currentHeight + 1) : null;
+        if (topicChunks != null && topicChunks.isEmpty()) {
+            saveHeights(heights.values(), networkBlockHeight);
+            scannedHeight = networkBlockHeight;
+            return;
+        }
+
+        //按区块范围查询所有代币合约的Transfer事件，节点限制返回结果数量或区块范围时把范围减半后重试
+        LogsBloom.Query bloomQuery = bloomFilter ? buildBloomQuery(contractAddresses, topicChunks) : null;
+        if (logRange <= 0) {
+            logRange = maxLogRange;
+        }
+        if (topicChunks != null) {
+            rescanMissed(tokensByContract, contractAddresses, currentHeight, networkBlockHeight);
+        }
+        forEachLogRange(currentHeight + 1, networkBlockHeight, bloomQuery == null ? Integer.MAX_VALUE : bloomRange,
+                (fromHeight, toHeight) -> bloomQuery == null ? getTransferLogs(fromHeight, toHeight, contractAddresses, topicChunks)
+                        : getTransferLogsByBloom(fromHeight, toHeight, contractAddresses, topicChunks, bloomQuery),
+                (fromHeight, toHeight, logs) -> {
+                    log.info("扫描区块{}-{}，{}个代币的Transfer事件{}个", fromHeight, toHeight, contractAddresses.size(), logs.size());
+                    updateRecharges(tokensByContract, heights, logs, networkBlockHeight);
+
+                    //每个范围处理完成后更新区块高度，追块时中途失败不需要从头扫描
+                    saveHeights(heights.values(), toHeight);
+                });
+        scannedHeight = networkBlockHeight;
+    }
+
+    /**
+     * 按区块范围逐段查询事件日志并处理，节点限制返回结果数量或区块范围时把范围减半后重试，
+     * 查询成功后逐步扩大范围，每次扩大四分之一，避免刚缩小就再次超过节点限制
+     * @param fromHeight 起始区块高度
+     * @param toHeight 结束区块高度
+     * @param maxRange 每段的最大区块数，不超过当前的logRange
+     * @param query 查询一段区块的事件日志
+     * @param handler 处理一段区块的事件日志
+     */
+    private void forEachLogRange(long fromHeight, long toHeight, int maxRange, BiFunction<Long, Long, List<Log>> query, LogRangeHandler handler) {
+        while (fromHeight <= toHeight) {
+            long rangeTo = Math.min(toHeight, fromHeight + Math.min(logRange, maxRange) - 1);
+            List<Log> logs;
+            try {
+                logs = query.apply(fromHeight, rangeTo);
+            } catch (CompletionException e) {
+                String message = e.getCause() == null ? e.getMessage() : e.getCause().getMessage();
+                AssertUtils.isTrue(rangeTo > fromHeight, "查询区块" + fromHeight + "的事件日志失败：" + message);
+                logRange = (int) Math.max(1, (rangeTo - fromHeight + 1) / 2);
+                log.warn("查询区块{}-{}的事件日志失败，缩小查询范围到{}个区块：{}", fromHeight, rangeTo, logRange, message);
+                continue;
             }
+            handler.handle(fromHeight, rangeTo, logs);
+            fromHeight = rangeTo + 1;
+            logRange = Math.min(maxLogRange, logRange + Math.max(1, logRange / 4));
         }
+    }
 
-        //更新区块高度
-        heightObj.setCurrentHeight(networkBlockHeight.intValue());
-        heightObj.setUpdatedAt(new Date());
-        rechargeService.saveCurrentHeight(heightObj);
+    /**
+     * 从头读取充值单时发现的漏扫地址，单独查询这些地址在已扫描区块中的Transfer事件，完成后才清空漏扫地址；
+     * 与正常扫块一样按logRange自适应缩小查询范围
+     * @param scannedHeight 所有代币已扫描到的最低区块高度
+     */
+    private void rescanMissed(Map<String, Currency> tokensByContract, List<String> contractAddresses, long scannedHeight, long networkBlockHeight) {
+        long missedFromHeight = recipientTopicFilter.getMissedFromHeight();
+        if (missedFromHeight < 0) {
+            return;
+        }
+
+        //重新扫描的区块对所有代币都视为未扫描，只用于过滤，不保存
+        Map<String, Height> rescanHeights = new HashMap<>();
+        for (Map.Entry<String, Currency> entry : tokensByContract.entrySet()) {
+            Height heightObj = new Height();
+            heightObj.setCurrencyName(entry.getValue().getCurrencyName());
+            heightObj.setCurrentHeight((int) missedFromHeight - 1);
+            rescanHeights.put(entry.getKey(), heightObj);
+        }
+        List<List<String>> missedChunks = recipientTopicFilter.getMissedChunks();
+        forEachLogRange(missedFromHeight, scannedHeight, Integer.MAX_VALUE,
+                (fromHeight, toHeight) -> getTransferLogs(fromHeight, toHeight, contractAddresses, missedChunks),
+                (fromHeight, toHeight, logs) -> {
+                    log.info("重新扫描漏扫地址的区块{}-{}，Transfer事件{}个", fromHeight, toHeight, logs.size());
+                    updateRecharges(tokensByContract, rescanHeights, logs, networkBlockHeight);
+                });
+        recipientTopicFilter.clearMissed();
     }
 
+    private List<Currency> getTokens() {
+        return findTokens(currencyService, currencyName);
+    }
+
+    /**
+     * 需要扫描与归集的代币：pay_currency中所有开启的代币，以及当前进程配置的货币。
+     * 合约地址不是以太坊地址的代币（其他链上的代币）不扫描。
+     * @param currencyService 币种服务
+     * @param currencyName 当前进程配置的货币名称
+     * @return 代币配置
+     */
+    static List<Currency> findTokens(CurrencyService currencyService, String currencyName) {
+        Map<String, Currency> tokens = new LinkedHashMap<>();
+        Currency configured = currencyService.findCurrency(currencyName);
+        if (configured != null) {
+            tokens.put(configured.getCurrencyName(), configured);
+        }
+        for (Currency currency : currencyService.findCurrencies(CURRENCY_TYPE_TOKEN, CURRENCY_STATUS_ENABLED)) {
+            if (WalletUtils.isValidAddress(currency.getContractAddress())) {
+                tokens.putIfAbsent(currency.getCurrencyName(), currency);
+            }
+        }
+        return new ArrayList<>(tokens.values());
+    }
 
     /**
-     * 确认交易，将数据库中状态为待确认的充值单再次去链上查询是否确认数超过了配置确认数。
+     * 更新已扫描的区块高度，高度已经超过toHeight的代币（新增的代币）不更新
+     */
+    private void saveHeights(Collection<Height> heights, long toHeight) {
+        for (Height heightObj : heights) {
+            if (heightObj.getCurrentHeight() < toHeight) {
+                heightObj.setCurrentHeight((int) toHeight);
+                heightObj.setUpdatedAt(new Date());
+                rechargeService.saveCurrentHeight(heightObj);
+            }
+        }
+    }
+
+    /**
+     * 查询区块范围内的Transfer事件，按收款地址过滤时每组地址一次eth_getLogs，同时发出
+     * @param contractAddresses 代币合约地址
+     * @param topicChunks 收款地址topic分组，为null时查询合约的全部Transfer事件
+     */
+    private List<Log> getTransferLogs(long fromHeight, long toHeight, List<String> contractAddresses, List<List<String>> topicChunks) {
+        if (topicChunks == null) {
+            return ethereumService.getTransferLogsAsync(fromHeight, toHeight, contractAddresses, null).join();
+        }
+        List<CompletableFuture<List<Log>>> futures = new ArrayList<>(topicChunks.size());
+        for (List<String> topics : topicChunks) {
+            futures.add(ethereumService.getTransferLogsAsync(fromHeight, toHeight, contractAddresses, topics));
+        }
+        List<Log> logs = new ArrayList<>();
+        for (CompletableFuture<List<Log>> future : futures) {
+            logs.addAll(future.join());
+        }
+        return logs;
+    }
+
+    /**
+     * logsBloom匹配条件：任意一个代币合约，Transfer事件签名，按充值地址过滤时还需要任意一个充值地址
+     */
+    private LogsBloom.Query buildBloomQuery(List<String> contractAddresses, List<List<String>> topicChunks) {
+        LogsBloom.Query query = new LogsBloom.Query()
+                .anyOf(contractAddresses)
+                .anyOf(Collections.singletonList(ethereumService.getTransferEventSignature()));
+        if (topicChunks != null) {
+            List<String> recipientTopics = new ArrayList<>();
+            for (List<String> topics : topicChunks) {
+                recipientTopics.addAll(topics);
+            }
+            query.anyOf(recipientTopics);
+        }
+        return query;
+    }
+
+    /**
+     * 先批量获取区块头（不包含交易），通过logsBloom筛选出可能包含充值的区块，
+     * 只对这些区块（相邻的区块合并为一个范围）查询Transfer事件
+     */
+    private List<Log> getTransferLogsByBloom(long fromHeight, long toHeight, List<String> contractAddresses,
+                                             List<List<String>> topicChunks, LogsBloom.Query bloomQuery) {
+        List<Long> heights = new ArrayList<>((int) (toHeight - fromHeight + 1));
+        for (long height = fromHeight; height <= toHeight; height++) {
+            heights.add(height);
+        }
+        List<EthBlock.Block> headers = ethereumService.getBlockHeadersAsync(heights).join();
+
+        List<Log> logs = new ArrayList<>();
+        long runStart = -1;
+        for (int index = 0; index <= headers.size(); index++) {
+            boolean candidate = index < headers.size() && bloomQuery.mightMatch(headers.get(index).getLogsBloom());
+            if (candidate && runStart < 0) {
+                runStart = heights.get(index);
+            } else if (!candidate && runStart >= 0) {
+                logs.addAll(getTransferLogs(runStart, heights.get(index - 1), contractAddresses, topicChunks));
+                runStart = -1;
+            }
+        }
+        return logs;
+    }
+
+    /**
+     * 解码Transfer事件，按合约地址分发到对应的货币，匹配充值单并更新状态
+     * @param tokensByContract 合约地址（小写）与货币配置信息的对应关系
+     * @param heights 合约地址（小写）与该货币已扫描区块高度的对应关系
+     * @param logs Transfer事件日志
+     * @param networkBlockHeight 网络区块高度
+     */
+    private void updateRecharges(Map<String, Currency> tokensByContract, Map<String, Height> heights, List<Log> logs, long networkBlockHeight) {
+        //1. 解码事件：topics[1]为转出地址，topics[2]为收款地址，data为金额。
+        //ERC721的Transfer事件签名相同但tokenId也是indexed，topics有4个，跳过
+        List<Recharge> recharges = new ArrayList<>();
+        List<Log> matchedLogs = new ArrayList<>();
+        List<Currency> matchedTokens = new ArrayList<>();
+        Set<Long> blockHeights = new LinkedHashSet<>();
+        for (Log eventLog : logs) {
+            List<String> topics = eventLog.getTopics();
+            if (eventLog.isRemoved() || topics == null || topics.size() != 3 || StringUtils.isEmpty(eventLog.getData()) || eventLog.getData().length() <= 2) {
+                continue;
+            }
+
+            //该代币已扫描过的区块（从较低高度开始扫描其他代币时）跳过
+            String contractAddress = eventLog.getAddress().toLowerCase();
+            Currency tokenInfo = tokensByContract.get(contractAddress);
+            long height = eventLog.getBlockNumber().longValue();
+            if (tokenInfo == null || height <= heights.get(contractAddress).getCurrentHeight()) {
+                continue;
+            }
+
+            String toAddress = topicToAddress(topics.get(2));
+            BigDecimal amount = new BigDecimal(Numeric.toBigInt(eventLog.getData())).movePointLeft(tokenInfo.getCurrencyDecimalsNum());
+            Recharge recharge = rechargeService.getRecharge(toAddress, tokenInfo.getCurrencyName(), amount);
+            if(recharge == null) {
+                log.debug("地址不在库中：{}", toAddress);
+                continue;
+            }
+            recharges.add(recharge);
+            matchedLogs.add(eventLog);
+            matchedTokens.add(tokenInfo);
+            blockHeights.add(height);
+        }
+        if (recharges.isEmpty()) {
+            return;
+        }
+
+        //2. 批量获取命中事件所在区块的区块头，用于记录上链时间
+        List<Long> heightList = new ArrayList<>(blockHeights);
+        List<EthBlock.Block> blocks = ethereumService.getBlockHeadersAsync(heightList).join();
+        Map<Long, BigInteger> timestamps = new HashMap<>(heightList.size() * 2);
+        for (int index = 0; index < heightList.size(); index++) {
+            timestamps.put(heightList.get(index), blocks.get(index).getTimestamp());
+        }
+
+        //3. 更新充值单
+        for (int index = 0; index < recharges.size(); index++) {
+            Recharge recharge = recharges.get(index);
+            Log eventLog = matchedLogs.get(index);
+            Currency tokenInfo = matchedTokens.get(index);
+            long height = eventLog.getBlockNumber().longValue();
+            long timestamp = timestamps.get(height).longValue();
+
+            recharge.setFromAddress(topicToAddress(eventLog.getTopics().get(1)));
+            recharge.setTxHash(eventLog.getTransactionHash());
+            recharge.setCurrentConfirm((int) (networkBlockHeight - height));
+            recharge.setHeight((int) height);
+            recharge.setBlockHash(eventLog.getBlockHash());
+            recharge.setUpchainAt(new Date(timestamp));
+            recharge.setUpdatedAt(new Date());
+
+            if(rechargeConfirmer.isConfirmed(tokenInfo, height, networkBlockHeight)) {
+                recharge.setUpchainStatus(UpchainStatusEnum.SUCCESS.getCode());
+                recharge.setUpchainSuccessAt(new Date(timestamp));
+            }else {
+                recharge.setUpchainStatus(UpchainStatusEnum.WAITING_CONFIRM.getCode());
+            }
+            rechargeService.updateRecharge(recharge);
+        }
+    }
+
+    /**
+     * indexed地址参数在topic中左侧补零到32字节，取后20字节
+     */
+    private static String topicToAddress(String topic) {
+        return "0x" + topic.substring(topic.length() - 40).toLowerCase();
+    }
+
+
+    /**
+     * 确认交易，将数据库中状态为待确认的充值单按ethereum.confirm.mode确认：
+     * safe/finalized方式以检查点区块为界批量确认，confirms方式再次去链上查询是否确认数超过了配置确认数。
      * 在最近的300个区块的出块时间一般平均为15秒。
      * 定时任务使用15秒间隔（15 * 1000）。
      * https://txstreet.com/
      */
     @Scheduled(fixedDelay = 10 * 1000)
     public void confirmTx() {
-        //0. 获取当前货币的配置信息
-        Currency tokenInfo = currencyService.findCurrency(currencyName);
-        AssertUtils.isNotNull(tokenInfo, "数据库未配置货币信息：" + currencyName);
-
-        //1. 获取当前网络的区块高度
-        Long currentHeight = ethereumService.getBlockchainHeight();
-
-        //2. 查询到所有待确认的充值单
-        List<Recharge> waitConfirmRecharge = rechargeService.getWaitConfirmRecharge(currencyName);
-        AssertUtils.isNotNull(waitConfirmRecharge, "不存在待确认的充值单");
-
-        //3. 遍历库中交易进行判断是否成功
-        for (Recharge recharge : waitConfirmRecharge) {
-            Transaction transaction = ethereumService.getTransactionByHash(recharge.getTxHash());
-            //如果链上交易确认数大于等于配置的确认数，则更新充值单为成功并更新上链成功时间，否则只更新当前确认数。
-            if(currentHeight - transaction.getBlockNumber().longValue()  >= tokenInfo.getConfirms()) {
-                recharge.setUpchainStatus(UpchainStatusEnum.SUCCESS.getCode());
-                recharge.setUpchainSuccessAt(new Date());
-            }
-            recharge.setCurrentConfirm((int) (currentHeight - transaction.getBlockNumber().longValue()));
-            recharge.setUpdatedAt(new Date());
+        //获取所有需要扫描的代币配置信息
+        List<Currency> tokens = getTokens();
+        AssertUtils.isFalse(tokens.isEmpty(), "数据库未配置货币信息：" + currencyName);
 
-            rechargeService.saveRecharge(recharge);
-        }
+        rechargeConfirmer.confirm(tokens);
+    }
+
+    /**
+     * 处理一段区块的事件日志
+     */
+    private interface LogRangeHandler {
+
+        void handle(long fromHeight, long toHeight, List<Log> logs);
     }
 }
@@ -0,0 +1,285 @@
+package com.payment.erc20.task;
+
+import com.payment.core.entity.ColdRecord;
+import com.payment.core.entity.Currency;
+import com.payment.core.enums.UpchainStatusEnum;
+import com.payment.core.service.ColdRecordService;
+import com.payment.core.service.CurrencyService;
+import com.payment.core.service.RechargeService;
+import com.payment.core.utils.AssertUtils;
+import com.payment.core.utils.AsyncUtils;
+import com.payment.ethereum.confirm.SweepConfirmer;
+import com.payment.ethereum.fee.FeeEstimate;
+import com.payment.ethereum.nonce.NonceManager;
+import com.payment.ethereum.service.EthereumService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.web3j.crypto.Credentials;
+import org.web3j.protocol.core.methods.response.Transaction;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ERC20代币归集任务，将充值地址中超过阈值的token转入冷钱包，归集扫块任务扫描的所有代币，每个代币使用自己的冷钱包地址与转冷阈值
+ * <p>
+ * 充值地址通常没有ETH支付手续费，手续费不足的地址先由配置的手续费地址补足gas，下一轮再归集token。
+ */
+@Slf4j
+@Component
+public class Erc20SweepTask {
+
+    @Value("${ethereum.currencyName}")
+    private String currencyName;
+
+    /**
+     * 归集时同时向节点请求的地址数
+     */
+    @Value("${ethereum.sweep.max-inflight:16}")
+    private int maxInflight;
+
+    /**
+     * token转账的gas上限
+     */
+    @Value("${ethereum.sweep.token-gas-limit:100000}")
+    private long tokenGasLimit;
+
+    /**
+     * 为充值地址补充手续费的地址，keystore文件需放在keystore目录中，为空则不补充手续费
+     */
+    @Value("${ethereum.sweep.gas-address:}")
+    private String gasAddress;
+
+    @Autowired
+    private CurrencyService currencyService;
+
+    @Autowired
+    private EthereumService ethereumService;
+
+    @Autowired
+    private NonceManager nonceManager;
+
+    @Autowired
+    private RechargeService rechargeService;
+
+    @Autowired
+    private ColdRecordService coldRecordService;
+
+    @Autowired
+    private SweepConfirmer sweepConfirmer;
+
+    /**
+     * 已广播还未打包的补充手续费交易，充值地址与交易Hash的对应关系，只在归集任务中访问
+     */
+    private final Map<String, String> pendingGasSupplies = new HashMap<>();
+
+    /**
+     * 逐个归集扫块任务扫描的所有代币：查询充值地址的token余额，余额超过该代币配置的转冷阈值时全部转入冷钱包。
+     * 余额通过Multicall3批量查询，手续费补充、签名与广播以流水线方式并发进行；某个代币归集失败不影响其他代币。
+     */
+    @Scheduled(fixedDelayString = "${ethereum.sweep.interval:600000}")
+    public void sweep() {
+        Map<String, BigInteger> usedFees = new HashMap<>();
+        for (Currency tokenInfo : Erc20ScanTask.findTokens(currencyService, currencyName)) {
+            try {
+                sweep(tokenInfo, usedFees);
+            } catch (Exception e) {
+                log.error(tokenInfo.getCurrencyName() + "归集失败", e);
+            }
+        }
+    }
+
+    /**
+     * 归集一个代币
+     * @param tokenInfo 代币配置
+     * @param usedFees 本轮已经用于其他代币归集交易的手续费，同一地址归集多个代币时ETH余额需要扣除
+     */
+    private void sweep(Currency tokenInfo, Map<String, BigInteger> usedFees) {
+        //1. 获取代币的冷钱包配置，未配置则不归集
+        if (!StringUtils.hasText(tokenInfo.getColdAddress()) || tokenInfo.getColdThreshold() == null || tokenInfo.getColdThreshold().signum() <= 0) {
+            return;
+        }
+        String tokenName = tokenInfo.getCurrencyName();
+        String contractAddress = tokenInfo.getContractAddress();
+
+        //2. 排除冷钱包地址、手续费地址与还有归集交易未确认的地址
+        Set<String> excluded = new HashSet<>();
+        excluded.add(tokenInfo.getColdAddress().toLowerCase());
+        excluded.add(gasAddress.toLowerCase());
+        for (ColdRecord record : coldRecordService.getWaitConfirmColdRecord(tokenName)) {
+            excluded.add(record.getFromAddress().toLowerCase());
+        }
+        List<String> addresses = new ArrayList<>();
+        for (String address : rechargeService.getRechargedAddresses(tokenName)) {
+            if (address != null && !excluded.contains(address.toLowerCase())) {
+                addresses.add(address);
+            }
+        }
+        if (addresses.isEmpty()) {
+            return;
+        }
+
+        //3. 通过Multicall3批量查询token余额，筛选出超过阈值的地址
+        Map<String, BigInteger> tokenBalances = ethereumService.getTokenBalances(addresses, contractAddress);
+        BigInteger threshold = tokenInfo.getColdThreshold().movePointRight(tokenInfo.getCurrencyDecimalsNum()).toBigInteger();
+        List<String> candidates = new ArrayList<>();
+        List<BigInteger> candidateAmounts = new ArrayList<>();
+        for (int i = 0; i < addresses.size(); i++) {
+            BigInteger balance = tokenBalances.get(addresses.get(i));
+            if (balance != null && balance.compareTo(threshold) > 0) {
+                candidates.add(addresses.get(i));
+                candidateAmounts.add(balance);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        //4. 批量查询ETH余额，扣除本轮其他代币已用的手续费后足够的地址归集token，不足的地址补充手续费
+        FeeEstimate feeEstimate = ethereumService.getFeeEstimate();
+        AssertUtils.isNotNull(feeEstimate, "获取手续费失败");
+        BigInteger gasLimit = BigInteger.valueOf(tokenGasLimit);
+        //按最高费用预留手续费，实际只扣除基础费用与小费，剩余的留在地址中
+        BigInteger fee = feeEstimate.getMaxFeePerGas().multiply(gasLimit);
+        Map<String, BigInteger> ethBalances = ethereumService.getEthBalances(candidates);
+
+        List<Integer> sweepIndexes = new ArrayList<>();
+        List<String> needGas = new ArrayList<>();
+        List<BigInteger> needGasValues = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            BigInteger ethBalance = ethBalances.get(candidates.get(i));
+            if (ethBalance == null) {
+                continue;
+            }
+            BigInteger available = ethBalance.subtract(usedFees.getOrDefault(candidates.get(i), BigInteger.ZERO));
+            if (available.compareTo(fee) >= 0) {
+                sweepIndexes.add(i);
+                usedFees.merge(candidates.get(i), fee, BigInteger::add);
+            } else {
+                needGas.add(candidates.get(i));
+                needGasValues.add(fee.subtract(available.max(BigInteger.ZERO)));
+            }
+        }
+        supplyGas(tokenName, needGas, needGasValues, feeEstimate);
+        if (sweepIndexes.isEmpty()) {
+            return;
+        }
+
+        //5. 流水线签名并广播归集交易
+        String coldAddress = tokenInfo.getColdAddress();
+        List<String> txHashes = AsyncUtils.pipeline(sweepIndexes, maxInflight, index -> {
+            String address = candidates.get(index);
+            Credentials credentials = ethereumService.loadCredentials(address);
+            AssertUtils.isNotNull(credentials, "找不到地址对应的keystore文件：" + address);
+            return nonceManager.submit(address, nonce -> ethereumService.sendRawTransactionAsync(
+                    ethereumService.signTokenTransfer(credentials, nonce, feeEstimate, gasLimit, contractAddress, coldAddress, candidateAmounts.get(index))));
+        });
+
+        //6. 记录转冷钱包记录，等待确认任务更新状态
+        List<ColdRecord> records = new ArrayList<>();
+        Date now = new Date();
+        for (int i = 0; i < sweepIndexes.size(); i++) {
+            if (txHashes.get(i) == null) {
+                continue;
+            }
+            int index = sweepIndexes.get(i);
+            ColdRecord record = new ColdRecord();
+            record.setCurrencyId(tokenInfo.getId().intValue());
+            record.setCurrencyName(tokenName);
+            record.setAmount(new BigDecimal(candidateAmounts.get(index)).movePointLeft(tokenInfo.getCurrencyDecimalsNum()));
+            record.setTxHash(txHashes.get(i));
+            record.setFromAddress(candidates.get(index));
+            record.setToAddress(coldAddress);
+            record.setUpchainAt(now);
+            record.setUpchainStatus(UpchainStatusEnum.WAITING_CONFIRM.getCode());
+            record.setCreatedAt(now);
+            record.setUpdatedAt(now);
+            records.add(record);
+        }
+        coldRecordService.saveColdRecords(records);
+        log.info("{}归集交易已广播{}笔，失败{}笔，补充手续费{}笔", tokenName, records.size(), sweepIndexes.size() - records.size(), needGas.size());
+    }
+
+    /**
+     * 从手续费地址向充值地址补充gas，同一地址的交易由nonce分配器分配nonce后连续广播，不等待上一笔打包；
+     * 余额按最新区块查询，上一次补充的交易还未打包时不重复补充（同一地址为多个代币补充手续费时，下一轮再为其他代币补充）
+     * @param tokenName 代币名称
+     * @param addresses 需要补充手续费的地址
+     * @param values 补充的金额（wei）
+     * @param feeEstimate 手续费估算结果
+     */
+    private void supplyGas(String tokenName, List<String> addresses, List<BigInteger> values, FeeEstimate feeEstimate) {
+        if (addresses.isEmpty()) {
+            return;
+        }
+        if (!StringUtils.hasText(gasAddress)) {
+            log.warn("{}有{}个地址手续费不足，未配置手续费地址ethereum.sweep.gas-address，跳过归集", tokenName, addresses.size());
+            return;
+        }
+        Credentials credentials = ethereumService.loadCredentials(gasAddress);
+        AssertUtils.isNotNull(credentials, "找不到手续费地址对应的keystore文件：" + gasAddress);
+
+        //1. 上一次补充的手续费交易还在交易池中的地址不重复补充，已打包或已丢弃的不再跟踪
+        Set<String> pending = new HashSet<>();
+        List<String> supplied = new ArrayList<>();
+        for (String address : addresses) {
+            if (pendingGasSupplies.containsKey(address)) {
+                supplied.add(address);
+            }
+        }
+        if (!supplied.isEmpty()) {
+            List<String> hashes = new ArrayList<>(supplied.size());
+            for (String address : supplied) {
+                hashes.add(pendingGasSupplies.get(address));
+            }
+            List<Transaction> transactions = ethereumService.getTransactionsByHashAsync(hashes).join();
+            for (int i = 0; i < supplied.size(); i++) {
+                Transaction transaction = transactions.get(i);
+                if (transaction != null && transaction.getBlockNumberRaw() == null) {
+                    pending.add(supplied.get(i));
+                } else {
+                    pendingGasSupplies.remove(supplied.get(i));
+                }
+            }
+        }
+        List<Integer> indexes = new ArrayList<>(addresses.size());
+        for (int i = 0; i < addresses.size(); i++) {
+            if (!pending.contains(addresses.get(i))) {
+                indexes.add(i);
+            }
+        }
+        if (indexes.isEmpty()) {
+            return;
+        }
+
+        //2. 流水线签名并广播，记录补充手续费的交易
+        List<String> txHashes = AsyncUtils.pipeline(indexes, maxInflight, index -> nonceManager.submit(gasAddress, nonce -> ethereumService.sendRawTransactionAsync(
+                ethereumService.signEtherTransfer(credentials, nonce, feeEstimate, addresses.get(index), values.get(index)))));
+        for (int i = 0; i < indexes.size(); i++) {
+            if (txHashes.get(i) != null) {
+                pendingGasSupplies.put(addresses.get(indexes.get(i)), txHashes.get(i));
+            }
+        }
+    }
+
+    /**
+     * 确认所有代币的归集交易，交易执行失败或被丢弃时更新为未上链，该地址在下一次归集时重新归集
+     */
+    @Scheduled(fixedDelay = 15 * 1000)
+    public void confirmSweep() {
+        for (Currency tokenInfo : Erc20ScanTask.findTokens(currencyService, currencyName)) {
+            sweepConfirmer.confirm(tokenInfo.getCurrencyName());
+        }
+    }
+}
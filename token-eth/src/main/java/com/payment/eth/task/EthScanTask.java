@@ -1,30 +1,55 @@
 package com.payment.eth.task;
 
+import com.payment.core.config.ScannerConfiguration;
 import com.payment.core.entity.Currency;
 import com.payment.core.entity.Height;
 import com.payment.core.entity.Recharge;
 import com.payment.core.enums.UpchainStatusEnum;
+import com.payment.core.exception.AssertException;
 import com.payment.core.service.CurrencyService;
 import com.payment.core.service.RechargeService;
 import com.payment.core.utils.AssertUtils;
+import com.payment.ethereum.block.BlockStreamReader;
+import com.payment.ethereum.block.ScannedBlock;
+import com.payment.ethereum.block.ScannedTransaction;
+import com.payment.ethereum.confirm.RechargeConfirmer;
+import com.payment.ethereum.filter.DepositAddressFilter;
+import com.payment.ethereum.mempool.MempoolWatcher;
+import com.payment.ethereum.rpc.EthereumSubscriber;
 import com.payment.ethereum.service.EthereumService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import org.web3j.protocol.core.methods.response.EthBlock;
 import org.web3j.protocol.core.methods.response.Transaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
 import org.web3j.utils.Convert;
 
+import javax.annotation.PostConstruct;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @Component
+@ConditionalOnProperty(name = ScannerConfiguration.SCAN_ENABLED, havingValue = "true", matchIfMissing = true)
 public class EthScanTask {
 
 
@@ -40,20 +65,94 @@ public class EthScanTask {
     @Autowired
     private RechargeService rechargeService;
 
+    /**
+     * 扫块时同时在途的批量请求数，每个批量请求获取ethereum.rpc.batch-size个区块
+     */
+    @Value("${ethereum.scan.max-inflight:4}")
+    private int maxInflight;
+
+    /**
+     * 未上链的充值单不超过该数量时按余额变化方式扫描，默认0表示始终按区块扫描
+     */
+    @Value("${ethereum.scan.balance-mode-max-orders:0}")
+    private int balanceModeMaxOrders;
+
+    /**
+     * 按余额变化方式扫描时最多落后的区块数，超过时按区块扫描；非归档节点只保留最近的状态（geth默认128个区块）
+     */
+    @Value("${ethereum.scan.balance-mode-max-range:64}")
+    private int balanceModeMaxRange;
+
+    /**
+     * 上一次是否按余额变化方式扫描，只用于记录切换日志
+     */
+    private boolean balanceMode;
+
+    @Autowired
+    private EthereumSubscriber ethereumSubscriber;
+
+    @Autowired
+    private MempoolWatcher mempoolWatcher;
+
+    @Autowired
+    private DepositAddressFilter depositAddressFilter;
+
+    @Autowired
+    private RechargeConfirmer rechargeConfirmer;
+
+    /**
+     * WebSocket推送正常时定时轮询的最长间隔（毫秒），兜底推送丢失的区块
+     */
+    @Value("${ethereum.ws.backstop-interval:60000}")
+    private long backstopInterval;
+
+    private volatile long scannedAt;
+
+    /**
+     * 配置了WebSocket地址时订阅新区块，收到新区块后立即扫块；开启时监听交易池
+     */
+    @PostConstruct
+    public void subscribe() {
+        if (ethereumSubscriber.isEnabled()) {
+            ethereumSubscriber.subscribeNewHeads(this::onNewHead);
+        }
+        mempoolWatcher.watch(() -> Collections.singletonList(currencyService.findCurrency(currencyName)));
+    }
+
     /**
      * 扫描链上的交易是否和数据库中的充值单是否匹配，如果匹配则修改对应状态。
      * 在最近的300个区块的出块时间一般平均为15秒。
      * 定时任务使用10秒间隔（10 * 1000）。
+     * WebSocket推送正常时由新区块推送驱动扫块，定时任务只按backstopInterval兜底。
      * https://txstreet.com/
      */
     @Scheduled(fixedDelay = 10 * 1000)
     public void scanOrder() {
+        if (ethereumSubscriber.isHealthy() && System.currentTimeMillis() - scannedAt < backstopInterval) {
+            return;
+        }
+        scan(ethereumService.getBlockchainHeight());
+    }
+
+    private void onNewHead(long height) {
+        try {
+            scan(height);
+        } catch (AssertException e) {
+            log.debug("新区块{}：{}", height, e.getMessage());
+        }
+    }
+
+    /**
+     * 扫描到指定的网络区块高度，定时任务与新区块推送可能同时触发，串行执行
+     * @param networkBlockHeight 网络区块高度
+     */
+    private synchronized void scan(Long networkBlockHeight) {
+        scannedAt = System.currentTimeMillis();
+
         //获取当前货币的配置信息
         Currency ethInfo = currencyService.findCurrency(currencyName);
         AssertUtils.isNotNull(ethInfo, "数据库未配置货币信息：" + currencyName);
 
-        //获取到当前与网络区块高度
-        Long networkBlockHeight = ethereumService.getBlockchainHeight();
         Height heightObj = rechargeService.getCurrentHeight(currencyName);
         if(heightObj == null) {
             Height height = new Height();
@@ -70,42 +169,87 @@ public class EthScanTask {
         //相隔1个区块不进行扫描
         AssertUtils.isFalse(networkBlockHeight - currentHeight <= 1, "不存在需要扫描的区块");
 
-        //扫描区块中的交易
-        for(Integer i = currentHeight + 1; i <= networkBlockHeight; i++) {
-            EthBlock.Block block = ethereumService.getBlockByNumber(i.longValue());
+        //未上链的充值单较少时只查询这些充值地址的余额变化，不下载完整区块
+        if (scanByBalance(ethInfo, currentHeight, networkBlockHeight)) {
+            heightObj.setCurrentHeight(networkBlockHeight.intValue());
+            heightObj.setUpdatedAt(new Date());
+            rechargeService.saveCurrentHeight(heightObj);
+            return;
+        }
 
-            List<EthBlock.TransactionResult> transactions = block.getTransactions();
+        //加载新增的充值地址，收款地址不在其中的交易不查询数据库
+        depositAddressFilter.refresh(Collections.singletonList(currencyName));
+
+        //扫描区块中的交易，每个批量请求获取连续batchSize个区块，同时在途maxInflight个批量请求，按高度顺序处理。
+        //区块以原始字节返回，逐个流式解析到同一个ScannedBlock中，只读取扫块需要的字段
+        int batchSize = ethereumService.getRpcBatchSize();
+        Deque<CompletableFuture<BlockStreamReader>> inflight = new ArrayDeque<>();
+        BlockStreamReader reader = null;
+        int readIndex = 0;
+        ScannedBlock block = new ScannedBlock();
+        long nextHeight = currentHeight + 1;
+        for(Integer i = currentHeight + 1; i <= networkBlockHeight; i++) {
+            while (nextHeight <= networkBlockHeight && inflight.size() < maxInflight) {
+                long toHeight = Math.min(networkBlockHeight, nextHeight + batchSize - 1);
+                inflight.add(ethereumService.getScannedBlocksAsync(nextHeight, toHeight));
+                nextHeight = toHeight + 1;
+            }
+            if (reader == null || readIndex >= reader.size()) {
+                reader = inflight.poll().join();
+                readIndex = 0;
+            }
+            AssertUtils.isTrue(reader.read(readIndex++, block), "节点未返回区块：" + i);
 
-            for (EthBlock.TransactionResult transactionResult : transactions) {
-                EthBlock.TransactionObject transactionObject = (EthBlock.TransactionObject) transactionResult;
-                Transaction transaction = transactionObject.get();
+            //筛选出收款地址与金额匹配充值单的交易，交易对象在解析下一个区块时复用，只在当前区块内使用
+            List<ScannedTransaction> matchedTransactions = new ArrayList<>();
+            List<Recharge> matchedRecharges = new ArrayList<>();
+            for (int txIndex = 0; txIndex < block.getTransactionCount(); txIndex++) {
+                ScannedTransaction transaction = block.getTransaction(txIndex);
 
                 if(StringUtils.isEmpty(transaction.getTo())) {
                     log.info("交易{}不存在toAddress", transaction.getHash());
                     continue;
                 }
 
+                if (!depositAddressFilter.mightContain(transaction.getTo())) {
+                    continue;
+                }
+
                 BigDecimal amount = Convert.fromWei(transaction.getValue().toString(), Convert.Unit.ETHER);
                 Recharge recharge = rechargeService.getRecharge(transaction.getTo(), currencyName, amount);
                 if(recharge == null) {
                     log.info("地址不在库中：{}", transaction.getTo());
                     continue;
                 }
+                matchedTransactions.add(transaction);
+                matchedRecharges.add(recharge);
+            }
+            if (matchedTransactions.isEmpty()) {
+                continue;
+            }
 
-                recharge.setFromAddress(transaction.getFrom());
-                recharge.setTxHash(transaction.getHash());
-                recharge.setCurrentConfirm(transaction.getBlockNumber().subtract(BigInteger.valueOf(i)).intValue());
-                recharge.setHeight(transaction.getBlockNumber().intValue());
-                recharge.setUpchainAt(new Date(block.getTimestamp().longValue()));
-                recharge.setUpdatedAt(new Date());
-
-                if(i - block.getNumber().intValue() >= ethInfo.getConfirms()) {
-                    recharge.setUpchainStatus(UpchainStatusEnum.SUCCESS.getCode());
-                    recharge.setUpchainSuccessAt(new Date(block.getTimestamp().longValue()));
-                }else {
-                    recharge.setUpchainStatus(UpchainStatusEnum.WAITING_CONFIRM.getCode());
+            //执行失败的交易同样上链且value不为0，通过一次eth_getBlockReceipts获取区块全部收据校验交易状态
+            Map<String, TransactionReceipt> receipts = new HashMap<>();
+            for (TransactionReceipt receipt : ethereumService.getBlockReceiptsAsync(block.getNumberRaw(), block.getTransactionHashes()).join()) {
+                if (receipt != null) {
+                    receipts.put(receipt.getTransactionHash(), receipt);
                 }
-                rechargeService.updateRecharge(recharge);
+            }
+
+            for (int index = 0; index < matchedTransactions.size(); index++) {
+                ScannedTransaction transaction = matchedTransactions.get(index);
+                Recharge recharge = matchedRecharges.get(index);
+
+                //判断状态是否是成功(1成功 0失败)，节点未返回收据时本轮扫块失败，不保存区块高度
+                TransactionReceipt receipt = receipts.get(transaction.getHash());
+                AssertUtils.isNotNull(receipt, "节点未返回交易收据：" + transaction.getHash());
+                if(!"0x1".equalsIgnoreCase(receipt.getStatus())) {
+                    log.info("交易{}执行失败", transaction.getHash());
+                    continue;
+                }
+
+                updateRecharge(ethInfo, recharge, transaction.getHash(), transaction.getFrom(), block.getNumber(), block.getHash(),
+                        block.getTimestamp(), networkBlockHeight);
             }
 
         }
@@ -117,41 +261,210 @@ public class EthScanTask {
 
     }
 
+    /**
+     * 按余额变化方式扫描：未上链的充值单不超过balanceModeMaxOrders且落后不超过balanceModeMaxRange个区块时，
+     * 只批量查询这些充值地址在已扫描高度与网络高度的余额（Multicall3 getEthBalance），不下载完整区块；
+     * 余额变化的地址二分查找发生变化的区块，只获取这些区块的交易详情匹配充值单。
+     * 区块中没有转入该地址的交易、也没有该地址转出的交易时，余额增加来自合约内部转账，按增加的金额匹配充值单。
+     * 充值地址在区间内发出过交易（nonce变化）时，转出可能抵消转入、同一区块内的转出也会掩盖合约内部转账，该区间按区块扫描。
+     * @return 是否已扫描到网络区块高度，false时按区块扫描
+     */
+    private boolean scanByBalance(Currency ethInfo, Integer currentHeight, Long networkBlockHeight) {
+        if (balanceModeMaxOrders <= 0 || networkBlockHeight - currentHeight > balanceModeMaxRange) {
+            return false;
+        }
+
+        //1. 查询未上链的充值单，超过balanceModeMaxOrders时按区块扫描
+        List<Recharge> openRecharges = rechargeService.getOpenRecharges(currencyName, balanceModeMaxOrders + 1);
+        boolean useBalance = openRecharges.size() <= balanceModeMaxOrders;
+        if (useBalance != balanceMode) {
+            log.info(useBalance ? "未上链的充值单{}笔，切换为余额变化方式扫描" : "未上链的充值单超过{}笔，切换为区块扫描",
+                    useBalance ? openRecharges.size() : balanceModeMaxOrders);
+            balanceMode = useBalance;
+        }
+        if (!useBalance) {
+            return false;
+        }
+        Map<String, List<Recharge>> rechargesByAddress = new LinkedHashMap<>();
+        for (Recharge recharge : openRecharges) {
+            if (StringUtils.hasText(recharge.getToAddress())) {
+                rechargesByAddress.computeIfAbsent(recharge.getToAddress().toLowerCase(), address -> new ArrayList<>()).add(recharge);
+            }
+        }
+        if (rechargesByAddress.isEmpty()) {
+            return true;
+        }
+
+        //2. 批量查询充值地址在已扫描高度与网络高度的余额，查询失败时按区块扫描
+        List<String> addresses = new ArrayList<>(rechargesByAddress.keySet());
+        Map<String, BigInteger> fromBalances = ethereumService.getEthBalances(addresses, currentHeight);
+        Map<String, BigInteger> toBalances = ethereumService.getEthBalances(addresses, networkBlockHeight);
+        if (fromBalances.size() < addresses.size() || toBalances.size() < addresses.size()) {
+            log.warn("查询充值地址余额失败，按区块扫描");
+            return false;
+        }
+
+        //3. 任意充值地址在区间内发出过交易时按区块扫描，余额变化无法区分转入与转出
+        List<BigInteger> fromNonces = ethereumService.getTransactionCountsAsync(addresses, currentHeight).join();
+        List<BigInteger> toNonces = ethereumService.getTransactionCountsAsync(addresses, networkBlockHeight).join();
+        for (int index = 0; index < addresses.size(); index++) {
+            if (!fromNonces.get(index).equals(toNonces.get(index))) {
+                log.info("充值地址{}在区块{}-{}发出过交易，按区块扫描", addresses.get(index), currentHeight + 1, networkBlockHeight);
+                return false;
+            }
+        }
+
+        //4. 余额变化的地址二分查找余额发生变化的区块
+        Map<Long, Map<String, BigInteger>> changes = new TreeMap<>();
+        for (String address : addresses) {
+            locateChanges(address, currentHeight, fromBalances.get(address), networkBlockHeight, toBalances.get(address), changes);
+        }
+
+        //5. 只获取余额发生变化的区块，匹配转入交易
+        for (Map.Entry<Long, Map<String, BigInteger>> entry : changes.entrySet()) {
+            EthBlock.Block block = ethereumService.getBlockByNumberAsync(entry.getKey()).join();
+            AssertUtils.isNotNull(block, "节点未返回区块：" + entry.getKey());
+            matchBalanceChanges(ethInfo, block, entry.getValue(), rechargesByAddress, networkBlockHeight);
+        }
+        return true;
+    }
+
+    /**
+     * 二分查找地址余额发生变化的区块
+     * @param changes 区块高度与该区块中各地址余额变化量的对应关系
+     */
+    private void locateChanges(String address, long fromHeight, BigInteger fromBalance, long toHeight, BigInteger toBalance,
+                               Map<Long, Map<String, BigInteger>> changes) {
+        if (fromBalance.equals(toBalance)) {
+            return;
+        }
+        if (toHeight - fromHeight == 1) {
+            changes.computeIfAbsent(toHeight, height -> new HashMap<>()).put(address, toBalance.subtract(fromBalance));
+            return;
+        }
+        long middle = (fromHeight + toHeight) >>> 1;
+        BigInteger middleBalance = ethereumService.getBalanceAsync(address, middle).join();
+        locateChanges(address, fromHeight, fromBalance, middle, middleBalance, changes);
+        locateChanges(address, middle, middleBalance, toHeight, toBalance, changes);
+    }
+
+    /**
+     * 在余额发生变化的区块中匹配充值单：有转入交易的按交易金额匹配，否则按余额增加的金额匹配合约内部转账
+     * @param deltas 地址与余额变化量的对应关系
+     */
+    private void matchBalanceChanges(Currency ethInfo, EthBlock.Block block, Map<String, BigInteger> deltas,
+                                     Map<String, List<Recharge>> rechargesByAddress, long networkBlockHeight) {
+        //1. 筛选转入与转出这些地址的交易
+        Map<String, List<Transaction>> incoming = new HashMap<>();
+        Set<String> outgoing = new HashSet<>();
+        List<String> txHashes = new ArrayList<>();
+        for (EthBlock.TransactionResult transactionResult : block.getTransactions()) {
+            Transaction transaction = (Transaction) transactionResult.get();
+            String toAddress = transaction.getTo() == null ? null : transaction.getTo().toLowerCase();
+            if (toAddress != null && deltas.containsKey(toAddress) && transaction.getValue().signum() > 0) {
+                incoming.computeIfAbsent(toAddress, address -> new ArrayList<>()).add(transaction);
+                txHashes.add(transaction.getHash());
+            }
+            if (transaction.getFrom() != null && deltas.containsKey(transaction.getFrom().toLowerCase())) {
+                outgoing.add(transaction.getFrom().toLowerCase());
+            }
+        }
+
+        //2. 转入交易校验收据状态
+        Map<String, TransactionReceipt> receipts = new HashMap<>();
+        if (!txHashes.isEmpty()) {
+            for (TransactionReceipt receipt : ethereumService.getTransactionReceiptsAsync(txHashes).join()) {
+                if (receipt != null) {
+                    receipts.put(receipt.getTransactionHash(), receipt);
+                }
+            }
+        }
+
+        //3. 按交易金额或余额增加的金额匹配该地址未上链的充值单
+        long height = block.getNumber().longValue();
+        long timestamp = block.getTimestamp().longValue();
+        for (Map.Entry<String, BigInteger> entry : deltas.entrySet()) {
+            List<Recharge> recharges = rechargesByAddress.get(entry.getKey());
+            List<Transaction> transactions = incoming.get(entry.getKey());
+            if (transactions != null) {
+                for (Transaction transaction : transactions) {
+                    TransactionReceipt receipt = receipts.get(transaction.getHash());
+                    AssertUtils.isNotNull(receipt, "节点未返回交易收据：" + transaction.getHash());
+                    if (!"0x1".equalsIgnoreCase(receipt.getStatus())) {
+                        log.info("交易{}执行失败", transaction.getHash());
+                        continue;
+                    }
+                    Recharge recharge = take(recharges, Convert.fromWei(transaction.getValue().toString(), Convert.Unit.ETHER));
+                    if (recharge != null) {
+                        updateRecharge(ethInfo, recharge, transaction.getHash(), transaction.getFrom(), height, block.getHash(), timestamp, networkBlockHeight);
+                    }
+                }
+            } else if (entry.getValue().signum() > 0 && !outgoing.contains(entry.getKey())) {
+                //合约内部转账没有以该地址为收款地址的交易，不记录交易Hash，确认时按所在区块判断
+                Recharge recharge = take(recharges, Convert.fromWei(entry.getValue().toString(), Convert.Unit.ETHER));
+                if (recharge != null) {
+                    log.info("充值地址{}在区块{}收到合约内部转账{}", entry.getKey(), height, recharge.getAmount());
+                    updateRecharge(ethInfo, recharge, null, null, height, block.getHash(), timestamp, networkBlockHeight);
+                }
+            }
+        }
+    }
+
+    /**
+     * 取出金额相同的充值单，同一地址的多笔充值单按金额区分
+     */
+    private static Recharge take(List<Recharge> recharges, BigDecimal amount) {
+        for (Iterator<Recharge> iterator = recharges.iterator(); iterator.hasNext(); ) {
+            Recharge recharge = iterator.next();
+            if (recharge.getAmount() != null && recharge.getAmount().compareTo(amount) == 0) {
+                iterator.remove();
+                return recharge;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 更新匹配到链上转账的充值单，已经确认时直接更新为成功
+     * @param txHash 交易Hash，合约内部转账为null
+     * @param fromAddress 转出地址，合约内部转账为null
+     * @param timestamp 出块时间
+     */
+    private void updateRecharge(Currency ethInfo, Recharge recharge, String txHash, String fromAddress, long height, String blockHash,
+                                long timestamp, long networkBlockHeight) {
+        recharge.setFromAddress(fromAddress);
+        recharge.setTxHash(txHash);
+        recharge.setCurrentConfirm((int) (networkBlockHeight - height));
+        recharge.setHeight((int) height);
+        recharge.setBlockHash(blockHash);
+        recharge.setUpchainAt(new Date(timestamp));
+        recharge.setUpdatedAt(new Date());
+
+        if(rechargeConfirmer.isConfirmed(ethInfo, height, networkBlockHeight)) {
+            recharge.setUpchainStatus(UpchainStatusEnum.SUCCESS.getCode());
+            recharge.setUpchainSuccessAt(new Date(timestamp));
+        }else {
+            recharge.setUpchainStatus(UpchainStatusEnum.WAITING_CONFIRM.getCode());
+        }
+        rechargeService.updateRecharge(recharge);
+    }
+
 
 
     /**
-     * 确认交易，将数据库中状态为待确认的充值单再次去链上查询是否确认数超过了配置确认数。
+     * 确认交易，将数据库中状态为待确认的充值单按ethereum.confirm.mode确认：
+     * safe/finalized方式以检查点区块为界批量确认，confirms方式再次去链上查询是否确认数超过了配置确认数。
      * 在最近的300个区块的出块时间一般平均为15秒。
      * 定时任务使用15秒间隔（15 * 1000）。
      * https://txstreet.com/
      */
     @Scheduled(fixedDelay = 10 * 1000)
     public void confirmTx() {
-        //0. 获取当前货币的配置信息
+        //获取当前货币的配置信息
         Currency ethInfo = currencyService.findCurrency(currencyName);
         AssertUtils.isNotNull(ethInfo, "数据库未配置货币信息：" + currencyName);
 
-        //1. 获取当前网络的区块高度
-        Long currentHeight = ethereumService.getBlockchainHeight();
-
-        //2. 查询到所有待确认的充值单
-        List<Recharge> waitConfirmRecharge = rechargeService.getWaitConfirmRecharge(currencyName);
-        AssertUtils.isNotNull(waitConfirmRecharge, "不存在待确认的充值单");
-
-        //3. 遍历库中交易进行判断是否成功
-        for (Recharge recharge : waitConfirmRecharge) {
-            Transaction transaction = ethereumService.getTransactionByHash(recharge.getTxHash());
-
-            //如果链上交易确认数大于等于配置的确认数，则更新充值单为成功并更新上链成功时间，否则只更新当前确认数。
-            if(currentHeight - transaction.getBlockNumber().longValue()  >= ethInfo.getConfirms()) {
-                recharge.setUpchainStatus(UpchainStatusEnum.SUCCESS.getCode());
-                recharge.setUpchainSuccessAt(new Date());
-            }
-            recharge.setCurrentConfirm((int) (currentHeight - transaction.getBlockNumber().longValue()));
-            recharge.setUpdatedAt(new Date());
-
-            rechargeService.saveRecharge(recharge);
-        }
+        rechargeConfirmer.confirm(Collections.singletonList(ethInfo));
     }
 
 }
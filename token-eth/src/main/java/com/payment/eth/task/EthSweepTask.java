@@ -0,0 +1,162 @@
+package com.payment.eth.task;
+
+import com.payment.core.entity.ColdRecord;
+import com.payment.core.entity.Currency;
+import com.payment.core.enums.UpchainStatusEnum;
+import com.payment.core.service.ColdRecordService;
+import com.payment.core.service.CurrencyService;
+import com.payment.core.service.RechargeService;
+import com.payment.core.utils.AssertUtils;
+import com.payment.core.utils.AsyncUtils;
+import com.payment.ethereum.confirm.SweepConfirmer;
+import com.payment.ethereum.fee.FeeEstimate;
+import com.payment.ethereum.nonce.NonceManager;
+import com.payment.ethereum.service.EthereumService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.web3j.crypto.Credentials;
+import org.web3j.utils.Convert;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 以太币归集任务，将充值地址中超过阈值的余额转入冷钱包
+ */
+@Slf4j
+@Component
+public class EthSweepTask {
+
+    @Value("${ethereum.currencyName}")
+    private String currencyName;
+
+    /**
+     * 归集时同时向节点请求的地址数
+     */
+    @Value("${ethereum.sweep.max-inflight:16}")
+    private int maxInflight;
+
+    @Autowired
+    private CurrencyService currencyService;
+
+    @Autowired
+    private EthereumService ethereumService;
+
+    @Autowired
+    private NonceManager nonceManager;
+
+    @Autowired
+    private RechargeService rechargeService;
+
+    @Autowired
+    private ColdRecordService coldRecordService;
+
+    @Autowired
+    private SweepConfirmer sweepConfirmer;
+
+    /**
+     * 查询所有充值地址的余额，余额超过币种配置的转冷阈值时扣除手续费后全部转入冷钱包。
+     * 每个地址一笔交易，所有地址的nonce查询、签名与广播以流水线方式并发进行。
+     */
+    @Scheduled(fixedDelayString = "${ethereum.sweep.interval:600000}")
+    public void sweep() {
+        //1. 获取当前货币的冷钱包配置，未配置则不归集
+        Currency ethInfo = currencyService.findCurrency(currencyName);
+        AssertUtils.isNotNull(ethInfo, "数据库未配置货币信息：" + currencyName);
+        if (!StringUtils.hasText(ethInfo.getColdAddress()) || ethInfo.getColdThreshold() == null || ethInfo.getColdThreshold().signum() <= 0) {
+            return;
+        }
+
+        //2. 排除冷钱包地址与还有归集交易未确认的地址
+        Set<String> excluded = new HashSet<>();
+        excluded.add(ethInfo.getColdAddress().toLowerCase());
+        for (ColdRecord record : coldRecordService.getWaitConfirmColdRecord(currencyName)) {
+            excluded.add(record.getFromAddress().toLowerCase());
+        }
+        List<String> addresses = new ArrayList<>();
+        for (String address : rechargeService.getRechargedAddresses(currencyName)) {
+            if (address != null && !excluded.contains(address.toLowerCase())) {
+                addresses.add(address);
+            }
+        }
+        if (addresses.isEmpty()) {
+            return;
+        }
+
+        //3. 通过Multicall3批量查询所有地址的余额，筛选出超过阈值的地址
+        Map<String, BigInteger> balances = ethereumService.getEthBalances(addresses);
+        BigInteger threshold = Convert.toWei(ethInfo.getColdThreshold(), Convert.Unit.ETHER).toBigInteger();
+        FeeEstimate feeEstimate = ethereumService.getFeeEstimate();
+        AssertUtils.isNotNull(feeEstimate, "获取手续费失败");
+        //按最高费用预留手续费，实际只扣除基础费用与小费，剩余的留在地址中
+        BigInteger fee = feeEstimate.getMaxFeePerGas().multiply(EthereumService.ETHER_TRANSFER_GAS_LIMIT);
+
+        List<String> sweepAddresses = new ArrayList<>();
+        List<BigInteger> sweepValues = new ArrayList<>();
+        for (int i = 0; i < addresses.size(); i++) {
+            BigInteger balance = balances.get(addresses.get(i));
+            if (balance != null && balance.compareTo(threshold) > 0 && balance.compareTo(fee) > 0) {
+                sweepAddresses.add(addresses.get(i));
+                sweepValues.add(balance.subtract(fee));
+            }
+        }
+        if (sweepAddresses.isEmpty()) {
+            return;
+        }
+
+        //4. 流水线签名并广播归集交易
+        List<Integer> indexes = new ArrayList<>(sweepAddresses.size());
+        for (int i = 0; i < sweepAddresses.size(); i++) {
+            indexes.add(i);
+        }
+        String coldAddress = ethInfo.getColdAddress();
+        List<String> txHashes = AsyncUtils.pipeline(indexes, maxInflight, index -> {
+            String address = sweepAddresses.get(index);
+            Credentials credentials = ethereumService.loadCredentials(address);
+            AssertUtils.isNotNull(credentials, "找不到地址对应的keystore文件：" + address);
+            return nonceManager.submit(address, nonce -> ethereumService.sendRawTransactionAsync(
+                    ethereumService.signEtherTransfer(credentials, nonce, feeEstimate, coldAddress, sweepValues.get(index))));
+        });
+
+        //5. 记录转冷钱包记录，等待确认任务更新状态
+        List<ColdRecord> records = new ArrayList<>();
+        Date now = new Date();
+        for (int i = 0; i < sweepAddresses.size(); i++) {
+            if (txHashes.get(i) == null) {
+                continue;
+            }
+            ColdRecord record = new ColdRecord();
+            record.setCurrencyId(ethInfo.getId().intValue());
+            record.setCurrencyName(currencyName);
+            record.setAmount(Convert.fromWei(new BigDecimal(sweepValues.get(i)), Convert.Unit.ETHER));
+            record.setTxHash(txHashes.get(i));
+            record.setFromAddress(sweepAddresses.get(i));
+            record.setToAddress(coldAddress);
+            record.setUpchainAt(now);
+            record.setUpchainStatus(UpchainStatusEnum.WAITING_CONFIRM.getCode());
+            record.setCreatedAt(now);
+            record.setUpdatedAt(now);
+            records.add(record);
+        }
+        coldRecordService.saveColdRecords(records);
+        log.info("{}归集交易已广播{}笔，失败{}笔", currencyName, records.size(), sweepAddresses.size() - records.size());
+    }
+
+    /**
+     * 确认归集交易，交易执行失败或被丢弃时更新为未上链，该地址在下一次归集时重新归集
+     */
+    @Scheduled(fixedDelay = 15 * 1000)
+    public void confirmSweep() {
+        sweepConfirmer.confirm(currencyName);
+    }
+}
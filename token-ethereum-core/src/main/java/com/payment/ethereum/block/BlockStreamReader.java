@@ -0,0 +1,269 @@
+package com.payment.ethereum.block;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.payment.ethereum.rpc.LoadBalancedHttpService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * eth_getBlockByNumber响应的流式解析
+ * <p>
+ * web3j把区块反序列化为完整的EthBlock.Block，每笔交易的十几个字段都会生成字符串，而扫块只用到其中几个字段。
+ * 这里保留节点返回的原始字节，先用Jackson流式解析器扫一遍批量响应，按请求id记录每个结果在字节中的位置
+ * （跳过的字符串不解码），扫块线程再逐个区块解析到可复用的{@link ScannedBlock}中，只读取需要的字段。
+ * <p>
+ * 区块按请求顺序读取，节点返回的批量结果顺序不同也不影响。同一个实例只能在一个线程中读取。
+ */
+public class BlockStreamReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final List<Segment> segments;
+
+    private BlockStreamReader(List<Segment> segments) {
+        this.segments = segments;
+    }
+
+    /**
+     * 解析批量请求的响应
+     * @param body 响应的原始字节
+     * @param ids 批量请求中每个请求的id，按请求顺序
+     * @return 按请求顺序读取区块的reader
+     * @throws LoadBalancedHttpService.BatchUnsupportedException 响应不是数组（节点不支持批量请求）
+     * @throws IOException 响应格式错误、缺少结果或任意一个请求返回了JSON-RPC错误
+     */
+    public static BlockStreamReader ofBatch(byte[] body, List<Long> ids) throws IOException {
+        Map<Long, Segment> byId = new HashMap<>(ids.size() * 2);
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new LoadBalancedHttpService.BatchUnsupportedException("节点不支持批量请求：" + abbreviate(body));
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                int offset = (int) parser.getTokenLocation().getByteOffset();
+                long id = index(parser);
+                byId.put(id, new Segment(body, offset, (int) parser.getCurrentLocation().getByteOffset() - offset));
+            }
+        }
+        List<Segment> segments = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Segment segment = byId.get(id);
+            if (segment == null) {
+                throw new IOException("批量请求缺少id为" + id + "的结果，节点返回" + byId.size() + "/" + ids.size() + "个结果");
+            }
+            segments.add(segment);
+        }
+        return new BlockStreamReader(segments);
+    }
+
+    /**
+     * 解析单个请求的响应
+     * @param body 响应的原始字节
+     * @throws IOException 响应格式错误或返回了JSON-RPC错误
+     */
+    public static BlockStreamReader ofResponse(byte[] body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("响应格式错误：" + abbreviate(body));
+            }
+            index(parser);
+        }
+        List<Segment> segments = new ArrayList<>(1);
+        segments.add(new Segment(body, 0, body.length));
+        return new BlockStreamReader(segments);
+    }
+
+    /**
+     * 按顺序合并多个reader
+     */
+    public static BlockStreamReader concat(List<BlockStreamReader> readers) {
+        List<Segment> segments = new ArrayList<>();
+        for (BlockStreamReader reader : readers) {
+            segments.addAll(reader.segments);
+        }
+        return new BlockStreamReader(segments);
+    }
+
+    /**
+     * 区块数
+     */
+    public int size() {
+        return segments.size();
+    }
+
+    /**
+     * 把第index个区块解析到block中，block中原有的内容被覆盖
+     * @param index 区块序号，与请求顺序一致
+     * @param block 可复用的区块对象
+     * @return 区块是否存在，节点返回null（区块还没有同步到该节点）时为false
+     * @throws UncheckedIOException 响应格式错误
+     */
+    public boolean read(int index, ScannedBlock block) {
+        Segment segment = segments.get(index);
+        block.reset();
+        try (JsonParser parser = JSON_FACTORY.createParser(segment.body, segment.offset, segment.length)) {
+            parser.nextToken();
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                JsonToken token = parser.nextToken();
+                if (!"result".equals(field)) {
+                    parser.skipChildren();
+                } else if (token == JsonToken.VALUE_NULL) {
+                    return false;
+                } else {
+                    readBlock(parser, block);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("解析区块失败", e);
+        }
+    }
+
+    /**
+     * 扫过一个响应对象，返回其id；响应包含JSON-RPC错误时抛出异常
+     */
+    private static long index(JsonParser parser) throws IOException {
+        long id = -1;
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken token = parser.nextToken();
+            if ("id".equals(field)) {
+                id = parser.getValueAsLong(-1);
+            } else if ("error".equals(field) && token == JsonToken.START_OBJECT) {
+                throw readError(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return id;
+    }
+
+    private static IOException readError(JsonParser parser) throws IOException {
+        int code = 0;
+        String message = null;
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            parser.nextToken();
+            if ("code".equals(field)) {
+                code = parser.getValueAsInt();
+            } else if ("message".equals(field)) {
+                message = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new IOException(code + " " + message);
+    }
+
+    private static void readBlock(JsonParser parser, ScannedBlock block) throws IOException {
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "number":
+                    String numberRaw = parser.getValueAsString();
+                    block.setNumber(parseQuantity(parser), numberRaw);
+                    break;
+                case "hash":
+                    block.setHash(parser.getValueAsString());
+                    break;
+                case "timestamp":
+                    block.setTimestamp(parseQuantity(parser));
+                    break;
+                case "transactions":
+                    if (token == JsonToken.START_ARRAY) {
+                        readTransactions(parser, block);
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 只解析包含完整交易的区块中的交易对象，只包含交易Hash的区块跳过
+     */
+    private static void readTransactions(JsonParser parser, ScannedBlock block) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            ScannedTransaction transaction = block.nextTransaction();
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                parser.nextToken();
+                switch (field) {
+                    case "hash":
+                    case "from":
+                    case "to":
+                    case "value":
+                        transaction.set(field, parser.getValueAsString());
+                        break;
+                    default:
+                        //调用数据（input）是交易中最大的字段，扫块用不到，跳过时不生成字符串
+                        parser.skipChildren();
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 直接从解析器的字符缓冲区解析十六进制数值，不生成字符串
+     */
+    private static long parseQuantity(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.VALUE_STRING) {
+            return parser.getValueAsLong();
+        }
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int end = offset + parser.getTextLength();
+        if (end - offset >= 2 && chars[offset] == '0' && (chars[offset + 1] == 'x' || chars[offset + 1] == 'X')) {
+            offset += 2;
+        }
+        long value = 0;
+        for (int index = offset; index < end; index++) {
+            int digit = Character.digit(chars[index], 16);
+            if (digit < 0) {
+                throw new IOException("十六进制数值格式错误：" + new String(chars, offset, end - offset));
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    private static String abbreviate(byte[] body) {
+        String text = new String(body, 0, Math.min(body.length, 200), StandardCharsets.UTF_8);
+        return body.length > 200 ? text + "..." : text;
+    }
+
+    /**
+     * 一个结果在响应字节中的位置
+     */
+    private static class Segment {
+
+        private final byte[] body;
+
+        private final int offset;
+
+        private final int length;
+
+        private Segment(byte[] body, int offset, int length) {
+            this.body = body;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.payment.ethereum.block;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 扫块使用的区块，只包含扫块需要的字段
+ * <p>
+ * 作为享元由{@link BlockStreamReader#read(int, ScannedBlock)}反复填充，交易对象在区块之间复用，
+ * 扫描一批区块只需要分配交易数最多的那个区块所需的交易对象。
+ */
+public class ScannedBlock {
+
+    private long number;
+
+    private String numberRaw;
+
+    private String hash;
+
+    private long timestamp;
+
+    private final List<ScannedTransaction> transactions = new ArrayList<>();
+
+    private int transactionCount;
+
+    void reset() {
+        number = 0;
+        numberRaw = null;
+        hash = null;
+        timestamp = 0;
+        transactionCount = 0;
+    }
+
+    void setNumber(long number, String numberRaw) {
+        this.number = number;
+        this.numberRaw = numberRaw;
+    }
+
+    void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * 取出下一个可复用的交易对象
+     */
+    ScannedTransaction nextTransaction() {
+        if (transactionCount == transactions.size()) {
+            transactions.add(new ScannedTransaction());
+        }
+        ScannedTransaction transaction = transactions.get(transactionCount++);
+        transaction.reset();
+        return transaction;
+    }
+
+    public long getNumber() {
+        return number;
+    }
+
+    /**
+     * 区块高度（十六进制），请求eth_getBlockReceipts时使用
+     */
+    public String getNumberRaw() {
+        return numberRaw;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * 出块时间（秒）
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+    public ScannedTransaction getTransaction(int index) {
+        if (index >= transactionCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + transactionCount);
+        }
+        return transactions.get(index);
+    }
+
+    /**
+     * 区块中所有交易的Hash，按交易在区块中的顺序
+     */
+    public List<String> getTransactionHashes() {
+        List<String> hashes = new ArrayList<>(transactionCount);
+        for (int index = 0; index < transactionCount; index++) {
+            hashes.add(transactions.get(index).getHash());
+        }
+        return hashes;
+    }
+}
@@ -0,0 +1,76 @@
+package com.payment.ethereum.block;
+
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+
+/**
+ * 扫块使用的交易，只包含扫块需要的字段
+ * <p>
+ * 作为享元在{@link ScannedBlock}中复用，解析下一个区块时会被覆盖，需要保留的字段应在此之前复制出来。
+ */
+public class ScannedTransaction {
+
+    private String hash;
+
+    private String from;
+
+    private String to;
+
+    private String value;
+
+    void reset() {
+        hash = null;
+        from = null;
+        to = null;
+        value = null;
+    }
+
+    void set(String field, String text) {
+        switch (field) {
+            case "hash":
+                hash = text;
+                break;
+            case "from":
+                from = text;
+                break;
+            case "to":
+                to = text;
+                break;
+            case "value":
+                value = text;
+                break;
+            default:
+                break;
+        }
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    /**
+     * 收款地址或调用的合约地址，创建合约的交易为null
+     */
+    public String getTo() {
+        return to;
+    }
+
+    /**
+     * 转账金额（wei）
+     */
+    public BigInteger getValue() {
+        return value == null ? BigInteger.ZERO : Numeric.decodeQuantity(value);
+    }
+
+    /**
+     * 转账金额（十六进制）
+     */
+    public String getValueRaw() {
+        return value;
+    }
+}
@@ -1,28 +1,58 @@
 package com.payment.ethereum.config;
 
+import com.payment.core.limiter.RpcLimiterRegistry;
+import com.payment.ethereum.rpc.LoadBalancedHttpService;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.http.HttpService;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class EthereumConfig {
 
+    /**
+     * 节点地址，多个节点使用英文逗号分隔
+     */
     @Value("${ethereum.nodeurl}")
     private String ethereumNodeUrl;
 
+    /**
+     * 是否开启对冲请求
+     */
+    @Value("${ethereum.rpc.hedge-enabled:true}")
+    private boolean hedgeEnabled;
+
+    /**
+     * 对冲请求的最小等待时间（毫秒），节点p95延迟低于该值时使用该值
+     */
+    @Value("${ethereum.rpc.hedge-min-delay:200}")
+    private long hedgeMinDelay;
+
     @Bean
-    public Web3j web3j() {
+    public LoadBalancedHttpService web3jService(RpcLimiterRegistry rpcLimiterRegistry) {
+        //请求通过异步方式发出，放宽默认每个节点5个并发的限制
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(128);
+        dispatcher.setMaxRequestsPerHost(64);
         OkHttpClient okHttpClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
                 .readTimeout(30, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .build();
-        return Web3j.build(new HttpService(ethereumNodeUrl, okHttpClient));
+        String[] urls = StringUtils.tokenizeToStringArray(ethereumNodeUrl, ",");
+        return new LoadBalancedHttpService(Arrays.asList(urls), okHttpClient, rpcLimiterRegistry, hedgeEnabled, hedgeMinDelay);
+    }
+
+    @Bean
+    public Web3j web3j(LoadBalancedHttpService web3jService) {
+        return Web3j.build(web3jService);
     }
 
 }
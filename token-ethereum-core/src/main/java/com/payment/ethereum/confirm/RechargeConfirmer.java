@@ -0,0 +1,258 @@
+package com.payment.ethereum.confirm;
+
+import com.payment.core.entity.Currency;
+import com.payment.core.entity.Recharge;
+import com.payment.core.enums.UpchainStatusEnum;
+import com.payment.core.service.RechargeService;
+import com.payment.core.utils.AssertUtils;
+import com.payment.ethereum.service.EthereumService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.Transaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 以太坊与ERC20充值单的确认
+ * <p>
+ * confirms方式按货币配置的确认数逐笔查询待确认充值单的交易，RPC请求数随待确认充值单数增长。
+ * safe与finalized方式每次只通过一次批量请求获取最新、safe与finalized区块头，以所选检查点为界：
+ * 检查点及以下的待确认充值单，所在区块的Hash与链上同一高度的区块Hash一致时，每个货币一次更新全部确认为成功；
+ * 区块Hash不一致（区块已被回滚）或没有记录区块Hash的充值单逐笔查询交易重新定位。
+ * 只有链上同一高度的区块头存在且Hash不一致时才视为回滚，区块头或交易查询失败时等待下次确认，不会退回未上链。
+ * 节点不支持safe与finalized标签时（合并前的链或部分二层网络）回退到confirms方式。
+ */
+@Slf4j
+@Component
+public class RechargeConfirmer {
+
+    public static final String MODE_CONFIRMS = "confirms";
+
+    public static final String MODE_SAFE = "safe";
+
+    public static final String MODE_FINALIZED = "finalized";
+
+    private static final List<String> TAGS = Arrays.asList("latest", MODE_SAFE, MODE_FINALIZED);
+
+    /**
+     * 确认方式：confirms、safe或finalized，默认confirms
+     */
+    @Value("${ethereum.confirm.mode:confirms}")
+    private String mode;
+
+    @Autowired
+    private EthereumService ethereumService;
+
+    @Autowired
+    private RechargeService rechargeService;
+
+    /**
+     * 最近一次获取到的检查点区块高度，confirms方式或节点不支持检查点标签时为-1
+     */
+    private volatile long checkpointHeight = -1;
+
+    private volatile boolean checkpointUnsupported;
+
+    /**
+     * 扫块时判断交易是否已经确认：有检查点时以检查点为界，否则按货币配置的确认数
+     * @param currency 货币配置
+     * @param height 交易所在区块高度
+     * @param networkHeight 当前网络区块高度
+     */
+    public boolean isConfirmed(Currency currency, long height, long networkHeight) {
+        long checkpoint = checkpointHeight;
+        if (checkpoint < 0) {
+            return networkHeight - height >= currency.getConfirms();
+        }
+        return height <= checkpoint;
+    }
+
+    /**
+     * 确认货币的待确认充值单
+     * @param currencies 货币配置
+     */
+    public void confirm(Collection<Currency> currencies) {
+        Map<String, Currency> currenciesByName = new HashMap<>();
+        for (Currency currency : currencies) {
+            currenciesByName.put(currency.getCurrencyName(), currency);
+        }
+
+        //1. 通过一次批量请求获取最新、safe与finalized区块头
+        List<EthBlock.Block> headers = ethereumService.getBlockHeadersByTagAsync(TAGS).join();
+        EthBlock.Block latest = headers.get(0);
+        AssertUtils.isNotNull(latest, "获取最新区块失败");
+        long currentHeight = latest.getNumber().longValue();
+        EthBlock.Block checkpoint = MODE_CONFIRMS.equals(mode) ? null : headers.get(TAGS.indexOf(mode));
+        if (checkpoint == null) {
+            if (!MODE_CONFIRMS.equals(mode) && !checkpointUnsupported) {
+                log.warn("节点没有返回{}区块，按货币配置的确认数确认充值单", mode);
+                checkpointUnsupported = true;
+            }
+            checkpointHeight = -1;
+            confirmByConfirms(currenciesByName, currentHeight);
+            return;
+        }
+        checkpointUnsupported = false;
+        checkpointHeight = checkpoint.getNumber().longValue();
+        log.debug("最新区块{}，safe区块{}，finalized区块{}", currentHeight, number(headers.get(1)), number(headers.get(2)));
+        confirmByCheckpoint(currenciesByName, checkpoint, currentHeight);
+    }
+
+    private void confirmByCheckpoint(Map<String, Currency> currenciesByName, EthBlock.Block checkpoint, long currentHeight) {
+        int checkpointNumber = (int) checkpoint.getNumber().longValue();
+
+        //2. 查询检查点及以下待确认充值单所在的区块高度，批量获取这些高度在当前链上的区块Hash
+        Set<Long> heights = new TreeSet<>();
+        for (String currencyName : currenciesByName.keySet()) {
+            for (Integer height : rechargeService.getWaitConfirmHeights(currencyName, checkpointNumber)) {
+                heights.add(height.longValue());
+            }
+        }
+        Map<Long, String> canonicalHashes = new HashMap<>();
+        canonicalHashes.put((long) checkpointNumber, checkpoint.getHash());
+        heights.remove((long) checkpointNumber);
+        if (!heights.isEmpty()) {
+            for (EthBlock.Block block : ethereumService.getBlockHeadersAsync(new ArrayList<>(heights)).join()) {
+                if (block != null) {
+                    canonicalHashes.put(block.getNumber().longValue(), block.getHash());
+                }
+            }
+        }
+        Set<String> blockHashes = new HashSet<>(canonicalHashes.values());
+
+        //3. 每个货币一次更新确认区块Hash一致的充值单，其余待确认充值单只更新确认数
+        for (String currencyName : currenciesByName.keySet()) {
+            int confirmed = rechargeService.confirmRecharges(currencyName, checkpointNumber, blockHashes, (int) currentHeight);
+            rechargeService.updateWaitConfirmCount(currencyName, (int) currentHeight);
+            if (confirmed > 0) {
+                log.info("{}检查点区块{}及以下确认充值单{}笔", currencyName, checkpointNumber, confirmed);
+            }
+        }
+
+        //4. 检查点及以下仍未确认的充值单没有记录区块Hash或所在区块已被回滚，逐笔查询交易重新定位
+        List<Recharge> recharges = new ArrayList<>();
+        for (String currencyName : currenciesByName.keySet()) {
+            recharges.addAll(rechargeService.getWaitConfirmRecharge(currencyName, checkpointNumber));
+        }
+        if (recharges.isEmpty()) {
+            return;
+        }
+        List<Transaction> transactions = getTransactions(recharges);
+        for (int index = 0; index < recharges.size(); index++) {
+            Recharge recharge = recharges.get(index);
+            Transaction transaction = transactions.get(index);
+            if (transaction != null && transaction.getBlockNumberRaw() != null) {
+                long height = transaction.getBlockNumber().longValue();
+                update(recharge, transaction, currentHeight, height <= checkpointNumber);
+                continue;
+            }
+
+            //链上同一高度的区块头存在且Hash不一致时才视为回滚，交易重新上链时由扫块任务重新匹配；区块头或交易查询失败时下次确认重试
+            String canonicalHash = recharge.getHeight() == null ? null : canonicalHashes.get(recharge.getHeight().longValue());
+            if (canonicalHash == null || recharge.getBlockHash() == null || canonicalHash.equals(recharge.getBlockHash())) {
+                log.warn("充值单{}的交易{}查询失败，下次确认时重试", recharge.getOrderId(), recharge.getTxHash());
+                continue;
+            }
+            log.warn("充值单{}的交易{}所在区块{}已被回滚", recharge.getOrderId(), recharge.getTxHash(), recharge.getHeight());
+            recharge.setUpchainStatus(UpchainStatusEnum.NOT_UPCHAIN.getCode());
+            recharge.setUpdatedAt(new Date());
+            rechargeService.saveRecharge(recharge);
+        }
+    }
+
+    /**
+     * 按货币配置的确认数逐笔确认
+     */
+    private void confirmByConfirms(Map<String, Currency> currenciesByName, long currentHeight) {
+        //2. 查询到所有货币待确认的充值单
+        List<Recharge> recharges = new ArrayList<>();
+        for (String currencyName : currenciesByName.keySet()) {
+            recharges.addAll(rechargeService.getWaitConfirmRecharge(currencyName));
+        }
+        AssertUtils.isFalse(recharges.isEmpty(), "不存在待确认的充值单");
+
+        //3. 通过批量请求查询所有待确认充值单的交易，确认数大于等于配置的确认数时更新为成功
+        List<Transaction> transactions = getTransactions(recharges);
+        for (int index = 0; index < recharges.size(); index++) {
+            Recharge recharge = recharges.get(index);
+            Transaction transaction = transactions.get(index);
+            if (transaction == null || transaction.getBlockNumberRaw() == null) {
+                log.warn("充值单{}的交易{}不在链上", recharge.getOrderId(), recharge.getTxHash());
+                continue;
+            }
+            Currency currency = currenciesByName.get(recharge.getCurrencyName());
+            long height = transaction.getBlockNumber().longValue();
+            update(recharge, transaction, currentHeight, currentHeight - height >= currency.getConfirms());
+        }
+    }
+
+    /**
+     * 批量查询充值单的交易。余额变化识别的合约内部转账没有交易Hash，
+     * 所在区块的Hash与链上同一高度的区块Hash一致时以该区块构造交易，否则视为交易不在链上
+     * @return 与recharges一一对应的交易，交易不存在的位置为null
+     */
+    private List<Transaction> getTransactions(List<Recharge> recharges) {
+        List<String> txHashes = new ArrayList<>(recharges.size());
+        List<Long> heights = new ArrayList<>();
+        for (Recharge recharge : recharges) {
+            if (recharge.getTxHash() != null) {
+                txHashes.add(recharge.getTxHash());
+            } else if (recharge.getHeight() != null) {
+                heights.add(recharge.getHeight().longValue());
+            }
+        }
+        List<Transaction> found = txHashes.isEmpty() ? Collections.emptyList() : ethereumService.getTransactionsByHashAsync(txHashes).join();
+        List<EthBlock.Block> blocks = heights.isEmpty() ? Collections.emptyList() : ethereumService.getBlockHeadersAsync(heights).join();
+
+        List<Transaction> transactions = new ArrayList<>(recharges.size());
+        int txIndex = 0;
+        int blockIndex = 0;
+        for (Recharge recharge : recharges) {
+            if (recharge.getTxHash() != null) {
+                transactions.add(found.get(txIndex++));
+            } else if (recharge.getHeight() != null) {
+                EthBlock.Block block = blocks.get(blockIndex++);
+                Transaction transaction = null;
+                if (block != null && block.getHash().equals(recharge.getBlockHash())) {
+                    transaction = new Transaction();
+                    transaction.setBlockNumber(block.getNumberRaw());
+                    transaction.setBlockHash(block.getHash());
+                }
+                transactions.add(transaction);
+            } else {
+                transactions.add(null);
+            }
+        }
+        return transactions;
+    }
+
+    private void update(Recharge recharge, Transaction transaction, long currentHeight, boolean confirmed) {
+        long height = transaction.getBlockNumber().longValue();
+        if (confirmed) {
+            recharge.setUpchainStatus(UpchainStatusEnum.SUCCESS.getCode());
+            recharge.setUpchainSuccessAt(new Date());
+        }
+        recharge.setHeight((int) height);
+        recharge.setBlockHash(transaction.getBlockHash());
+        recharge.setCurrentConfirm((int) (currentHeight - height));
+        recharge.setUpdatedAt(new Date());
+        rechargeService.saveRecharge(recharge);
+    }
+
+    private static Long number(EthBlock.Block block) {
+        return block == null ? null : block.getNumber().longValue();
+    }
+}
@@ -0,0 +1,134 @@
+package com.payment.ethereum.confirm;
+
+import com.payment.core.entity.ColdRecord;
+import com.payment.core.entity.Currency;
+import com.payment.core.enums.UpchainStatusEnum;
+import com.payment.core.service.ColdRecordService;
+import com.payment.core.service.CurrencyService;
+import com.payment.core.utils.AssertUtils;
+import com.payment.core.utils.AsyncUtils;
+import com.payment.ethereum.service.EthereumService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.core.methods.response.Transaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 以太坊与ERC20归集交易的确认
+ * <p>
+ * 交易收据成功且确认数达到币种配置的确认数时更新为成功；交易执行失败，或没有收据且节点中也查不到超过dropAfterBlocks个区块时
+ * （交易被替换或从交易池中丢弃）更新为未上链，该地址在下一次归集时重新归集。
+ */
+@Slf4j
+@Component
+public class SweepConfirmer {
+
+    /**
+     * 确认时同时向节点请求的交易数
+     */
+    @Value("${ethereum.sweep.max-inflight:16}")
+    private int maxInflight;
+
+    /**
+     * 归集交易没有收据且不在节点中超过该区块数时视为被丢弃，更新为未上链
+     */
+    @Value("${ethereum.sweep.drop-after-blocks:50}")
+    private long dropAfterBlocks;
+
+    @Autowired
+    private CurrencyService currencyService;
+
+    @Autowired
+    private EthereumService ethereumService;
+
+    @Autowired
+    private ColdRecordService coldRecordService;
+
+    /**
+     * 没有收据且不在节点中的归集交易与第一次发现时的区块高度
+     */
+    private final Map<String, Long> missingSince = new HashMap<>();
+
+    /**
+     * 确认指定货币的归集交易
+     * @param currencyName 货币名称
+     */
+    public synchronized void confirm(String currencyName) {
+        //1. 查询所有待确认的转冷钱包记录
+        List<ColdRecord> waitConfirmRecords = coldRecordService.getWaitConfirmColdRecord(currencyName);
+        if (waitConfirmRecords.isEmpty()) {
+            return;
+        }
+        Currency currency = currencyService.findCurrency(currencyName);
+        AssertUtils.isNotNull(currency, "数据库未配置货币信息：" + currencyName);
+        long currentHeight = ethereumService.getBlockchainHeight();
+
+        //2. 流水线查询交易收据
+        List<TransactionReceipt> receipts = AsyncUtils.pipeline(waitConfirmRecords, maxInflight,
+                record -> ethereumService.getTransactionReceiptAsync(record.getTxHash()));
+
+        //3. 没有收据的交易查询是否还在节点中，节点不认识的交易超过dropAfterBlocks个区块视为被丢弃
+        List<String> unknownHashes = new ArrayList<>();
+        for (int i = 0; i < waitConfirmRecords.size(); i++) {
+            if (receipts.get(i) == null || receipts.get(i).getBlockNumber() == null) {
+                unknownHashes.add(waitConfirmRecords.get(i).getTxHash());
+            }
+        }
+        Set<String> pendingHashes = new HashSet<>();
+        if (!unknownHashes.isEmpty()) {
+            for (Transaction transaction : ethereumService.getTransactionsByHashAsync(unknownHashes).join()) {
+                if (transaction != null) {
+                    pendingHashes.add(transaction.getHash());
+                }
+            }
+        }
+
+        //4. 更新已确认、已失败与已丢弃的记录，未打包的交易等待下次确认
+        List<ColdRecord> updated = new ArrayList<>();
+        for (int i = 0; i < waitConfirmRecords.size(); i++) {
+            ColdRecord record = waitConfirmRecords.get(i);
+            TransactionReceipt receipt = receipts.get(i);
+            if (receipt == null || receipt.getBlockNumber() == null) {
+                if (pendingHashes.contains(record.getTxHash())) {
+                    missingSince.remove(record.getTxHash());
+                    continue;
+                }
+                long since = missingSince.computeIfAbsent(record.getTxHash(), txHash -> currentHeight);
+                if (currentHeight - since < dropAfterBlocks) {
+                    continue;
+                }
+                log.warn("{}归集交易{}超过{}个区块不在节点中，视为被丢弃", currencyName, record.getTxHash(), dropAfterBlocks);
+                missingSince.remove(record.getTxHash());
+                record.setUpchainStatus(UpchainStatusEnum.NOT_UPCHAIN.getCode());
+                record.setUpdatedAt(new Date());
+                updated.add(record);
+                continue;
+            }
+            missingSince.remove(record.getTxHash());
+            if (!receipt.isStatusOK()) {
+                log.error("{}归集交易执行失败：{}", currencyName, record.getTxHash());
+                record.setUpchainStatus(UpchainStatusEnum.NOT_UPCHAIN.getCode());
+            } else if (currentHeight - receipt.getBlockNumber().longValue() >= currency.getConfirms()) {
+                record.setUpchainStatus(UpchainStatusEnum.SUCCESS.getCode());
+                record.setUpchainSuccessAt(new Date());
+            } else {
+                continue;
+            }
+            record.setUpdatedAt(new Date());
+            updated.add(record);
+        }
+        if (!updated.isEmpty()) {
+            coldRecordService.saveColdRecords(updated);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.payment.ethereum.fee;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.math.BigInteger;
+
+/**
+ * 某一时刻的手续费估算结果，创建后不可变，可以在线程间无锁共享
+ */
+@Getter
+@ToString
+public class FeeEstimate {
+
+    /**
+     * 下一个区块的基础费用，节点不支持EIP-1559时为null
+     */
+    private final BigInteger baseFeePerGas;
+
+    /**
+     * 建议的小费
+     */
+    private final BigInteger maxPriorityFeePerGas;
+
+    /**
+     * 建议的最高费用，可以承受基础费用在多个区块内持续上涨
+     */
+    private final BigInteger maxFeePerGas;
+
+    /**
+     * 建议的传统交易gas价格
+     */
+    private final BigInteger gasPrice;
+
+    /**
+     * 估算时间
+     */
+    private final long updatedAt;
+
+    public FeeEstimate(BigInteger baseFeePerGas, BigInteger maxPriorityFeePerGas, BigInteger maxFeePerGas, BigInteger gasPrice, long updatedAt) {
+        this.baseFeePerGas = baseFeePerGas;
+        this.maxPriorityFeePerGas = maxPriorityFeePerGas;
+        this.maxFeePerGas = maxFeePerGas;
+        this.gasPrice = gasPrice;
+        this.updatedAt = updatedAt;
+    }
+
+    public boolean isEip1559() {
+        return baseFeePerGas != null;
+    }
+}
@@ -0,0 +1,198 @@
+package com.payment.ethereum.fee;
+
+import com.payment.ethereum.rpc.EthFeeHistory;
+import com.payment.ethereum.rpc.LoadBalancedHttpService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthGasPrice;
+import org.web3j.utils.Numeric;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 手续费预言机
+ * <p>
+ * 后台线程定期通过eth_feeHistory获取最近若干区块的基础费用与小费分位数，计算出手续费估算结果并整体替换，
+ * 构建交易时直接读取内存中的估算结果，不需要等待节点返回。节点不支持eth_feeHistory时使用eth_gasPrice。
+ * 第一次获取估算结果时才开始刷新，扫块等不构建交易的进程不会轮询节点。
+ */
+@Slf4j
+@Component
+public class FeeOracle {
+
+    /**
+     * 基础费用每个区块最多上涨12.5%
+     */
+    private static final BigInteger MAX_BASE_FEE_CHANGE_NUMERATOR = BigInteger.valueOf(9);
+
+    private static final BigInteger MAX_BASE_FEE_CHANGE_DENOMINATOR = BigInteger.valueOf(8);
+
+    /**
+     * 刷新间隔（毫秒）
+     */
+    @Value("${ethereum.fee.refresh-interval:3000}")
+    private long refreshInterval;
+
+    /**
+     * 统计的区块数
+     */
+    @Value("${ethereum.fee.block-count:20}")
+    private int blockCount;
+
+    /**
+     * 小费取每个区块交易小费的百分位
+     */
+    @Value("${ethereum.fee.priority-percentile:50}")
+    private double priorityPercentile;
+
+    /**
+     * 最低小费（wei）
+     */
+    @Value("${ethereum.fee.min-priority-fee:100000000}")
+    private long minPriorityFee;
+
+    /**
+     * 最高费用为基础费用的倍数，2倍可以承受基础费用连续6个满区块的上涨
+     */
+    @Value("${ethereum.fee.max-fee-multiplier:2}")
+    private int maxFeeMultiplier;
+
+    /**
+     * 估算结果超过该时间（毫秒）未刷新视为过期
+     */
+    @Value("${ethereum.fee.max-age:30000}")
+    private long maxAge;
+
+    @Autowired
+    private LoadBalancedHttpService web3jService;
+
+    private volatile FeeEstimate estimate;
+
+    private volatile boolean feeHistorySupported = true;
+
+    private volatile ScheduledExecutorService scheduler;
+
+    private synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "eth-fee-oracle");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refresh, 0, refreshInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 获取最新的手续费估算结果
+     * @return 估算结果，尚未刷新成功或已过期时为null
+     */
+    public FeeEstimate getEstimate() {
+        if (scheduler == null) {
+            start();
+        }
+        FeeEstimate current = estimate;
+        if (current == null || System.currentTimeMillis() - current.getUpdatedAt() > maxAge) {
+            return null;
+        }
+        return current;
+    }
+
+    /**
+     * 刷新手续费估算结果，异常只记录日志，保留上一次的结果直到过期
+     */
+    void refresh() {
+        try {
+            if (feeHistorySupported) {
+                Optional<FeeEstimate> feeHistoryEstimate = estimateFromFeeHistory();
+                if (feeHistoryEstimate.isPresent()) {
+                    estimate = feeHistoryEstimate.get();
+                    return;
+                }
+                feeHistorySupported = false;
+            }
+            estimate = estimateFromGasPrice();
+        } catch (Exception e) {
+            log.warn("刷新手续费估算失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 通过eth_feeHistory估算手续费
+     * @return 估算结果，节点不支持eth_feeHistory或区块不包含基础费用时为空
+     * @throws IOException 请求失败，下次重试
+     */
+    private Optional<FeeEstimate> estimateFromFeeHistory() throws IOException {
+        //1. 查询最近blockCount个区块的基础费用与小费分位数
+        EthFeeHistory response = new Request<>("eth_feeHistory",
+                Arrays.asList(Numeric.encodeQuantity(BigInteger.valueOf(blockCount)), "latest", Collections.singletonList(priorityPercentile)),
+                web3jService, EthFeeHistory.class).send();
+        if (response.hasError()) {
+            //-32601为方法不存在，其他错误（例如限流）下次重试
+            if (response.getError().getCode() == -32601) {
+                log.warn("节点不支持eth_feeHistory，手续费改为通过eth_gasPrice获取：{}", response.getError().getMessage());
+                return Optional.empty();
+            }
+            throw new IOException(response.getError().getMessage());
+        }
+        EthFeeHistory.FeeHistory history = response.getFeeHistory();
+        List<String> baseFees = history.getBaseFeePerGas();
+        if (baseFees == null || baseFees.isEmpty()) {
+            log.warn("区块不包含基础费用，手续费改为通过eth_gasPrice获取");
+            return Optional.empty();
+        }
+
+        //2. 下一个区块的基础费用为数组最后一个元素
+        BigInteger baseFee = Numeric.decodeQuantity(baseFees.get(baseFees.size() - 1));
+
+        //3. 小费取各区块分位数小费的中位数，忽略空区块
+        List<BigInteger> rewards = new ArrayList<>();
+        List<List<String>> blockRewards = history.getReward() == null ? Collections.<List<String>>emptyList() : history.getReward();
+        for (int i = 0; i < blockRewards.size(); i++) {
+            boolean empty = history.getGasUsedRatio() != null && i < history.getGasUsedRatio().size() && history.getGasUsedRatio().get(i) == 0;
+            if (!empty && !blockRewards.get(i).isEmpty()) {
+                rewards.add(Numeric.decodeQuantity(blockRewards.get(i).get(0)));
+            }
+        }
+        BigInteger priorityFee = BigInteger.valueOf(minPriorityFee);
+        if (!rewards.isEmpty()) {
+            Collections.sort(rewards);
+            priorityFee = priorityFee.max(rewards.get(rewards.size() / 2));
+        }
+
+        //4. 传统交易的gas价格按下一个区块基础费用的最大涨幅计算，避免全额支付最高费用
+        BigInteger maxFee = baseFee.multiply(BigInteger.valueOf(maxFeeMultiplier)).add(priorityFee);
+        BigInteger gasPrice = baseFee.multiply(MAX_BASE_FEE_CHANGE_NUMERATOR).divide(MAX_BASE_FEE_CHANGE_DENOMINATOR).add(priorityFee);
+        return Optional.of(new FeeEstimate(baseFee, priorityFee, maxFee, gasPrice, System.currentTimeMillis()));
+    }
+
+    private FeeEstimate estimateFromGasPrice() throws IOException {
+        EthGasPrice response = new Request<>("eth_gasPrice", Collections.emptyList(), web3jService, EthGasPrice.class).send();
+        if (response.hasError()) {
+            throw new IOException(response.getError().getMessage());
+        }
+        BigInteger gasPrice = response.getGasPrice();
+        return new FeeEstimate(null, gasPrice, gasPrice, gasPrice, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,289 @@
+package com.payment.ethereum.filter;
+
+import com.payment.core.entity.Recharge;
+import com.payment.core.service.RechargeService;
+import com.payment.core.utils.AddressSet;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 充值地址的本地过滤
+ * <p>
+ * 扫块时每笔交易都要按收款地址查询一次充值单，绝大多数交易的收款地址不是充值地址。
+ * 这里把所有充值地址以20字节保存在{@link AddressSet}中，收款地址不在集合中的交易直接跳过，不查询数据库；
+ * 在集合中的交易仍以数据库查询结果为准。
+ * <p>
+ * 配置了文件路径时集合保存在内存映射文件中，文件头记录已加载的最大充值单id，重启后从该id继续增量加载；
+ * 充值单id在所有货币之间递增，按id读取所有货币的充值单，只保存指定货币的地址。
+ * 并发事务晚提交的充值单在增量加载时表现为缺少的id，记录下来每次加载时按id重新查询，提交后补上地址；
+ * 缺少的id之后又创建了超过gapTimeout的充值单，或重新检查超过gapTimeout仍不存在的，视为已回滚或删除，不再检查。
+ * 缺少的id只保存在内存中，重启后从已加载位置向前读取比它早创建不超过gapTimeout的充值单，重新补上地址并找出缺少的id。
+ * 每隔fullLoadInterval从头读取一遍作为兜底。
+ * 已删除的充值单的地址不会移除，只会多查询一次数据库。
+ */
+@Slf4j
+@Component
+public class DepositAddressFilter {
+
+    /**
+     * 以太坊地址的字节数
+     */
+    private static final int ADDRESS_BYTES = 20;
+
+    /**
+     * 每次加载的充值单数
+     */
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    /**
+     * 集合文件路径，为空时集合保存在堆外内存中
+     */
+    @Value("${ethereum.scan.address-set-file:}")
+    private String file;
+
+    /**
+     * 预计的充值地址个数，只在创建集合时用于确定初始容量
+     */
+    @Value("${ethereum.scan.address-set-expected-size:1000000}")
+    private long expectedSize;
+
+    /**
+     * 缺少的充值单id重新检查的最长时间（毫秒），需要大于写入充值单的事务的最长执行时间
+     */
+    @Value("${ethereum.scan.address-set-gap-timeout:600000}")
+    private long gapTimeout;
+
+    /**
+     * 从头读取一遍全部充值单的间隔（毫秒）
+     */
+    @Value("${ethereum.scan.address-set-full-load-interval:86400000}")
+    private long fullLoadInterval;
+
+    @Autowired
+    private RechargeService rechargeService;
+
+    /**
+     * 第一次加载时创建，没有使用过滤的应用不占用内存
+     */
+    private volatile AddressSet addresses;
+
+    /**
+     * 以下字段只在加载时访问
+     */
+    private long fullLoadedAt;
+
+    /**
+     * 从文件恢复集合后还没有重新找出缺少的id
+     */
+    private boolean recovering;
+
+    /**
+     * 增量加载时缺少的充值单id与开始缺少的时间
+     */
+    private final Map<Long, Long> missingIds = new HashMap<>();
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (addresses != null) {
+            addresses.close();
+        }
+    }
+
+    /**
+     * 加载新增的充值地址。
+     * 需要在获取网络区块高度之后调用，保证扫描范围内的充值对应的地址都已加载。
+     * @param currencyNames 货币名称
+     */
+    public synchronized void refresh(Collection<String> currencyNames) {
+        if (addresses == null) {
+            try {
+                addresses = open();
+            } catch (IOException e) {
+                throw new UncheckedIOException("打开充值地址集合失败", e);
+            }
+        }
+
+        //1. 从文件恢复的集合先找出已加载位置之前缺少的id；超过从头读取间隔时从第一个充值单开始，否则从已加载位置开始
+        long now = System.currentTimeMillis();
+        long watermark = addresses.getWatermark();
+        Set<String> names = new HashSet<>(currencyNames);
+        long before = addresses.size();
+        if (recovering) {
+            recoverMissing(names, watermark, now);
+            recovering = false;
+            fullLoadedAt = now;
+        }
+        long fromId = watermark;
+        if (now - fullLoadedAt >= fullLoadInterval) {
+            fromId = 0;
+            fullLoadedAt = now;
+        }
+
+        //2. 按id加载所有货币的充值单，保存指定货币的收款地址，记录缺少的id
+        long loadedId = fromId;
+        long latestCreatedAt = 0;
+        List<long[]> gaps = new ArrayList<>();
+        List<Recharge> recharges;
+        do {
+            recharges = rechargeService.getRechargesAfterId(loadedId, LOAD_BATCH_SIZE);
+            for (Recharge recharge : recharges) {
+                long id = recharge.getId();
+                long createdAt = recharge.getCreatedAt() == null ? 0 : recharge.getCreatedAt().getTime();
+                if (id > loadedId + 1) {
+                    gaps.add(new long[]{loadedId, id, createdAt});
+                }
+                latestCreatedAt = Math.max(latestCreatedAt, createdAt);
+                missingIds.remove(id);
+                if (names.contains(recharge.getCurrencyName())) {
+                    add(recharge.getToAddress());
+                }
+                loadedId = Math.max(loadedId, id);
+            }
+        } while (recharges.size() == LOAD_BATCH_SIZE);
+        watermark = Math.max(watermark, loadedId);
+        addresses.setWatermark(watermark);
+        addMissing(gaps, latestCreatedAt, now);
+
+        //3. 按id重新查询缺少的充值单，已提交的补上地址
+        recheckMissing(names, now);
+        if (addresses.size() > before) {
+            log.info("新增充值地址{}个，共{}个地址，已加载到充值单{}", addresses.size() - before, addresses.size(), watermark);
+        }
+    }
+
+    /**
+     * 地址是否可能是充值地址，不创建对象
+     * @param address 地址（十六进制，可以带0x前缀）
+     * @return false表示一定不是充值地址；还没有加载过时为true
+     */
+    public boolean mightContain(String address) {
+        AddressSet current = addresses;
+        return current == null || current.containsHex(address);
+    }
+
+    private AddressSet open() throws IOException {
+        if (!StringUtils.hasText(file)) {
+            return AddressSet.allocate(ADDRESS_BYTES, expectedSize);
+        }
+        Path path = Paths.get(file);
+        AddressSet opened;
+        try {
+            opened = AddressSet.open(path, ADDRESS_BYTES, expectedSize);
+        } catch (IOException e) {
+            log.warn("充值地址集合文件{}无法使用，重新创建：{}", path, e.getMessage());
+            Files.deleteIfExists(path);
+            opened = AddressSet.open(path, ADDRESS_BYTES, expectedSize);
+        }
+        //文件中已有加载位置时从该位置继续增量加载，之后按fullLoadInterval从头读取
+        recovering = opened.getWatermark() > 0;
+        log.info("已打开充值地址集合{}：{}个地址，已加载到充值单{}", path, opened.size(), opened.getWatermark());
+        return opened;
+    }
+
+    /**
+     * 记录相邻充值单之间缺少的id。
+     * 缺少的充值单不会晚于之后的充值单创建，之后的充值单比本次加载的最新充值单早创建gapTimeout以上时不再记录；
+     * 两个创建时间都取自数据库，不受应用与数据库时钟不一致的影响
+     * @param gaps 上一个充值单id、之后的充值单id与之后的充值单的创建时间
+     * @param latestCreatedAt 本次加载的最新充值单的创建时间
+     * @param now 开始重新检查的时间
+     */
+    private void addMissing(List<long[]> gaps, long latestCreatedAt, long now) {
+        for (long[] gap : gaps) {
+            if (gap[2] > 0 && latestCreatedAt - gap[2] >= gapTimeout) {
+                continue;
+            }
+            for (long missingId = gap[0] + 1; missingId < gap[1]; missingId++) {
+                missingIds.putIfAbsent(missingId, now);
+            }
+        }
+    }
+
+    /**
+     * 从文件恢复集合后，从已加载位置向前按id倒序读取，直到充值单比已加载位置的充值单早创建gapTimeout以上：
+     * 其间的充值单重新补上地址（上次运行时缺少、停机期间才提交的充值单），其间缺少的id重新记录
+     * @param names 货币名称
+     * @param watermark 已加载的最大充值单id
+     * @param now 开始重新检查的时间
+     */
+    private void recoverMissing(Set<String> names, long watermark, long now) {
+        long latestCreatedAt = -1;
+        long successorId = watermark + 1;
+        long successorCreatedAt = 0;
+        List<long[]> gaps = new ArrayList<>();
+        List<Recharge> recharges;
+        do {
+            recharges = rechargeService.getRechargesBeforeId(successorId, LOAD_BATCH_SIZE);
+            for (Recharge recharge : recharges) {
+                long id = recharge.getId();
+                long createdAt = recharge.getCreatedAt() == null ? 0 : recharge.getCreatedAt().getTime();
+                if (latestCreatedAt < 0) {
+                    latestCreatedAt = createdAt;
+                }
+                if (id < successorId - 1) {
+                    gaps.add(new long[]{id, successorId, successorCreatedAt});
+                }
+                if (names.contains(recharge.getCurrencyName())) {
+                    add(recharge.getToAddress());
+                }
+                if (createdAt > 0 && latestCreatedAt - createdAt >= gapTimeout) {
+                    recharges = Collections.emptyList();
+                    break;
+                }
+                successorId = id;
+                successorCreatedAt = createdAt;
+            }
+        } while (recharges.size() == LOAD_BATCH_SIZE);
+        addMissing(gaps, Math.max(latestCreatedAt, 0), now);
+        log.info("充值地址集合从充值单{}继续加载，向前重新检查到充值单{}，缺少的id{}个", watermark, successorId, missingIds.size());
+    }
+
+    private void recheckMissing(Set<String> names, long now) {
+        if (missingIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(missingIds.keySet());
+        for (int from = 0; from < ids.size(); from += LOAD_BATCH_SIZE) {
+            for (Recharge recharge : rechargeService.getRechargesByIds(ids.subList(from, Math.min(from + LOAD_BATCH_SIZE, ids.size())))) {
+                missingIds.remove(recharge.getId());
+                if (names.contains(recharge.getCurrencyName())) {
+                    add(recharge.getToAddress());
+                }
+            }
+        }
+        int before = missingIds.size();
+        missingIds.values().removeIf(missingSince -> now - missingSince >= gapTimeout);
+        if (missingIds.size() < before) {
+            log.info("充值单id缺少超过{}毫秒，视为已回滚或删除：{}个", gapTimeout, before - missingIds.size());
+        }
+    }
+
+    private void add(String address) {
+        if (StringUtils.isEmpty(address)) {
+            return;
+        }
+        try {
+            addresses.addHex(address);
+        } catch (IllegalArgumentException e) {
+            log.warn("充值地址格式不正确：{}", address);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.payment.ethereum.filter;
+
+import com.payment.core.entity.Recharge;
+import com.payment.core.service.RechargeService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 充值地址的收款方topic过滤条件
+ * <p>
+ * Transfer事件的topics[2]为左侧补零到32字节的收款地址。把所有充值地址编码为topic后按chunkSize分组，
+ * 每组作为一次eth_getLogs的topics[2]可选列表，由节点过滤出转入充值地址的事件，不需要拉取合约的全部Transfer事件。
+ * <p>
+ * 充值地址按充值单id增量加载，新地址追加到最后一组，已满的分组不再变化。
+ * 并发事务提交的充值单id可能不连续，每次增量加载都回退overlap个id重新读取，并每隔reloadInterval从头读取一遍，
+ * 补上增量加载时还未提交的地址。从头读取时新增的地址在之前的扫描中被漏掉，
+ * 记录为漏扫地址，由扫块任务从上一次从头读取时的区块高度开始单独重新扫描。
+ */
+@Slf4j
+@Component
+public class RecipientTopicFilter {
+
+    /**
+     * 每次增量加载的充值单数
+     */
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    /**
+     * 每组topic包含的地址数，需要小于节点对过滤条件的限制
+     */
+    @Value("${ethereum.scan.topic-chunk-size:500}")
+    private int chunkSize;
+
+    /**
+     * 从头读取一遍全部充值单的间隔（毫秒）
+     */
+    @Value("${ethereum.scan.address-reload-interval:3600000}")
+    private long reloadInterval;
+
+    /**
+     * 增量加载时回退重新读取的充值单id数
+     */
+    @Value("${ethereum.scan.address-set-overlap:1000}")
+    private long overlap;
+
+    @Autowired
+    private RechargeService rechargeService;
+
+    private final Set<String> addresses = new HashSet<>();
+
+    /**
+     * 已满的分组，不再变化
+     */
+    private final List<List<String>> fullChunks = new ArrayList<>();
+
+    private List<String> tailChunk = new ArrayList<>();
+
+    /**
+     * 货币名称与已加载的最大充值单id的对应关系
+     */
+    private final Map<String, Long> loadedIds = new HashMap<>();
+
+    private long reloadedAt;
+
+    /**
+     * 上一次从头读取时扫块任务的起始区块高度
+     */
+    private long reloadedHeight;
+
+    /**
+     * 从头读取时发现的漏扫地址topic，重新扫描完成后清空
+     */
+    private final List<String> missedTopics = new ArrayList<>();
+
+    private long missedFromHeight;
+
+    /**
+     * 加载新增的充值地址，返回当前的topic分组。
+     * 需要在获取网络区块高度之后调用，保证扫描范围内的充值对应的地址都已加载。
+     * @param currencyNames 货币名称，多个代币共用充值地址时一起加载
+     * @param fromHeight 本次扫描的起始区块高度
+     * @return topic分组，没有充值地址时为空列表
+     */
+    public synchronized List<List<String>> refresh(Collection<String> currencyNames, long fromHeight) {
+        //1. 超过从头读取间隔时从第一个充值单开始，否则从已加载位置回退overlap个id开始
+        long now = System.currentTimeMillis();
+        boolean reload = now - reloadedAt >= reloadInterval;
+
+        //2. 按id加载充值单的收款地址
+        int before = addresses.size();
+        List<String> added = new ArrayList<>();
+        for (String currencyName : currencyNames) {
+            long watermark = loadedIds.getOrDefault(currencyName, 0L);
+            long loadedId = reload ? 0 : Math.max(0, watermark - overlap);
+            List<Recharge> recharges;
+            do {
+                recharges = rechargeService.getRechargesAfterId(currencyName, loadedId, LOAD_BATCH_SIZE);
+                for (Recharge recharge : recharges) {
+                    String topic = add(recharge.getToAddress());
+                    if (topic != null) {
+                        added.add(topic);
+                    }
+                    loadedId = Math.max(loadedId, recharge.getId());
+                }
+            } while (recharges.size() == LOAD_BATCH_SIZE);
+            loadedIds.put(currencyName, Math.max(watermark, loadedId));
+        }
+        if (addresses.size() > before) {
+            log.info("新增充值地址{}个，共{}个地址，{}组topic", addresses.size() - before, addresses.size(), fullChunks.size() + (tailChunk.isEmpty() ? 0 : 1));
+        }
+
+        //3. 从头读取时新增的地址可能在上一次从头读取之后的扫描中被漏掉，第一次加载时没有漏扫
+        if (reload) {
+            if (reloadedAt > 0 && !added.isEmpty()) {
+                missedFromHeight = missedTopics.isEmpty() ? reloadedHeight : Math.min(missedFromHeight, reloadedHeight);
+                missedTopics.addAll(added);
+                log.warn("从头读取充值单时新增充值地址{}个，从区块{}开始重新扫描", added.size(), missedFromHeight);
+            }
+            reloadedAt = now;
+            reloadedHeight = fromHeight;
+        }
+
+        //4. 已满的分组不可变，直接共享；最后一组复制一份
+        List<List<String>> chunks = new ArrayList<>(fullChunks.size() + 1);
+        chunks.addAll(fullChunks);
+        if (!tailChunk.isEmpty()) {
+            chunks.add(Collections.unmodifiableList(new ArrayList<>(tailChunk)));
+        }
+        return chunks;
+    }
+
+    /**
+     * 需要重新扫描的漏扫地址的起始区块高度
+     * @return 没有漏扫地址时为-1
+     */
+    public synchronized long getMissedFromHeight() {
+        return missedTopics.isEmpty() ? -1 : missedFromHeight;
+    }
+
+    /**
+     * 漏扫地址的topic分组
+     */
+    public synchronized List<List<String>> getMissedChunks() {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < missedTopics.size(); from += chunkSize) {
+            chunks.add(new ArrayList<>(missedTopics.subList(from, Math.min(missedTopics.size(), from + chunkSize))));
+        }
+        return chunks;
+    }
+
+    /**
+     * 漏扫地址重新扫描完成后清空
+     */
+    public synchronized void clearMissed() {
+        missedTopics.clear();
+    }
+
+    /**
+     * @return 新增地址的topic，已存在时为null
+     */
+    private String add(String address) {
+        if (StringUtils.isEmpty(address) || !addresses.add(address.toLowerCase())) {
+            return null;
+        }
+        String topic = toTopic(address);
+        tailChunk.add(topic);
+        if (tailChunk.size() >= chunkSize) {
+            fullChunks.add(Collections.unmodifiableList(tailChunk));
+            tailChunk = new ArrayList<>();
+        }
+        return topic;
+    }
+
+    /**
+     * 把地址编码为indexed参数的topic：去掉0x后左侧补零到32字节
+     * @param address 地址
+     * @return topic
+     */
+    public static String toTopic(String address) {
+        String hex = address.startsWith("0x") || address.startsWith("0X") ? address.substring(2) : address;
+        return "0x000000000000000000000000" + hex.toLowerCase();
+    }
+}
@@ -0,0 +1,357 @@
+package com.payment.ethereum.mempool;
+
+import com.payment.core.entity.Currency;
+import com.payment.core.entity.Recharge;
+import com.payment.core.service.RechargeService;
+import com.payment.ethereum.filter.DepositAddressFilter;
+import com.payment.ethereum.rpc.EthereumSubscriber;
+import com.payment.ethereum.service.EthereumService;
+import com.payment.ethereum.utils.Erc20CallDecoder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.web3j.crypto.WalletUtils;
+import org.web3j.protocol.core.methods.response.Transaction;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+import org.web3j.utils.Convert;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 交易池监听
+ * <p>
+ * 交易广播后到打包上链之前，在交易池中发现转入充值地址且金额匹配的交易时，将未上链的充值单标记为交易池中已发现，
+ * 用于向用户展示“已收到转账，等待上链”。只是展示状态，充值是否成功仍以扫块与确认任务为准。
+ * <p>
+ * 交易来源：txpool方式定时轮询txpool_content（需要节点开启txpool接口，适合自建节点）；
+ * subscribe方式通过WebSocket订阅newPendingTransactions，每次轮询时批量查询收到的交易Hash。
+ * <p>
+ * 已标记的交易定期查询：已上链的交易交给扫块任务；同一笔转账以更高手续费替换时新交易重新标记充值单；
+ * 交易从交易池与链上都消失超过dropAfter时，充值单仍为该交易标记的状态则恢复为未上链。
+ * 所有状态修改都带有状态与交易Hash条件，不会覆盖扫块任务写入的上链状态。
+ */
+@Slf4j
+@Component
+public class MempoolWatcher {
+
+    public static final String SOURCE_SUBSCRIBE = "subscribe";
+
+    public static final String SOURCE_TXPOOL = "txpool";
+
+    /**
+     * 查询过但没有匹配充值单的交易Hash的最大记录数，txpool方式每次轮询返回整个交易池，避免重复查询数据库
+     */
+    private static final int MAX_IGNORED = 10000;
+
+    /**
+     * 是否开启交易池监听
+     */
+    @Value("${ethereum.mempool.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 交易来源：subscribe或txpool，subscribe方式没有配置WebSocket地址时使用txpool
+     */
+    @Value("${ethereum.mempool.source:subscribe}")
+    private String source;
+
+    /**
+     * 获取新交易的间隔（毫秒）
+     */
+    @Value("${ethereum.mempool.poll-interval:1000}")
+    private long pollInterval;
+
+    /**
+     * 检查已标记交易是否还在交易池中的间隔（毫秒）
+     */
+    @Value("${ethereum.mempool.check-interval:5000}")
+    private long checkInterval;
+
+    /**
+     * 已标记交易从交易池与链上都消失超过该时间（毫秒）视为被替换或丢弃，节点之间交易池不同步时避免误判
+     */
+    @Value("${ethereum.mempool.drop-after:60000}")
+    private long dropAfter;
+
+    /**
+     * subscribe方式等待查询的交易Hash的最大个数，超过时丢弃新收到的交易Hash
+     */
+    @Value("${ethereum.mempool.max-queued:20000}")
+    private int maxQueued;
+
+    @Autowired
+    private EthereumService ethereumService;
+
+    @Autowired
+    private EthereumSubscriber ethereumSubscriber;
+
+    @Autowired
+    private RechargeService rechargeService;
+
+    @Autowired
+    private DepositAddressFilter depositAddressFilter;
+
+    private Supplier<Collection<Currency>> currencies;
+
+    private ScheduledExecutorService scheduler;
+
+    private final Queue<String> queuedHashes = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicInteger overflowed = new AtomicInteger();
+
+    /**
+     * 以下字段只在监听线程中访问
+     */
+    private final Map<String, Seen> seen = new HashMap<>();
+
+    private final Map<String, Boolean> ignored = new LinkedHashMap<String, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_IGNORED;
+        }
+    };
+
+    private final Erc20CallDecoder decoder = new Erc20CallDecoder();
+
+    private long checkedAt;
+
+    /**
+     * 开始监听交易池，未开启时不做任何事，重复调用只有第一次生效
+     * @param currencies 需要监听的货币，每次轮询时获取；合约地址是以太坊地址的为代币，否则为ETH
+     */
+    public synchronized void watch(Supplier<Collection<Currency>> currencies) {
+        if (!enabled || scheduler != null) {
+            return;
+        }
+        this.currencies = currencies;
+        if (SOURCE_SUBSCRIBE.equals(source)) {
+            if (ethereumSubscriber.isEnabled()) {
+                ethereumSubscriber.subscribePendingTransactions(this::onPendingTransaction);
+            } else {
+                log.warn("未配置WebSocket地址，交易池监听改为轮询txpool_content");
+                source = SOURCE_TXPOOL;
+            }
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "eth-mempool-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+        log.info("开启交易池监听，交易来源：{}", source);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void onPendingTransaction(String hash) {
+        if (queued.get() >= maxQueued) {
+            overflowed.incrementAndGet();
+            return;
+        }
+        queued.incrementAndGet();
+        queuedHashes.offer(hash);
+    }
+
+    private void poll() {
+        try {
+            //1. 区分ETH与代币，加载新增的充值地址
+            Currency nativeCurrency = null;
+            Map<String, Currency> tokensByContract = new HashMap<>();
+            List<String> currencyNames = new ArrayList<>();
+            for (Currency currency : currencies.get()) {
+                if (currency == null) {
+                    continue;
+                }
+                currencyNames.add(currency.getCurrencyName());
+                if (StringUtils.hasText(currency.getContractAddress()) && WalletUtils.isValidAddress(currency.getContractAddress())) {
+                    tokensByContract.put(currency.getContractAddress().toLowerCase(), currency);
+                } else {
+                    nativeCurrency = currency;
+                }
+            }
+            if (currencyNames.isEmpty()) {
+                return;
+            }
+            depositAddressFilter.refresh(currencyNames);
+
+            //2. 获取新的待打包交易，匹配充值单
+            for (Transaction transaction : getPendingTransactions()) {
+                if (transaction != null && transaction.getBlockNumberRaw() == null) {
+                    match(transaction, nativeCurrency, tokensByContract);
+                }
+            }
+
+            //3. 检查已标记的交易
+            long now = System.currentTimeMillis();
+            if (now - checkedAt >= checkInterval) {
+                checkedAt = now;
+                check(now);
+            }
+        } catch (Exception e) {
+            log.warn("交易池监听失败：{}", e.getMessage());
+        }
+    }
+
+    private List<Transaction> getPendingTransactions() {
+        if (SOURCE_TXPOOL.equals(source)) {
+            return ethereumService.getPendingTransactionsAsync().join();
+        }
+        int dropped = overflowed.getAndSet(0);
+        if (dropped > 0) {
+            log.warn("交易池订阅积压，丢弃交易Hash{}个", dropped);
+        }
+        List<String> hashes = new ArrayList<>();
+        String hash;
+        while ((hash = queuedHashes.poll()) != null) {
+            queued.decrementAndGet();
+            if (!seen.containsKey(hash) && !ignored.containsKey(hash)) {
+                hashes.add(hash);
+            }
+        }
+        return hashes.isEmpty() ? Collections.emptyList() : ethereumService.getTransactionsByHashAsync(hashes).join();
+    }
+
+    private void match(Transaction transaction, Currency nativeCurrency, Map<String, Currency> tokensByContract) {
+        String hash = transaction.getHash();
+        if (StringUtils.isEmpty(transaction.getTo()) || seen.containsKey(hash) || ignored.containsKey(hash)) {
+            return;
+        }
+
+        //代币按转账调用数据解析收款地址与金额，ETH直接使用交易的收款地址与金额
+        Currency currency;
+        String toAddress;
+        String fromAddress;
+        BigDecimal amount;
+        Currency token = tokensByContract.isEmpty() ? null : tokensByContract.get(transaction.getTo().toLowerCase());
+        if (token != null) {
+            if (!decoder.decode(transaction.getInput())) {
+                return;
+            }
+            toAddress = decoder.getTo();
+            if (!depositAddressFilter.mightContain(toAddress)) {
+                return;
+            }
+            currency = token;
+            fromAddress = decoder.getMethod() == Erc20CallDecoder.TRANSFER_FROM ? decoder.getFrom() : transaction.getFrom();
+            amount = new BigDecimal(decoder.getAmount()).movePointLeft(token.getCurrencyDecimalsNum());
+        } else if (nativeCurrency != null) {
+            BigInteger value = transaction.getValue();
+            if (value == null || value.signum() <= 0 || !depositAddressFilter.mightContain(transaction.getTo())) {
+                return;
+            }
+            currency = nativeCurrency;
+            toAddress = transaction.getTo();
+            fromAddress = transaction.getFrom();
+            amount = Convert.fromWei(value.toString(), Convert.Unit.ETHER);
+        } else {
+            return;
+        }
+
+        Recharge recharge = rechargeService.getRecharge(toAddress, currency.getCurrencyName(), amount);
+        if (recharge == null || !rechargeService.markSeenInMempool(recharge.getId(), hash, fromAddress)) {
+            //没有匹配的充值单，或充值单已经上链
+            ignored.put(hash, Boolean.TRUE);
+            return;
+        }
+        seen.put(hash, new Seen(recharge.getId(), recharge.getOrderId()));
+        log.info("交易池中发现充值单{}的交易{}", recharge.getOrderId(), hash);
+    }
+
+    /**
+     * 查询已标记的交易：已上链且执行成功的不再跟踪，执行失败或消失超过dropAfter的恢复充值单为未上链
+     */
+    private void check(long now) {
+        if (seen.isEmpty()) {
+            return;
+        }
+        List<String> hashes = new ArrayList<>(seen.keySet());
+        List<Transaction> transactions = ethereumService.getTransactionsByHashAsync(hashes).join();
+        List<String> minedHashes = new ArrayList<>();
+        for (int index = 0; index < hashes.size(); index++) {
+            String hash = hashes.get(index);
+            Seen entry = seen.get(hash);
+            Transaction transaction = transactions.get(index);
+            if (transaction != null) {
+                entry.missingSince = 0;
+                if (transaction.getBlockNumberRaw() != null) {
+                    minedHashes.add(hash);
+                }
+                continue;
+            }
+            if (entry.missingSince == 0) {
+                entry.missingSince = now;
+            } else if (now - entry.missingSince >= dropAfter) {
+                seen.remove(hash);
+                if (rechargeService.revertSeenInMempool(entry.rechargeId, hash)) {
+                    log.info("充值单{}的交易{}已被替换或丢弃，恢复为未上链", entry.orderId, hash);
+                }
+            }
+        }
+        if (!minedHashes.isEmpty()) {
+            checkMined(minedHashes);
+        }
+    }
+
+    /**
+     * 查询已上链交易的收据：执行成功的由扫块任务更新充值单，执行失败的恢复充值单为未上链；
+     * 节点尚未返回收据的下一轮再查
+     */
+    private void checkMined(List<String> minedHashes) {
+        List<TransactionReceipt> receipts = ethereumService.getTransactionReceiptsAsync(minedHashes).join();
+        for (int index = 0; index < minedHashes.size(); index++) {
+            TransactionReceipt receipt = receipts.get(index);
+            if (receipt == null) {
+                continue;
+            }
+            String hash = minedHashes.get(index);
+            Seen entry = seen.remove(hash);
+            //txpool_content可能仍返回打包前的快照，不再重新标记
+            ignored.put(hash, Boolean.TRUE);
+            if (!receipt.isStatusOK() && rechargeService.revertSeenInMempool(entry.rechargeId, hash)) {
+                log.info("充值单{}的交易{}上链后执行失败，恢复为未上链", entry.orderId, hash);
+            }
+        }
+    }
+
+    private static class Seen {
+
+        private final Long rechargeId;
+
+        private final String orderId;
+
+        /**
+         * 第一次发现交易不在交易池与链上的时间，0表示仍在
+         */
+        private long missingSince;
+
+        private Seen(Long rechargeId, String orderId) {
+            this.rechargeId = rechargeId;
+            this.orderId = orderId;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.payment.ethereum.nonce;
+
+import com.payment.core.exception.AssertException;
+import com.payment.core.service.AccountNonceService;
+import com.payment.ethereum.service.EthereumService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 转出地址的nonce分配器
+ * <p>
+ * 每个转出地址在内存中维护下一个nonce，分配时通过比较并设置更新数据库中的计数器，同一地址的多笔交易
+ * 不需要等待上一笔打包即可连续签名广播，多个进程使用同一地址时也不会分配出重复的nonce。
+ * <p>
+ * 数据库中的计数器只增不减：地址第一次使用时从计数器与节点待打包nonce中较大的一个开始分配。
+ * 计数器大于节点nonce时，中间的nonce可能是其他进程还没有到达该节点的在途交易，不能直接重新分配。
+ * 广播失败的nonce回收后优先分配；后台线程定期对没有在途交易的地址再次校正，
+ * 连续两次校正期间节点nonce与计数器都没有变化时，才把中间的nonce视为被丢弃的空洞，回收后重新分配。
+ */
+@Slf4j
+@Component
+public class NonceManager {
+
+    /**
+     * 计数器被其他进程修改时的最大重试次数
+     */
+    private static final int MAX_CAS_RETRIES = 10;
+
+    /**
+     * 校正间隔（毫秒）
+     */
+    @Value("${ethereum.nonce.reconcile-interval:60000}")
+    private long reconcileInterval;
+
+    @Autowired
+    private EthereumService ethereumService;
+
+    @Autowired
+    private AccountNonceService accountNonceService;
+
+    private final Map<String, AddressNonce> nonces = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "eth-nonce-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::reconcileAll, reconcileInterval, reconcileInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 为转出地址分配一个nonce并广播交易，广播失败时回收nonce
+     * @param address 转出地址
+     * @param send 使用分配的nonce签名并广播交易
+     * @return 广播结果
+     */
+    public <T> CompletableFuture<T> submit(String address, Function<BigInteger, CompletableFuture<T>> send) {
+        String key = address.toLowerCase();
+        AddressNonce state = nonces.computeIfAbsent(key, k -> new AddressNonce());
+
+        //1. 地址尚未校正时先查询节点的待打包nonce
+        CompletableFuture<Void> loaded = state.isLoaded() ? CompletableFuture.completedFuture(null)
+                : ethereumService.getTransactionCountAsync(address).thenAccept(pending -> load(key, state, pending.longValue()));
+
+        //2. 分配nonce后广播，结束后根据结果回收或确认nonce
+        return loaded.thenCompose(v -> {
+            long nonce = allocate(key, state);
+            CompletableFuture<T> future;
+            try {
+                future = send.apply(BigInteger.valueOf(nonce));
+            } catch (RuntimeException e) {
+                complete(key, state, nonce, e);
+                throw e;
+            }
+            return future.whenComplete((result, e) -> complete(key, state, nonce, e));
+        });
+    }
+
+    /**
+     * 以节点的待打包nonce校正地址的计数器，地址有在途交易时跳过
+     * @param address 转出地址
+     */
+    public void reconcile(String address) {
+        String key = address.toLowerCase();
+        AddressNonce state = nonces.get(key);
+        if (state == null) {
+            return;
+        }
+        long version;
+        synchronized (state) {
+            if (!state.loaded || state.inflight > 0) {
+                return;
+            }
+            version = state.version;
+        }
+        long pending = ethereumService.getTransactionCountAsync(address).join().longValue();
+        synchronized (state) {
+            //查询期间有新的分配，节点nonce可能已经过期，等待下次校正
+            if (!state.loaded || state.inflight > 0 || state.version != version) {
+                return;
+            }
+            state.released.headSet(pending).clear();
+            if (pending > state.next) {
+                log.info("地址{}在本进程之外发送了交易，nonce从{}调整为{}", key, state.next, pending);
+                state.next = pending;
+                state.version++;
+                state.gapFrom = -1;
+                persist(key, state, 0);
+                return;
+            }
+            if (!state.released.isEmpty() || pending == state.next) {
+                //回收的nonce就是节点上的空洞，下次分配时会优先填补
+                state.gapFrom = -1;
+                return;
+            }
+
+            //节点nonce落后于计数器：可能是其他进程的在途交易还没有到达该节点，也可能是交易已被丢弃。
+            //连续两次校正时节点nonce与计数器都没有变化才视为空洞，通过回收填补，计数器不回退
+            Long stored = accountNonceService.getNextNonce(key);
+            long counter = stored == null ? state.next : Math.max(stored, state.next);
+            if (state.gapFrom != pending || state.gapTo != counter) {
+                state.gapFrom = pending;
+                state.gapTo = counter;
+                return;
+            }
+            log.warn("地址{}的nonce {}至{}未到达节点或已被丢弃，回收后重新分配", key, pending, counter - 1);
+            for (long nonce = pending; nonce < counter; nonce++) {
+                state.released.add(nonce);
+            }
+            state.gapFrom = -1;
+        }
+    }
+
+    private void reconcileAll() {
+        for (String address : nonces.keySet()) {
+            try {
+                reconcile(address);
+            } catch (Exception e) {
+                log.warn("校正地址{}的nonce失败：{}", address, e.getMessage());
+            }
+        }
+    }
+
+    private void load(String key, AddressNonce state, long pending) {
+        synchronized (state) {
+            if (state.loaded) {
+                return;
+            }
+            Long stored = accountNonceService.getNextNonce(key);
+            if (stored != null && stored > pending) {
+                log.info("地址{}已分配的nonce {}至{}还没有到达节点，从{}继续分配，被丢弃的nonce由定期校正回收", key, pending, stored - 1, stored);
+            }
+            state.persisted = stored;
+            state.next = stored == null ? pending : Math.max(stored, pending);
+            state.gapFrom = -1;
+            state.released.clear();
+            state.loaded = true;
+        }
+    }
+
+    private long allocate(String key, AddressNonce state) {
+        synchronized (state) {
+            state.inflight++;
+            state.version++;
+            Long released = state.released.pollFirst();
+            if (released != null) {
+                return released;
+            }
+            long nonce = state.next;
+            state.next = nonce + 1;
+            try {
+                persist(key, state, 1);
+            } catch (RuntimeException e) {
+                state.inflight--;
+                throw e;
+            }
+            return state.next - 1;
+        }
+    }
+
+    /**
+     * 将内存中的下一个nonce写入数据库，计数器被其他进程推进时跳到其他进程已分配的nonce之后
+     * @param reserved 本次分配的nonce个数，校正时为0
+     */
+    private void persist(String key, AddressNonce state, int reserved) {
+        for (int i = 0; i < MAX_CAS_RETRIES; i++) {
+            if (accountNonceService.compareAndSetNextNonce(key, state.persisted, state.next)) {
+                state.persisted = state.next;
+                return;
+            }
+            Long current = accountNonceService.getNextNonce(key);
+            if (current != null && current > state.next - reserved) {
+                state.next = current + reserved;
+            }
+            state.persisted = current;
+        }
+        throw new AssertException("更新地址" + key + "的nonce计数器失败，重试次数过多");
+    }
+
+    private void complete(String key, AddressNonce state, long nonce, Throwable e) {
+        synchronized (state) {
+            state.inflight--;
+            if (e != null) {
+                if (isNonceConsumed(e)) {
+                    //nonce已被占用，说明计数器落后于节点，等在途交易结束后重新校正
+                    log.warn("地址{}的nonce {}已被占用：{}", key, nonce, e.getMessage());
+                    state.stale = true;
+                } else {
+                    state.released.add(nonce);
+                }
+            }
+            if (state.stale && state.inflight == 0) {
+                state.stale = false;
+                state.loaded = false;
+            }
+        }
+    }
+
+    /**
+     * 通过节点返回的错误信息判断nonce是否已被其他交易占用
+     */
+    private static boolean isNonceConsumed(Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            String message = t.getMessage();
+            if (message != null) {
+                String lower = message.toLowerCase();
+                if (lower.contains("nonce too low") || lower.contains("already known") || lower.contains("known transaction")
+                        || lower.contains("replacement transaction underpriced")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 单个地址的nonce状态，所有字段在持有对象锁时读写
+     */
+    private static class AddressNonce {
+
+        private boolean loaded;
+
+        /**
+         * nonce已被占用，在途交易结束后需要重新校正
+         */
+        private boolean stale;
+
+        /**
+         * 下一个分配的nonce
+         */
+        private long next;
+
+        /**
+         * 数据库中的计数器，为null表示数据库中还没有该地址
+         */
+        private Long persisted;
+
+        /**
+         * 上一次校正时发现的空洞：节点nonce与计数器，-1表示没有
+         */
+        private long gapFrom = -1;
+
+        private long gapTo;
+
+        /**
+         * 广播失败回收的nonce
+         */
+        private final TreeSet<Long> released = new TreeSet<>();
+
+        /**
+         * 已分配但尚未广播完成的交易数
+         */
+        private int inflight;
+
+        /**
+         * 每次分配或校正时递增，用于判断校正期间是否有新的分配
+         */
+        private long version;
+
+        synchronized boolean isLoaded() {
+            return loaded;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.payment.ethereum.rpc;
+
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.util.List;
+
+/**
+ * eth_getBlockReceipts的返回结果，web3j当前版本未提供该接口
+ */
+public class EthBlockReceipts extends Response<List<TransactionReceipt>> {
+
+    /**
+     * 区块中全部交易的收据，按交易在区块中的顺序排列，区块不存在时为null
+     */
+    public List<TransactionReceipt> getReceipts() {
+        return getResult();
+    }
+}
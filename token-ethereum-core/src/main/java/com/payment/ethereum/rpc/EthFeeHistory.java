@@ -0,0 +1,40 @@
+package com.payment.ethereum.rpc;
+
+import lombok.Data;
+import org.web3j.protocol.core.Response;
+
+import java.util.List;
+
+/**
+ * eth_feeHistory的返回结果，web3j当前版本未提供该接口
+ */
+public class EthFeeHistory extends Response<EthFeeHistory.FeeHistory> {
+
+    public FeeHistory getFeeHistory() {
+        return getResult();
+    }
+
+    @Data
+    public static class FeeHistory {
+
+        /**
+         * 返回的第一个区块高度
+         */
+        private String oldestBlock;
+
+        /**
+         * 每个区块的基础费用，最后一个元素为下一个区块的基础费用
+         */
+        private List<String> baseFeePerGas;
+
+        /**
+         * 每个区块的gas使用率
+         */
+        private List<Double> gasUsedRatio;
+
+        /**
+         * 每个区块按请求的百分位统计的小费
+         */
+        private List<List<String>> reward;
+    }
+}
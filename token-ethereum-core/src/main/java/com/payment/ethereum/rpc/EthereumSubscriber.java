@@ -0,0 +1,401 @@
+package com.payment.ethereum.rpc;
+
+import io.reactivex.disposables.Disposable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthSubscribe;
+import org.web3j.protocol.websocket.WebSocketService;
+import org.web3j.protocol.websocket.events.PendingTransactionNotification;
+import org.web3j.utils.Numeric;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * 以太坊节点的WebSocket订阅
+ * <p>
+ * 通过eth_subscribe订阅新区块头（newHeads）、指定合约的事件日志（logs）与交易池中的新交易（newPendingTransactions），收到推送后通知扫块任务，
+ * 不需要定时轮询区块高度。连接断开、订阅出错或超过staleAfter没有收到新区块时断开重连，重连间隔按失败次数指数退避；
+ * 重连成功后以当前区块高度通知所有订阅方，补扫断线期间的区块。连接不正常期间扫块任务回退到定时轮询。
+ * <p>
+ * 连接的建立与断开都在同一个后台线程中执行；推送的通知在另一个线程中逐个处理，
+ * 同一订阅方处理期间到达的多个通知合并为一次，只传递其中最大的区块高度。
+ */
+@Slf4j
+@Component
+public class EthereumSubscriber {
+
+    private static final long NONE = Long.MIN_VALUE;
+
+    /**
+     * 节点的WebSocket地址，为空时不开启订阅
+     */
+    @Value("${ethereum.ws.url:}")
+    private String url;
+
+    /**
+     * 第一次重连的等待时间（毫秒），之后每次失败翻倍
+     */
+    @Value("${ethereum.ws.reconnect-delay:1000}")
+    private long reconnectDelay;
+
+    /**
+     * 重连的最长等待时间（毫秒）
+     */
+    @Value("${ethereum.ws.max-reconnect-delay:60000}")
+    private long maxReconnectDelay;
+
+    /**
+     * 超过该时间（毫秒）没有收到新区块视为订阅停滞，断开重连
+     */
+    @Value("${ethereum.ws.stale-after:60000}")
+    private long staleAfter;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService scheduler;
+
+    private ExecutorService dispatcher;
+
+    /**
+     * 以下连接状态只在scheduler线程中读写
+     */
+    private WebSocketService service;
+
+    private Web3j web3j;
+
+    /**
+     * 连接的代数，每次断开后加一，忽略已断开连接上的回调
+     */
+    private int generation;
+
+    private int failures;
+
+    private volatile boolean connected;
+
+    private volatile long connectedAt;
+
+    private volatile long lastHeadAt;
+
+    private volatile long latestHead = -1;
+
+    @PostConstruct
+    public void start() {
+        if (!isEnabled()) {
+            log.info("未配置ethereum.ws.url，扫块使用定时轮询");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "eth-ws-subscriber");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "eth-ws-dispatch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(this::connect);
+        scheduler.scheduleWithFixedDelay(this::checkStale, staleAfter, Math.max(1000, staleAfter / 4), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        dispatcher.shutdownNow();
+        disconnect();
+    }
+
+    /**
+     * 是否配置了WebSocket地址
+     */
+    public boolean isEnabled() {
+        return StringUtils.hasText(url);
+    }
+
+    /**
+     * 连接正常且在staleAfter内收到过新区块推送，此时扫块任务可以停止轮询
+     */
+    public boolean isHealthy() {
+        return connected && System.currentTimeMillis() - lastHeadAt < staleAfter;
+    }
+
+    /**
+     * 最近一次推送的区块高度，没有收到过推送时为-1
+     */
+    public long getLatestHead() {
+        return latestHead;
+    }
+
+    /**
+     * 订阅新区块，每个新区块以及每次重连成功后以区块高度调用listener
+     * @param listener 处理区块高度，在推送处理线程中调用
+     * @return 订阅，用于取消订阅
+     */
+    public Subscription subscribeNewHeads(LongConsumer listener) {
+        Subscription subscription = new Subscription(null, null, listener, null);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * 订阅事件日志，每条匹配的日志以所在区块高度调用listener，每次重连成功后以当前区块高度调用listener
+     * @param addresses 合约地址
+     * @param topics 各位置的topic，null表示任意值
+     * @param listener 处理区块高度，在推送处理线程中调用
+     * @return 订阅，用于取消订阅
+     */
+    public Subscription subscribeLogs(List<String> addresses, List<String> topics, LongConsumer listener) {
+        Subscription subscription = new Subscription(new ArrayList<>(addresses), new ArrayList<>(topics), listener, null);
+        subscriptions.add(subscription);
+        if (scheduler != null) {
+            execute(scheduler, () -> subscribe(subscription, generation));
+        }
+        return subscription;
+    }
+
+    /**
+     * 订阅交易池中的新交易，不合并通知，每个交易Hash调用一次listener。
+     * 节点不支持该订阅时只记录日志，不影响其他订阅
+     * @param listener 处理交易Hash，在WebSocket的接收线程中调用，需要尽快返回
+     * @return 订阅，用于取消订阅
+     */
+    public Subscription subscribePendingTransactions(Consumer<String> listener) {
+        Subscription subscription = new Subscription(null, null, null, listener);
+        subscriptions.add(subscription);
+        if (scheduler != null) {
+            execute(scheduler, () -> subscribe(subscription, generation));
+        }
+        return subscription;
+    }
+
+    /**
+     * 取消订阅
+     */
+    public void unsubscribe(Subscription subscription) {
+        subscriptions.remove(subscription);
+        if (scheduler != null) {
+            execute(scheduler, () -> {
+                //连接已断开时节点上的订阅已失效，不需要发送eth_unsubscribe
+                if (connected) {
+                    dispose(subscription.disposable);
+                }
+                subscription.disposable = null;
+            });
+        }
+    }
+
+    private void connect() {
+        int current = ++generation;
+        service = new WebSocketService(url, false);
+        try {
+            //1. 建立连接并订阅新区块、所有事件日志与交易池
+            service.connect();
+            web3j = Web3j.build(service);
+            web3j.newHeadsNotifications().subscribe(
+                    notification -> onHead(Numeric.decodeQuantity(notification.getParams().getResult().getNumber()).longValue()),
+                    e -> onFailure(current, e),
+                    () -> onFailure(current, new IOException("订阅已结束")));
+            for (Subscription subscription : subscriptions) {
+                subscribe(subscription, current);
+            }
+
+            //2. 以当前区块高度通知所有订阅方，补扫断线期间的区块
+            long height = web3j.ethBlockNumber().send().getBlockNumber().longValue();
+            connected = true;
+            connectedAt = System.currentTimeMillis();
+            failures = 0;
+            latestHead = Math.max(latestHead, height);
+            log.info("已连接{}，当前区块高度{}", url, height);
+            for (Subscription subscription : subscriptions) {
+                if (subscription.listener != null) {
+                    dispatch(subscription, height);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("连接{}失败：{}", url, e.getMessage());
+            disconnect();
+            scheduleReconnect();
+        }
+    }
+
+    /**
+     * 在当前连接上订阅事件日志或交易池，新区块订阅在连接时统一订阅
+     */
+    private void subscribe(Subscription subscription, int current) {
+        if (web3j == null || current != generation || subscription.disposable != null || !subscriptions.contains(subscription)) {
+            return;
+        }
+        if (subscription.addresses != null) {
+            subscription.disposable = web3j.logsNotifications(subscription.addresses, subscription.topics).subscribe(
+                    notification -> dispatch(subscription, Numeric.decodeQuantity(notification.getParams().getResult().getBlockNumber()).longValue()),
+                    e -> onFailure(current, e),
+                    () -> onFailure(current, new IOException("订阅已结束")));
+        } else if (subscription.pendingListener != null) {
+            //web3j当前版本未提供newPendingTransactions订阅；连接中断由新区块订阅处理，这里的错误多为节点不支持该订阅
+            Request<?, EthSubscribe> request = new Request<>("eth_subscribe", Collections.singletonList("newPendingTransactions"), service, EthSubscribe.class);
+            subscription.disposable = service.subscribe(request, "eth_unsubscribe", PendingTransactionNotification.class).subscribe(
+                    notification -> subscription.pendingListener.accept(notification.getParams().getResult()),
+                    e -> log.warn("{}交易池订阅结束：{}", url, e.getMessage()));
+        }
+    }
+
+    private void onHead(long height) {
+        lastHeadAt = System.currentTimeMillis();
+        latestHead = Math.max(latestHead, height);
+        for (Subscription subscription : subscriptions) {
+            if (subscription.addresses == null && subscription.listener != null) {
+                dispatch(subscription, height);
+            }
+        }
+    }
+
+    /**
+     * 连接断开或订阅出错，在scheduler线程中断开重连；同一连接上的多个错误只处理一次
+     */
+    private void onFailure(int current, Throwable e) {
+        execute(scheduler, () -> {
+            if (current != generation) {
+                return;
+            }
+            log.warn("{}订阅中断：{}", url, e.getMessage());
+            disconnect();
+            scheduleReconnect();
+        });
+    }
+
+    private void checkStale() {
+        if (connected && System.currentTimeMillis() - Math.max(lastHeadAt, connectedAt) > staleAfter) {
+            log.warn("{}超过{}毫秒没有推送新区块，重新连接", url, staleAfter);
+            disconnect();
+            scheduleReconnect();
+        }
+    }
+
+    private void scheduleReconnect() {
+        long delay = Math.min(maxReconnectDelay, reconnectDelay << Math.min(failures, 16));
+        failures++;
+        log.info("{}毫秒后重新连接{}", delay, url);
+        try {
+            scheduler.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("订阅已停止，不再重连");
+        }
+    }
+
+    /**
+     * 断开连接，节点在连接关闭时清除连接上的所有订阅，不逐个发送eth_unsubscribe
+     */
+    private void disconnect() {
+        generation++;
+        connected = false;
+        for (Subscription subscription : subscriptions) {
+            subscription.disposable = null;
+        }
+        if (service != null) {
+            try {
+                service.close();
+            } catch (RuntimeException e) {
+                log.debug("关闭WebSocket连接异常：{}", e.getMessage());
+            }
+        }
+        service = null;
+        web3j = null;
+    }
+
+    /**
+     * 在推送处理线程中通知订阅方；订阅方还有未处理的通知时只更新区块高度
+     */
+    private void dispatch(Subscription subscription, long height) {
+        if (subscription.pending.getAndAccumulate(height, Math::max) != NONE) {
+            return;
+        }
+        execute(dispatcher, () -> {
+            long pending = subscription.pending.getAndSet(NONE);
+            if (!subscriptions.contains(subscription)) {
+                return;
+            }
+            try {
+                subscription.listener.accept(pending);
+            } catch (RuntimeException e) {
+                log.warn("处理区块{}的推送异常", pending, e);
+            }
+        });
+    }
+
+    private static void dispose(Disposable disposable) {
+        if (disposable == null || disposable.isDisposed()) {
+            return;
+        }
+        try {
+            disposable.dispose();
+        } catch (RuntimeException e) {
+            log.debug("取消订阅异常：{}", e.getMessage());
+        }
+    }
+
+    private static void execute(ExecutorService executor, Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.debug("订阅已停止，忽略任务");
+        }
+    }
+
+    /**
+     * 一个订阅方
+     */
+    public static class Subscription {
+
+        /**
+         * 事件日志订阅的合约地址与topic，新区块与交易池订阅为null
+         */
+        private final List<String> addresses;
+
+        private final List<String> topics;
+
+        /**
+         * 新区块与事件日志订阅处理区块高度，交易池订阅为null
+         */
+        private final LongConsumer listener;
+
+        /**
+         * 交易池订阅处理交易Hash，其他订阅为null
+         */
+        private final Consumer<String> pendingListener;
+
+        /**
+         * 尚未处理的最大区块高度
+         */
+        private final AtomicLong pending = new AtomicLong(NONE);
+
+        private Disposable disposable;
+
+        private Subscription(List<String> addresses, List<String> topics, LongConsumer listener, Consumer<String> pendingListener) {
+            this.addresses = addresses;
+            this.topics = topics;
+            this.listener = listener;
+            this.pendingListener = pendingListener;
+        }
+    }
+}
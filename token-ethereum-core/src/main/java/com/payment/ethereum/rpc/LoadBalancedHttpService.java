@@ -0,0 +1,529 @@
+package com.payment.ethereum.rpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.payment.core.limiter.RpcLimiter;
+import com.payment.core.limiter.RpcLimiterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import org.web3j.protocol.Service;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.http.HttpService;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 多节点负载均衡的Web3j服务
+ * <p>
+ * 1. 通过“两次随机选择”在可用节点中挑选得分更高的节点，把请求分散到多个节点上；
+ * 2. 请求超过该节点的p95延迟仍未返回时，向下一个节点发送一份对冲请求，取先返回的结果；
+ * 3. 节点请求失败时自动切换到下一个节点，连续失败的节点会被暂时摘除；
+ * 4. 同步请求与异步请求（sendAsync）共用以上逻辑，异步请求不阻塞调用线程等待节点返回；
+ *    故障转移与对冲请求在专用线程上等待节点限流器的许可，不阻塞OkHttp回调线程与对冲定时器；
+ * 5. 多个同类型请求可以合并为一个JSON-RPC批量请求（sendBatchAsync），在一次HTTP交互中返回，按包含的请求数获取节点限流器的许可；
+ * 6. 大响应可以直接取得原始字节（sendRawAsync），由调用方流式解析。
+ */
+@Slf4j
+public class LoadBalancedHttpService extends Service {
+
+    /**
+     * 非幂等的写请求不做对冲，避免重复广播
+     */
+    private static final String[] NON_HEDGE_METHODS = {"eth_sendRawTransaction", "eth_sendTransaction"};
+
+    /**
+     * 托管节点返回限流的JSON-RPC错误码
+     */
+    private static final int THROTTLED_CODE = -32005;
+
+    /**
+     * -32005错误信息中表示请求速率超限的关键字
+     */
+    private static final String[] THROTTLED_KEYWORDS = {"rate", "too many requests", "request count"};
+
+    /**
+     * 超过该大小的响应不是限流错误，不解析
+     */
+    private static final int THROTTLE_CHECK_MAX_BYTES = 64 * 1024;
+
+    private final List<RpcEndpoint> endpoints;
+
+    private final OkHttpClient httpClient;
+
+    private final boolean hedgeEnabled;
+
+    private final long hedgeMinDelayMillis;
+
+    /**
+     * 触发对冲请求的定时器
+     */
+    private final ScheduledThreadPoolExecutor hedgeTimer;
+
+    /**
+     * 发送故障转移与对冲请求的线程，获取节点限流器的许可时可能阻塞
+     */
+    private final ExecutorService retryExecutor;
+
+    public LoadBalancedHttpService(List<String> urls, OkHttpClient httpClient, RpcLimiterRegistry limiterRegistry, boolean hedgeEnabled, long hedgeMinDelayMillis) {
+        super(false);
+        if (urls == null || urls.isEmpty()) {
+            throw new IllegalArgumentException("至少需要配置一个以太坊节点地址");
+        }
+        this.endpoints = new ArrayList<>();
+        for (String url : urls) {
+            String endpointUrl = url.trim();
+            this.endpoints.add(new RpcEndpoint(endpointUrl, limiterRegistry == null ? null : limiterRegistry.get(endpointUrl)));
+        }
+        this.httpClient = httpClient;
+        this.hedgeEnabled = hedgeEnabled;
+        this.hedgeMinDelayMillis = hedgeMinDelayMillis;
+        this.hedgeTimer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "rpc-hedge-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.hedgeTimer.setRemoveOnCancelPolicy(true);
+        this.retryExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "rpc-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public List<RpcEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    @Override
+    protected InputStream performIO(String payload) throws IOException {
+        return new ByteArrayInputStream(await(performIOAsync(payload, 1)));
+    }
+
+    /**
+     * 异步发送请求，调用线程只在节点限流器许可不足时等待，不等待节点返回。
+     * 响应在OkHttp回调线程上反序列化。
+     */
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(org.web3j.protocol.core.Request request, Class<T> responseType) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(request);
+        } catch (IOException e) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        return performIOAsync(payload, 1).thenApply(bytes -> {
+            try {
+                return objectMapper.readValue(bytes, responseType);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * 把多个同类型的请求合并为一个JSON-RPC批量请求发送，节点返回的结果按请求id对应回请求的顺序。
+     * web3j当前版本未提供BatchRequest。
+     * @param requests 请求列表
+     * @param responseType 返回结果类型
+     * @return 与请求顺序一致的结果，单个请求的JSON-RPC错误保留在对应结果中；
+     *         节点不支持批量请求（返回的不是数组）时以BatchUnsupportedException结束
+     */
+    public <T extends Response> CompletableFuture<List<T>> sendBatchAsync(List<? extends org.web3j.protocol.core.Request<?, T>> requests, Class<T> responseType) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(requests);
+        } catch (IOException e) {
+            CompletableFuture<List<T>> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        return performIOAsync(payload, requests.size()).thenApply(bytes -> {
+            try {
+                JsonNode root = objectMapper.readTree(bytes);
+                if (root == null || !root.isArray()) {
+                    throw new BatchUnsupportedException("节点不支持批量请求：" + (root == null ? "" : abbreviate(root.toString())));
+                }
+                Map<Long, JsonNode> byId = new HashMap<>(root.size() * 2);
+                for (JsonNode node : root) {
+                    byId.put(node.path("id").asLong(), node);
+                }
+                List<T> responses = new ArrayList<>(requests.size());
+                for (org.web3j.protocol.core.Request<?, T> request : requests) {
+                    JsonNode node = byId.get(request.getId());
+                    if (node == null) {
+                        throw new IOException("批量请求缺少id为" + request.getId() + "的结果，节点返回" + root.size() + "/" + requests.size() + "个结果");
+                    }
+                    responses.add(objectMapper.treeToValue(node, responseType));
+                }
+                return responses;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * 发送单个请求或批量请求，返回节点响应的原始字节，由调用方流式解析，不反序列化为完整的响应对象
+     * @param request 单个请求或请求列表
+     * @return 响应的原始字节
+     */
+    public CompletableFuture<byte[]> sendRawAsync(Object request) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(request);
+        } catch (IOException e) {
+            CompletableFuture<byte[]> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        return performIOAsync(payload, request instanceof Collection ? Math.max(1, ((Collection<?>) request).size()) : 1);
+    }
+
+    /**
+     * 按节点排序依次尝试，前一个节点失败后在回调中切换到下一个节点
+     * @param permits 请求包含的JSON-RPC请求数，按该数量获取节点限流器的许可
+     */
+    private CompletableFuture<byte[]> performIOAsync(String payload, int permits) {
+        List<RpcEndpoint> candidates = rankEndpoints();
+        boolean hedge = hedgeEnabled && isHedgeable(payload);
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        attempt(candidates, 0, hedge, payload, permits, result);
+        return result;
+    }
+
+    private void attempt(List<RpcEndpoint> candidates, int index, boolean hedge, String payload, int permits, CompletableFuture<byte[]> result) {
+        RpcEndpoint endpoint = candidates.get(index);
+        RpcEndpoint hedgeEndpoint = hedge && index + 1 < candidates.size() ? candidates.get(index + 1) : null;
+        AtomicBoolean hedged = new AtomicBoolean();
+        execute(endpoint, hedgeEndpoint, payload, permits, hedged).whenComplete((bytes, throwable) -> {
+            //对冲请求已经发出并失败时跳过对冲节点
+            int next = hedged.get() ? index + 2 : index + 1;
+            if (throwable == null) {
+                result.complete(bytes);
+            } else if (result.isCancelled()) {
+                return;
+            } else if (next < candidates.size()) {
+                log.warn("节点{}请求失败，切换到下一个节点：{}", endpoint.getUrl(), throwable.getMessage());
+                retryExecutor.execute(() -> attempt(candidates, next, hedge, payload, permits, result));
+            } else {
+                result.completeExceptionally(throwable);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        hedgeTimer.shutdownNow();
+        retryExecutor.shutdownNow();
+        httpClient.dispatcher().executorService().shutdown();
+        httpClient.connectionPool().evictAll();
+    }
+
+    /**
+     * 对节点排序：先用两次随机选择挑出首选节点，其余可用节点按得分排序作为故障转移顺序，
+     * 处于摘除冷却期的节点排在最后，按恢复时间先后排列
+     */
+    List<RpcEndpoint> rankEndpoints() {
+        long now = System.currentTimeMillis();
+        List<RpcEndpoint> available = new ArrayList<>();
+        List<RpcEndpoint> unavailable = new ArrayList<>();
+        for (RpcEndpoint endpoint : endpoints) {
+            if (endpoint.isAvailable(now)) {
+                available.add(endpoint);
+            } else {
+                unavailable.add(endpoint);
+            }
+        }
+
+        List<RpcEndpoint> ranked = new ArrayList<>(endpoints.size());
+        if (!available.isEmpty()) {
+            RpcEndpoint first = pickOfTwo(available);
+            ranked.add(first);
+            available.remove(first);
+            available.sort(Comparator.comparingDouble(RpcEndpoint::score).reversed());
+            ranked.addAll(available);
+        }
+        unavailable.sort(Comparator.comparingLong(RpcEndpoint::getUnavailableUntil));
+        ranked.addAll(unavailable);
+        return ranked;
+    }
+
+    private RpcEndpoint pickOfTwo(List<RpcEndpoint> available) {
+        if (available.size() == 1) {
+            return available.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(available.size());
+        int b = random.nextInt(available.size() - 1);
+        if (b >= a) {
+            b++;
+        }
+        RpcEndpoint first = available.get(a);
+        RpcEndpoint second = available.get(b);
+        return first.score() >= second.score() ? first : second;
+    }
+
+    /**
+     * 向节点发送请求，超过p95延迟未返回时向对冲节点再发一次，取先成功的结果。
+     * 对冲由定时器触发，不占用调用线程；结果确定后取消另一份请求。
+     * @param hedged 对冲请求发出后置为true
+     */
+    private CompletableFuture<byte[]> execute(RpcEndpoint endpoint, RpcEndpoint hedgeEndpoint, String payload, int permits, AtomicBoolean hedged) {
+        CompletableFuture<byte[]> primary = call(endpoint, payload, permits);
+        if (hedgeEndpoint == null) {
+            return primary;
+        }
+
+        long p95 = endpoint.p95LatencyMillis();
+        long hedgeDelay = p95 < 0 ? Math.max(hedgeMinDelayMillis, 1000L) : Math.max(hedgeMinDelayMillis, p95);
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<byte[]>> hedgeRef = new AtomicReference<>();
+        ScheduledFuture<?> timer = hedgeTimer.schedule(() -> {
+            if (primary.isDone()) {
+                propagate(primary, result);
+                return;
+            }
+            //主请求失败时不等待对冲请求获取许可，直接返回主请求的结果
+            primary.whenComplete((bytes, throwable) -> {
+                if (throwable == null || hedgeRef.get() == null) {
+                    propagate(primary, result);
+                }
+            });
+            retryExecutor.execute(() -> {
+                if (result.isDone()) {
+                    return;
+                }
+                log.debug("节点{}超过{}ms未返回，向{}发送对冲请求", endpoint.getUrl(), hedgeDelay, hedgeEndpoint.getUrl());
+                CompletableFuture<byte[]> hedge = call(hedgeEndpoint, payload, permits);
+                hedged.set(true);
+                hedgeRef.set(hedge);
+                if (result.isDone()) {
+                    hedge.cancel(true);
+                    return;
+                }
+                propagate(firstSuccessful(primary, hedge), result);
+            });
+        }, hedgeDelay, TimeUnit.MILLISECONDS);
+
+        //对冲请求发出前主请求已经结束（成功或失败），直接返回主请求的结果
+        primary.whenComplete((bytes, throwable) -> {
+            if (timer.cancel(false)) {
+                propagate(primary, result);
+            }
+        });
+        result.whenComplete((bytes, throwable) -> {
+            timer.cancel(false);
+            primary.cancel(true);
+            CompletableFuture<byte[]> hedge = hedgeRef.get();
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 异步发送一次HTTP请求，完成时记录节点的延迟与成功率，future被取消时同时取消HTTP请求。
+     * 发送前先获取节点限流器的许可，节点并发窗口已满或令牌不足时在调用线程上等待，
+     * 只能在业务线程或retryExecutor上调用。
+     */
+    CompletableFuture<byte[]> call(RpcEndpoint endpoint, String payload, int permits) {
+        RequestBody requestBody = RequestBody.create(payload, HttpService.JSON_MEDIA_TYPE);
+        Request request = new Request.Builder().url(endpoint.getUrl()).post(requestBody).build();
+        Call call = httpClient.newCall(request);
+
+        RpcLimiter limiter = endpoint.getLimiter();
+        if (limiter != null) {
+            limiter.acquire(permits);
+        }
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        long start = System.nanoTime();
+        endpoint.onStart();
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (call.isCanceled()) {
+                    endpoint.onCancel();
+                    if (limiter != null) {
+                        limiter.onCancel(permits);
+                    }
+                } else {
+                    endpoint.onFailure();
+                    if (limiter != null) {
+                        limiter.onError(permits);
+                    }
+                }
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, okhttp3.Response response) {
+                long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                try (ResponseBody body = response.body()) {
+                    byte[] bytes = body == null ? new byte[0] : body.bytes();
+                    if (!response.isSuccessful()) {
+                        endpoint.onFailure();
+                        if (limiter != null) {
+                            if (response.code() == 429) {
+                                limiter.onThrottled(permits);
+                            } else {
+                                limiter.onError(permits);
+                            }
+                        }
+                        future.completeExceptionally(new IOException("节点" + endpoint.getUrl() + "返回异常状态码：" + response.code() + "; " + new String(bytes)));
+                        return;
+                    }
+                    endpoint.onSuccess(latency);
+                    if (limiter != null) {
+                        //部分托管节点以HTTP 200 + JSON-RPC错误码-32005返回限流
+                        if (isThrottled(bytes)) {
+                            limiter.onThrottled(permits);
+                        } else {
+                            limiter.onSuccess(latency, permits);
+                        }
+                    }
+                    future.complete(bytes);
+                } catch (IOException e) {
+                    endpoint.onFailure();
+                    if (limiter != null) {
+                        limiter.onError(permits);
+                    }
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        future.whenComplete((bytes, throwable) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 响应是否为节点以JSON-RPC错误返回的限流。-32005同时用于其他超限错误
+     * （如Infura的query returned more than 10000 results），只有错误信息表明是请求速率超限时才视为限流
+     * @param bytes 响应内容，批量请求时任意一个结果被限流即视为限流
+     */
+    boolean isThrottled(byte[] bytes) {
+        if (bytes.length > THROTTLE_CHECK_MAX_BYTES || !new String(bytes, StandardCharsets.UTF_8).contains(String.valueOf(THROTTLED_CODE))) {
+            return false;
+        }
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(bytes);
+        } catch (IOException e) {
+            return false;
+        }
+        if (root == null) {
+            return false;
+        }
+        for (JsonNode node : root.isArray() ? root : Collections.singletonList(root)) {
+            JsonNode error = node.path("error");
+            if (error.path("code").asInt() != THROTTLED_CODE) {
+                continue;
+            }
+            String message = (error.path("message").asText() + " " + error.path("data").toString()).toLowerCase();
+            for (String keyword : THROTTLED_KEYWORDS) {
+                if (message.contains(keyword)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void propagate(CompletableFuture<byte[]> source, CompletableFuture<byte[]> target) {
+        source.whenComplete((bytes, throwable) -> {
+            if (throwable == null) {
+                target.complete(bytes);
+            } else {
+                target.completeExceptionally(throwable);
+            }
+        });
+    }
+
+    private static CompletableFuture<byte[]> firstSuccessful(CompletableFuture<byte[]> first, CompletableFuture<byte[]> second) {
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        for (CompletableFuture<byte[]> future : Arrays.asList(first, second)) {
+            future.whenComplete((bytes, throwable) -> {
+                if (throwable == null) {
+                    result.complete(bytes);
+                } else if (failures.incrementAndGet() == 2) {
+                    result.completeExceptionally(throwable);
+                }
+            });
+        }
+        return result;
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("请求被中断", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+        return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
+
+    /**
+     * 节点不支持JSON-RPC批量请求，或批量请求超过了节点允许的数量
+     */
+    public static class BatchUnsupportedException extends IOException {
+
+        public BatchUnsupportedException(String message) {
+            super(message);
+        }
+    }
+
+    private static String abbreviate(String text) {
+        return text.length() > 256 ? text.substring(0, 256) + "..." : text;
+    }
+
+    private static boolean isHedgeable(String payload) {
+        for (String method : NON_HEDGE_METHODS) {
+            if (payload.contains("\"" + method + "\"")) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
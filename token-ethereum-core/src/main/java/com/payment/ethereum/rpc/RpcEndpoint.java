@@ -0,0 +1,151 @@
+package com.payment.ethereum.rpc;
+
+import com.payment.core.limiter.RpcLimiter;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个RPC节点的健康状态
+ * <p>
+ * 记录节点的成功率、延迟分布与连续失败次数，用于负载均衡选择节点、
+ * 计算对冲请求的触发时间（p95延迟）以及故障节点的自动摘除与恢复。
+ */
+public class RpcEndpoint {
+
+    /**
+     * 延迟采样窗口大小
+     */
+    private static final int LATENCY_WINDOW = 128;
+
+    /**
+     * 连续失败多少次后摘除节点
+     */
+    private static final int FAILURE_THRESHOLD = 3;
+
+    /**
+     * 摘除节点的冷却时间，连续失败时翻倍，最长60秒
+     */
+    private static final long BASE_COOLDOWN_MILLIS = 1000L;
+    private static final long MAX_COOLDOWN_MILLIS = 60 * 1000L;
+
+    /**
+     * EWMA平滑系数
+     */
+    private static final double ALPHA = 0.2;
+
+    @Getter
+    private final String url;
+
+    /**
+     * 节点限流器，为空则不限流
+     */
+    @Getter
+    private final RpcLimiter limiter;
+
+    private final long[] latencySamples = new long[LATENCY_WINDOW];
+
+    private int sampleCount;
+
+    private int sampleIndex;
+
+    private long cachedP95 = -1;
+
+    private double successRate = 1.0;
+
+    private double latencyEwma;
+
+    private int consecutiveFailures;
+
+    private long unavailableUntil;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    public RpcEndpoint(String url, RpcLimiter limiter) {
+        this.url = url;
+        this.limiter = limiter;
+    }
+
+    /**
+     * 节点是否可用（未处于摘除冷却期）
+     */
+    public synchronized boolean isAvailable(long now) {
+        return now >= unavailableUntil;
+    }
+
+    /**
+     * 节点得分，成功率越高、延迟越低、在途请求越少得分越高
+     */
+    public synchronized double score() {
+        return successRate / ((latencyEwma + 1) * (inflight.get() + 1));
+    }
+
+    public synchronized long getUnavailableUntil() {
+        return unavailableUntil;
+    }
+
+    public void onStart() {
+        inflight.incrementAndGet();
+    }
+
+    /**
+     * 记录一次成功请求
+     * @param latencyMillis 请求耗时
+     */
+    public synchronized void onSuccess(long latencyMillis) {
+        inflight.decrementAndGet();
+        successRate = successRate * (1 - ALPHA) + ALPHA;
+        latencyEwma = sampleCount == 0 ? latencyMillis : latencyEwma * (1 - ALPHA) + latencyMillis * ALPHA;
+        consecutiveFailures = 0;
+        unavailableUntil = 0;
+
+        latencySamples[sampleIndex] = latencyMillis;
+        sampleIndex = (sampleIndex + 1) % LATENCY_WINDOW;
+        if (sampleCount < LATENCY_WINDOW) {
+            sampleCount++;
+        }
+        cachedP95 = -1;
+    }
+
+    /**
+     * 记录一次失败请求，连续失败超过阈值则摘除节点一段时间
+     */
+    public synchronized void onFailure() {
+        inflight.decrementAndGet();
+        successRate = successRate * (1 - ALPHA);
+        consecutiveFailures++;
+        if (consecutiveFailures >= FAILURE_THRESHOLD) {
+            int exponent = Math.min(consecutiveFailures - FAILURE_THRESHOLD, 6);
+            long cooldown = Math.min(BASE_COOLDOWN_MILLIS << exponent, MAX_COOLDOWN_MILLIS);
+            unavailableUntil = System.currentTimeMillis() + cooldown;
+        }
+    }
+
+    /**
+     * 请求被取消（对冲请求中落败的一方），只释放在途计数
+     */
+    public void onCancel() {
+        inflight.decrementAndGet();
+    }
+
+    /**
+     * 获取p95延迟，样本不足时返回-1
+     */
+    public synchronized long p95LatencyMillis() {
+        if (sampleCount < 20) {
+            return -1;
+        }
+        if (cachedP95 < 0) {
+            long[] sorted = Arrays.copyOf(latencySamples, sampleCount);
+            Arrays.sort(sorted);
+            cachedP95 = sorted[(int) Math.ceil(sampleCount * 0.95) - 1];
+        }
+        return cachedP95;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return url + "{successRate=" + String.format("%.3f", successRate) + ", latency=" + Math.round(latencyEwma) + "ms, inflight=" + inflight.get() + "}";
+    }
+}
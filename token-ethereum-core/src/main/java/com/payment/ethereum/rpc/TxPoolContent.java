@@ -0,0 +1,31 @@
+package com.payment.ethereum.rpc;
+
+import lombok.Data;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.Transaction;
+
+import java.util.Map;
+
+/**
+ * txpool_content的返回结果（geth、erigon等节点提供），web3j当前版本未提供该接口
+ */
+public class TxPoolContent extends Response<TxPoolContent.Content> {
+
+    public Content getContent() {
+        return getResult();
+    }
+
+    @Data
+    public static class Content {
+
+        /**
+         * 可以打包的交易，转出地址与nonce、交易的对应关系
+         */
+        private Map<String, Map<String, Transaction>> pending;
+
+        /**
+         * nonce不连续、暂时不能打包的交易
+         */
+        private Map<String, Map<String, Transaction>> queued;
+    }
+}
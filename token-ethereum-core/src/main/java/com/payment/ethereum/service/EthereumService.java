@@ -2,8 +2,17 @@ package com.payment.ethereum.service;
 
 import com.payment.core.service.CurrencyService;
 import com.payment.core.utils.AssertUtils;
+import com.payment.core.utils.AsyncUtils;
+import com.payment.ethereum.block.BlockStreamReader;
 import com.payment.ethereum.common.EthereumAddress;
+import com.payment.ethereum.fee.FeeEstimate;
+import com.payment.ethereum.fee.FeeOracle;
+import com.payment.ethereum.rpc.EthBlockReceipts;
+import com.payment.ethereum.rpc.LoadBalancedHttpService;
+import com.payment.ethereum.rpc.TxPoolContent;
+import com.payment.ethereum.utils.Eip1559TransactionEncoder;
 import com.payment.ethereum.utils.EthereumUtils;
+import com.payment.ethereum.utils.Multicall3;
 import lombok.extern.slf4j.Slf4j;
 import org.bitcoinj.crypto.*;
 import org.bitcoinj.wallet.DeterministicSeed;
@@ -18,13 +27,19 @@ import org.web3j.abi.TypeReference;
 import org.web3j.abi.datatypes.Address;
 import org.web3j.abi.datatypes.Function;
 import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.generated.Uint256;
 import org.web3j.crypto.Credentials;
 import org.web3j.crypto.ECKeyPair;
 import org.web3j.crypto.Keys;
+import org.web3j.crypto.RawTransaction;
+import org.web3j.crypto.TransactionEncoder;
 import org.web3j.crypto.WalletUtils;
 import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
 import org.web3j.protocol.core.DefaultBlockParameterName;
 import org.web3j.protocol.core.DefaultBlockParameterNumber;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
 import org.web3j.protocol.core.methods.request.Transaction;
 import org.web3j.protocol.core.methods.response.*;
 import org.web3j.utils.Convert;
@@ -35,10 +50,16 @@ import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
@@ -50,6 +71,61 @@ public class EthereumService {
     @Value("${ethereum.keystorepassword}")
     private String keystorePassword;
 
+    /**
+     * 链ID，签名交易时用于EIP-155重放保护
+     */
+    @Value("${ethereum.chain-id:1}")
+    private long chainId;
+
+    /**
+     * Multicall3合约地址
+     */
+    @Value("${ethereum.multicall.address:" + Multicall3.DEFAULT_ADDRESS + "}")
+    private String multicallAddress;
+
+    /**
+     * 每次aggregate3调用包含的子调用数
+     */
+    @Value("${ethereum.multicall.batch-size:500}")
+    private int multicallBatchSize;
+
+    /**
+     * 同时在途的aggregate3调用数
+     */
+    @Value("${ethereum.multicall.max-inflight:4}")
+    private int multicallMaxInflight;
+
+    /**
+     * 节点所在链未部署Multicall3时退化为逐个地址查询
+     */
+    private volatile boolean multicallUnavailable;
+
+    /**
+     * 每个JSON-RPC批量请求包含的请求数
+     */
+    @Value("${ethereum.rpc.batch-size:20}")
+    private int rpcBatchSize;
+
+    /**
+     * 节点不支持JSON-RPC批量请求时退化为逐个请求
+     */
+    private volatile boolean batchUnsupported;
+
+    /**
+     * 节点不支持eth_getBlockReceipts时退化为批量请求每笔交易的收据
+     */
+    private volatile boolean blockReceiptsUnsupported;
+
+    /**
+     * 合约地址（小写）与token精度的对应关系，token精度部署后不可变，永久缓存
+     */
+    private final Map<String, Integer> tokenDecimals = new ConcurrentHashMap<>();
+
+    /**
+     * 地址（小写，不含0x）与keystore文件名的对应关系
+     */
+    private final Map<String, String> keystoreFiles = new ConcurrentHashMap<>();
+
     /**
      * erc20中转账事件签名的hash值，是eventLog中的topics[0]字段。
      * 其通过keccak算法加密"Transfer(address,address,uint256)"得到结果
@@ -63,6 +139,17 @@ public class EthereumService {
     @Autowired
     private CurrencyService currencyService;
 
+    @Autowired
+    private FeeOracle feeOracle;
+
+    @Autowired
+    private LoadBalancedHttpService web3jService;
+
+
+    /**
+     * ETH转账的gas上限
+     */
+    public static final BigInteger ETHER_TRANSFER_GAS_LIMIT = BigInteger.valueOf(21000);
 
     private static final List<ChildNumber> BIP44_ETH_ACCOUNT_ZERO_PATH = Arrays.asList(new ChildNumber(44, true), new ChildNumber(60, true), ChildNumber.ZERO_HARDENED, ChildNumber.ZERO);
 
@@ -177,6 +264,10 @@ public class EthereumService {
      * @throws IOException
      */
     public Integer getTokenDecimal(String contractAddress) throws IOException {
+        Integer cached = tokenDecimals.get(contractAddress.toLowerCase());
+        if (cached != null) {
+            return cached;
+        }
         Function function = new Function("decimals", Arrays.asList(), Collections.<TypeReference<?>>emptyList());
         EthCall ethCall = web3j.ethCall(Transaction.createEthCallTransaction("0x0000000000000000000000000000000000000000", contractAddress, FunctionEncoder.encode(function)), DefaultBlockParameterName.LATEST).send();
         if (ethCall.hasError()) {
@@ -185,6 +276,7 @@ public class EthereumService {
         }
         List<Type> decode = FunctionReturnDecoder.decode(ethCall.getValue(), function.getOutputParameters());
         Integer decimals = Integer.parseInt(decode.get(0).getValue().toString());
+        tokenDecimals.put(contractAddress.toLowerCase(), decimals);
         return decimals;
     }
 
@@ -233,13 +325,709 @@ public class EthereumService {
 
 
     /**
-     * 获取gas价格
-     * @return
+     * 异步通过高度获取区块详细信息（包含完整交易），调用线程不等待节点返回
+     * @param height 区块高度
+     * @return 区块，节点返回错误时以异常结束
+     */
+    public CompletableFuture<EthBlock.Block> getBlockByNumberAsync(Long height) {
+        return web3j.ethGetBlockByNumber(new DefaultBlockParameterNumber(height), true).sendAsync()
+                .thenApply(block -> checkResponse(block, "通过高度获取区块详细信息失败").getBlock());
+    }
+
+    /**
+     * 异步通过交易Hash获取交易详情
+     * @param txId 交易Hash
+     * @return 交易详情，交易不存在时为null
      */
-    public BigInteger getGasPrice() {
+    public CompletableFuture<org.web3j.protocol.core.methods.response.Transaction> getTransactionByHashAsync(String txId) {
+        return web3j.ethGetTransactionByHash(txId).sendAsync()
+                .thenApply(tx -> checkResponse(tx, "通过交易Hash获取交易详情失败").getTransaction().orElse(null));
+    }
+
+    /**
+     * 异步通过交易哈希获取到交易的收据信息
+     * @param txId 交易Hash
+     * @return 收据信息，交易未上链时为null
+     */
+    public CompletableFuture<TransactionReceipt> getTransactionReceiptAsync(String txId) {
+        return web3j.ethGetTransactionReceipt(txId).sendAsync()
+                .thenApply(receipt -> checkResponse(receipt, "通过txId获取交易收入失败").getTransactionReceipt().orElse(null));
+    }
+
+    /**
+     * erc20转账事件签名的hash值，即Transfer事件的topics[0]
+     */
+    public String getTransferEventSignature() {
+        return transferEventSignature;
+    }
+
+    /**
+     * 每个JSON-RPC批量请求包含的请求数，扫块任务按该数量划分每次批量获取的区块
+     */
+    public int getRpcBatchSize() {
+        return rpcBatchSize;
+    }
+
+    /**
+     * 异步批量获取连续高度的区块（包含完整交易），每rpcBatchSize个区块在一次HTTP请求中返回
+     * @param from 起始高度
+     * @param to 结束高度（包含）
+     * @return 按高度排列的区块，任意一个区块获取失败时以异常结束
+     */
+    public CompletableFuture<List<EthBlock.Block>> getBlocksByNumberAsync(long from, long to) {
+        List<Long> heights = new ArrayList<>((int) (to - from + 1));
+        for (long height = from; height <= to; height++) {
+            heights.add(height);
+        }
+        return getBlocksByNumberAsync(heights, true);
+    }
+
+    /**
+     * 异步批量获取连续高度的区块（包含完整交易），响应不反序列化为EthBlock，
+     * 由扫块线程通过返回的reader逐个区块解析到可复用的ScannedBlock中，只读取扫块需要的字段
+     * @param from 起始高度
+     * @param to 结束高度（包含）
+     * @return 按高度顺序读取区块的reader，任意一个区块获取失败时以异常结束
+     */
+    public CompletableFuture<BlockStreamReader> getScannedBlocksAsync(long from, long to) {
+        List<Request<?, EthBlock>> requests = new ArrayList<>((int) (to - from + 1));
+        for (long height = from; height <= to; height++) {
+            requests.add(web3j.ethGetBlockByNumber(new DefaultBlockParameterNumber(height), true));
+        }
+        List<CompletableFuture<BlockStreamReader>> batches = new ArrayList<>();
+        for (int index = 0; index < requests.size(); index += rpcBatchSize) {
+            batches.add(sendRawBatch(requests.subList(index, Math.min(requests.size(), index + rpcBatchSize))));
+        }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<BlockStreamReader> readers = new ArrayList<>(batches.size());
+            for (CompletableFuture<BlockStreamReader> batch : batches) {
+                readers.add(batch.join());
+            }
+            return BlockStreamReader.concat(readers);
+        });
+    }
+
+    /**
+     * 以原始字节发送一个获取区块的批量请求，节点不支持批量请求时记录下来，之后逐个请求
+     */
+    private CompletableFuture<BlockStreamReader> sendRawBatch(List<Request<?, EthBlock>> batch) {
+        if (batchUnsupported || batch.size() == 1) {
+            return sendRawEach(batch);
+        }
+        List<Long> ids = new ArrayList<>(batch.size());
+        for (Request<?, EthBlock> request : batch) {
+            ids.add(request.getId());
+        }
+        CompletableFuture<BlockStreamReader> result = new CompletableFuture<>();
+        web3jService.sendRawAsync(batch).whenComplete((bytes, throwable) -> {
+            try {
+                if (throwable != null) {
+                    throw throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                }
+                result.complete(BlockStreamReader.ofBatch(bytes, ids));
+            } catch (LoadBalancedHttpService.BatchUnsupportedException e) {
+                log.warn("节点不支持JSON-RPC批量请求，改为逐个请求：{}", e.getMessage());
+                batchUnsupported = true;
+                sendRawEach(batch).whenComplete((reader, error) -> {
+                    if (error == null) {
+                        result.complete(reader);
+                    } else {
+                        result.completeExceptionally(error);
+                    }
+                });
+            } catch (IOException e) {
+                result.completeExceptionally(new IOException("通过高度获取区块详细信息失败：" + e.getMessage(), e));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    private CompletableFuture<BlockStreamReader> sendRawEach(List<Request<?, EthBlock>> batch) {
+        List<CompletableFuture<BlockStreamReader>> futures = new ArrayList<>(batch.size());
+        for (Request<?, EthBlock> request : batch) {
+            futures.add(web3jService.sendRawAsync(request).thenApply(bytes -> {
+                try {
+                    return BlockStreamReader.ofResponse(bytes);
+                } catch (IOException e) {
+                    throw new CompletionException(new IOException("通过高度获取区块详细信息失败：" + e.getMessage(), e));
+                }
+            }));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<BlockStreamReader> readers = new ArrayList<>(futures.size());
+            for (CompletableFuture<BlockStreamReader> future : futures) {
+                readers.add(future.join());
+            }
+            return BlockStreamReader.concat(readers);
+        });
+    }
+
+    /**
+     * 异步批量获取区块头（不包含交易详情），只需要区块时间等字段时使用
+     * @param heights 区块高度列表
+     * @return 与heights一一对应的区块
+     */
+    public CompletableFuture<List<EthBlock.Block>> getBlockHeadersAsync(List<Long> heights) {
+        return getBlocksByNumberAsync(heights, false);
+    }
+
+    /**
+     * 通过一次批量请求按标签获取区块头
+     * @param tags 区块标签，例如latest、safe、finalized
+     * @return 与tags一一对应的区块，节点不支持该标签（合并前的链或部分二层网络）或返回错误的位置为null
+     */
+    public CompletableFuture<List<EthBlock.Block>> getBlockHeadersByTagAsync(List<String> tags) {
+        List<Request<?, EthBlock>> requests = new ArrayList<>(tags.size());
+        for (String tag : tags) {
+            //web3j的DefaultBlockParameterName不包含safe与finalized，直接传入标签
+            requests.add(web3j.ethGetBlockByNumber(() -> tag, false));
+        }
+        return sendBatch(requests, EthBlock.class).thenApply(responses -> {
+            List<EthBlock.Block> blocks = new ArrayList<>(responses.size());
+            for (int index = 0; index < responses.size(); index++) {
+                EthBlock response = responses.get(index);
+                if (response.hasError()) {
+                    log.debug("获取{}区块失败：{} {}", tags.get(index), response.getError().getCode(), response.getError().getMessage());
+                }
+                blocks.add(response.hasError() ? null : response.getBlock());
+            }
+            return blocks;
+        });
+    }
+
+    private CompletableFuture<List<EthBlock.Block>> getBlocksByNumberAsync(List<Long> heights, boolean fullTransactions) {
+        List<Request<?, EthBlock>> requests = new ArrayList<>(heights.size());
+        for (Long height : heights) {
+            requests.add(web3j.ethGetBlockByNumber(new DefaultBlockParameterNumber(height), fullTransactions));
+        }
+        return sendBatchAsync(requests, EthBlock.class, "通过高度获取区块详细信息失败").thenApply(responses -> {
+            List<EthBlock.Block> blocks = new ArrayList<>(responses.size());
+            for (EthBlock response : responses) {
+                blocks.add(response.getBlock());
+            }
+            return blocks;
+        });
+    }
+
+    /**
+     * 异步批量通过交易Hash获取交易详情
+     * @param txIds 交易Hash列表
+     * @return 与txIds一一对应的交易详情，交易不存在的位置为null
+     */
+    public CompletableFuture<List<org.web3j.protocol.core.methods.response.Transaction>> getTransactionsByHashAsync(List<String> txIds) {
+        List<Request<?, EthTransaction>> requests = new ArrayList<>(txIds.size());
+        for (String txId : txIds) {
+            requests.add(web3j.ethGetTransactionByHash(txId));
+        }
+        return sendBatchAsync(requests, EthTransaction.class, "通过交易Hash获取交易详情失败").thenApply(responses -> {
+            List<org.web3j.protocol.core.methods.response.Transaction> transactions = new ArrayList<>(responses.size());
+            for (EthTransaction response : responses) {
+                transactions.add(response.getTransaction().orElse(null));
+            }
+            return transactions;
+        });
+    }
+
+    /**
+     * 通过txpool_content异步获取交易池中可以打包的交易，节点需要开启txpool接口
+     * @return 交易池中可以打包的交易，不包含nonce不连续的交易
+     */
+    public CompletableFuture<List<org.web3j.protocol.core.methods.response.Transaction>> getPendingTransactionsAsync() {
+        return new Request<>("txpool_content", Collections.<String>emptyList(), web3jService, TxPoolContent.class).sendAsync().thenApply(response -> {
+            TxPoolContent.Content content = checkResponse(response, "获取交易池内容失败").getContent();
+            List<org.web3j.protocol.core.methods.response.Transaction> transactions = new ArrayList<>();
+            if (content != null && content.getPending() != null) {
+                for (Map<String, org.web3j.protocol.core.methods.response.Transaction> transactionsByNonce : content.getPending().values()) {
+                    transactions.addAll(transactionsByNonce.values());
+                }
+            }
+            return transactions;
+        });
+    }
+
+    /**
+     * 异步批量通过交易哈希获取交易的收据信息
+     * @param txIds 交易Hash列表
+     * @return 与txIds一一对应的收据信息，交易未上链的位置为null
+     */
+    public CompletableFuture<List<TransactionReceipt>> getTransactionReceiptsAsync(List<String> txIds) {
+        List<Request<?, EthGetTransactionReceipt>> requests = new ArrayList<>(txIds.size());
+        for (String txId : txIds) {
+            requests.add(web3j.ethGetTransactionReceipt(txId));
+        }
+        return sendBatchAsync(requests, EthGetTransactionReceipt.class, "通过txId获取交易收入失败").thenApply(responses -> {
+            List<TransactionReceipt> receipts = new ArrayList<>(responses.size());
+            for (EthGetTransactionReceipt response : responses) {
+                receipts.add(response.getTransactionReceipt().orElse(null));
+            }
+            return receipts;
+        });
+    }
+
+    /**
+     * 异步获取区块中全部交易的收据，通过一次eth_getBlockReceipts返回；
+     * 节点不支持该接口时退化为按交易Hash批量请求收据
+     * @param block 区块，可以包含完整交易或只包含交易Hash
+     * @return 按交易在区块中的顺序排列的收据
+     */
+    public CompletableFuture<List<TransactionReceipt>> getBlockReceiptsAsync(EthBlock.Block block) {
+        List<String> txIds = new ArrayList<>(block.getTransactions().size());
+        for (EthBlock.TransactionResult transactionResult : block.getTransactions()) {
+            Object value = transactionResult.get();
+            txIds.add(value instanceof org.web3j.protocol.core.methods.response.Transaction
+                    ? ((org.web3j.protocol.core.methods.response.Transaction) value).getHash() : (String) value);
+        }
+        return getBlockReceiptsAsync(block.getNumberRaw(), txIds);
+    }
+
+    /**
+     * 异步获取区块中全部交易的收据
+     * @param blockNumberRaw 区块高度（十六进制）
+     * @param txIds 区块中全部交易的Hash，按交易在区块中的顺序
+     * @return 按交易在区块中的顺序排列的收据
+     */
+    public CompletableFuture<List<TransactionReceipt>> getBlockReceiptsAsync(String blockNumberRaw, List<String> txIds) {
+        if (blockReceiptsUnsupported || txIds.isEmpty()) {
+            return getTransactionReceiptsAsync(txIds);
+        }
+
+        CompletableFuture<List<TransactionReceipt>> result = new CompletableFuture<>();
+        new Request<>("eth_getBlockReceipts", Collections.singletonList(blockNumberRaw), web3jService, EthBlockReceipts.class).sendAsync()
+                .whenComplete((response, throwable) -> {
+                    //1. 节点返回了与区块交易数一致的收据
+                    if (throwable == null && !response.hasError() && response.getReceipts() != null && response.getReceipts().size() == txIds.size()) {
+                        result.complete(response.getReceipts());
+                        return;
+                    }
+
+                    //2. 节点不支持该接口（-32601 方法不存在）时记录下来，之后直接批量请求
+                    if (throwable == null && response.hasError() && response.getError().getCode() == -32601) {
+                        log.warn("节点不支持eth_getBlockReceipts，改为批量请求交易收据：{}", response.getError().getMessage());
+                        blockReceiptsUnsupported = true;
+                    }
+
+                    //3. 本次退化为批量请求交易收据
+                    getTransactionReceiptsAsync(txIds).whenComplete((receipts, error) -> {
+                        if (error == null) {
+                            result.complete(receipts);
+                        } else {
+                            result.completeExceptionally(error);
+                        }
+                    });
+                });
+        return result;
+    }
+
+    /**
+     * 按rpcBatchSize把请求划分为多个JSON-RPC批量请求同时发出，结果按请求顺序合并
+     * @param requests 请求列表
+     * @param responseType 返回结果类型
+     * @param message 节点返回JSON-RPC错误时的异常信息
+     * @return 与请求顺序一致的结果，任意一个请求失败时以异常结束
+     */
+    private <T extends Response<?>> CompletableFuture<List<T>> sendBatchAsync(List<Request<?, T>> requests, Class<T> responseType, String message) {
+        List<CompletableFuture<List<T>>> batches = new ArrayList<>();
+        for (int from = 0; from < requests.size(); from += rpcBatchSize) {
+            batches.add(sendBatch(requests.subList(from, Math.min(requests.size(), from + rpcBatchSize)), responseType));
+        }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<T> responses = new ArrayList<>(requests.size());
+            for (CompletableFuture<List<T>> batch : batches) {
+                for (T response : batch.join()) {
+                    responses.add(checkResponse(response, message));
+                }
+            }
+            return responses;
+        });
+    }
+
+    /**
+     * 发送一个批量请求，节点不支持批量请求时记录下来，之后逐个请求
+     */
+    private <T extends Response<?>> CompletableFuture<List<T>> sendBatch(List<Request<?, T>> batch, Class<T> responseType) {
+        if (batchUnsupported || batch.size() == 1) {
+            return sendEach(batch);
+        }
+        CompletableFuture<List<T>> result = new CompletableFuture<>();
+        web3jService.sendBatchAsync(batch, responseType).whenComplete((responses, throwable) -> {
+            if (throwable == null) {
+                result.complete(responses);
+                return;
+            }
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+            if (cause instanceof LoadBalancedHttpService.BatchUnsupportedException) {
+                log.warn("节点不支持JSON-RPC批量请求，改为逐个请求：{}", cause.getMessage());
+                batchUnsupported = true;
+                sendEach(batch).whenComplete((each, error) -> {
+                    if (error == null) {
+                        result.complete(each);
+                    } else {
+                        result.completeExceptionally(error);
+                    }
+                });
+            } else {
+                result.completeExceptionally(cause);
+            }
+        });
+        return result;
+    }
+
+    private static <T extends Response<?>> CompletableFuture<List<T>> sendEach(List<Request<?, T>> batch) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(batch.size());
+        for (Request<?, T> request : batch) {
+            futures.add(request.sendAsync());
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            List<T> responses = new ArrayList<>(futures.size());
+            for (CompletableFuture<T> future : futures) {
+                responses.add(future.join());
+            }
+            return responses;
+        });
+    }
+
+    /**
+     * 异步查询事件日志
+     * @param ethFilter 过滤条件（区块范围、合约地址与topics）
+     * @return 日志列表
+     */
+    public CompletableFuture<List<Log>> getLogsAsync(org.web3j.protocol.core.methods.request.EthFilter ethFilter) {
+        return web3j.ethGetLogs(ethFilter).sendAsync().thenApply(ethLog -> {
+            List<EthLog.LogResult> logResults = checkResponse(ethLog, "查询事件日志失败").getLogs();
+            List<Log> logs = new ArrayList<>(logResults == null ? 0 : logResults.size());
+            if (logResults != null) {
+                for (EthLog.LogResult logResult : logResults) {
+                    logs.add(((EthLog.LogObject) logResult).get());
+                }
+            }
+            return logs;
+        });
+    }
+
+    /**
+     * 异步查询区块范围内合约的Transfer事件日志
+     * @param from 起始高度
+     * @param to 结束高度（包含）
+     * @param contractAddress 合约地址
+     * @return 日志列表，返回结果超过节点限制时以异常结束
+     */
+    public CompletableFuture<List<Log>> getTransferLogsAsync(long from, long to, String contractAddress) {
+        return getTransferLogsAsync(from, to, Collections.singletonList(contractAddress), null);
+    }
+
+    /**
+     * 异步查询区块范围内转入指定收款地址的Transfer事件日志，由节点按topics[2]过滤
+     * @param from 起始高度
+     * @param to 结束高度（包含）
+     * @param contractAddresses 合约地址，多个合约之间为或的关系
+     * @param recipientTopics 补零到32字节的收款地址，多个地址之间为或的关系，为空时不按收款地址过滤
+     * @return 日志列表，返回结果超过节点限制时以异常结束
+     */
+    public CompletableFuture<List<Log>> getTransferLogsAsync(long from, long to, List<String> contractAddresses, List<String> recipientTopics) {
+        org.web3j.protocol.core.methods.request.EthFilter ethFilter =
+                new org.web3j.protocol.core.methods.request.EthFilter(
+                        new DefaultBlockParameterNumber(from),
+                        new DefaultBlockParameterNumber(to),
+                        contractAddresses
+                );
+        ethFilter.addSingleTopic(transferEventSignature);
+        if (!ObjectUtils.isEmpty(recipientTopics)) {
+            ethFilter.addNullTopic();
+            ethFilter.addOptionalTopics(recipientTopics.toArray(new String[0]));
+        }
+        return getLogsAsync(ethFilter);
+    }
+
+    /**
+     * 异步获取地址最新区块的ETH余额
+     * @param address ETH地址
+     * @return 余额（wei）
+     */
+    public CompletableFuture<BigInteger> getBalanceAsync(String address) {
+        return getBalanceAsync(address, DefaultBlockParameterName.LATEST);
+    }
+
+    /**
+     * 异步获取地址在指定区块的ETH余额，非归档节点只保留最近的状态（geth默认128个区块）
+     * @param address ETH地址
+     * @param height 区块高度
+     * @return 余额（wei）
+     */
+    public CompletableFuture<BigInteger> getBalanceAsync(String address, long height) {
+        return getBalanceAsync(address, new DefaultBlockParameterNumber(height));
+    }
+
+    private CompletableFuture<BigInteger> getBalanceAsync(String address, DefaultBlockParameter block) {
+        return web3j.ethGetBalance(address, block).sendAsync()
+                .thenApply(balance -> checkResponse(balance, "获取ETH余额失败").getBalance());
+    }
+
+    /**
+     * 异步获取地址最新区块的token余额
+     * @param address 地址
+     * @param contractAddress 合约地址
+     * @return 余额（合约最小单位）
+     */
+    public CompletableFuture<BigInteger> getTokenBalanceAsync(String address, String contractAddress) {
+        Function balanceOf = new Function("balanceOf", Arrays.asList(new Address(address)), Collections.<TypeReference<?>>emptyList());
+        return web3j.ethCall(Transaction.createEthCallTransaction(address, contractAddress, FunctionEncoder.encode(balanceOf)), DefaultBlockParameterName.LATEST).sendAsync()
+                .thenApply(ethCall -> {
+                    String value = checkResponse(ethCall, "获取token余额失败").getValue();
+                    return StringUtils.isEmpty(value) || "0x".equals(value) ? BigInteger.ZERO : Numeric.toBigInt(value);
+                });
+    }
+
+    /**
+     * 批量获取地址的ETH余额，通过Multicall3每次eth_call查询multicallBatchSize个地址
+     * @param addresses 地址列表
+     * @return 地址与余额（wei）的对应关系，查询失败的地址不包含在内
+     */
+    public Map<String, BigInteger> getEthBalances(List<String> addresses) {
+        return aggregateBalances(addresses, DefaultBlockParameterName.LATEST, address -> multicallAddress, Multicall3::getEthBalance, this::getBalanceAsync);
+    }
+
+    /**
+     * 批量获取地址在指定区块的ETH余额，通过Multicall3每次eth_call查询multicallBatchSize个地址
+     * @param addresses 地址列表
+     * @param height 区块高度
+     * @return 地址与余额（wei）的对应关系，查询失败的地址不包含在内
+     */
+    public Map<String, BigInteger> getEthBalances(List<String> addresses, long height) {
+        DefaultBlockParameter block = new DefaultBlockParameterNumber(height);
+        return aggregateBalances(addresses, block, address -> multicallAddress, Multicall3::getEthBalance, address -> getBalanceAsync(address, block));
+    }
+
+    /**
+     * 批量获取地址的token余额，通过Multicall3每次eth_call查询multicallBatchSize个地址
+     * @param addresses 地址列表
+     * @param contractAddress 合约地址
+     * @return 地址与余额（合约最小单位）的对应关系，查询失败的地址不包含在内
+     */
+    public Map<String, BigInteger> getTokenBalances(List<String> addresses, String contractAddress) {
+        return aggregateBalances(addresses, DefaultBlockParameterName.LATEST, address -> contractAddress, Multicall3::balanceOf,
+                address -> getTokenBalanceAsync(address, contractAddress));
+    }
+
+    /**
+     * 将每个地址的余额查询打包为aggregate3调用，各批次以流水线方式并发请求
+     * @param addresses 地址列表
+     * @param block 查询的区块
+     * @param target 子调用的合约地址
+     * @param callData 子调用的调用数据
+     * @param fallback 未部署Multicall3时逐个地址查询余额
+     */
+    private Map<String, BigInteger> aggregateBalances(List<String> addresses, DefaultBlockParameter block, java.util.function.Function<String, String> target,
+                                                      java.util.function.Function<String, String> callData,
+                                                      java.util.function.Function<String, CompletableFuture<BigInteger>> fallback) {
+        Map<String, BigInteger> balances = new LinkedHashMap<>(addresses.size() * 2);
+        if (!multicallUnavailable) {
+            //1. 按批次编码aggregate3调用
+            List<List<String>> batches = new ArrayList<>();
+            for (int from = 0; from < addresses.size(); from += multicallBatchSize) {
+                batches.add(addresses.subList(from, Math.min(addresses.size(), from + multicallBatchSize)));
+            }
+            List<List<String>> results = AsyncUtils.pipeline(batches, multicallMaxInflight, batch -> {
+                List<String> targets = new ArrayList<>(batch.size());
+                List<String> data = new ArrayList<>(batch.size());
+                for (String address : batch) {
+                    targets.add(target.apply(address));
+                    data.add(callData.apply(address));
+                }
+                String encoded = Multicall3.encodeAggregate3(targets, data);
+                return web3j.ethCall(Transaction.createEthCallTransaction("0x0000000000000000000000000000000000000000", multicallAddress, encoded), block).sendAsync()
+                        .thenApply(ethCall -> {
+                            String value = checkResponse(ethCall, "Multicall3批量查询余额失败").getValue();
+                            return StringUtils.isEmpty(value) || "0x".equals(value) ? null : Multicall3.decodeAggregate3(value);
+                        });
+            });
+
+            //2. 解码各子调用的返回值，合约不存在时返回空数据
+            for (int i = 0; i < batches.size(); i++) {
+                List<String> batch = batches.get(i);
+                List<String> returnData = results.get(i);
+                if (returnData == null) {
+                    continue;
+                }
+                for (int j = 0; j < batch.size(); j++) {
+                    String value = returnData.get(j);
+                    if (value != null && value.length() > 2) {
+                        balances.put(batch.get(j), Numeric.toBigInt(value));
+                    }
+                }
+            }
+            if (!batches.isEmpty() && results.stream().allMatch(result -> result == null) && !isContract(multicallAddress)) {
+                log.warn("{}未部署Multicall3合约，余额查询退化为逐个地址查询", multicallAddress);
+                multicallUnavailable = true;
+            } else {
+                return balances;
+            }
+        }
+
+        //3. 未部署Multicall3的链逐个地址流水线查询
+        List<BigInteger> results = AsyncUtils.pipeline(addresses, multicallMaxInflight * 4, fallback);
+        for (int i = 0; i < addresses.size(); i++) {
+            if (results.get(i) != null) {
+                balances.put(addresses.get(i), results.get(i));
+            }
+        }
+        return balances;
+    }
+
+    /**
+     * 地址上是否部署了合约
+     */
+    private boolean isContract(String address) {
         try {
-            EthGasPrice gasPrice = web3j.ethGasPrice().send();
-            return gasPrice.getGasPrice();
+            EthGetCode code = web3j.ethGetCode(address, DefaultBlockParameterName.LATEST).send();
+            return !code.hasError() && code.getCode() != null && code.getCode().length() > 2;
+        } catch (IOException e) {
+            log.error("查询合约代码失败", e);
+            return true;
+        }
+    }
+
+    /**
+     * 异步批量获取地址在指定区块的nonce（已发出的交易数）
+     * @param addresses 地址列表
+     * @param height 区块高度
+     * @return 与addresses一一对应的nonce
+     */
+    public CompletableFuture<List<BigInteger>> getTransactionCountsAsync(List<String> addresses, long height) {
+        DefaultBlockParameter block = new DefaultBlockParameterNumber(height);
+        List<Request<?, EthGetTransactionCount>> requests = new ArrayList<>(addresses.size());
+        for (String address : addresses) {
+            requests.add(web3j.ethGetTransactionCount(address, block));
+        }
+        return sendBatchAsync(requests, EthGetTransactionCount.class, "获取nonce失败").thenApply(responses -> {
+            List<BigInteger> counts = new ArrayList<>(responses.size());
+            for (EthGetTransactionCount response : responses) {
+                counts.add(response.getTransactionCount());
+            }
+            return counts;
+        });
+    }
+
+    /**
+     * 异步获取地址包含待打包交易在内的nonce
+     * @param address 地址
+     * @return 下一笔交易应使用的nonce
+     */
+    public CompletableFuture<BigInteger> getTransactionCountAsync(String address) {
+        return web3j.ethGetTransactionCount(address, DefaultBlockParameterName.PENDING).sendAsync()
+                .thenApply(count -> checkResponse(count, "获取nonce失败").getTransactionCount());
+    }
+
+    /**
+     * 异步广播已签名的交易
+     * @param signedTransaction 已签名交易的16进制数据
+     * @return 交易Hash
+     */
+    public CompletableFuture<String> sendRawTransactionAsync(String signedTransaction) {
+        return web3j.ethSendRawTransaction(signedTransaction).sendAsync()
+                .thenApply(tx -> checkResponse(tx, "广播交易失败").getTransactionHash());
+    }
+
+    /**
+     * 通过地址加载keystore目录中对应的钱包
+     * @param address 地址
+     * @return 钱包凭证，找不到keystore文件时为null
+     */
+    public Credentials loadCredentials(String address) {
+        String key = Numeric.cleanHexPrefix(address).toLowerCase();
+        String fileName = keystoreFiles.get(key);
+        if (fileName == null) {
+            //1. 缓存未命中时重新扫描keystore目录，web3j生成的文件名以地址结尾
+            String[] files = new File(keystorePath).list();
+            if (files != null) {
+                for (String file : files) {
+                    String lower = file.toLowerCase();
+                    int index = lower.lastIndexOf("--");
+                    if (index >= 0) {
+                        keystoreFiles.put(lower.substring(index + 2).replace(".json", ""), file);
+                    }
+                }
+            }
+            fileName = keystoreFiles.get(key);
+            if (fileName == null) {
+                return null;
+            }
+        }
+
+        //2. 解密keystore文件
+        try {
+            return WalletUtils.loadCredentials(keystorePassword, keystorePath + File.separator + fileName);
+        } catch (Exception e) {
+            log.error("加载keystore文件失败：" + fileName, e);
+            return null;
+        }
+    }
+
+    /**
+     * 签名一笔ETH转账交易，手续费估算支持EIP-1559时签名type 2交易，否则签名传统交易
+     * @param credentials 转出地址的钱包凭证
+     * @param nonce nonce
+     * @param fee 手续费估算结果
+     * @param to 收款地址
+     * @param value 转账金额（wei）
+     * @return 已签名交易的16进制数据
+     */
+    public String signEtherTransfer(Credentials credentials, BigInteger nonce, FeeEstimate fee, String to, BigInteger value) {
+        if (fee.isEip1559()) {
+            return Eip1559TransactionEncoder.sign(credentials, chainId, nonce, fee.getMaxPriorityFeePerGas(), fee.getMaxFeePerGas(),
+                    ETHER_TRANSFER_GAS_LIMIT, to, value, null);
+        }
+        RawTransaction rawTransaction = RawTransaction.createEtherTransaction(nonce, fee.getGasPrice(), ETHER_TRANSFER_GAS_LIMIT, to, value);
+        return Numeric.toHexString(TransactionEncoder.signMessage(rawTransaction, chainId, credentials));
+    }
+
+    /**
+     * 签名一笔token转账交易，手续费估算支持EIP-1559时签名type 2交易，否则签名传统交易
+     * @param credentials 转出地址的钱包凭证
+     * @param nonce nonce
+     * @param fee 手续费估算结果
+     * @param gasLimit gas上限
+     * @param contractAddress 合约地址
+     * @param to 收款地址
+     * @param amount 转账金额（合约最小单位）
+     * @return 已签名交易的16进制数据
+     */
+    public String signTokenTransfer(Credentials credentials, BigInteger nonce, FeeEstimate fee, BigInteger gasLimit,
+                                    String contractAddress, String to, BigInteger amount) {
+        Function transfer = new Function("transfer", Arrays.asList(new Address(to), new Uint256(amount)), Collections.<TypeReference<?>>emptyList());
+        String data = FunctionEncoder.encode(transfer);
+        if (fee.isEip1559()) {
+            return Eip1559TransactionEncoder.sign(credentials, chainId, nonce, fee.getMaxPriorityFeePerGas(), fee.getMaxFeePerGas(),
+                    gasLimit, contractAddress, BigInteger.ZERO, data);
+        }
+        RawTransaction rawTransaction = RawTransaction.createTransaction(nonce, fee.getGasPrice(), gasLimit, contractAddress, data);
+        return Numeric.toHexString(TransactionEncoder.signMessage(rawTransaction, chainId, credentials));
+    }
+
+    /**
+     * 节点返回JSON-RPC错误时以异常结束异步调用，避免调用方把错误当成空结果
+     */
+    private static <T extends Response<?>> T checkResponse(T response, String message) {
+        if (response.hasError()) {
+            throw new CompletionException(new IOException(message + "：" + response.getError().getCode() + " " + response.getError().getMessage()));
+        }
+        return response;
+    }
+
+    /**
+     * 获取手续费估算结果，优先使用手续费预言机在内存中的估算结果，估算结果不可用时才请求节点的gas价格
+     * 转出地址需要预留gas上限乘以maxFeePerGas的手续费，传统交易的maxFeePerGas即gas价格
+     * @return 手续费估算结果，获取失败时为null
+     */
+    public FeeEstimate getFeeEstimate() {
+        FeeEstimate estimate = feeOracle.getEstimate();
+        if (estimate != null) {
+            return estimate;
+        }
+        try {
+            BigInteger gasPrice = web3j.ethGasPrice().send().getGasPrice();
+            return new FeeEstimate(null, gasPrice, gasPrice, gasPrice, System.currentTimeMillis());
         } catch (IOException e) {
             log.error("获取gas价格失败", e);
         }
@@ -311,6 +1099,26 @@ public class EthereumService {
         return null;
     }
 
+    /**
+     * 通过交易收据中的事件日志校验token转账，防止Token假充值。
+     * 收据中已包含交易产生的全部日志，不需要再按区块查询eth_getLogs。
+     * @param receipt 交易收据
+     * @param contractAddress 合约地址
+     * @return 收据中是否包含该合约的Transfer事件
+     */
+    public boolean checkEventLog(TransactionReceipt receipt, String contractAddress) {
+        if (receipt == null || receipt.getLogs() == null) {
+            return false;
+        }
+        for (Log log : receipt.getLogs()) {
+            if (contractAddress.equalsIgnoreCase(log.getAddress()) && !ObjectUtils.isEmpty(log.getTopics())
+                    && transferEventSignature.equalsIgnoreCase(log.getTopics().get(0))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * 校验事件日志防止Token假充值
      * https://mp.weixin.qq.com/s/3cMbE6p_4qCdVLa4FNA5-A
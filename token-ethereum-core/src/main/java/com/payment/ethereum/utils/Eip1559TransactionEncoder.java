@@ -0,0 +1,78 @@
+package com.payment.ethereum.utils;
+
+import org.web3j.crypto.Credentials;
+import org.web3j.crypto.Sign;
+import org.web3j.rlp.RlpEncoder;
+import org.web3j.rlp.RlpList;
+import org.web3j.rlp.RlpString;
+import org.web3j.rlp.RlpType;
+import org.web3j.utils.Bytes;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EIP-1559（type 2）交易的编码与签名
+ * <p>
+ * 当前使用的web3j版本只支持传统交易，这里按EIP-2718/EIP-1559直接编码：
+ * 0x02 || rlp([chainId, nonce, maxPriorityFeePerGas, maxFeePerGas, gasLimit, to, value, data, accessList, yParity, r, s])，
+ * 签名的消息为去掉签名三项后的同样编码，访问列表始终为空。
+ */
+public class Eip1559TransactionEncoder {
+
+    /**
+     * EIP-1559交易的类型前缀
+     */
+    private static final byte TRANSACTION_TYPE = 0x02;
+
+    /**
+     * 签名一笔EIP-1559交易
+     * @param credentials 转出地址的钱包凭证
+     * @param chainId 链ID
+     * @param nonce nonce
+     * @param maxPriorityFeePerGas 小费上限
+     * @param maxFeePerGas 最高费用
+     * @param gasLimit gas上限
+     * @param to 收款地址或合约地址
+     * @param value 转账金额（wei）
+     * @param data 调用数据，没有时为null
+     * @return 已签名交易的16进制数据
+     */
+    public static String sign(Credentials credentials, long chainId, BigInteger nonce, BigInteger maxPriorityFeePerGas, BigInteger maxFeePerGas,
+                              BigInteger gasLimit, String to, BigInteger value, String data) {
+        //1. 对未签名的编码签名，Sign.signMessage内部先做keccak256
+        List<RlpType> values = asRlpValues(chainId, nonce, maxPriorityFeePerGas, maxFeePerGas, gasLimit, to, value, data);
+        Sign.SignatureData signature = Sign.signMessage(encode(values), credentials.getEcKeyPair());
+
+        //2. 签名的v为27或28，type 2交易只记录yParity
+        values.add(RlpString.create(signature.getV()[0] - 27));
+        values.add(RlpString.create(Bytes.trimLeadingZeroes(signature.getR())));
+        values.add(RlpString.create(Bytes.trimLeadingZeroes(signature.getS())));
+        return Numeric.toHexString(encode(values));
+    }
+
+    private static List<RlpType> asRlpValues(long chainId, BigInteger nonce, BigInteger maxPriorityFeePerGas, BigInteger maxFeePerGas,
+                                             BigInteger gasLimit, String to, BigInteger value, String data) {
+        List<RlpType> values = new ArrayList<>(12);
+        values.add(RlpString.create(chainId));
+        values.add(RlpString.create(nonce));
+        values.add(RlpString.create(maxPriorityFeePerGas));
+        values.add(RlpString.create(maxFeePerGas));
+        values.add(RlpString.create(gasLimit));
+        values.add(RlpString.create(Numeric.hexStringToByteArray(to)));
+        values.add(RlpString.create(value));
+        values.add(RlpString.create(data == null ? new byte[0] : Numeric.hexStringToByteArray(data)));
+        values.add(new RlpList());
+        return values;
+    }
+
+    private static byte[] encode(List<RlpType> values) {
+        byte[] rlp = RlpEncoder.encode(new RlpList(values));
+        byte[] encoded = new byte[rlp.length + 1];
+        encoded[0] = TRANSACTION_TYPE;
+        System.arraycopy(rlp, 0, encoded, 1, rlp.length);
+        return encoded;
+    }
+}
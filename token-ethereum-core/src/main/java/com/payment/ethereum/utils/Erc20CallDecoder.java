@@ -0,0 +1,297 @@
+package com.payment.ethereum.utils;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * ERC20 transfer/transferFrom调用数据的解码
+ * <p>
+ * 直接从交易input的十六进制字符中解析方法选择器、地址与金额，结果保存在基本类型字段中：
+ * 20字节地址拆为高4字节与两个8字节，32字节金额拆为4个8字节（高位在前）。
+ * 解码过程不创建字符串、BigInteger或web3j的Function/TypeReference，只有调用方需要字符串形式时才生成。
+ * <p>
+ * 实例可以反复使用，每次{@link #decode(CharSequence)}覆盖上一次的结果；实例不是线程安全的，每个线程使用自己的实例。
+ */
+public class Erc20CallDecoder {
+
+    public static final String TRANSFER_SELECTOR = "0xa9059cbb";
+
+    public static final String TRANSFER_FROM_SELECTOR = "0x23b872dd";
+
+    public static final int NONE = 0;
+
+    public static final int TRANSFER = 1;
+
+    public static final int TRANSFER_FROM = 2;
+
+    private static final int TRANSFER_SELECTOR_VALUE = 0xa9059cbb;
+
+    private static final int TRANSFER_FROM_SELECTOR_VALUE = 0x23b872dd;
+
+    /**
+     * 选择器的字符数
+     */
+    private static final int SELECTOR_CHARS = 8;
+
+    /**
+     * 一个ABI参数的字符数
+     */
+    private static final int WORD_CHARS = 64;
+
+    /**
+     * 地址参数左侧补零的字符数
+     */
+    private static final int ADDRESS_PADDING_CHARS = 24;
+
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private int method;
+
+    private int fromHigh;
+
+    private long fromMid;
+
+    private long fromLow;
+
+    private int toHigh;
+
+    private long toMid;
+
+    private long toLow;
+
+    /**
+     * 金额，amount0为最高8字节
+     */
+    private long amount0;
+
+    private long amount1;
+
+    private long amount2;
+
+    private long amount3;
+
+    /**
+     * 解码交易input
+     * @param input 交易input（十六进制，可以带0x前缀），允许ABI参数之后有附加数据
+     * @return 是否为格式正确的transfer或transferFrom调用；
+     *         选择器不匹配、长度不足、奇数长度、包含非十六进制字符或地址参数高位不为零时返回false
+     */
+    public boolean decode(CharSequence input) {
+        method = NONE;
+        if (input == null) {
+            return false;
+        }
+        int length = input.length();
+        int start = length >= 2 && input.charAt(0) == '0' && (input.charAt(1) == 'x' || input.charAt(1) == 'X') ? 2 : 0;
+        if ((length - start) % 2 != 0 || length - start < SELECTOR_CHARS || !isHex(input, start, SELECTOR_CHARS)) {
+            return false;
+        }
+
+        //1. 按选择器确定参数个数：transfer(to, amount)，transferFrom(from, to, amount)
+        int selector = (int) parse(input, start, SELECTOR_CHARS);
+        int words;
+        if (selector == TRANSFER_SELECTOR_VALUE) {
+            words = 2;
+        } else if (selector == TRANSFER_FROM_SELECTOR_VALUE) {
+            words = 3;
+        } else {
+            return false;
+        }
+        int params = start + SELECTOR_CHARS;
+        if (length - params < words * WORD_CHARS || !isHex(input, params, words * WORD_CHARS)) {
+            return false;
+        }
+
+        //2. 地址参数高12字节必须为零
+        for (int word = 0; word < words - 1; word++) {
+            if (!isZero(input, params + word * WORD_CHARS, ADDRESS_PADDING_CHARS)) {
+                return false;
+            }
+        }
+
+        //3. 解析地址与金额
+        int to = params;
+        if (words == 3) {
+            fromHigh = (int) parse(input, params + ADDRESS_PADDING_CHARS, 8);
+            fromMid = parse(input, params + ADDRESS_PADDING_CHARS + 8, 16);
+            fromLow = parse(input, params + ADDRESS_PADDING_CHARS + 24, 16);
+            to += WORD_CHARS;
+        } else {
+            fromHigh = 0;
+            fromMid = 0;
+            fromLow = 0;
+        }
+        toHigh = (int) parse(input, to + ADDRESS_PADDING_CHARS, 8);
+        toMid = parse(input, to + ADDRESS_PADDING_CHARS + 8, 16);
+        toLow = parse(input, to + ADDRESS_PADDING_CHARS + 24, 16);
+        int amount = to + WORD_CHARS;
+        amount0 = parse(input, amount, 16);
+        amount1 = parse(input, amount + 16, 16);
+        amount2 = parse(input, amount + 32, 16);
+        amount3 = parse(input, amount + 48, 16);
+        method = words == 3 ? TRANSFER_FROM : TRANSFER;
+        return true;
+    }
+
+    /**
+     * 上一次解码的方法：NONE、TRANSFER或TRANSFER_FROM
+     */
+    public int getMethod() {
+        return method;
+    }
+
+    /**
+     * 收款地址是否为指定地址（不区分大小写），不生成字符串
+     * @param address 地址（十六进制，可以带0x前缀）
+     */
+    public boolean isTo(CharSequence address) {
+        return method != NONE && equals(address, toHigh, toMid, toLow);
+    }
+
+    /**
+     * transferFrom的转出地址是否为指定地址（不区分大小写），transfer调用时返回false
+     */
+    public boolean isFrom(CharSequence address) {
+        return method == TRANSFER_FROM && equals(address, fromHigh, fromMid, fromLow);
+    }
+
+    public int getToHigh() {
+        return toHigh;
+    }
+
+    public long getToMid() {
+        return toMid;
+    }
+
+    public long getToLow() {
+        return toLow;
+    }
+
+    public int getFromHigh() {
+        return fromHigh;
+    }
+
+    public long getFromMid() {
+        return fromMid;
+    }
+
+    public long getFromLow() {
+        return fromLow;
+    }
+
+    /**
+     * 收款地址（小写，带0x前缀）
+     */
+    public String getTo() {
+        return toAddress(toHigh, toMid, toLow);
+    }
+
+    /**
+     * transferFrom的转出地址（小写，带0x前缀），transfer调用时为null，转出地址是交易的发送方
+     */
+    public String getFrom() {
+        return method == TRANSFER_FROM ? toAddress(fromHigh, fromMid, fromLow) : null;
+    }
+
+    /**
+     * 金额是否可以用long表示
+     */
+    public boolean isAmountLong() {
+        return amount0 == 0 && amount1 == 0 && amount2 == 0 && amount3 >= 0;
+    }
+
+    /**
+     * 金额（最小单位），调用前需要通过{@link #isAmountLong()}确认没有溢出
+     */
+    public long getAmountLong() {
+        return amount3;
+    }
+
+    /**
+     * 金额（最小单位）
+     */
+    public BigInteger getAmount() {
+        if (isAmountLong()) {
+            return BigInteger.valueOf(amount3);
+        }
+        byte[] bytes = new byte[33];
+        long[] words = {amount0, amount1, amount2, amount3};
+        for (int word = 0; word < 4; word++) {
+            for (int i = 0; i < 8; i++) {
+                bytes[1 + word * 8 + i] = (byte) (words[word] >>> (56 - i * 8));
+            }
+        }
+        return new BigInteger(bytes);
+    }
+
+    private static boolean isHex(CharSequence text, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            char c = text.charAt(i);
+            if (c >= 128 || HEX_VALUES[c] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isZero(CharSequence text, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            if (text.charAt(i) != '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 解析最多16个十六进制字符，调用前已校验字符合法
+     */
+    private static long parse(CharSequence text, int offset, int count) {
+        long value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            value = value << 4 | HEX_VALUES[text.charAt(i)];
+        }
+        return value;
+    }
+
+    private static boolean equals(CharSequence address, int high, long mid, long low) {
+        if (address == null) {
+            return false;
+        }
+        int start = address.length() == 42 && address.charAt(0) == '0' && (address.charAt(1) == 'x' || address.charAt(1) == 'X') ? 2 : 0;
+        if (address.length() - start != 40 || !isHex(address, start, 40)) {
+            return false;
+        }
+        return (int) parse(address, start, 8) == high && parse(address, start + 8, 16) == mid && parse(address, start + 24, 16) == low;
+    }
+
+    private static String toAddress(int high, long mid, long low) {
+        char[] chars = new char[42];
+        chars[0] = '0';
+        chars[1] = 'x';
+        write(chars, 2, high & 0xffffffffL, 8);
+        write(chars, 10, mid, 16);
+        write(chars, 26, low, 16);
+        return new String(chars);
+    }
+
+    private static void write(char[] chars, int offset, long value, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            chars[offset + i] = HEX_CHARS[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+    }
+}
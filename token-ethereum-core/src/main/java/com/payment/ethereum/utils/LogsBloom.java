@@ -0,0 +1,95 @@
+package com.payment.ethereum.utils;
+
+import org.web3j.crypto.Hash;
+import org.web3j.utils.Numeric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 区块头logsBloom的匹配
+ * <p>
+ * logsBloom是2048位的布隆过滤器，区块内每条日志的合约地址与每个topic各置3位：
+ * 对keccak256(值)的前6个字节每两字节取低11位作为位序号。
+ * 某个值的3位没有全部置位时，区块中一定没有包含该值的日志；全部置位时可能包含（存在误判）。
+ */
+public class LogsBloom {
+
+    private static final int BLOOM_BYTES = 256;
+
+    /**
+     * 计算值在logsBloom中对应的3个位序号
+     * @param hex 合约地址或topic（十六进制）
+     * @return 位序号
+     */
+    public static int[] bitsOf(String hex) {
+        byte[] hash = Hash.sha3(Numeric.hexStringToByteArray(hex));
+        int[] bits = new int[3];
+        for (int i = 0; i < 3; i++) {
+            bits[i] = ((hash[i * 2] & 0xff) << 8 | (hash[i * 2 + 1] & 0xff)) & 2047;
+        }
+        return bits;
+    }
+
+    /**
+     * logsBloom中是否置位了值对应的全部3位。位序号从大端字节数组的最低位开始计数
+     */
+    private static boolean contains(byte[] bloom, int[] bits) {
+        for (int bit : bits) {
+            if ((bloom[BLOOM_BYTES - 1 - bit / 8] & (1 << (bit % 8))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * logsBloom匹配条件：每组条件中任意一个值可能存在，且所有组都满足时区块才可能包含目标日志
+     */
+    public static class Query {
+
+        private final List<List<int[]>> groups = new ArrayList<>();
+
+        /**
+         * 增加一组条件，组内的值之间为或的关系
+         * @param values 合约地址或topic（十六进制）
+         */
+        public Query anyOf(Collection<String> values) {
+            List<int[]> group = new ArrayList<>(values.size());
+            for (String value : values) {
+                group.add(bitsOf(value));
+            }
+            groups.add(group);
+            return this;
+        }
+
+        /**
+         * 区块是否可能包含满足条件的日志
+         * @param logsBloom 区块头的logsBloom（十六进制）
+         * @return false表示一定不包含，true表示可能包含
+         */
+        public boolean mightMatch(String logsBloom) {
+            if (logsBloom == null) {
+                return true;
+            }
+            byte[] bloom = Numeric.hexStringToByteArray(logsBloom);
+            if (bloom.length != BLOOM_BYTES) {
+                return true;
+            }
+            for (List<int[]> group : groups) {
+                boolean matched = false;
+                for (int[] bits : group) {
+                    if (contains(bloom, bits)) {
+                        matched = true;
+                        break;
+                    }
+                }
+                if (!matched) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
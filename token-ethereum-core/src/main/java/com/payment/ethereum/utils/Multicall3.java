@@ -0,0 +1,117 @@
+package com.payment.ethereum.utils;
+
+import org.web3j.crypto.Hash;
+import org.web3j.utils.Numeric;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Multicall3合约的调用编解码
+ * <p>
+ * Multicall3在主网与绝大多数EVM链上部署在同一地址，通过一次eth_call执行多个合约只读调用。
+ * web3j当前版本不支持结构体数组的ABI编码，这里按ABI规范手工编解码
+ * {@code aggregate3((address target, bool allowFailure, bytes callData)[])}。
+ */
+public class Multicall3 {
+
+    /**
+     * Multicall3的默认部署地址
+     */
+    public static final String DEFAULT_ADDRESS = "0xcA11bde05977b3631167028862bE2a173976CA11";
+
+    public static final String AGGREGATE3_SELECTOR = selector("aggregate3((address,bool,bytes)[])");
+
+    public static final String GET_ETH_BALANCE_SELECTOR = selector("getEthBalance(address)");
+
+    public static final String BALANCE_OF_SELECTOR = selector("balanceOf(address)");
+
+    private static final int WORD = 64;
+
+    /**
+     * balanceOf(owner)的调用数据
+     */
+    public static String balanceOf(String owner) {
+        return BALANCE_OF_SELECTOR + pad(Numeric.cleanHexPrefix(owner));
+    }
+
+    /**
+     * Multicall3.getEthBalance(owner)的调用数据
+     */
+    public static String getEthBalance(String owner) {
+        return GET_ETH_BALANCE_SELECTOR + pad(Numeric.cleanHexPrefix(owner));
+    }
+
+    /**
+     * 编码aggregate3调用，每个子调用都允许失败，失败的子调用不影响其他调用的结果
+     * @param targets 子调用的合约地址
+     * @param callData 子调用的调用数据
+     * @return aggregate3的调用数据
+     */
+    public static String encodeAggregate3(List<String> targets, List<String> callData) {
+        int count = targets.size();
+        StringBuilder heads = new StringBuilder(count * WORD);
+        StringBuilder tails = new StringBuilder();
+        int offset = count * 32;
+        for (int i = 0; i < count; i++) {
+            //1. 每个元组都包含动态类型bytes，数组头部记录各元组相对数组内容起点的偏移
+            heads.append(word(offset));
+
+            //2. 元组内容：target、allowFailure、callData偏移、callData长度与数据
+            String data = Numeric.cleanHexPrefix(callData.get(i));
+            int dataBytes = data.length() / 2;
+            tails.append(pad(Numeric.cleanHexPrefix(targets.get(i))))
+                    .append(word(1))
+                    .append(word(96))
+                    .append(word(dataBytes))
+                    .append(padRight(data));
+            offset += 128 + (dataBytes + 31) / 32 * 32;
+        }
+        return AGGREGATE3_SELECTOR + word(32) + word(count) + heads + tails;
+    }
+
+    /**
+     * 解码aggregate3的返回值 {@code (bool success, bytes returnData)[]}
+     * @param result eth_call返回的16进制数据
+     * @return 与子调用一一对应的返回数据（含0x前缀），子调用失败时为null
+     */
+    public static List<String> decodeAggregate3(String result) {
+        String hex = Numeric.cleanHexPrefix(result);
+        int array = readInt(hex, 0) * 2;
+        int count = readInt(hex, array);
+        int content = array + WORD;
+        List<String> returnData = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int tuple = content + readInt(hex, content + i * WORD) * 2;
+            boolean success = readInt(hex, tuple) != 0;
+            int data = tuple + readInt(hex, tuple + WORD) * 2;
+            int length = readInt(hex, data) * 2;
+            returnData.add(success ? "0x" + hex.substring(data + WORD, data + WORD + length) : null);
+        }
+        return returnData;
+    }
+
+    private static int readInt(String hex, int position) {
+        return Integer.parseInt(hex.substring(position + WORD - 8, position + WORD), 16);
+    }
+
+    private static String word(int value) {
+        return pad(Integer.toHexString(value));
+    }
+
+    private static String pad(String hex) {
+        return Numeric.toHexStringNoPrefixZeroPadded(Numeric.toBigIntNoPrefix(hex), WORD);
+    }
+
+    private static String padRight(String hex) {
+        StringBuilder builder = new StringBuilder(hex);
+        while (builder.length() % WORD != 0) {
+            builder.append('0');
+        }
+        return builder.toString();
+    }
+
+    private static String selector(String signature) {
+        return Hash.sha3String(signature).substring(0, 10);
+    }
+}
@@ -0,0 +1,97 @@
+package com.payment.mocknode;
+
+import com.payment.mocknode.chain.ChainFlavor;
+import com.payment.mocknode.chain.SyntheticChain;
+import com.payment.mocknode.node.FakeBitcoinNode;
+import com.payment.mocknode.node.FakeEthNode;
+import com.payment.mocknode.node.FakeSolanaNode;
+import com.payment.mocknode.server.FakeEthWebSocketServer;
+import com.payment.mocknode.server.FakeJsonRpcServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 以独立进程启动模拟节点，参数格式为--key=value：
+ * <pre>
+ * --chain=eth|btc|sol      链类型，默认eth
+ * --port=8545              监听端口，0表示随机端口
+ * --ws-port=8546           以太坊WebSocket订阅端口，不指定时不启动
+ * --blocks=1000            初始区块数
+ * --tx-per-block=100       每个区块的交易数
+ * --tokens=0x..,0x..       ERC20合约地址
+ * --token-share=0.3        代币转账占比
+ * --seed=20190401          随机种子
+ * --latency=20-80          每次请求的延迟范围（毫秒）
+ * --error-rate=0.01        HTTP 500比例
+ * --rpc-error-rate=0.01    JSON-RPC错误比例
+ * --throttle-rate=0.01     HTTP 429比例
+ * --block-time=12          出块间隔（秒），0表示不出新块
+ * --recordings=/path       录制结果目录
+ * </pre>
+ */
+@Slf4j
+public class MockNodeLauncher {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        String chainType = options.getOrDefault("chain", "eth");
+        ChainFlavor flavor = "btc".equals(chainType) ? ChainFlavor.BITCOIN : "sol".equals(chainType) ? ChainFlavor.SOLANA : ChainFlavor.ETHEREUM;
+
+        //1. 构造合成链
+        SyntheticChain.Builder builder = SyntheticChain.builder(flavor)
+                .seed(Long.parseLong(options.getOrDefault("seed", "20190401")))
+                .blockCount(Long.parseLong(options.getOrDefault("blocks", "1000")))
+                .txPerBlock(Integer.parseInt(options.getOrDefault("tx-per-block", "100")))
+                .tokenShare(Double.parseDouble(options.getOrDefault("token-share", "0.3")));
+        if (options.containsKey("tokens")) {
+            for (String token : options.get("tokens").split(",")) {
+                builder.token(token.trim());
+            }
+        }
+        SyntheticChain chain = builder.build();
+
+        //2. 启动节点并配置故障注入
+        FakeJsonRpcServer node = flavor == ChainFlavor.BITCOIN ? new FakeBitcoinNode(chain)
+                : flavor == ChainFlavor.SOLANA ? new FakeSolanaNode(chain) : new FakeEthNode(chain);
+        String[] latency = options.getOrDefault("latency", "0-0").split("-");
+        node.getFaultInjector()
+                .latency(Long.parseLong(latency[0]), Long.parseLong(latency.length > 1 ? latency[1] : latency[0]))
+                .httpErrorRate(Double.parseDouble(options.getOrDefault("error-rate", "0")))
+                .rpcErrorRate(Double.parseDouble(options.getOrDefault("rpc-error-rate", "0")))
+                .throttleRate(Double.parseDouble(options.getOrDefault("throttle-rate", "0")));
+        if (options.containsKey("recordings")) {
+            node.loadRecordings(Paths.get(options.get("recordings")));
+        }
+        node.start(Integer.parseInt(options.getOrDefault("port", "8545")));
+        Runtime.getRuntime().addShutdownHook(new Thread(node::close));
+        FakeEthWebSocketServer webSocket = null;
+        if (flavor == ChainFlavor.ETHEREUM && options.containsKey("ws-port")) {
+            webSocket = new FakeEthWebSocketServer(node).start(Integer.parseInt(options.get("ws-port")));
+            Runtime.getRuntime().addShutdownHook(new Thread(webSocket::close));
+        }
+
+        //3. 按出块间隔持续出块，并推送给WebSocket订阅方
+        long blockTime = Long.parseLong(options.getOrDefault("block-time", "0"));
+        while (blockTime > 0) {
+            Thread.sleep(blockTime * 1000);
+            long number = chain.mineBlock();
+            log.info("出块：{}", number);
+            if (webSocket != null) {
+                webSocket.publish(number);
+            }
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        return options;
+    }
+}
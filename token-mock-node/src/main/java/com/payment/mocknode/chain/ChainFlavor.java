@@ -0,0 +1,141 @@
+package com.payment.mocknode.chain;
+
+import com.payment.mocknode.utils.Base58;
+import com.payment.mocknode.utils.HexUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * 不同链的地址、交易Hash与区块Hash格式
+ * <p>
+ * 交易Hash中编码了区块号与交易序号，模拟节点按Hash查询交易时无需建立索引。
+ */
+public enum ChainFlavor {
+
+    ETHEREUM {
+        @Override
+        public String address(Random random) {
+            return "0x" + HexUtils.toHex(bytes(random, 20));
+        }
+
+        @Override
+        public String txHash(long blockNumber, int index, Random random) {
+            return "0x" + hexHash(blockNumber, index, random);
+        }
+
+        @Override
+        public String blockHash(long blockNumber, long seed) {
+            return "0x" + hexBlockHash(blockNumber, seed);
+        }
+
+        @Override
+        public long[] locate(String hash) {
+            return locateHex(hash.startsWith("0x") ? hash.substring(2) : hash);
+        }
+    },
+
+    BITCOIN {
+        @Override
+        public String address(Random random) {
+            //regtest格式的bech32地址，只用于展示与匹配，不做校验和校验
+            return "bcrt1q" + HexUtils.toHex(bytes(random, 19));
+        }
+
+        @Override
+        public String txHash(long blockNumber, int index, Random random) {
+            return hexHash(blockNumber, index, random);
+        }
+
+        @Override
+        public String blockHash(long blockNumber, long seed) {
+            return hexBlockHash(blockNumber, seed);
+        }
+
+        @Override
+        public long[] locate(String hash) {
+            return locateHex(hash);
+        }
+    },
+
+    SOLANA {
+        @Override
+        public String address(Random random) {
+            return Base58.encode(bytes(random, 32));
+        }
+
+        @Override
+        public String txHash(long blockNumber, int index, Random random) {
+            ByteBuffer buffer = ByteBuffer.allocate(64);
+            buffer.put((byte) 1).putLong(blockNumber).putInt(index).put(bytes(random, 51));
+            return Base58.encode(buffer.array());
+        }
+
+        @Override
+        public String blockHash(long blockNumber, long seed) {
+            ByteBuffer buffer = ByteBuffer.allocate(32);
+            buffer.put((byte) 1).putLong(blockNumber).put(bytes(new Random(seed ^ blockNumber), 23));
+            return Base58.encode(buffer.array());
+        }
+
+        @Override
+        public long[] locate(String hash) {
+            try {
+                byte[] bytes = Base58.decode(hash);
+                if (bytes.length < 13 || bytes[0] != 1) {
+                    return null;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, 12);
+                return new long[]{buffer.getLong(), buffer.getInt()};
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    };
+
+    /**
+     * 生成随机地址
+     */
+    public abstract String address(Random random);
+
+    /**
+     * 生成交易Hash，Hash中编码区块号与交易序号
+     */
+    public abstract String txHash(long blockNumber, int index, Random random);
+
+    /**
+     * 生成区块Hash，Hash中编码区块号
+     */
+    public abstract String blockHash(long blockNumber, long seed);
+
+    /**
+     * 从交易Hash或区块Hash中解析出区块号与交易序号
+     * @return [区块号, 交易序号]，格式不符时返回null
+     */
+    public abstract long[] locate(String hash);
+
+    private static byte[] bytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String hexHash(long blockNumber, int index, Random random) {
+        return String.format("%016x%08x", blockNumber, index) + HexUtils.toHex(bytes(random, 20));
+    }
+
+    private static String hexBlockHash(long blockNumber, long seed) {
+        return String.format("%016x%08x", blockNumber, 0xffffffffL) + HexUtils.toHex(bytes(new Random(seed ^ blockNumber), 20));
+    }
+
+    private static long[] locateHex(String hex) {
+        if (hex == null || hex.length() != 64) {
+            return null;
+        }
+        try {
+            return new long[]{Long.parseLong(hex.substring(0, 16), 16), Long.parseLong(hex.substring(16, 24), 16)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
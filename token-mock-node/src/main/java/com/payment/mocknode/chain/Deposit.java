@@ -0,0 +1,40 @@
+package com.payment.mocknode.chain;
+
+import lombok.Getter;
+
+import java.math.BigInteger;
+
+/**
+ * 预先安排到合成链上的充值
+ */
+@Getter
+public class Deposit {
+
+    private final long blockNumber;
+
+    private final String to;
+
+    private final BigInteger value;
+
+    /**
+     * 代币合约地址，原生币充值为空
+     */
+    private final String token;
+
+    /**
+     * 转发充值的合约地址，不为空时为合约内部转账：交易发送给该合约，合约再转给收款地址
+     */
+    private final String via;
+
+    public Deposit(long blockNumber, String to, BigInteger value, String token) {
+        this(blockNumber, to, value, token, null);
+    }
+
+    public Deposit(long blockNumber, String to, BigInteger value, String token, String via) {
+        this.blockNumber = blockNumber;
+        this.to = to;
+        this.value = value;
+        this.token = token;
+        this.via = via;
+    }
+}
@@ -0,0 +1,33 @@
+package com.payment.mocknode.chain;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 合成链上的一个区块
+ */
+@Getter
+public class SyntheticBlock {
+
+    private final long number;
+
+    private final String hash;
+
+    private final String parentHash;
+
+    /**
+     * 出块时间（秒）
+     */
+    private final long timestamp;
+
+    private final List<SyntheticTransfer> transfers;
+
+    public SyntheticBlock(long number, String hash, String parentHash, long timestamp, List<SyntheticTransfer> transfers) {
+        this.number = number;
+        this.hash = hash;
+        this.parentHash = parentHash;
+        this.timestamp = timestamp;
+        this.transfers = transfers;
+    }
+}
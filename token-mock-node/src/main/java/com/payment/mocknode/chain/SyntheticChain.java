@@ -0,0 +1,312 @@
+package com.payment.mocknode.chain;
+
+import lombok.Getter;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 确定性的合成区块链
+ * <p>
+ * 区块内容由种子与区块号决定，按需生成并缓存最近访问的区块，几十万个区块也不会占用大量内存。
+ * 充值通过{@link #scheduleDeposit(long, String, BigInteger, String)}预先安排到指定区块，
+ * 与随机生成的普通转账混在一起，用于驱动扫块任务的压测与功能测试。
+ */
+public class SyntheticChain {
+
+    /**
+     * 缓存的区块数量
+     */
+    private static final int CACHE_SIZE = 1024;
+
+    @Getter
+    private final ChainFlavor flavor;
+
+    private final long seed;
+
+    @Getter
+    private final int txPerBlock;
+
+    /**
+     * 代币转账占普通转账的比例
+     */
+    private final double tokenShare;
+
+    @Getter
+    private final List<String> tokens;
+
+    @Getter
+    private final long genesisTimestamp;
+
+    @Getter
+    private final long blockInterval;
+
+    private final AtomicLong height;
+
+    private final Map<Long, List<Deposit>> depositsByBlock = new ConcurrentHashMap<>();
+
+    private final Map<String, List<Deposit>> depositsByAddress = new ConcurrentHashMap<>();
+
+    private final Map<Long, SyntheticBlock> cache = Collections.synchronizedMap(new LinkedHashMap<Long, SyntheticBlock>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, SyntheticBlock> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    });
+
+    /**
+     * 普通转账使用的地址池，避免随机地址过多导致收款方完全不重复
+     */
+    private final List<String> addressPool;
+
+    private SyntheticChain(Builder builder) {
+        this.flavor = builder.flavor;
+        this.seed = builder.seed;
+        this.txPerBlock = builder.txPerBlock;
+        this.tokenShare = builder.tokens.isEmpty() ? 0 : builder.tokenShare;
+        this.tokens = Collections.unmodifiableList(new ArrayList<>(builder.tokens));
+        this.genesisTimestamp = builder.genesisTimestamp;
+        this.blockInterval = builder.blockInterval;
+        this.height = new AtomicLong(builder.blockCount);
+
+        Random random = new Random(seed);
+        List<String> pool = new ArrayList<>(builder.addressPoolSize);
+        for (int i = 0; i < builder.addressPoolSize; i++) {
+            pool.add(flavor.address(random));
+        }
+        this.addressPool = Collections.unmodifiableList(pool);
+    }
+
+    public static Builder builder(ChainFlavor flavor) {
+        return new Builder(flavor);
+    }
+
+    /**
+     * 当前最新区块号
+     */
+    public long getHeight() {
+        return height.get();
+    }
+
+    /**
+     * 出一个新块，返回新的区块号
+     */
+    public long mineBlock() {
+        return height.incrementAndGet();
+    }
+
+    /**
+     * 生成一个新的随机地址（例如作为订单收款地址）
+     */
+    public String newAddress(Random random) {
+        return flavor.address(random);
+    }
+
+    /**
+     * 在指定区块安排一笔充值
+     * @param blockNumber 区块号
+     * @param to 收款地址
+     * @param value 金额（最小单位）
+     * @param token 代币合约地址，原生币为空
+     */
+    public Deposit scheduleDeposit(long blockNumber, String to, BigInteger value, String token) {
+        return schedule(new Deposit(blockNumber, to, value, token));
+    }
+
+    /**
+     * 在指定区块安排一笔经由合约转发的原生币充值（合约内部转账），区块中的交易发送给合约，收款地址的余额增加
+     * @param blockNumber 区块号
+     * @param via 转发充值的合约地址
+     * @param to 收款地址
+     * @param value 金额（最小单位）
+     */
+    public Deposit scheduleInternalDeposit(long blockNumber, String via, String to, BigInteger value) {
+        return schedule(new Deposit(blockNumber, to, value, null, via));
+    }
+
+    private Deposit schedule(Deposit deposit) {
+        long blockNumber = deposit.getBlockNumber();
+        String to = deposit.getTo();
+        depositsByBlock.computeIfAbsent(blockNumber, key -> new CopyOnWriteArrayList<>()).add(deposit);
+        depositsByAddress.computeIfAbsent(to.toLowerCase(), key -> new CopyOnWriteArrayList<>()).add(deposit);
+        cache.remove(blockNumber);
+        return deposit;
+    }
+
+    /**
+     * 获取区块，超过当前高度返回null
+     */
+    public SyntheticBlock getBlock(long number) {
+        if (number < 0 || number > height.get()) {
+            return null;
+        }
+        SyntheticBlock block = cache.get(number);
+        if (block == null) {
+            block = generate(number);
+            cache.put(number, block);
+        }
+        return block;
+    }
+
+    /**
+     * 按区块Hash获取区块
+     */
+    public SyntheticBlock getBlockByHash(String hash) {
+        long[] location = flavor.locate(hash);
+        if (location == null) {
+            return null;
+        }
+        SyntheticBlock block = getBlock(location[0]);
+        return block != null && block.getHash().equalsIgnoreCase(hash) ? block : null;
+    }
+
+    /**
+     * 按交易Hash获取交易
+     */
+    public SyntheticTransfer getTransfer(String txHash) {
+        long[] location = flavor.locate(txHash);
+        if (location == null) {
+            return null;
+        }
+        SyntheticBlock block = getBlock(location[0]);
+        if (block == null || location[1] >= block.getTransfers().size()) {
+            return null;
+        }
+        SyntheticTransfer transfer = block.getTransfers().get((int) location[1]);
+        return transfer.getTxHash().equals(txHash) ? transfer : null;
+    }
+
+    /**
+     * 地址在指定区块时的余额，只统计预先安排的充值
+     * @param address 地址
+     * @param token 代币合约地址，原生币为空
+     * @param atBlock 区块号
+     */
+    public BigInteger balanceOf(String address, String token, long atBlock) {
+        List<Deposit> deposits = depositsByAddress.get(address.toLowerCase());
+        BigInteger balance = BigInteger.ZERO;
+        if (deposits == null) {
+            return balance;
+        }
+        for (Deposit deposit : deposits) {
+            boolean sameToken = token == null ? deposit.getToken() == null : token.equalsIgnoreCase(deposit.getToken());
+            if (sameToken && deposit.getBlockNumber() <= Math.min(atBlock, height.get())) {
+                balance = balance.add(deposit.getValue());
+            }
+        }
+        return balance;
+    }
+
+    public long timestampOf(long number) {
+        return genesisTimestamp + number * blockInterval;
+    }
+
+    private SyntheticBlock generate(long number) {
+        Random random = new Random(seed * 1_000_003L + number);
+        List<Deposit> deposits = depositsByBlock.getOrDefault(number, Collections.emptyList());
+
+        //1. 生成普通转账，并把充值插入到随机位置
+        List<Object[]> slots = new ArrayList<>(Math.max(txPerBlock, deposits.size()));
+        int fillers = Math.max(0, txPerBlock - deposits.size());
+        for (int i = 0; i < fillers; i++) {
+            String token = random.nextDouble() < tokenShare ? tokens.get(random.nextInt(tokens.size())) : null;
+            String to = addressPool.get(random.nextInt(addressPool.size()));
+            BigInteger value = BigInteger.valueOf(1 + (random.nextLong() & Long.MAX_VALUE) % 10_000_000_000L).multiply(BigInteger.valueOf(1_000_000L));
+            slots.add(new Object[]{to, value, token, false});
+        }
+        for (Deposit deposit : deposits) {
+            String to = deposit.getVia() == null ? deposit.getTo() : deposit.getVia();
+            slots.add(random.nextInt(slots.size() + 1), new Object[]{to, deposit.getValue(), deposit.getToken(), true});
+        }
+
+        //2. 按最终位置生成交易Hash
+        List<SyntheticTransfer> transfers = new ArrayList<>(slots.size());
+        Map<Integer, String> senders = new HashMap<>();
+        for (int i = 0; i < slots.size(); i++) {
+            Object[] slot = slots.get(i);
+            String from = senders.computeIfAbsent(random.nextInt(addressPool.size()), addressPool::get);
+            transfers.add(new SyntheticTransfer(number, i, flavor.txHash(number, i, random), from,
+                    (String) slot[0], (BigInteger) slot[1], (String) slot[2], (Boolean) slot[3]));
+        }
+        String parentHash = number == 0 ? flavor.blockHash(-1, seed) : flavor.blockHash(number - 1, seed);
+        return new SyntheticBlock(number, flavor.blockHash(number, seed), parentHash, timestampOf(number), Collections.unmodifiableList(transfers));
+    }
+
+    public static class Builder {
+
+        private final ChainFlavor flavor;
+
+        private long seed = 20190401L;
+
+        private long blockCount = 1000;
+
+        private int txPerBlock = 100;
+
+        private double tokenShare = 0.3;
+
+        private final List<String> tokens = new ArrayList<>();
+
+        private int addressPoolSize = 10000;
+
+        private long genesisTimestamp = 1546300800L;
+
+        private long blockInterval = 12;
+
+        private Builder(ChainFlavor flavor) {
+            this.flavor = flavor;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder blockCount(long blockCount) {
+            this.blockCount = blockCount;
+            return this;
+        }
+
+        public Builder txPerBlock(int txPerBlock) {
+            this.txPerBlock = txPerBlock;
+            return this;
+        }
+
+        public Builder tokenShare(double tokenShare) {
+            this.tokenShare = tokenShare;
+            return this;
+        }
+
+        public Builder token(String contract) {
+            this.tokens.add(contract.toLowerCase());
+            return this;
+        }
+
+        public Builder addressPoolSize(int addressPoolSize) {
+            this.addressPoolSize = Math.max(1, addressPoolSize);
+            return this;
+        }
+
+        public Builder genesisTimestamp(long genesisTimestamp) {
+            this.genesisTimestamp = genesisTimestamp;
+            return this;
+        }
+
+        public Builder blockInterval(long blockInterval) {
+            this.blockInterval = blockInterval;
+            return this;
+        }
+
+        public SyntheticChain build() {
+            return new SyntheticChain(this);
+        }
+    }
+}
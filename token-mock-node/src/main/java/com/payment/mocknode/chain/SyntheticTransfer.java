@@ -0,0 +1,55 @@
+package com.payment.mocknode.chain;
+
+import lombok.Getter;
+
+import java.math.BigInteger;
+
+/**
+ * 合成链上的一笔转账
+ */
+@Getter
+public class SyntheticTransfer {
+
+    private final long blockNumber;
+
+    /**
+     * 交易在区块中的序号
+     */
+    private final int index;
+
+    private final String txHash;
+
+    private final String from;
+
+    private final String to;
+
+    /**
+     * 转账金额（最小单位：wei、聪、lamports或代币最小单位）
+     */
+    private final BigInteger value;
+
+    /**
+     * 代币合约地址，原生币转账为空
+     */
+    private final String token;
+
+    /**
+     * 是否为预先安排的充值交易
+     */
+    private final boolean deposit;
+
+    public SyntheticTransfer(long blockNumber, int index, String txHash, String from, String to, BigInteger value, String token, boolean deposit) {
+        this.blockNumber = blockNumber;
+        this.index = index;
+        this.txHash = txHash;
+        this.from = from;
+        this.to = to;
+        this.value = value;
+        this.token = token;
+        this.deposit = deposit;
+    }
+
+    public boolean isToken() {
+        return token != null;
+    }
+}
@@ -0,0 +1,202 @@
+package com.payment.mocknode.node;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.payment.mocknode.chain.SyntheticBlock;
+import com.payment.mocknode.chain.SyntheticChain;
+import com.payment.mocknode.chain.SyntheticTransfer;
+import com.payment.mocknode.server.FakeJsonRpcServer;
+import com.payment.mocknode.server.JsonRpcException;
+import com.payment.mocknode.utils.HexUtils;
+import org.web3j.crypto.Hash;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 模拟比特币节点（bitcoind JSON-RPC）
+ * <p>
+ * 每笔合成转账对应一笔交易：第一个输出给收款方，第二个输出为找零。金额按BTC返回。
+ */
+public class FakeBitcoinNode extends FakeJsonRpcServer {
+
+    private static final BigDecimal SATOSHI_PER_BTC = BigDecimal.valueOf(100_000_000L);
+
+    private final SyntheticChain chain;
+
+    private final Random random = new Random();
+
+    /**
+     * 通过sendmany发出的钱包交易及发出时的区块高度，交易在下一个区块被打包
+     */
+    private final Map<String, Long> walletTransactions = new ConcurrentHashMap<>();
+
+    public FakeBitcoinNode(SyntheticChain chain) {
+        this.chain = chain;
+    }
+
+    @Override
+    protected Object dispatch(String method, JsonNode params) throws JsonRpcException {
+        switch (method) {
+            case "getblockcount":
+                return chain.getHeight();
+            case "getbestblockhash":
+                return chain.getBlock(chain.getHeight()).getHash();
+            case "getblockhash": {
+                SyntheticBlock block = chain.getBlock(params.path(0).asLong(-1));
+                if (block == null) {
+                    throw new JsonRpcException(-8, "Block height out of range");
+                }
+                return block.getHash();
+            }
+            case "getblock": {
+                SyntheticBlock block = chain.getBlockByHash(params.path(0).asText());
+                if (block == null) {
+                    throw new JsonRpcException(-5, "Block not found");
+                }
+                return renderBlock(block, params.path(1).asInt(1));
+            }
+            case "getrawtransaction": {
+                SyntheticTransfer transfer = chain.getTransfer(params.path(0).asText());
+                if (transfer == null) {
+                    throw new JsonRpcException(-5, "No such mempool or blockchain transaction. Use gettransaction for wallet transactions.");
+                }
+                SyntheticBlock block = chain.getBlock(transfer.getBlockNumber());
+                boolean verbose = params.path(1).asBoolean(false) || params.path(1).asInt(0) > 0;
+                return verbose ? renderTransaction(transfer, block) : "02000000" + transfer.getTxHash();
+            }
+            case "getblockchaininfo": {
+                Map<String, Object> info = new LinkedHashMap<>();
+                info.put("chain", "regtest");
+                info.put("blocks", chain.getHeight());
+                info.put("headers", chain.getHeight());
+                info.put("bestblockhash", chain.getBlock(chain.getHeight()).getHash());
+                info.put("initialblockdownload", false);
+                return info;
+            }
+            case "getnewaddress":
+                synchronized (random) {
+                    return chain.newAddress(random);
+                }
+            case "getbalance":
+                return BigDecimal.ZERO;
+            case "listunspent":
+                return Collections.emptyList();
+            case "estimatesmartfee": {
+                Map<String, Object> fee = new LinkedHashMap<>();
+                fee.put("feerate", new BigDecimal("0.00010000"));
+                fee.put("blocks", params.path(0).asInt(2));
+                return fee;
+            }
+            case "validateaddress": {
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("isvalid", params.path(0).asText().length() >= 26);
+                result.put("address", params.path(0).asText());
+                return result;
+            }
+            case "sendmany": {
+                if (!params.path(1).isObject() || params.path(1).size() == 0) {
+                    throw new JsonRpcException(-8, "Invalid parameter, amounts are empty");
+                }
+                String txid = HexUtils.toHex(Hash.sha256((params.toString() + System.nanoTime()).getBytes(StandardCharsets.UTF_8)));
+                walletTransactions.put(txid, chain.getHeight());
+                return txid;
+            }
+            case "gettransaction": {
+                Long sentAt = walletTransactions.get(params.path(0).asText());
+                if (sentAt == null) {
+                    throw new JsonRpcException(-5, "Invalid or non-wallet transaction id");
+                }
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("txid", params.path(0).asText());
+                result.put("confirmations", Math.max(0, chain.getHeight() - sentAt));
+                result.put("details", Collections.emptyList());
+                return result;
+            }
+            case "sendrawtransaction":
+                return HexUtils.toHex(Hash.sha256(HexUtils.fromHex(params.path(0).asText())));
+            default:
+                throw new JsonRpcException(JsonRpcException.METHOD_NOT_FOUND, "Method not found");
+        }
+    }
+
+    private Map<String, Object> renderBlock(SyntheticBlock block, int verbosity) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("hash", block.getHash());
+        json.put("confirmations", chain.getHeight() - block.getNumber() + 1);
+        json.put("size", 285 + block.getTransfers().size() * 225);
+        json.put("height", block.getNumber());
+        json.put("version", 536870912);
+        json.put("merkleroot", HexUtils.pad32("0"));
+        List<Object> txs = new ArrayList<>(block.getTransfers().size());
+        for (SyntheticTransfer transfer : block.getTransfers()) {
+            txs.add(verbosity >= 2 ? renderTransaction(transfer, block) : transfer.getTxHash());
+        }
+        json.put("tx", txs);
+        json.put("time", block.getTimestamp());
+        json.put("mediantime", block.getTimestamp());
+        json.put("nonce", 0);
+        json.put("bits", "207fffff");
+        json.put("difficulty", 1);
+        json.put("chainwork", HexUtils.pad32(Long.toHexString(block.getNumber() * 2 + 2)));
+        json.put("nTx", block.getTransfers().size());
+        if (block.getNumber() > 0) {
+            json.put("previousblockhash", block.getParentHash());
+        }
+        if (block.getNumber() < chain.getHeight()) {
+            json.put("nextblockhash", chain.getBlock(block.getNumber() + 1).getHash());
+        }
+        return json;
+    }
+
+    private Map<String, Object> renderTransaction(SyntheticTransfer transfer, SyntheticBlock block) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("txid", transfer.getTxHash());
+        json.put("hash", transfer.getTxHash());
+        json.put("version", 2);
+        json.put("size", 225);
+        json.put("vsize", 144);
+        json.put("locktime", 0);
+
+        Map<String, Object> input = new LinkedHashMap<>();
+        input.put("txid", HexUtils.pad32(Long.toHexString(transfer.getValue().longValue())));
+        input.put("vout", 0);
+        input.put("sequence", 4294967294L);
+        json.put("vin", Collections.singletonList(input));
+
+        List<Object> outputs = new ArrayList<>(2);
+        outputs.add(renderOutput(transfer.getTo(), transfer.getValue(), 0));
+        outputs.add(renderOutput(transfer.getFrom(), BigInteger.valueOf(100_000L + transfer.getIndex()), 1));
+        json.put("vout", outputs);
+
+        json.put("hex", "02000000" + transfer.getTxHash());
+        json.put("blockhash", block.getHash());
+        json.put("confirmations", chain.getHeight() - block.getNumber() + 1);
+        json.put("time", block.getTimestamp());
+        json.put("blocktime", block.getTimestamp());
+        return json;
+    }
+
+    private static Map<String, Object> renderOutput(String address, BigInteger satoshi, int n) {
+        Map<String, Object> scriptPubKey = new LinkedHashMap<>();
+        scriptPubKey.put("asm", "0 " + address);
+        scriptPubKey.put("hex", "0014" + address);
+        scriptPubKey.put("reqSigs", 1);
+        scriptPubKey.put("type", "witness_v0_keyhash");
+        scriptPubKey.put("address", address);
+        scriptPubKey.put("addresses", Collections.singletonList(address));
+
+        Map<String, Object> output = new LinkedHashMap<>();
+        output.put("value", new BigDecimal(satoshi).divide(SATOSHI_PER_BTC));
+        output.put("n", n);
+        output.put("scriptPubKey", scriptPubKey);
+        return output;
+    }
+}
@@ -0,0 +1,600 @@
+package com.payment.mocknode.node;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.payment.mocknode.chain.SyntheticBlock;
+import com.payment.mocknode.chain.SyntheticChain;
+import com.payment.mocknode.chain.SyntheticTransfer;
+import com.payment.mocknode.server.FakeJsonRpcServer;
+import com.payment.mocknode.server.JsonRpcException;
+import com.payment.mocknode.utils.HexUtils;
+import lombok.Setter;
+import org.web3j.crypto.Hash;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 模拟以太坊节点
+ * <p>
+ * 基于{@link SyntheticChain}返回区块、交易、收据与ERC20 Transfer日志，
+ * 覆盖扫块任务与钱包服务使用到的eth_*接口。
+ * 通过{@link #addPendingTransfer(SyntheticTransfer)}放入交易池的交易只由txpool_content与eth_getTransactionByHash返回，不会打包上链。
+ */
+public class FakeEthNode extends FakeJsonRpcServer {
+
+    /**
+     * Transfer(address,address,uint256)事件签名
+     */
+    public static final String TRANSFER_TOPIC = "0x" + HexUtils.toHex(Hash.sha3("Transfer(address,address,uint256)".getBytes(StandardCharsets.UTF_8)));
+
+    private static final String TRANSFER_SELECTOR = "0xa9059cbb";
+
+    private static final String BALANCE_OF_SELECTOR = "0x70a08231";
+
+    private static final String DECIMALS_SELECTOR = "0x313ce567";
+
+    /**
+     * Multicall3的部署地址与aggregate3、getEthBalance方法签名
+     */
+    public static final String MULTICALL3_ADDRESS = "0xca11bde05977b3631167028862be2a173976ca11";
+
+    private static final String AGGREGATE3_SELECTOR = "0x82ad56cb";
+
+    private static final String GET_ETH_BALANCE_SELECTOR = "0x4d2301cc";
+
+    private static final String EMPTY_BLOOM = "0x" + HexUtils.toHex(new byte[256]);
+
+    private final SyntheticChain chain;
+
+    /**
+     * safe与finalized标签相对最新区块的深度
+     */
+    @Setter
+    private int safeDepth = 32;
+
+    @Setter
+    private int finalizedDepth = 64;
+
+    /**
+     * eth_getLogs单次最多返回的日志数，超过返回-32005
+     */
+    @Setter
+    private int maxLogs = 10000;
+
+    /**
+     * eth_getLogs单次最大区块跨度，0表示不限制
+     */
+    @Setter
+    private long maxLogBlockRange;
+
+    /**
+     * 是否支持eth_getBlockReceipts
+     */
+    @Setter
+    private boolean blockReceiptsSupported = true;
+
+    /**
+     * 是否模拟已部署的Multicall3合约
+     */
+    @Setter
+    private boolean multicallSupported = true;
+
+    /**
+     * 是否支持eth_feeHistory，不支持时模拟London升级之前的节点
+     */
+    @Setter
+    private boolean feeHistorySupported = true;
+
+    @Setter
+    private long chainId = 1337;
+
+    @Setter
+    private BigInteger gasPrice = BigInteger.valueOf(20_000_000_000L);
+
+    @Setter
+    private BigInteger baseFeePerGas = BigInteger.valueOf(1_000_000_000L);
+
+    private final Map<String, Integer> tokenDecimals = new ConcurrentHashMap<>();
+
+    private final Map<Long, String> bloomCache = new ConcurrentHashMap<>();
+
+    /**
+     * 交易池中的交易
+     */
+    private final Map<String, SyntheticTransfer> pendingTransfers = new ConcurrentHashMap<>();
+
+    public FakeEthNode(SyntheticChain chain) {
+        this.chain = chain;
+    }
+
+    /**
+     * 设置代币精度，未设置的代币精度为18
+     */
+    public void setTokenDecimals(String contract, int decimals) {
+        tokenDecimals.put(contract.toLowerCase(), decimals);
+    }
+
+    /**
+     * 放入交易池，区块号与序号不使用，序号作为交易的nonce
+     */
+    public void addPendingTransfer(SyntheticTransfer transfer) {
+        pendingTransfers.put(transfer.getTxHash(), transfer);
+    }
+
+    /**
+     * 从交易池移除，模拟交易被替换或丢弃
+     */
+    public void removePendingTransfer(String txHash) {
+        pendingTransfers.remove(txHash);
+    }
+
+    @Override
+    protected Object dispatch(String method, JsonNode params) throws JsonRpcException {
+        switch (method) {
+            case "eth_chainId":
+                return HexUtils.quantity(chainId);
+            case "net_version":
+                return String.valueOf(chainId);
+            case "eth_blockNumber":
+                return HexUtils.quantity(chain.getHeight());
+            case "eth_gasPrice":
+                return HexUtils.quantity(gasPrice);
+            case "eth_estimateGas":
+                return HexUtils.quantity(21000);
+            case "eth_getTransactionCount":
+                return "0x0";
+            case "eth_getBlockByNumber": {
+                SyntheticBlock block = chain.getBlock(resolveBlock(text(params, 0)));
+                return block == null ? null : renderBlock(block, params.path(1).asBoolean(false));
+            }
+            case "eth_getBlockByHash": {
+                SyntheticBlock block = chain.getBlockByHash(text(params, 0));
+                return block == null ? null : renderBlock(block, params.path(1).asBoolean(false));
+            }
+            case "eth_getTransactionByHash": {
+                SyntheticTransfer transfer = chain.getTransfer(text(params, 0));
+                if (transfer == null) {
+                    transfer = pendingTransfers.get(text(params, 0));
+                    return transfer == null ? null : renderTransaction(transfer, null);
+                }
+                return renderTransaction(transfer, chain.getBlock(transfer.getBlockNumber()));
+            }
+            case "txpool_content":
+                return txPoolContent();
+            case "eth_getTransactionReceipt": {
+                SyntheticTransfer transfer = chain.getTransfer(text(params, 0));
+                return transfer == null ? null : renderReceipt(transfer, chain.getBlock(transfer.getBlockNumber()));
+            }
+            case "eth_feeHistory":
+                return feeHistory(params);
+            case "eth_getBlockReceipts":
+                return blockReceipts(params);
+            case "eth_getLogs":
+                return logs(params.path(0));
+            case "eth_getBalance":
+                return HexUtils.quantity(chain.balanceOf(text(params, 0), null, resolveBlock(params.path(1).asText("latest"))));
+            case "eth_call":
+                return call(params.path(0), params.path(1).asText("latest"));
+            case "eth_getCode": {
+                String address = text(params, 0).toLowerCase();
+                boolean contract = (multicallSupported && MULTICALL3_ADDRESS.equals(address)) || tokenDecimals.containsKey(address);
+                return contract ? "0x6080" : "0x";
+            }
+            case "eth_sendRawTransaction":
+                return "0x" + HexUtils.toHex(Hash.sha3(HexUtils.fromHex(text(params, 0))));
+            default:
+                throw new JsonRpcException(JsonRpcException.METHOD_NOT_FOUND, "the method " + method + " does not exist/is not available");
+        }
+    }
+
+    /**
+     * 交易池中的交易全部作为可以打包的交易，按转出地址与nonce分组
+     */
+    private Object txPoolContent() {
+        Map<String, Map<String, Object>> pending = new LinkedHashMap<>();
+        for (SyntheticTransfer transfer : pendingTransfers.values()) {
+            pending.computeIfAbsent(transfer.getFrom(), from -> new LinkedHashMap<>())
+                    .put(String.valueOf(transfer.getIndex()), renderTransaction(transfer, null));
+        }
+        Map<String, Object> content = new LinkedHashMap<>();
+        content.put("pending", pending);
+        content.put("queued", new LinkedHashMap<>());
+        return content;
+    }
+
+    /**
+     * 基础费用固定为baseFeePerGas，小费在1 gwei上下按区块高度与百分位浮动
+     */
+    private Object feeHistory(JsonNode params) throws JsonRpcException {
+        if (!feeHistorySupported) {
+            throw new JsonRpcException(JsonRpcException.METHOD_NOT_FOUND, "the method eth_feeHistory does not exist/is not available");
+        }
+        long count = Math.max(1, Math.min(1024, params.path(0).isNumber() ? params.path(0).asLong() : HexUtils.parseQuantity(text(params, 0))));
+        long newest = resolveBlock(params.path(1).asText("latest"));
+        long oldest = Math.max(0, newest - count + 1);
+        JsonNode percentiles = params.path(2);
+
+        List<String> baseFees = new ArrayList<>();
+        List<Double> gasUsedRatio = new ArrayList<>();
+        List<List<String>> rewards = new ArrayList<>();
+        for (long number = oldest; number <= newest; number++) {
+            baseFees.add(HexUtils.quantity(baseFeePerGas));
+            gasUsedRatio.add(0.5);
+            List<String> reward = new ArrayList<>();
+            for (JsonNode percentile : percentiles) {
+                long wei = 1_000_000_000L + (number % 5) * 100_000_000L + (long) (percentile.asDouble() * 10_000_000L);
+                reward.add(HexUtils.quantity(wei));
+            }
+            rewards.add(reward);
+        }
+        baseFees.add(HexUtils.quantity(baseFeePerGas));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("oldestBlock", HexUtils.quantity(oldest));
+        result.put("baseFeePerGas", baseFees);
+        result.put("gasUsedRatio", gasUsedRatio);
+        if (percentiles.size() > 0) {
+            result.put("reward", rewards);
+        }
+        return result;
+    }
+
+    private Object blockReceipts(JsonNode params) throws JsonRpcException {
+        if (!blockReceiptsSupported) {
+            throw new JsonRpcException(JsonRpcException.METHOD_NOT_FOUND, "the method eth_getBlockReceipts does not exist/is not available");
+        }
+        String blockId = text(params, 0);
+        SyntheticBlock block = blockId.length() == 66 ? chain.getBlockByHash(blockId) : chain.getBlock(resolveBlock(blockId));
+        if (block == null) {
+            return null;
+        }
+        List<Object> receipts = new ArrayList<>(block.getTransfers().size());
+        for (SyntheticTransfer transfer : block.getTransfers()) {
+            receipts.add(renderReceipt(transfer, block));
+        }
+        return receipts;
+    }
+
+    private Object call(JsonNode tx, String tag) {
+        String to = tx.path("to").asText("").toLowerCase();
+        String data = tx.has("data") ? tx.path("data").asText() : tx.path("input").asText("0x");
+        return call(to, data, tag);
+    }
+
+    private String call(String to, String data, String tag) {
+        if (multicallSupported && MULTICALL3_ADDRESS.equals(to)) {
+            if (data.startsWith(AGGREGATE3_SELECTOR)) {
+                return aggregate3(data.substring(10), tag);
+            }
+            if (data.startsWith(GET_ETH_BALANCE_SELECTOR) && data.length() >= 74) {
+                String owner = "0x" + data.substring(data.length() - 40);
+                return "0x" + HexUtils.pad32(chain.balanceOf(owner, null, resolveBlock(tag)).toString(16));
+            }
+        }
+        if (data.startsWith(DECIMALS_SELECTOR)) {
+            return "0x" + HexUtils.pad32(Integer.toHexString(tokenDecimals.getOrDefault(to, 18)));
+        }
+        if (data.startsWith(BALANCE_OF_SELECTOR) && data.length() >= 74) {
+            String owner = "0x" + data.substring(data.length() - 40);
+            return "0x" + HexUtils.pad32(chain.balanceOf(owner, to, resolveBlock(tag)).toString(16));
+        }
+        return "0x";
+    }
+
+    /**
+     * 按ABI解码aggregate3((address,bool,bytes)[])的子调用并依次执行，返回(bool,bytes)[]
+     */
+    private String aggregate3(String hex, String tag) {
+        int array = word(hex, 0) * 2;
+        int count = word(hex, array);
+        int content = array + 64;
+        List<String> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int tuple = content + word(hex, content + i * 64) * 2;
+            String target = "0x" + hex.substring(tuple + 24, tuple + 64);
+            int dataStart = tuple + word(hex, tuple + 128) * 2;
+            int length = word(hex, dataStart) * 2;
+            String result = call(target, "0x" + hex.substring(dataStart + 64, dataStart + 64 + length), tag);
+            results.add(result.substring(2));
+        }
+
+        StringBuilder heads = new StringBuilder();
+        StringBuilder tails = new StringBuilder();
+        int offset = count * 32;
+        for (String result : results) {
+            int bytes = result.length() / 2;
+            heads.append(HexUtils.pad32(Integer.toHexString(offset)));
+            tails.append(HexUtils.pad32(Integer.toHexString(bytes > 0 ? 1 : 0)))
+                    .append(HexUtils.pad32(Integer.toHexString(64)))
+                    .append(HexUtils.pad32(Integer.toHexString(bytes)))
+                    .append(result);
+            while (tails.length() % 64 != 0) {
+                tails.append('0');
+            }
+            offset += 96 + (bytes + 31) / 32 * 32;
+        }
+        return "0x" + HexUtils.pad32("20") + HexUtils.pad32(Integer.toHexString(count)) + heads + tails;
+    }
+
+    private static int word(String hex, int position) {
+        return Integer.parseInt(hex.substring(position + 56, position + 64), 16);
+    }
+
+    private List<Object> logs(JsonNode filter) throws JsonRpcException {
+        //1. 解析区块范围
+        long from;
+        long to;
+        if (filter.hasNonNull("blockHash")) {
+            SyntheticBlock block = chain.getBlockByHash(filter.get("blockHash").asText());
+            if (block == null) {
+                return new ArrayList<>();
+            }
+            from = block.getNumber();
+            to = block.getNumber();
+        } else {
+            from = resolveBlock(filter.path("fromBlock").asText("latest"));
+            to = Math.min(resolveBlock(filter.path("toBlock").asText("latest")), chain.getHeight());
+        }
+        if (maxLogBlockRange > 0 && to - from + 1 > maxLogBlockRange) {
+            throw new JsonRpcException(JsonRpcException.LIMIT_EXCEEDED, "exceed maximum block range: " + maxLogBlockRange);
+        }
+
+        //2. 解析合约地址与topic过滤条件
+        Set<String> addresses = lowerSet(filter.get("address"));
+        List<Set<String>> topics = new ArrayList<>();
+        for (JsonNode topic : filter.path("topics")) {
+            topics.add(lowerSet(topic));
+        }
+
+        //3. 逐块匹配日志
+        List<Object> result = new ArrayList<>();
+        for (long number = from; number <= to; number++) {
+            SyntheticBlock block = chain.getBlock(number);
+            int logIndex = 0;
+            for (SyntheticTransfer transfer : block.getTransfers()) {
+                if (!transfer.isToken()) {
+                    continue;
+                }
+                if (matches(transfer, addresses, topics)) {
+                    if (result.size() >= maxLogs) {
+                        throw new JsonRpcException(JsonRpcException.LIMIT_EXCEEDED, "query returned more than " + maxLogs + " results");
+                    }
+                    result.add(renderLog(transfer, block, logIndex));
+                }
+                logIndex++;
+            }
+        }
+        return result;
+    }
+
+    private boolean matches(SyntheticTransfer transfer, Set<String> addresses, List<Set<String>> topics) {
+        if (addresses != null && !addresses.contains(transfer.getToken().toLowerCase())) {
+            return false;
+        }
+        String[] logTopics = {TRANSFER_TOPIC, topicOf(transfer.getFrom()), topicOf(transfer.getTo())};
+        for (int i = 0; i < topics.size(); i++) {
+            Set<String> expected = topics.get(i);
+            if (expected == null) {
+                continue;
+            }
+            if (i >= logTopics.length || !expected.contains(logTopics[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Map<String, Object> renderBlock(SyntheticBlock block, boolean hydrated) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("number", HexUtils.quantity(block.getNumber()));
+        json.put("hash", block.getHash());
+        json.put("parentHash", block.getParentHash());
+        json.put("nonce", "0x0000000000000000");
+        json.put("sha3Uncles", "0x1dcc4de8dec75d7aab85b567b6ccd41ad312451b948a7413f0a142fd40d49347");
+        json.put("logsBloom", bloomOf(block));
+        json.put("transactionsRoot", zeroHash());
+        json.put("stateRoot", zeroHash());
+        json.put("receiptsRoot", zeroHash());
+        json.put("miner", "0x0000000000000000000000000000000000000000");
+        json.put("mixHash", zeroHash());
+        json.put("difficulty", "0x0");
+        json.put("totalDifficulty", "0x0");
+        json.put("extraData", "0x");
+        json.put("size", HexUtils.quantity(540 + block.getTransfers().size() * 110L));
+        json.put("gasLimit", HexUtils.quantity(30_000_000L));
+        json.put("gasUsed", HexUtils.quantity(gasUsed(block)));
+        json.put("timestamp", HexUtils.quantity(block.getTimestamp()));
+        json.put("baseFeePerGas", HexUtils.quantity(baseFeePerGas));
+        List<Object> transactions = new ArrayList<>(block.getTransfers().size());
+        for (SyntheticTransfer transfer : block.getTransfers()) {
+            transactions.add(hydrated ? renderTransaction(transfer, block) : transfer.getTxHash());
+        }
+        json.put("transactions", transactions);
+        json.put("uncles", new ArrayList<>());
+        return json;
+    }
+
+    private Map<String, Object> renderTransaction(SyntheticTransfer transfer, SyntheticBlock block) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("hash", transfer.getTxHash());
+        json.put("nonce", HexUtils.quantity(transfer.getIndex()));
+        //交易池中的交易没有区块
+        json.put("blockHash", block == null ? null : block.getHash());
+        json.put("blockNumber", block == null ? null : HexUtils.quantity(block.getNumber()));
+        json.put("transactionIndex", block == null ? null : HexUtils.quantity(transfer.getIndex()));
+        json.put("from", transfer.getFrom());
+        if (transfer.isToken()) {
+            json.put("to", transfer.getToken());
+            json.put("value", "0x0");
+            json.put("gas", HexUtils.quantity(60000));
+            json.put("input", TRANSFER_SELECTOR + HexUtils.pad32(transfer.getTo()) + HexUtils.pad32(transfer.getValue().toString(16)));
+        } else {
+            json.put("to", transfer.getTo());
+            json.put("value", HexUtils.quantity(transfer.getValue()));
+            json.put("gas", HexUtils.quantity(21000));
+            json.put("input", "0x");
+        }
+        json.put("gasPrice", HexUtils.quantity(gasPrice));
+        json.put("type", "0x0");
+        json.put("chainId", HexUtils.quantity(chainId));
+        json.put("v", "0x1b");
+        json.put("r", zeroHash());
+        json.put("s", zeroHash());
+        return json;
+    }
+
+    private Map<String, Object> renderReceipt(SyntheticTransfer transfer, SyntheticBlock block) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("transactionHash", transfer.getTxHash());
+        json.put("transactionIndex", HexUtils.quantity(transfer.getIndex()));
+        json.put("blockHash", block.getHash());
+        json.put("blockNumber", HexUtils.quantity(block.getNumber()));
+        json.put("from", transfer.getFrom());
+        json.put("to", transfer.isToken() ? transfer.getToken() : transfer.getTo());
+        json.put("cumulativeGasUsed", HexUtils.quantity(gasUsed(block)));
+        json.put("gasUsed", HexUtils.quantity(transfer.isToken() ? 52000 : 21000));
+        json.put("effectiveGasPrice", HexUtils.quantity(gasPrice));
+        json.put("contractAddress", null);
+        List<Object> logs = new ArrayList<>(1);
+        if (transfer.isToken()) {
+            logs.add(renderLog(transfer, block, logIndexOf(transfer, block)));
+            json.put("logsBloom", bloom(transfer.getToken(), TRANSFER_TOPIC, topicOf(transfer.getFrom()), topicOf(transfer.getTo())));
+        } else {
+            json.put("logsBloom", EMPTY_BLOOM);
+        }
+        json.put("logs", logs);
+        json.put("status", "0x1");
+        json.put("type", "0x0");
+        return json;
+    }
+
+    private Map<String, Object> renderLog(SyntheticTransfer transfer, SyntheticBlock block, int logIndex) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("removed", false);
+        json.put("logIndex", HexUtils.quantity(logIndex));
+        json.put("transactionIndex", HexUtils.quantity(transfer.getIndex()));
+        json.put("transactionHash", transfer.getTxHash());
+        json.put("blockHash", block.getHash());
+        json.put("blockNumber", HexUtils.quantity(block.getNumber()));
+        json.put("address", transfer.getToken());
+        json.put("data", "0x" + HexUtils.pad32(transfer.getValue().toString(16)));
+        List<String> topics = new ArrayList<>(3);
+        topics.add(TRANSFER_TOPIC);
+        topics.add(topicOf(transfer.getFrom()));
+        topics.add(topicOf(transfer.getTo()));
+        json.put("topics", topics);
+        return json;
+    }
+
+    private int logIndexOf(SyntheticTransfer transfer, SyntheticBlock block) {
+        int logIndex = 0;
+        for (SyntheticTransfer other : block.getTransfers()) {
+            if (other == transfer) {
+                break;
+            }
+            if (other.isToken()) {
+                logIndex++;
+            }
+        }
+        return logIndex;
+    }
+
+    /**
+     * 区块的logsBloom，包含所有Transfer日志的合约地址与topic
+     */
+    private String bloomOf(SyntheticBlock block) {
+        return bloomCache.computeIfAbsent(block.getNumber(), number -> {
+            List<String> items = new ArrayList<>();
+            for (SyntheticTransfer transfer : block.getTransfers()) {
+                if (transfer.isToken()) {
+                    items.add(transfer.getToken());
+                    items.add(TRANSFER_TOPIC);
+                    items.add(topicOf(transfer.getFrom()));
+                    items.add(topicOf(transfer.getTo()));
+                }
+            }
+            return bloom(items.toArray(new String[0]));
+        });
+    }
+
+    /**
+     * 按黄皮书计算bloom：每个元素取keccak256的前3对字节，各置位2048位中的一位
+     */
+    private static String bloom(String... items) {
+        byte[] bloom = new byte[256];
+        for (String item : items) {
+            byte[] hash = Hash.sha3(HexUtils.fromHex(item));
+            for (int i = 0; i < 6; i += 2) {
+                int bit = (((hash[i] & 0xff) << 8) | (hash[i + 1] & 0xff)) & 2047;
+                bloom[255 - bit / 8] |= 1 << (bit % 8);
+            }
+        }
+        return "0x" + HexUtils.toHex(bloom);
+    }
+
+    private long resolveBlock(String tag) {
+        long height = chain.getHeight();
+        switch (tag) {
+            case "latest":
+            case "pending":
+                return height;
+            case "safe":
+                return Math.max(0, height - safeDepth);
+            case "finalized":
+                return Math.max(0, height - finalizedDepth);
+            case "earliest":
+                return 0;
+            default:
+                return HexUtils.parseQuantity(tag);
+        }
+    }
+
+    private static long gasUsed(SyntheticBlock block) {
+        long gas = 0;
+        for (SyntheticTransfer transfer : block.getTransfers()) {
+            gas += transfer.isToken() ? 52000 : 21000;
+        }
+        return gas;
+    }
+
+    private static String topicOf(String address) {
+        return "0x" + HexUtils.pad32(address);
+    }
+
+    private static String zeroHash() {
+        return "0x" + HexUtils.pad32("0");
+    }
+
+    private static String text(JsonNode params, int index) throws JsonRpcException {
+        JsonNode node = params == null ? null : params.get(index);
+        if (node == null || node.isNull()) {
+            throw new JsonRpcException(JsonRpcException.INVALID_PARAMS, "missing value for required argument " + index);
+        }
+        return node.asText();
+    }
+
+    /**
+     * 地址或topic过滤条件：null表示不限制，字符串或数组表示任意匹配其中之一
+     */
+    private static Set<String> lowerSet(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return null;
+        }
+        Set<String> values = new HashSet<>();
+        if (node.isArray()) {
+            for (JsonNode value : node) {
+                values.add(value.asText().toLowerCase());
+            }
+        } else {
+            values.add(node.asText().toLowerCase());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,141 @@
+package com.payment.mocknode.node;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.payment.mocknode.chain.SyntheticBlock;
+import com.payment.mocknode.chain.SyntheticChain;
+import com.payment.mocknode.chain.SyntheticTransfer;
+import com.payment.mocknode.server.FakeJsonRpcServer;
+import com.payment.mocknode.server.JsonRpcException;
+import com.payment.mocknode.utils.Base58;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 模拟Solana节点
+ * <p>
+ * 每笔合成转账对应一笔System Program的transfer指令，slot与区块高度相同。
+ */
+public class FakeSolanaNode extends FakeJsonRpcServer {
+
+    public static final String SYSTEM_PROGRAM_ID = "11111111111111111111111111111111";
+
+    /**
+     * 每笔交易的手续费（lamports）
+     */
+    private static final long FEE = 5000;
+
+    private final SyntheticChain chain;
+
+    public FakeSolanaNode(SyntheticChain chain) {
+        this.chain = chain;
+    }
+
+    @Override
+    protected Object dispatch(String method, JsonNode params) throws JsonRpcException {
+        switch (method) {
+            case "getBlockHeight":
+            case "getSlot":
+                return chain.getHeight();
+            case "getBlock":
+            case "getConfirmedBlock": {
+                SyntheticBlock block = chain.getBlock(params.path(0).asLong(-1));
+                if (block == null) {
+                    throw new JsonRpcException(-32004, "Block not available for slot " + params.path(0).asLong(-1));
+                }
+                return renderBlock(block);
+            }
+            case "getTransaction":
+            case "getConfirmedTransaction": {
+                SyntheticTransfer transfer = chain.getTransfer(params.path(0).asText());
+                return transfer == null ? null : renderConfirmedTransaction(transfer, chain.getBlock(transfer.getBlockNumber()), true);
+            }
+            case "getBalance":
+                return withContext(chain.balanceOf(params.path(0).asText(), null, chain.getHeight()).longValue());
+            case "getLatestBlockhash":
+            case "getRecentBlockhash": {
+                Map<String, Object> value = new LinkedHashMap<>();
+                value.put("blockhash", chain.getBlock(chain.getHeight()).getHash());
+                value.put("lastValidBlockHeight", chain.getHeight() + 150);
+                return withContext(value);
+            }
+            case "getHealth":
+                return "ok";
+            default:
+                throw new JsonRpcException(JsonRpcException.METHOD_NOT_FOUND, "Method not found");
+        }
+    }
+
+    private Map<String, Object> renderBlock(SyntheticBlock block) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("blockHeight", block.getNumber());
+        json.put("blockTime", block.getTimestamp());
+        json.put("blockhash", block.getHash());
+        json.put("parentSlot", Math.max(0, block.getNumber() - 1));
+        json.put("previousBlockhash", block.getParentHash());
+        json.put("rewards", Collections.emptyList());
+        List<Object> transactions = new ArrayList<>(block.getTransfers().size());
+        for (SyntheticTransfer transfer : block.getTransfers()) {
+            transactions.add(renderConfirmedTransaction(transfer, block, false));
+        }
+        json.put("transactions", transactions);
+        return json;
+    }
+
+    private Map<String, Object> renderConfirmedTransaction(SyntheticTransfer transfer, SyntheticBlock block, boolean standalone) {
+        long lamports = transfer.getValue().longValue();
+
+        Map<String, Object> meta = new LinkedHashMap<>();
+        meta.put("err", null);
+        meta.put("fee", FEE);
+        meta.put("preBalances", Arrays.asList(lamports + FEE + 1_000_000_000L, 0L, 1L));
+        meta.put("postBalances", Arrays.asList(1_000_000_000L, lamports, 1L));
+        meta.put("innerInstructions", Collections.emptyList());
+        meta.put("logMessages", Arrays.asList("Program " + SYSTEM_PROGRAM_ID + " invoke [1]", "Program " + SYSTEM_PROGRAM_ID + " success"));
+        meta.put("status", Collections.singletonMap("Ok", null));
+
+        //System Program transfer指令：u32小端序指令编号2 + u64小端序lamports
+        byte[] data = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN).putInt(2).putLong(lamports).array();
+        Map<String, Object> instruction = new LinkedHashMap<>();
+        instruction.put("accounts", Arrays.asList(0, 1));
+        instruction.put("data", Base58.encode(data));
+        instruction.put("programIdIndex", 2);
+
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put("numReadonlySignedAccounts", 0);
+        header.put("numReadonlyUnsignedAccounts", 1);
+        header.put("numRequiredSignatures", 1);
+
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("accountKeys", Arrays.asList(transfer.getFrom(), transfer.getTo(), SYSTEM_PROGRAM_ID));
+        message.put("header", header);
+        message.put("instructions", Collections.singletonList(instruction));
+        message.put("recentBlockhash", block.getParentHash());
+
+        Map<String, Object> transaction = new LinkedHashMap<>();
+        transaction.put("message", message);
+        transaction.put("signatures", Collections.singletonList(transfer.getTxHash()));
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("meta", meta);
+        json.put("transaction", transaction);
+        if (standalone) {
+            json.put("slot", block.getNumber());
+            json.put("blockTime", block.getTimestamp());
+        }
+        return json;
+    }
+
+    private Map<String, Object> withContext(Object value) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("context", Collections.singletonMap("slot", chain.getHeight()));
+        json.put("value", value);
+        return json;
+    }
+}
@@ -0,0 +1,268 @@
+package com.payment.mocknode.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.java_websocket.WebSocket;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 模拟以太坊节点的WebSocket接口
+ * <p>
+ * 普通调用转发给HTTP模拟节点处理；支持eth_subscribe的newHeads、logs与newPendingTransactions订阅，
+ * 出块后调用{@link #publish(long)}向订阅方推送新区块头与匹配的日志，
+ * 交易进入交易池后调用{@link #publishPendingTransaction(String)}推送交易Hash。
+ * 可以暂停推送或断开所有连接，模拟订阅停滞与连接中断。
+ */
+@Slf4j
+public class FakeEthWebSocketServer implements Closeable {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final FakeJsonRpcServer node;
+
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    private final AtomicLong subscriptionIds = new AtomicLong();
+
+    private volatile boolean paused;
+
+    private Server server;
+
+    public FakeEthWebSocketServer(FakeJsonRpcServer node) {
+        this.node = node;
+    }
+
+    /**
+     * 启动WebSocket服务，等待端口绑定完成后返回
+     * @param port 端口，0表示随机端口
+     */
+    public synchronized FakeEthWebSocketServer start(int port) throws IOException {
+        server = new Server(new InetSocketAddress("127.0.0.1", port));
+        server.setReuseAddr(true);
+        server.start();
+        try {
+            if (!server.started.await(10, TimeUnit.SECONDS)) {
+                throw new IOException("WebSocket服务启动超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("WebSocket服务启动被中断", e);
+        }
+        log.info("{}已启动：{}", getClass().getSimpleName(), getUrl());
+        return this;
+    }
+
+    public int getPort() {
+        return server.getPort();
+    }
+
+    public String getUrl() {
+        return "ws://127.0.0.1:" + getPort() + "/";
+    }
+
+    /**
+     * 暂停推送，连接保持正常，模拟订阅停滞
+     */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    /**
+     * 当前的订阅数
+     */
+    public int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * 异常断开所有连接，模拟网络中断，连接上的订阅全部失效
+     */
+    public void dropConnections() {
+        for (WebSocket connection : server.getConnections()) {
+            connection.closeConnection(CloseFrame.ABNORMAL_CLOSE, "dropped");
+        }
+    }
+
+    /**
+     * 推送一个新区块：newHeads订阅推送区块头，logs订阅推送该区块中匹配的日志
+     * @param number 区块号
+     */
+    public void publish(long number) {
+        if (paused) {
+            return;
+        }
+        String blockNumber = "0x" + Long.toHexString(number);
+        for (Map.Entry<String, Subscription> entry : subscriptions.entrySet()) {
+            Subscription subscription = entry.getValue();
+            if (!subscription.connection.isOpen() || subscription.pending) {
+                continue;
+            }
+            if (subscription.filter == null) {
+                JsonNode header = call("eth_getBlockByNumber", objectMapper.createArrayNode().add(blockNumber).add(false));
+                if (header != null && !header.isNull()) {
+                    notify(subscription.connection, entry.getKey(), header);
+                }
+            } else {
+                ObjectNode filter = subscription.filter.deepCopy();
+                filter.put("fromBlock", blockNumber);
+                filter.put("toBlock", blockNumber);
+                JsonNode logs = call("eth_getLogs", objectMapper.createArrayNode().add(filter));
+                if (logs != null) {
+                    for (JsonNode log : logs) {
+                        notify(subscription.connection, entry.getKey(), log);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 向newPendingTransactions订阅推送交易Hash
+     * @param txHash 交易Hash
+     */
+    public void publishPendingTransaction(String txHash) {
+        if (paused) {
+            return;
+        }
+        for (Map.Entry<String, Subscription> entry : subscriptions.entrySet()) {
+            Subscription subscription = entry.getValue();
+            if (subscription.pending && subscription.connection.isOpen()) {
+                notify(subscription.connection, entry.getKey(), objectMapper.getNodeFactory().textNode(txHash));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            try {
+                server.stop(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            server = null;
+        }
+    }
+
+    private JsonNode call(String method, ArrayNode params) {
+        ObjectNode request = objectMapper.createObjectNode();
+        request.put("jsonrpc", "2.0");
+        request.put("id", 0);
+        request.put("method", method);
+        request.set("params", params);
+        //注入的JSON-RPC错误会导致本次推送丢失，与真实节点推送失败的表现一致
+        return node.handle(request).get("result");
+    }
+
+    private void notify(WebSocket connection, String subscriptionId, JsonNode result) {
+        ObjectNode notification = objectMapper.createObjectNode();
+        notification.put("jsonrpc", "2.0");
+        notification.put("method", "eth_subscription");
+        ObjectNode params = notification.putObject("params");
+        params.put("subscription", subscriptionId);
+        params.set("result", result);
+        send(connection, notification);
+    }
+
+    private void onMessage(WebSocket connection, String message) throws IOException {
+        JsonNode request = objectMapper.readTree(message);
+        String method = request.path("method").asText();
+        JsonNode params = request.path("params");
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.set("id", request.get("id"));
+        if ("eth_subscribe".equals(method)) {
+            String type = params.path(0).asText();
+            if (!"newHeads".equals(type) && !"logs".equals(type) && !"newPendingTransactions".equals(type)) {
+                response.putObject("error").put("code", JsonRpcException.INVALID_PARAMS).put("message", "unsupported subscription: " + type);
+            } else {
+                String id = "0x" + Long.toHexString(subscriptionIds.incrementAndGet());
+                ObjectNode filter = "logs".equals(type) ? params.path(1).isObject() ? (ObjectNode) params.get(1) : objectMapper.createObjectNode() : null;
+                subscriptions.put(id, new Subscription(connection, filter, "newPendingTransactions".equals(type)));
+                response.put("result", id);
+            }
+        } else if ("eth_unsubscribe".equals(method)) {
+            response.put("result", subscriptions.remove(params.path(0).asText()) != null);
+        } else {
+            send(connection, node.handle(request));
+            return;
+        }
+        send(connection, response);
+    }
+
+    private void send(WebSocket connection, JsonNode json) {
+        try {
+            connection.send(objectMapper.writeValueAsString(json));
+        } catch (IOException | RuntimeException e) {
+            log.debug("WebSocket推送失败：{}", e.getMessage());
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Subscription {
+
+        private final WebSocket connection;
+
+        /**
+         * logs订阅的过滤条件，newHeads与newPendingTransactions订阅为null
+         */
+        private final ObjectNode filter;
+
+        /**
+         * 是否为newPendingTransactions订阅
+         */
+        private final boolean pending;
+    }
+
+    private class Server extends WebSocketServer {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        Server(InetSocketAddress address) {
+            super(address);
+        }
+
+        @Override
+        public void onOpen(WebSocket connection, ClientHandshake handshake) {
+        }
+
+        @Override
+        public void onClose(WebSocket connection, int code, String reason, boolean remote) {
+            subscriptions.values().removeIf(subscription -> subscription.connection == connection);
+        }
+
+        @Override
+        public void onMessage(WebSocket connection, String message) {
+            try {
+                FakeEthWebSocketServer.this.onMessage(connection, message);
+            } catch (IOException | RuntimeException e) {
+                log.error("模拟节点处理WebSocket消息异常", e);
+            }
+        }
+
+        @Override
+        public void onError(WebSocket connection, Exception e) {
+            log.debug("WebSocket连接异常：{}", e.getMessage());
+        }
+
+        @Override
+        public void onStart() {
+            started.countDown();
+        }
+    }
+}
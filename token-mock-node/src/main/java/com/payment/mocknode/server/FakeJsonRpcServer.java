@@ -0,0 +1,283 @@
+package com.payment.mocknode.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * 模拟JSON-RPC节点
+ * <p>
+ * 基于JDK自带的HttpServer，支持单个请求与批量请求，按方法统计调用次数，
+ * 可以预先录制某个方法与参数的返回结果，并通过{@link FaultInjector}注入延迟与故障。
+ * 子类只需实现{@link #dispatch(String, JsonNode)}。
+ */
+@Slf4j
+public abstract class FakeJsonRpcServer implements Closeable {
+
+    static {
+        //JDK HttpServer默认开启Nagle算法，与客户端的延迟ACK叠加后每个请求会多出约40ms
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Getter
+    private final FaultInjector faultInjector = new FaultInjector();
+
+    private final Map<String, LongAdder> methodCounts = new ConcurrentHashMap<>();
+
+    private final LongAdder httpRequests = new LongAdder();
+
+    /**
+     * 录制的返回结果，key为方法名+参数JSON
+     */
+    private final Map<String, JsonNode> recordings = new ConcurrentHashMap<>();
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    /**
+     * 处理一个JSON-RPC调用
+     * @param method 方法名
+     * @param params 参数，可能为空
+     * @return 调用结果，会被序列化为JSON
+     */
+    protected abstract Object dispatch(String method, JsonNode params) throws JsonRpcException;
+
+    /**
+     * 启动节点
+     * @param port 端口，0表示随机端口
+     */
+    public synchronized FakeJsonRpcServer start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 256);
+        //线程以mock-node开头命名，便于压测统计分配速率时排除模拟节点自身的开销
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(32, runnable -> {
+            Thread thread = new Thread(runnable, "mock-node-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        log.info("{}已启动：{}", getClass().getSimpleName(), getUrl());
+        return this;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + getPort() + "/";
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    /**
+     * 录制返回结果，之后相同方法与参数的调用直接返回录制结果
+     * @param method 方法名
+     * @param paramsJson 参数JSON数组
+     * @param resultJson 结果JSON
+     */
+    public void record(String method, String paramsJson, String resultJson) throws IOException {
+        recordings.put(recordingKey(method, objectMapper.readTree(paramsJson)), objectMapper.readTree(resultJson));
+    }
+
+    /**
+     * 从目录加载录制结果，每个json文件为一个或多个{"method":..., "params":[...], "result":...}
+     */
+    public void loadRecordings(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files.filter(path -> path.toString().endsWith(".json"))::iterator) {
+                JsonNode root = objectMapper.readTree(file.toFile());
+                for (JsonNode entry : root.isArray() ? root : objectMapper.createArrayNode().add(root)) {
+                    recordings.put(recordingKey(entry.path("method").asText(), entry.get("params")), entry.get("result"));
+                }
+            }
+        }
+    }
+
+    /**
+     * 按方法统计的调用次数（批量请求中的每个调用单独计数）
+     */
+    public Map<String, Long> getMethodCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        methodCounts.forEach((method, count) -> counts.put(method, count.sum()));
+        return counts;
+    }
+
+    public long getMethodCount(String method) {
+        LongAdder count = methodCounts.get(method);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * HTTP请求次数（一个批量请求只计一次）
+     */
+    public long getHttpRequests() {
+        return httpRequests.sum();
+    }
+
+    public void resetCounts() {
+        methodCounts.clear();
+        httpRequests.reset();
+    }
+
+    /**
+     * 处理一个已解析的请求，供HTTP之外的传输方式复用；不注入整体延迟与HTTP层故障
+     * @param request 单个请求或批量请求
+     * @return 单个响应或批量响应
+     */
+    public JsonNode handle(JsonNode request) {
+        if (!request.isArray()) {
+            return call(request);
+        }
+        ArrayNode responses = objectMapper.createArrayNode();
+        for (JsonNode call : request) {
+            responses.add(call(call));
+        }
+        return responses;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            httpRequests.increment();
+            byte[] body = readAll(exchange.getRequestBody());
+
+            //1. 注入整体延迟与HTTP层故障
+            sleep(faultInjector.requestLatency());
+            if (faultInjector.shouldThrottle()) {
+                respond(exchange, 429, "Too Many Requests".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            if (faultInjector.shouldFailHttp()) {
+                respond(exchange, 500, "Internal Server Error".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+
+            //2. 处理单个请求或批量请求
+            JsonNode request;
+            try {
+                request = objectMapper.readTree(body);
+            } catch (IOException e) {
+                respond(exchange, 200, objectMapper.writeValueAsBytes(error(NullNode.getInstance(), -32700, "Parse error")));
+                return;
+            }
+            respond(exchange, 200, objectMapper.writeValueAsBytes(handle(request)));
+        } catch (RuntimeException e) {
+            log.error("模拟节点处理请求异常", e);
+            respond(exchange, 500, String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private ObjectNode call(JsonNode request) {
+        JsonNode id = request.has("id") ? request.get("id") : NullNode.getInstance();
+        String method = request.path("method").asText();
+        JsonNode params = request.get("params");
+        methodCounts.computeIfAbsent(method, key -> new LongAdder()).increment();
+
+        sleep(faultInjector.methodLatency(method));
+        if (faultInjector.shouldFailRpc()) {
+            return error(id, JsonRpcException.SERVER_ERROR, "injected error");
+        }
+        JsonNode recorded = recordings.get(recordingKey(method, params));
+        if (recorded != null) {
+            return result(id, recorded);
+        }
+        try {
+            Object result = dispatch(method, params);
+            return result(id, result == null ? NullNode.getInstance() : objectMapper.valueToTree(result));
+        } catch (JsonRpcException e) {
+            return error(id, e.getCode(), e.getMessage());
+        }
+    }
+
+    private ObjectNode result(JsonNode id, JsonNode result) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("jsonrpc", "2.0");
+        node.set("id", id);
+        node.set("result", result);
+        node.set("error", NullNode.getInstance());
+        return node;
+    }
+
+    private ObjectNode error(JsonNode id, int code, String message) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("jsonrpc", "2.0");
+        node.set("id", id);
+        node.set("result", NullNode.getInstance());
+        node.putObject("error").put("code", code).put("message", message);
+        return node;
+    }
+
+    private String recordingKey(String method, JsonNode params) {
+        return method + (params == null ? "[]" : params.toString());
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
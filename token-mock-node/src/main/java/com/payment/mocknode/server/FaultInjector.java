@@ -0,0 +1,111 @@
+package com.payment.mocknode.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 故障注入配置
+ * <p>
+ * 模拟真实节点的延迟抖动、HTTP错误、JSON-RPC错误与限流（HTTP 429），
+ * 所有配置都可以在模拟节点运行过程中修改。
+ */
+public class FaultInjector {
+
+    private volatile long minLatencyMillis;
+
+    private volatile long maxLatencyMillis;
+
+    private volatile double httpErrorRate;
+
+    private volatile double rpcErrorRate;
+
+    private volatile double throttleRate;
+
+    /**
+     * 单个方法的额外延迟 [最小, 最大]
+     */
+    private final Map<String, long[]> methodLatency = new ConcurrentHashMap<>();
+
+    /**
+     * 每次HTTP请求的延迟范围
+     */
+    public FaultInjector latency(long minMillis, long maxMillis) {
+        this.minLatencyMillis = minMillis;
+        this.maxLatencyMillis = Math.max(minMillis, maxMillis);
+        return this;
+    }
+
+    /**
+     * 指定方法每次调用的额外延迟范围
+     */
+    public FaultInjector methodLatency(String method, long minMillis, long maxMillis) {
+        methodLatency.put(method, new long[]{minMillis, Math.max(minMillis, maxMillis)});
+        return this;
+    }
+
+    /**
+     * 返回HTTP 500的概率
+     */
+    public FaultInjector httpErrorRate(double rate) {
+        this.httpErrorRate = rate;
+        return this;
+    }
+
+    /**
+     * 单个调用返回JSON-RPC错误的概率
+     */
+    public FaultInjector rpcErrorRate(double rate) {
+        this.rpcErrorRate = rate;
+        return this;
+    }
+
+    /**
+     * 返回HTTP 429的概率
+     */
+    public FaultInjector throttleRate(double rate) {
+        this.throttleRate = rate;
+        return this;
+    }
+
+    /**
+     * 清除所有故障
+     */
+    public void reset() {
+        minLatencyMillis = 0;
+        maxLatencyMillis = 0;
+        httpErrorRate = 0;
+        rpcErrorRate = 0;
+        throttleRate = 0;
+        methodLatency.clear();
+    }
+
+    long requestLatency() {
+        return sample(minLatencyMillis, maxLatencyMillis);
+    }
+
+    long methodLatency(String method) {
+        long[] range = methodLatency.get(method);
+        return range == null ? 0 : sample(range[0], range[1]);
+    }
+
+    boolean shouldThrottle() {
+        return hit(throttleRate);
+    }
+
+    boolean shouldFailHttp() {
+        return hit(httpErrorRate);
+    }
+
+    boolean shouldFailRpc() {
+        return hit(rpcErrorRate);
+    }
+
+    private static long sample(long min, long max) {
+        return max <= min ? min : ThreadLocalRandom.current().nextLong(min, max + 1);
+    }
+
+    private static boolean hit(double rate) {
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+}
@@ -0,0 +1,28 @@
+package com.payment.mocknode.server;
+
+import lombok.Getter;
+
+/**
+ * 模拟节点返回的JSON-RPC错误
+ */
+@Getter
+public class JsonRpcException extends Exception {
+
+    public static final int METHOD_NOT_FOUND = -32601;
+
+    public static final int INVALID_PARAMS = -32602;
+
+    public static final int SERVER_ERROR = -32000;
+
+    /**
+     * 结果集过大，与Infura、Alchemy等节点服务返回的错误码一致
+     */
+    public static final int LIMIT_EXCEEDED = -32005;
+
+    private final int code;
+
+    public JsonRpcException(int code, String message) {
+        super(message);
+        this.code = code;
+    }
+}
@@ -0,0 +1,67 @@
+package com.payment.mocknode.utils;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Base58编解码（比特币字母表），用于生成Solana地址、签名与区块Hash
+ */
+public class Base58 {
+
+    private static final char[] ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz".toCharArray();
+
+    private static final int[] INDEXES = new int[128];
+
+    private static final BigInteger BASE = BigInteger.valueOf(58);
+
+    static {
+        Arrays.fill(INDEXES, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            INDEXES[ALPHABET[i]] = i;
+        }
+    }
+
+    public static String encode(byte[] input) {
+        int zeros = 0;
+        while (zeros < input.length && input[zeros] == 0) {
+            zeros++;
+        }
+        StringBuilder sb = new StringBuilder();
+        BigInteger value = new BigInteger(1, input);
+        while (value.signum() > 0) {
+            BigInteger[] divmod = value.divideAndRemainder(BASE);
+            sb.append(ALPHABET[divmod[1].intValue()]);
+            value = divmod[0];
+        }
+        for (int i = 0; i < zeros; i++) {
+            sb.append(ALPHABET[0]);
+        }
+        return sb.reverse().toString();
+    }
+
+    public static byte[] decode(String input) {
+        BigInteger value = BigInteger.ZERO;
+        int zeros = 0;
+        boolean leading = true;
+        for (char c : input.toCharArray()) {
+            int digit = c < 128 ? INDEXES[c] : -1;
+            if (digit < 0) {
+                throw new IllegalArgumentException("非法的Base58字符：" + c);
+            }
+            if (leading && digit == 0) {
+                zeros++;
+            } else {
+                leading = false;
+            }
+            value = value.multiply(BASE).add(BigInteger.valueOf(digit));
+        }
+        byte[] bytes = value.signum() == 0 ? new byte[0] : value.toByteArray();
+        int offset = bytes.length > 1 && bytes[0] == 0 ? 1 : 0;
+        byte[] result = new byte[zeros + bytes.length - offset];
+        System.arraycopy(bytes, offset, result, zeros, bytes.length - offset);
+        return result;
+    }
+
+    private Base58() {
+    }
+}
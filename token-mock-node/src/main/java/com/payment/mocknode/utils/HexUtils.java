@@ -0,0 +1,62 @@
+package com.payment.mocknode.utils;
+
+import java.math.BigInteger;
+
+/**
+ * 十六进制与JSON-RPC数值格式转换
+ */
+public class HexUtils {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * 转换为以太坊QUANTITY格式，例如0x1f
+     */
+    public static String quantity(long value) {
+        return "0x" + Long.toHexString(value);
+    }
+
+    public static String quantity(BigInteger value) {
+        return "0x" + value.toString(16);
+    }
+
+    /**
+     * 解析QUANTITY格式
+     */
+    public static long parseQuantity(String value) {
+        return Long.parseLong(value.startsWith("0x") ? value.substring(2) : value, 16);
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    public static byte[] fromHex(String hex) {
+        String clean = hex.startsWith("0x") ? hex.substring(2) : hex;
+        byte[] bytes = new byte[clean.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(clean.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    /**
+     * 左补零到32字节（64个十六进制字符），不带0x前缀
+     */
+    public static String pad32(String hex) {
+        String clean = hex.startsWith("0x") ? hex.substring(2) : hex;
+        StringBuilder sb = new StringBuilder(64);
+        for (int i = clean.length(); i < 64; i++) {
+            sb.append('0');
+        }
+        return sb.append(clean.toLowerCase()).toString();
+    }
+
+    private HexUtils() {
+    }
+}
@@ -1,7 +1,7 @@
 package com.payment.sol.config;
 
-import org.p2p.solanaj.rpc.Cluster;
 import org.p2p.solanaj.rpc.RpcClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -11,8 +11,14 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class SolClientConfig {
 
+    /**
+     * 节点地址，默认使用devnet
+     */
+    @Value("${sol.nodeurl:https://api.devnet.solana.com}")
+    private String solNodeUrl;
+
     @Bean
     public RpcClient rpcClient() {
-        return new RpcClient(Cluster.DEVNET);
+        return new RpcClient(solNodeUrl);
     }
 }
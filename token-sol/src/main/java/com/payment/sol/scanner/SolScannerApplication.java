@@ -0,0 +1,25 @@
+package com.payment.sol.scanner;
+
+import com.payment.core.config.ScannerConfiguration;
+import com.payment.sol.task.SolScanTask;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * 只运行SOL扫块任务的启动类
+ * <p>
+ * 不启动Web容器与JPA，充值记录通过JdbcTemplate读写，适合与对外接口服务分开部署，
+ * 推荐使用较小的堆启动，例如 java -Xmx96m -cp ... com.payment.sol.scanner.SolScannerApplication
+ */
+@Configuration
+@Profile(ScannerConfiguration.PROFILE)
+@Import({ScannerConfiguration.class, SolScanTask.class})
+@ComponentScan({"com.payment.sol.config", "com.payment.sol.service"})
+public class SolScannerApplication {
+
+    public static void main(String[] args) {
+        ScannerConfiguration.run(SolScannerApplication.class, args);
+    }
+}
@@ -1,5 +1,7 @@
 package com.payment.sol.service.impl;
 
+import com.payment.core.limiter.RpcLimiter;
+import com.payment.core.limiter.RpcLimiterRegistry;
 import com.payment.sol.service.SolService;
 import lombok.extern.slf4j.Slf4j;
 import org.p2p.solanaj.rpc.RpcClient;
@@ -7,6 +9,7 @@ import org.p2p.solanaj.rpc.RpcException;
 import org.p2p.solanaj.rpc.types.Block;
 import org.p2p.solanaj.rpc.types.ConfirmedTransaction;
 import org.p2p.solanaj.rpc.types.config.Commitment;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
@@ -19,13 +22,19 @@ import javax.annotation.Resource;
 public class SolServiceImpl implements SolService {
 
 
+    @Value("${sol.nodeurl:https://api.devnet.solana.com}")
+    private String solNodeUrl;
+
     @Resource
     private RpcClient rpcClient;
 
+    @Resource
+    private RpcLimiterRegistry rpcLimiterRegistry;
+
     @Override
     public Long getBlockHeight() {
         try {
-            return rpcClient.getApi().getBlockHeight(Commitment.CONFIRMED);
+            return limiter().execute(() -> rpcClient.getApi().getBlockHeight(Commitment.CONFIRMED));
         } catch (RpcException e) {
             log.error("获取区块高度失败", e);
             throw new RuntimeException(e);
@@ -35,7 +44,7 @@ public class SolServiceImpl implements SolService {
     @Override
     public Block getBlockByNumber(long l) {
         try {
-            return rpcClient.getApi().getBlock((int) l);
+            return limiter().execute(() -> rpcClient.getApi().getBlock((int) l));
         } catch (RpcException e) {
             log.error("获取区块失败", e);
             throw new RuntimeException(e);
@@ -45,12 +54,17 @@ public class SolServiceImpl implements SolService {
     @Override
     public ConfirmedTransaction getTransactionByHash(String txHash) {
         try {
-            return rpcClient.getApi().getConfirmedTransaction(txHash);
+            return limiter().execute(() -> rpcClient.getApi().getConfirmedTransaction(txHash));
         } catch (RpcException e) {
             log.error("获取交易失败", e);
             throw new RuntimeException(e);
         }
     }
 
-
+    /**
+     * 当前节点的限流器，所有访问该节点的调用共享
+     */
+    private RpcLimiter limiter() {
+        return rpcLimiterRegistry.get(solNodeUrl);
+    }
 }
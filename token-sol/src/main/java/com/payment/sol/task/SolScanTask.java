@@ -1,5 +1,6 @@
 package com.payment.sol.task;
 
+import com.payment.core.config.ScannerConfiguration;
 import com.payment.core.entity.Currency;
 import com.payment.core.entity.Height;
 import com.payment.core.entity.Recharge;
@@ -14,6 +15,7 @@ import org.p2p.solanaj.programs.SystemProgram;
 import org.p2p.solanaj.rpc.types.Block;
 import org.p2p.solanaj.rpc.types.ConfirmedTransaction;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
@@ -27,6 +29,7 @@ import java.util.Objects;
 
 @Slf4j
 @Component
+@ConditionalOnProperty(name = ScannerConfiguration.SCAN_ENABLED, havingValue = "true", matchIfMissing = true)
 public class SolScanTask {
 
 